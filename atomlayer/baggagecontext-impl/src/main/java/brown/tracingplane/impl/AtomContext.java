@@ -1,19 +1,29 @@
 package brown.tracingplane.impl;
 
 import java.nio.ByteBuffer;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import brown.tracingplane.BaggageContext;
+import brown.tracingplane.atomlayer.AtomArray;
+import brown.tracingplane.atomlayer.AtomLayerSerialization;
 import brown.tracingplane.atomlayer.Lexicographic;
-import brown.tracingplane.atomlayer.ProtobufVarint;
+import brown.tracingplane.atomlayer.PersistentAtomList;
 
 /**
  * <p>
  * A minimal implementation of {@link BaggageContext} based on atoms and lexicographic merge, but providing no read or
  * write methods to the atoms themselves.
  * </p>
+ * 
+ * <p>
+ * Branched contexts share their atoms. Shared atoms are held in a {@link PersistentAtomList}, which is never modified
+ * in place, so a context can be modified without first copying all of its atoms, and merging two contexts that were
+ * branched from one another only compares the atoms where they differ.
+ * </p>
  */
 public class AtomContext implements BaggageContext {
 
@@ -65,6 +75,10 @@ public class AtomContext implements BaggageContext {
     }
 
     public AtomContext branch() {
+        if (atoms != null && atoms.object != null && !(atoms.object instanceof PersistentAtomList)) {
+            // Convert once, so that this and every subsequent branch share structure
+            toPersistent();
+        }
         return new AtomContext(atoms);
     }
 
@@ -77,6 +91,12 @@ public class AtomContext implements BaggageContext {
             return this;
         }
 
+        if (atoms == other.atoms || atoms.object == other.atoms.object) {
+            // Neither side has been modified since one was branched from the other
+            other.discard();
+            return this;
+        }
+
         if (atoms.exclusive()) {
             atoms.object = Lexicographic.merge(atoms.object, other.atoms.object);
             other.discard();
@@ -96,23 +116,78 @@ public class AtomContext implements BaggageContext {
     }
 
     /**
-     * If others hold references to our atoms, duplicates the atoms.
+     * Merges all of the provided contexts with a single k-way lexicographic merge. The provided contexts are discarded,
+     * except for the returned context which may be one of them.
+     */
+    static AtomContext mergeAll(Collection<AtomContext> contexts) {
+        List<List<ByteBuffer>> lists = new ArrayList<>(contexts.size());
+        AtomContext first = null;
+        for (AtomContext context : contexts) {
+            if (context != null) {
+                first = first == null ? context : first;
+                if (context.atoms != null && context.atoms.object != null) {
+                    lists.add(context.atoms.object);
+                }
+            }
+        }
+
+        List<ByteBuffer> merged = Lexicographic.mergeAll(lists);
+        if (merged == null) {
+            return first;
+        }
+
+        // If the merged atoms are one of the inputs, reuse that context rather than creating a new one
+        AtomContext result = null;
+        for (AtomContext context : contexts) {
+            if (context != null && context.atoms != null && context.atoms.object == merged) {
+                result = context;
+                break;
+            }
+        }
+        for (AtomContext context : contexts) {
+            if (context != null && context != result && context.atoms != null) {
+                context.discard();
+            }
+        }
+        return result != null ? result : new AtomContext(merged);
+    }
+
+    /**
+     * If others hold references to our atoms, takes a private reference to them. The atoms themselves are not copied;
+     * lists of atoms are never modified in place, only replaced.
      */
     void toExclusive() {
         if (atoms != null && atoms.object != null && !atoms.exclusive()) {
-            RefCount<List<ByteBuffer>> newAtoms = new RefCount<>(new ArrayList<>(atoms.object));
+            RefCount<List<ByteBuffer>> newAtoms = new RefCount<>(atoms.object);
             atoms.deref();
             newAtoms.ref();
             atoms = newAtoms;
         }
     }
 
+    /**
+     * Converts this context's atoms to a {@link PersistentAtomList}. The list is replaced under a private reference, so
+     * that contexts sharing the previous list never see it change.
+     */
+    private PersistentAtomList toPersistent() {
+        if (!(atoms.object instanceof PersistentAtomList)) {
+            toExclusive();
+            atoms.object = PersistentAtomList.of(atoms.object);
+        }
+        return (PersistentAtomList) atoms.object;
+    }
+
+    /**
+     * Returns the serialized size of this context's atoms. Atoms held as a {@link PersistentAtomList} know their
+     * serialized size, so this is constant time, as it is for an {@link AtomArray} that was deserialized canonically
+     * (see {@link AtomArray#serializedSize()}). Other lists are converted to a {@link PersistentAtomList} the first time
+     * their size is requested, and the size is then maintained as the atoms are updated and merged.
+     */
     public int serializedSize() {
-        int size = 0;
-        for (ByteBuffer atom : atoms.object) {
-            size += atom.remaining() + ProtobufVarint.sizeOf(atom.remaining());
+        if (!(atoms.object instanceof AtomArray)) {
+            toPersistent();
         }
-        return size;
+        return AtomLayerSerialization.serializedSize(atoms.object);
     }
 
     /**
@@ -129,20 +204,67 @@ public class AtomContext implements BaggageContext {
 
     /**
      * <p>
-     * Returns the {@link List} that backs this {@link AtomContext} object, so modifications to the list will be
-     * reflected by this context and vice versa. {@link AtomContext} uses reference counting as an optimization, so a
-     * call to this method might result in duplicating atoms if others currently hold a reference to them.
+     * Returns a {@link List} view of the atoms of this {@link AtomContext} object, so modifications to the list will be
+     * reflected by this context and vice versa. Modifications only copy the part of the atoms that changed, so atoms
+     * remain shared with any contexts that this context was branched from.
      * </p>
      * 
      * @return the atoms of this {@link AtomContext}
      */
     public List<ByteBuffer> getModifiableAtoms() {
         toExclusive();
-        return atoms();
+        return atoms == null || atoms.object == null ? null : new ModifiableAtoms();
     }
 
     List<ByteBuffer> atoms() {
         return atoms == null ? null : atoms.object;
     }
 
+    /**
+     * A modifiable view of this context's atoms. Each modification replaces the atoms with an updated
+     * {@link PersistentAtomList}, first taking a private reference to them if the context was branched since the view
+     * was created.
+     */
+    private class ModifiableAtoms extends AbstractList<ByteBuffer> {
+
+        private PersistentAtomList current() {
+            toExclusive();
+            return toPersistent();
+        }
+
+        @Override
+        public ByteBuffer get(int index) {
+            return atoms.object.get(index);
+        }
+
+        @Override
+        public int size() {
+            return atoms.object.size();
+        }
+
+        @Override
+        public ByteBuffer set(int index, ByteBuffer atom) {
+            PersistentAtomList current = current();
+            ByteBuffer previous = current.get(index);
+            atoms.object = current.with(index, atom);
+            return previous;
+        }
+
+        @Override
+        public void add(int index, ByteBuffer atom) {
+            PersistentAtomList current = current();
+            atoms.object = current.withInserted(index, atom);
+            modCount++;
+        }
+
+        @Override
+        public ByteBuffer remove(int index) {
+            PersistentAtomList current = current();
+            ByteBuffer previous = current.get(index);
+            atoms.object = current.without(index);
+            modCount++;
+            return previous;
+        }
+    }
+
 }
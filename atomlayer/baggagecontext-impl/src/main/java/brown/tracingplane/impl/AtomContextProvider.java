@@ -1,6 +1,7 @@
 package brown.tracingplane.impl;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.List;
 import brown.tracingplane.BaggageContext;
 import brown.tracingplane.BaggageProvider;
@@ -40,14 +41,19 @@ public class AtomContextProvider implements BaggageProvider<AtomContext> {
         return left == null ? right : left.merge(right);
     }
 
+    @Override
+    public AtomContext joinAll(Collection<AtomContext> baggages) {
+        return AtomContext.mergeAll(baggages);
+    }
+
     @Override
     public AtomContext deserialize(byte[] serialized, int offset, int length) {
-        return wrap(AtomLayerSerialization.deserialize(serialized, offset, length));
+        return wrap(AtomLayerSerialization.deserializeArray(serialized, offset, length));
     }
 
     @Override
     public AtomContext deserialize(ByteBuffer buf) {
-        return wrap(AtomLayerSerialization.deserialize(buf));
+        return wrap(AtomLayerSerialization.deserializeArray(buf));
     }
 
     @Override
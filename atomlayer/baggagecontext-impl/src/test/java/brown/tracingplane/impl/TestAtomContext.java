@@ -15,6 +15,8 @@ import org.junit.Before;
 import org.junit.Test;
 import brown.tracingplane.BaggageContext;
 import brown.tracingplane.BaggageProvider;
+import brown.tracingplane.atomlayer.Lexicographic;
+import brown.tracingplane.atomlayer.PersistentAtomList;
 import brown.tracingplane.impl.AtomContext.RefCount;
 
 public class TestAtomContext {
@@ -166,11 +168,157 @@ public class TestAtomContext {
         ctx1.toExclusive();
         
         assertNotSame(atoms1, ctx1.atoms);
-        assertNotSame(atomsCtx1, ctx1.atoms.object);
-        assertEquals(atomsCtx1, ctx1.atoms.object);
+        assertSame(atomsCtx1, ctx1.atoms.object);
         assertEquals(1, ctx1.atoms.count);
         assertEquals(1, ctx2.atoms.count);
         
     }
 
+    @Test
+    public void testModifyBranch() {
+        ArrayList<ByteBuffer> original = genAtoms(100, 10);
+        AtomContext ctx1 = new AtomContext(new ArrayList<>(original));
+        AtomContext ctx2 = provider.branch(ctx1);
+        assertTrue(ctx1.atoms.object instanceof PersistentAtomList);
+
+        ByteBuffer added = ByteBuffer.wrap(new byte[] { 1, 2, 3 });
+        List<ByteBuffer> modifiable = ctx2.getModifiableAtoms();
+        modifiable.add(50, added);
+        modifiable.remove(0);
+        modifiable.set(10, added);
+
+        List<ByteBuffer> expected = new ArrayList<>(original);
+        expected.add(50, added);
+        expected.remove(0);
+        expected.set(10, added);
+
+        assertEquals(original, ctx1.atoms());
+        assertEquals(expected, ctx2.atoms());
+        assertEquals(expected, modifiable);
+    }
+
+    @Test
+    public void testJoinBranches() {
+        ArrayList<ByteBuffer> original = genAtoms(200, 10);
+        Lexicographic.sort(original);
+        AtomContext ctx1 = new AtomContext(new ArrayList<>(original));
+        AtomContext ctx2 = provider.branch(ctx1);
+
+        ByteBuffer added = ByteBuffer.wrap(new byte[] { -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 });
+        ctx2.getModifiableAtoms().add(added);
+
+        List<ByteBuffer> expected = Lexicographic.merge(new ArrayList<>(original), new ArrayList<>(ctx2.atoms()));
+        AtomContext joined = provider.join(ctx1, ctx2);
+        assertEquals(expected, joined.atoms());
+        assertEquals(201, joined.atoms().size());
+    }
+
+    @Test
+    public void testJoinUnmodifiedBranch() {
+        AtomContext ctx1 = new AtomContext(genAtoms(10, 10));
+        AtomContext ctx2 = provider.branch(ctx1);
+        List<ByteBuffer> atoms = ctx1.atoms();
+
+        assertSame(ctx1, provider.join(ctx1, ctx2));
+        assertSame(atoms, ctx1.atoms());
+        assertEquals(1, ctx1.atoms.count);
+        assertNull(ctx2.atoms);
+    }
+
+    @Test
+    public void testJoinAppendedBranch() {
+        ArrayList<ByteBuffer> original = genAtoms(100, 10);
+        Lexicographic.sort(original);
+        AtomContext ctx1 = new AtomContext(original);
+        AtomContext ctx2 = provider.branch(ctx1);
+        ctx2.getModifiableAtoms().add(ByteBuffer.wrap(new byte[] { -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 }));
+        List<ByteBuffer> appended = ctx2.atoms();
+
+        AtomContext joined = provider.join(ctx1, ctx2);
+        assertSame(appended, joined.atoms());
+    }
+
+    @Test
+    public void testSerializedSize() {
+        AtomContext ctx1 = new AtomContext(genAtoms(50, 10));
+        assertEquals(provider.serialize(ctx1).length, ctx1.serializedSize());
+
+        AtomContext ctx2 = provider.branch(ctx1);
+        List<ByteBuffer> modifiable = ctx2.getModifiableAtoms();
+        modifiable.add(ByteBuffer.wrap(new byte[200]));
+        modifiable.remove(3);
+        assertEquals(provider.serialize(ctx2).length, ctx2.serializedSize());
+
+        AtomContext joined = provider.join(ctx1, ctx2);
+        assertEquals(provider.serialize(joined).length, joined.serializedSize());
+    }
+
+    @Test
+    public void testSharedAtomsAreNotReplaced() {
+        ArrayList<ByteBuffer> original = genAtoms(50, 10);
+        AtomContext ctx1 = new AtomContext(new ArrayList<>(original));
+        AtomContext ctx2 = new AtomContext(ctx1.atoms);
+        List<ByteBuffer> shared = ctx1.atoms();
+
+        // Converting the atoms takes a private reference rather than replacing the shared list
+        assertEquals(provider.serialize(ctx1).length, ctx1.serializedSize());
+        assertSame(shared, ctx2.atoms());
+        AtomContext ctx4 = new AtomContext(ctx2.atoms);
+        provider.branch(ctx2);
+        assertSame(shared, ctx4.atoms());
+
+        // A view that outlives a branch does not modify the branch
+        List<ByteBuffer> modifiable = ctx1.getModifiableAtoms();
+        AtomContext ctx3 = provider.branch(ctx1);
+        List<ByteBuffer> branched = ctx3.atoms();
+        modifiable.add(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        assertSame(branched, ctx3.atoms());
+        assertEquals(original, ctx3.atoms());
+        assertEquals(original.size() + 1, ctx1.atoms().size());
+        assertEquals(1, ctx1.atoms.count);
+    }
+
+    @Test
+    public void testJoinAll() {
+        List<ArrayList<ByteBuffer>> inputs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ArrayList<ByteBuffer> atoms = genAtoms(5, 10);
+            Lexicographic.sort(atoms);
+            inputs.add(atoms);
+        }
+
+        AtomContext pairwise = null;
+        List<AtomContext> contexts = new ArrayList<>();
+        for (ArrayList<ByteBuffer> atoms : inputs) {
+            pairwise = provider.join(pairwise, new AtomContext(new ArrayList<>(atoms)));
+            contexts.add(new AtomContext(new ArrayList<>(atoms)));
+        }
+        contexts.add(null);
+
+        AtomContext joined = provider.joinAll(contexts);
+        assertEquals(pairwise.atoms(), joined.atoms());
+        assertEquals(1, joined.atoms.count);
+        for (AtomContext ctx : contexts) {
+            if (ctx != null && ctx != joined) {
+                assertNull(ctx.atoms);
+            }
+        }
+
+        assertNull(provider.joinAll(new ArrayList<AtomContext>()));
+    }
+
+    @Test
+    public void testJoinAllReusesContext() {
+        AtomContext ctx1 = new AtomContext(genAtoms(5, 10));
+        AtomContext ctx2 = provider.branch(ctx1);
+        AtomContext ctx3 = provider.branch(ctx1);
+        List<AtomContext> contexts = new ArrayList<>();
+        contexts.add(ctx1);
+        contexts.add(ctx2);
+        contexts.add(ctx3);
+
+        assertSame(ctx1, provider.joinAll(contexts));
+        assertEquals(1, ctx1.atoms.count);
+    }
+
 }
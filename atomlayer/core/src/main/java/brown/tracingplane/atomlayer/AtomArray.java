@@ -0,0 +1,169 @@
+package brown.tracingplane.atomlayer;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * A flat, read-only view of the atoms contained in a serialized baggage. Instead of allocating one {@link ByteBuffer}
+ * per atom, an {@link AtomArray} keeps a reference to the original serialized buffer plus the offset and length of each
+ * atom within it.
+ * </p>
+ *
+ * <p>
+ * {@link AtomArray} implements {@link java.util.List}, so it can be passed anywhere that atoms are currently expected.
+ * {@link ByteBuffer} views for individual atoms are only created when {@link #get(int)} is called. Code that is aware of
+ * {@link AtomArray} -- e.g., {@link Lexicographic#merge(java.util.List, java.util.List)},
+ * {@link AtomLayerSerialization#serialize(java.util.List)} and the baggage protocol's reader -- uses the index-based
+ * methods such as {@link #compare(int, AtomArray, int)} and {@link #byteAt(int, int)} to avoid creating views at all.
+ * </p>
+ *
+ * <p>
+ * Instances are created by {@link AtomLayerSerialization#deserializeArray(ByteBuffer)}. An {@link AtomArray} is
+ * immutable; modifications via the {@link java.util.List} interface throw {@link UnsupportedOperationException}.
+ * </p>
+ */
+public final class AtomArray extends AbstractList<ByteBuffer> implements RandomAccess {
+
+    private final ByteBuffer buf;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int size;
+
+    /** Absolute indices of the region of buf that the atoms were deserialized from */
+    private final int serializedBegin;
+    private final int serializedEnd;
+
+    /** True if every length prefix in the serialized region uses the minimal varint encoding */
+    private final boolean canonical;
+
+    AtomArray(ByteBuffer buf, int[] offsets, int[] lengths, int size, int serializedBegin, int serializedEnd,
+              boolean canonical) {
+        this.buf = buf;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.size = size;
+        this.serializedBegin = serializedBegin;
+        this.serializedEnd = serializedEnd;
+        this.canonical = canonical;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates a new {@link ByteBuffer} view of the specified atom. The returned buffer shares content with the
+     * underlying serialized buffer; its position is 0 and its limit is the length of the atom.
+     */
+    @Override
+    public ByteBuffer get(int index) {
+        checkIndex(index);
+        ByteBuffer view = buf.duplicate();
+        view.limit(offsets[index] + lengths[index]);
+        view.position(offsets[index]);
+        return view.slice();
+    }
+
+    /** @return the number of bytes in the specified atom */
+    public int length(int index) {
+        checkIndex(index);
+        return lengths[index];
+    }
+
+    /** @return the absolute index in {@link #buffer()} of the first byte of the specified atom */
+    public int offset(int index) {
+        checkIndex(index);
+        return offsets[index];
+    }
+
+    /** @return the byte at position {@code i} of the specified atom */
+    public byte byteAt(int index, int i) {
+        checkIndex(index);
+        if (i < 0 || i >= lengths[index]) {
+            throw new IndexOutOfBoundsException("Byte " + i + " of atom with length " + lengths[index]);
+        }
+        return buf.get(offsets[index] + i);
+    }
+
+    /**
+     * @return the buffer backing this array. Atoms are located using {@link #offset(int)} and {@link #length(int)};
+     *         the position and limit of the returned buffer should not be modified.
+     */
+    public ByteBuffer buffer() {
+        return buf;
+    }
+
+    /**
+     * Lexicographically compares the specified atom of this array with the specified atom of another array, without
+     * creating any intermediate {@link ByteBuffer}s
+     */
+    public int compare(int index, AtomArray other, int otherIndex) {
+        checkIndex(index);
+        other.checkIndex(otherIndex);
+        return UnsignedByteBuffer.compare(buf, offsets[index], lengths[index], other.buf, other.offsets[otherIndex],
+                                          other.lengths[otherIndex]);
+    }
+
+    /**
+     * Lexicographically compares the specified atom of this array with the remaining bytes of {@code other}. Does not
+     * modify the position or limit of {@code other}.
+     */
+    public int compare(int index, ByteBuffer other) {
+        checkIndex(index);
+        return UnsignedByteBuffer.compare(buf, offsets[index], lengths[index], other, other.position(),
+                                          other.remaining());
+    }
+
+    /**
+     * @return the number of bytes needed to serialize the atoms of this array. This is computed in constant time if
+     *         the array was deserialized from canonically encoded bytes; otherwise it is linear in the number of atoms.
+     */
+    public int serializedSize() {
+        if (canonical) {
+            return serializedEnd - serializedBegin;
+        }
+        int serializedSize = 0;
+        for (int i = 0; i < size; i++) {
+            serializedSize += ProtobufVarint.sizeOf(lengths[i]) + lengths[i];
+        }
+        return serializedSize;
+    }
+
+    /**
+     * Writes the serialized form of this array's atoms to {@code out}. Where possible this is a single bulk copy of the
+     * bytes that the array was originally deserialized from.
+     */
+    public void writeTo(ByteBuffer out) {
+        if (canonical) {
+            ByteBuffer serialized = buf.duplicate();
+            serialized.limit(serializedEnd);
+            serialized.position(serializedBegin);
+            out.put(serialized);
+        } else {
+            for (int i = 0; i < size; i++) {
+                ProtobufVarint.writeRawVarint32(out, lengths[i]);
+                ByteBuffers.copyTo(get(i), out);
+            }
+        }
+    }
+
+    /** Writes the length-prefixed serialized form of the specified atom to {@code out} */
+    void writeTo(int index, ByteBuffer out) {
+        checkIndex(index);
+        ProtobufVarint.writeRawVarint32(out, lengths[index]);
+        ByteBuffer atom = buf.duplicate();
+        atom.limit(offsets[index] + lengths[index]);
+        atom.position(offsets[index]);
+        out.put(atom);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+}
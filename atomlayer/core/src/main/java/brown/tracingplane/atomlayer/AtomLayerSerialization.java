@@ -3,9 +3,11 @@ package brown.tracingplane.atomlayer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,6 +27,18 @@ public class AtomLayerSerialization {
 
     static final byte[] EMPTY = new byte[0];
 
+    /**
+     * Serialize-with-limit calls whose limit is at most this many bytes are written to a reusable per-thread buffer in
+     * a single pass. Larger limits fall back to computing the trim extent up front.
+     */
+    static final int MAX_SCRATCH_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>();
+
+    static final int CHUNK_SIZE = 4096;
+
+    private static final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>();
+
     private AtomLayerSerialization() {}
 
     public static List<ByteBuffer> deserialize(ByteBuffer buf) {
@@ -78,6 +92,89 @@ public class AtomLayerSerialization {
         }
     }
 
+    /**
+     * <p>
+     * Deserializes the atoms contained in {@code buf} into an {@link AtomArray}. Unlike {@link #deserialize(ByteBuffer)},
+     * this does not create a {@link ByteBuffer} per atom; the returned array references the contents of {@code buf}
+     * directly, so {@code buf}'s contents should not be modified afterwards. The position of {@code buf} is advanced
+     * past the bytes that were read.
+     * </p>
+     * 
+     * @param buf a buffer containing serialized atoms, possibly null
+     * @return the deserialized atoms, or null if there were no atoms
+     */
+    public static AtomArray deserializeArray(ByteBuffer buf) {
+        if (buf == null || buf.remaining() == 0) {
+            return null;
+        }
+        final ByteBuffer view = buf.duplicate();
+        final int bufBegin = view.position();
+        final int bufLength = view.remaining();
+
+        int[] offsets = new int[16];
+        int[] lengths = new int[16];
+        int count = 0;
+        int end = bufBegin;
+        boolean canonical = true;
+
+        while (view.remaining() > 0) {
+            try {
+                int prefixBegin = view.position();
+                int atomLength = ProtobufVarint.readRawVarint32(view);
+                if (atomLength < 0 || atomLength > view.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                if (view.position() - prefixBegin != ProtobufVarint.sizeOf(atomLength)) {
+                    canonical = false;
+                }
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                    lengths = Arrays.copyOf(lengths, count * 2);
+                }
+                offsets[count] = view.position();
+                lengths[count] = atomLength;
+                count++;
+                view.position(view.position() + atomLength);
+                end = view.position();
+            } catch (MalformedVarintException e) {
+                String msg = String.format("Malformed length prefix for atom %d (%d/%d bytes)", count,
+                                           view.position() - bufBegin, bufLength);
+                log.warn(msg, e);
+                break;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                String msg = String.format("Premature end of baggage at atom %d (%d/%d bytes)", count,
+                                           view.position() - bufBegin, bufLength);
+                log.warn(msg, e);
+                break;
+            }
+        }
+        buf.position(view.position());
+
+        if (count == 0) {
+            return null;
+        } else {
+            return new AtomArray(view, offsets, lengths, count, bufBegin, end, canonical);
+        }
+    }
+
+    /** Deserializes the atoms contained in {@code bytes}. See {@link #deserializeArray(ByteBuffer)} */
+    public static AtomArray deserializeArray(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        } else {
+            return deserializeArray(bytes, 0, bytes.length);
+        }
+    }
+
+    /** Deserializes the atoms contained in {@code bytes}. See {@link #deserializeArray(ByteBuffer)} */
+    public static AtomArray deserializeArray(byte[] bytes, int offset, int length) {
+        if (bytes == null || length <= 0) {
+            return null;
+        } else {
+            return deserializeArray(ByteBuffer.wrap(bytes, offset, length));
+        }
+    }
+
     public static ByteBuffer readAtom(InputStream input) throws EndOfStreamException, MalformedVarintException,
                                                          IOException {
         int atomSize = ProtobufVarint.readRawVarint32(input);
@@ -130,6 +227,11 @@ public class AtomLayerSerialization {
     }
 
     public static int serializedSize(List<ByteBuffer> atoms) {
+        if (atoms instanceof AtomArray) {
+            return ((AtomArray) atoms).serializedSize();
+        } else if (atoms instanceof PersistentAtomList) {
+            return ((PersistentAtomList) atoms).serializedSize();
+        }
         int size = 0;
         for (ByteBuffer atom : atoms) {
             size += serializedSize(atom);
@@ -137,16 +239,39 @@ public class AtomLayerSerialization {
         return size;
     }
 
+    /** Writes {@code atom} to {@code to}. Does not modify the position of {@code atom} */
     public static void writeAtom(ByteBuffer atom, ByteBuffer to) {
         ProtobufVarint.writeRawVarint32(to, atom.remaining());
-        int position = atom.position();
-        to.put(atom);
-        atom.position(position);
+        ByteBuffers.copyTo(atom, to);
     }
 
+    /**
+     * Writes {@code atom} to {@code out}. Does not modify the position of {@code atom}. Atoms that aren't backed by an
+     * accessible array, such as direct and read-only buffers, are written in chunks via a per-thread buffer.
+     */
     public static void writeAtom(ByteBuffer atom, OutputStream out) throws IOException {
         ProtobufVarint.writeRawVarint32(out, atom.remaining());
-        out.write(atom.array(), atom.arrayOffset() + atom.position(), atom.remaining());
+        if (atom.hasArray()) {
+            out.write(atom.array(), atom.arrayOffset() + atom.position(), atom.remaining());
+        } else {
+            ByteBuffer src = atom.duplicate();
+            byte[] chunk = chunk();
+            while (src.hasRemaining()) {
+                int length = Math.min(chunk.length, src.remaining());
+                src.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        }
+    }
+
+    /** Returns this thread's buffer for copying non-array atoms to output streams */
+    private static byte[] chunk() {
+        byte[] chunk = chunks.get();
+        if (chunk == null) {
+            chunk = new byte[CHUNK_SIZE];
+            chunks.set(chunk);
+        }
+        return chunk;
     }
 
     public static byte[] serialize(List<ByteBuffer> atoms) {
@@ -154,8 +279,12 @@ public class AtomLayerSerialization {
             return EMPTY;
         }
         ByteBuffer buf = ByteBuffer.allocate(serializedSize(atoms));
-        for (ByteBuffer atom : atoms) {
-            writeAtom(atom, buf);
+        if (atoms instanceof AtomArray) {
+            ((AtomArray) atoms).writeTo(buf);
+        } else {
+            for (ByteBuffer atom : atoms) {
+                writeAtom(atom, buf);
+            }
         }
         return buf.array();
     }
@@ -164,15 +293,108 @@ public class AtomLayerSerialization {
         if (atoms == null || atoms.size() == 0) {
             return EMPTY;
         }
-        TrimExtent trim = AtomLayerOverflow.determineTrimExtent(atoms, limit);
-        ByteBuffer buf = ByteBuffer.allocate(trim.serializedSize);
-        for (int i = 0; i < trim.atomCount; i++) {
-            writeAtom(atoms.get(i), buf);
+        if (limit <= 0) {
+            return serialize(atoms);
         }
-        if (trim.overflow) {
-            writeAtom(AtomLayerOverflow.OVERFLOW_MARKER, buf);
+        if (limit > MAX_SCRATCH_SIZE) {
+            TrimExtent trim = AtomLayerOverflow.determineTrimExtent(atoms, limit);
+            ByteBuffer buf = ByteBuffer.allocate(trim.serializedSize);
+            for (int i = 0; i < trim.atomCount; i++) {
+                writeAtom(atoms.get(i), buf);
+            }
+            if (trim.overflow) {
+                writeAtom(AtomLayerOverflow.OVERFLOW_MARKER, buf);
+            }
+            return buf.array();
         }
-        return buf.array();
+        ByteBuffer buf = scratch(limit);
+        int length = serialize(atoms, limit, buf);
+        return Arrays.copyOf(buf.array(), length);
+    }
+
+    /**
+     * <p>
+     * Serializes {@code atoms} directly into {@code out}, trimming them to at most {@code limit} bytes. This is
+     * equivalent to serializing the result of {@link AtomLayerOverflow#trimToSize(List, int)}, but is done in a single
+     * pass over the atoms and without any intermediate allocation. If the atoms do not fit within {@code limit}, the
+     * longest prefix that fits is written followed by {@link AtomLayerOverflow#OVERFLOW_MARKER}.
+     * </p>
+     * 
+     * <p>
+     * {@code out} can be a heap or direct buffer and can be reused across calls. Atoms are written starting at the
+     * position of {@code out}, and its position is advanced by the number of bytes written. If {@code out} runs out of
+     * space, its position is reset to where it was when this method was called and a {@link BufferOverflowException}
+     * is thrown; a buffer with {@code limit} bytes remaining is always sufficient.
+     * </p>
+     * 
+     * @param atoms a list of atoms, possibly null
+     * @param limit the maximum number of bytes to write. If {@code limit <= 0} then all atoms are written.
+     * @param out the buffer to write to
+     * @return the number of bytes written to {@code out}
+     */
+    public static int serialize(List<ByteBuffer> atoms, int limit, ByteBuffer out) {
+        if (atoms == null || atoms.size() == 0) {
+            return 0;
+        }
+        final int begin = out.position();
+        try {
+            if (atoms instanceof AtomArray) {
+                return serialize((AtomArray) atoms, limit, out);
+            }
+            final int size = atoms.size();
+            int written = 0;
+            for (int i = 0; i < size; i++) {
+                ByteBuffer atom = atoms.get(i);
+                int nextSize = written + serializedSize(atom);
+                if (limit <= 0 || nextSize < limit || (nextSize == limit && i == size - 1)) {
+                    writeAtom(atom, out);
+                    written = nextSize;
+                } else {
+                    return written + writeOverflowMarker(out);
+                }
+            }
+            return written;
+        } catch (BufferOverflowException e) {
+            out.position(begin);
+            throw e;
+        }
+    }
+
+    private static int serialize(AtomArray atoms, int limit, ByteBuffer out) {
+        if (limit <= 0 || atoms.serializedSize() <= limit) {
+            atoms.writeTo(out);
+            return atoms.serializedSize();
+        }
+        final int size = atoms.size();
+        int written = 0;
+        for (int i = 0; i < size; i++) {
+            int nextSize = written + ProtobufVarint.sizeOf(atoms.length(i)) + atoms.length(i);
+            if (nextSize < limit) {
+                atoms.writeTo(i, out);
+                written = nextSize;
+            } else {
+                // The atoms didn't all fit, so the last atom can never be written here
+                return written + writeOverflowMarker(out);
+            }
+        }
+        return written;
+    }
+
+    /** The overflow marker is an empty atom, so its serialized form is the single byte 0 */
+    private static int writeOverflowMarker(ByteBuffer out) {
+        out.put((byte) 0);
+        return 1;
+    }
+
+    /** Returns this thread's scratch buffer, cleared and with at least {@code capacity} bytes */
+    private static ByteBuffer scratch(int capacity) {
+        ByteBuffer buf = scratch.get();
+        if (buf == null || buf.capacity() < capacity) {
+            buf = ByteBuffer.allocate(Math.max(capacity, 1024));
+            scratch.set(buf);
+        }
+        buf.clear();
+        return buf;
     }
 
     public static void write(OutputStream out, List<ByteBuffer> atoms) throws IOException {
@@ -189,6 +411,13 @@ public class AtomLayerSerialization {
         if (out == null || atoms == null || atoms.size() == 0) {
             return;
         }
+        if (limit > 0 && limit <= MAX_SCRATCH_SIZE) {
+            ByteBuffer buf = scratch(limit);
+            int length = serialize(atoms, limit, buf);
+            ProtobufVarint.writeRawVarint32(out, length);
+            out.write(buf.array(), 0, length);
+            return;
+        }
         TrimExtent trim = AtomLayerOverflow.determineTrimExtent(atoms, limit);
         ProtobufVarint.writeRawVarint32(out, trim.serializedSize);
         for (int i = 0; i < trim.atomCount; i++) {
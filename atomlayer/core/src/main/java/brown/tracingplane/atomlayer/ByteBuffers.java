@@ -28,9 +28,8 @@ public class ByteBuffers {
             int length = src.remaining();
             dest.put(array, offset, length);
         } else {
-            for (int i = src.position(); i < src.limit(); i++) {
-                dest.put(src.get(i));
-            }
+            // Direct and read-only buffers; bulk copy from a duplicate so that src's position is untouched
+            dest.put(src.duplicate());
         }
     }
 
@@ -58,7 +57,7 @@ public class ByteBuffers {
         return copyRemaining(src).array();
     }
     
-    /** Read the remaining bytes from a bytebuffer as a string */
+    /** Read the remaining bytes from a bytebuffer as a string. This is done without modifying the buf position. */
     public static String getString(ByteBuffer buf) {
         if (buf == null) {
             return null;
@@ -73,7 +72,7 @@ public class ByteBuffers {
         } else {
             array = new byte[length];
             offset = 0;
-            buf.get(array);
+            buf.duplicate().get(array);
         }
         return new String(array, offset, length);
     }
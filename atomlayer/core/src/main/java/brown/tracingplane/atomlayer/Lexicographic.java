@@ -5,8 +5,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import com.google.common.primitives.UnsignedBytes;
 
 /**
@@ -124,6 +126,10 @@ public class Lexicographic {
             return a;
         } else if (a == null) {
             return b;
+        } else if (a instanceof AtomArray && b instanceof AtomArray) {
+            return merge((AtomArray) a, (AtomArray) b);
+        } else if (a instanceof PersistentAtomList || b instanceof PersistentAtomList) {
+            return PersistentAtomList.merge(PersistentAtomList.of(a), PersistentAtomList.of(b));
         }
         int ia = 0, ib = 0, size_a = a.size(), size_b = b.size();
         final List<ByteBuffer> merged = new ArrayList<>(size_a + size_b);
@@ -160,10 +166,53 @@ public class Lexicographic {
         return merged;
     }
 
+    /**
+     * Equivalent to {@link #merge(List, List)} but compares atoms in place, so {@link ByteBuffer} views are only
+     * created for atoms that end up in a newly merged list. If the arrays do not differ, no objects are allocated.
+     */
+    private static List<ByteBuffer> merge(AtomArray a, AtomArray b) {
+        int size_a = a.size(), size_b = b.size();
+
+        // Skip past the common prefix
+        int common = 0;
+        while (common < size_a && common < size_b && a.compare(common, b, common) == 0) {
+            common++;
+        }
+        if (common == size_a || common == size_b) {
+            return size_a < size_b ? b : a;
+        }
+
+        final List<ByteBuffer> merged = new ArrayList<>(size_a + size_b);
+        for (int i = 0; i < common; i++) {
+            merged.add(a.get(i));
+        }
+        int ia = common, ib = common;
+        while (ia < size_a && ib < size_b) {
+            int comparison = a.compare(ia, b, ib);
+            if (comparison == 0) {
+                merged.add(a.get(ia));
+                ia++;
+                ib++;
+            } else if (comparison < 0) {
+                merged.add(a.get(ia++));
+            } else {
+                merged.add(b.get(ib++));
+            }
+        }
+        while (ia < size_a) {
+            merged.add(a.get(ia++));
+        }
+        while (ib < size_b) {
+            merged.add(b.get(ib++));
+        }
+        return merged;
+    }
+
     /**
      * <p>
-     * Takes two or more iterators as input and creates a {@link MergeIterator} that produces values in lexicographic
-     * order as would be produced by {@link #merge(List, List)}
+     * Takes two or more iterators as input and creates an iterator that produces values in lexicographic order as would
+     * be produced by {@link #merge(List, List)}. More than two iterators are merged using a
+     * {@link TournamentMergeIterator}.
      * </p>
      * 
      * <p>
@@ -192,9 +241,9 @@ public class Lexicographic {
             if (it != null && it.hasNext()) iterators.add(it);
         }
         if (iterators.size() > 2) {
-            return new MergeIterator<ByteBuffer>(iterators, BYTE_BUFFER_COMPARATOR);
+            return new TournamentMergeIterator<ByteBuffer>(iterators, BYTE_BUFFER_COMPARATOR);
         } else if (iterators.size() == 2) {
-            return new MergeTwoIterator<>(a, b, BYTE_BUFFER_COMPARATOR);
+            return new MergeTwoIterator<>(iterators.get(0), iterators.get(1), BYTE_BUFFER_COMPARATOR);
         } else if (iterators.size() == 1) {
             return iterators.get(0);
         } else {
@@ -202,4 +251,68 @@ public class Lexicographic {
         }
     }
 
+    /**
+     * <p>
+     * Lexicographically merges any number of lists of ByteBuffers in a single pass. For sorted lists, this produces the
+     * same result as successively merging them with {@link #merge(List, List)}. Each atom costs {@code O(log k)} comparisons, where
+     * {@code k} is the number of lists, whereas successive pairwise merges cost {@code O(k)} per atom and allocate an
+     * intermediate list per merge.
+     * </p>
+     * 
+     * <p>
+     * As with {@link #merge(List, List)}, if the merged result is identical to one of the inputs, that input is returned
+     * rather than a copy.
+     * </p>
+     * 
+     * @param lists lists of bytebuffers, each possibly null
+     * @return the lists, lexicographically merged, or null if {@code lists} is null or contains only nulls
+     */
+    public static List<ByteBuffer> mergeAll(List<List<ByteBuffer>> lists) {
+        if (lists == null) {
+            return null;
+        }
+
+        // Skip nulls and lists that are the same instance as one already seen
+        List<List<ByteBuffer>> distinct = new ArrayList<>(lists.size());
+        Set<List<ByteBuffer>> seen = Collections.newSetFromMap(new IdentityHashMap<>(lists.size()));
+        for (List<ByteBuffer> list : lists) {
+            if (list != null && seen.add(list)) {
+                distinct.add(list);
+            }
+        }
+
+        if (distinct.size() == 0) {
+            return null;
+        } else if (distinct.size() == 1) {
+            return distinct.get(0);
+        } else if (distinct.size() == 2) {
+            return merge(distinct.get(0), distinct.get(1));
+        }
+
+        int totalSize = 0;
+        List<ByteBuffer> largest = null;
+        List<Iterator<ByteBuffer>> iterators = new ArrayList<>(distinct.size());
+        for (List<ByteBuffer> list : distinct) {
+            totalSize += list.size();
+            if (largest == null || list.size() > largest.size()) {
+                largest = list;
+            }
+            iterators.add(list.iterator());
+        }
+
+        List<ByteBuffer> merged = new ArrayList<>(totalSize);
+        Iterator<ByteBuffer> it = new TournamentMergeIterator<>(iterators, BYTE_BUFFER_COMPARATOR);
+        while (it.hasNext()) {
+            merged.add(it.next());
+        }
+
+        /* Every atom of every input contributes to at least one output atom, so if the output is no longer than the
+         * largest input then the output is equal to it */
+        if (merged.size() == largest.size()) {
+            return largest;
+        } else {
+            return merged;
+        }
+    }
+
 }
@@ -0,0 +1,431 @@
+package brown.tracingplane.atomlayer;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * An immutable list of atoms that shares structure between versions. Atoms are stored in chunks of up to
+ * {@link #CHUNK_SIZE} atoms; chunks are never modified once created, so any number of lists can share them.
+ * </p>
+ *
+ * <p>
+ * Updates such as {@link #with(int, ByteBuffer)}, {@link #withInserted(int, ByteBuffer)} and {@link #without(int)}
+ * return a new list that copies only the affected chunk plus the (small) array of chunk references, rather than the
+ * whole list. {@link #merge(PersistentAtomList, PersistentAtomList)} skips over chunks that the two lists share without
+ * comparing their atoms, so merging two lists that were branched from a common ancestor costs time proportional to
+ * their differences rather than their size. In particular, merging a list with a list derived from it by appending atoms
+ * only compares the atoms of the final chunk, by reference, and returns the longer list.
+ * </p>
+ *
+ * <p>
+ * As with any other atom list, the {@link java.util.List} mutators throw {@link UnsupportedOperationException}.
+ * </p>
+ */
+public final class PersistentAtomList extends AbstractList<ByteBuffer> implements RandomAccess {
+
+    /** The maximum number of atoms in a chunk created by this class */
+    static final int CHUNK_SIZE = 32;
+
+    public static final PersistentAtomList EMPTY = new PersistentAtomList(new ByteBuffer[0][], new int[0], new int[0]);
+
+    /** Chunks of atoms. Chunks are non-empty and are never modified once created */
+    private final ByteBuffer[][] chunks;
+
+    /** ends[i] is the index one past the last atom of chunks[i] */
+    private final int[] ends;
+
+    /** byteEnds[i] is the serialized size of the atoms of chunks[0] through chunks[i] */
+    private final int[] byteEnds;
+
+    private PersistentAtomList(ByteBuffer[][] chunks, int[] ends, int[] byteEnds) {
+        this.chunks = chunks;
+        this.ends = ends;
+        this.byteEnds = byteEnds;
+    }
+
+    /**
+     * @param atoms a list of atoms, possibly null
+     * @return a {@link PersistentAtomList} with the same atoms as <code>atoms</code>, or <code>atoms</code> itself if it
+     *         is already a {@link PersistentAtomList}
+     */
+    public static PersistentAtomList of(List<ByteBuffer> atoms) {
+        if (atoms instanceof PersistentAtomList) {
+            return (PersistentAtomList) atoms;
+        } else if (atoms == null || atoms.isEmpty()) {
+            return EMPTY;
+        }
+        Builder builder = new Builder(atoms.size());
+        for (ByteBuffer atom : atoms) {
+            builder.add(atom);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return chunks.length == 0 ? 0 : ends[ends.length - 1];
+    }
+
+    /**
+     * @return the number of bytes needed to serialize the atoms of this list, equivalent to
+     *         {@link AtomLayerSerialization#serializedSize(List)}. This is maintained as the list is updated and
+     *         computed in constant time.
+     */
+    public int serializedSize() {
+        return byteEnds.length == 0 ? 0 : byteEnds[byteEnds.length - 1];
+    }
+
+    @Override
+    public ByteBuffer get(int index) {
+        int chunk = chunkFor(index);
+        return chunks[chunk][index - start(chunk)];
+    }
+
+    @Override
+    public Iterator<ByteBuffer> iterator() {
+        return new Iterator<ByteBuffer>() {
+            int chunk = 0, i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return chunk < chunks.length;
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (chunk >= chunks.length) {
+                    throw new NoSuchElementException();
+                }
+                ByteBuffer next = chunks[chunk][i++];
+                if (i == chunks[chunk].length) {
+                    chunk++;
+                    i = 0;
+                }
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Equivalent to {@link java.util.List#equals(Object)}. When comparing with another {@link PersistentAtomList},
+     * chunks that are shared by both lists are not compared.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        } else if (!(o instanceof PersistentAtomList)) {
+            return super.equals(o);
+        }
+        PersistentAtomList other = (PersistentAtomList) o;
+        if (size() != other.size()) {
+            return false;
+        }
+        if (!Arrays.equals(ends, other.ends)) {
+            return super.equals(o);
+        }
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != other.chunks[i] && !Arrays.equals(chunks[i], other.chunks[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return a list equal to this one, but with the atom at <code>index</code> replaced by <code>atom</code> */
+    public PersistentAtomList with(int index, ByteBuffer atom) {
+        int chunk = chunkFor(index);
+        ByteBuffer[] copy = chunks[chunk].clone();
+        int offset = index - start(chunk);
+        int delta = AtomLayerSerialization.serializedSize(atom) - AtomLayerSerialization.serializedSize(copy[offset]);
+        copy[offset] = atom;
+        ByteBuffer[][] newChunks = chunks.clone();
+        newChunks[chunk] = copy;
+        return new PersistentAtomList(newChunks, ends, adjust(byteEnds, chunk, delta));
+    }
+
+    /** @return a list equal to this one, but with <code>atom</code> inserted at <code>index</code> */
+    public PersistentAtomList withInserted(int index, ByteBuffer atom) {
+        int size = size();
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int atomSize = AtomLayerSerialization.serializedSize(atom);
+        if (chunks.length == 0) {
+            return new PersistentAtomList(new ByteBuffer[][] { { atom } }, new int[] { 1 }, new int[] { atomSize });
+        }
+
+        // Insert at the end of the previous chunk rather than creating a new one when appending
+        int chunk = index == size ? chunks.length - 1 : chunkFor(index);
+        int offset = index - start(chunk);
+        ByteBuffer[] old = chunks[chunk];
+        ByteBuffer[] inserted = new ByteBuffer[old.length + 1];
+        System.arraycopy(old, 0, inserted, 0, offset);
+        inserted[offset] = atom;
+        System.arraycopy(old, offset, inserted, offset + 1, old.length - offset);
+
+        if (inserted.length <= CHUNK_SIZE) {
+            ByteBuffer[][] newChunks = chunks.clone();
+            newChunks[chunk] = inserted;
+            return new PersistentAtomList(newChunks, adjust(ends, chunk, 1), adjust(byteEnds, chunk, atomSize));
+        }
+
+        // The chunk is full, so split it in two
+        int half = inserted.length / 2;
+        ByteBuffer[][] newChunks = new ByteBuffer[chunks.length + 1][];
+        int[] newEnds = new int[chunks.length + 1];
+        int[] newByteEnds = new int[chunks.length + 1];
+        System.arraycopy(chunks, 0, newChunks, 0, chunk);
+        System.arraycopy(ends, 0, newEnds, 0, chunk);
+        System.arraycopy(byteEnds, 0, newByteEnds, 0, chunk);
+        newChunks[chunk] = Arrays.copyOfRange(inserted, 0, half);
+        newChunks[chunk + 1] = Arrays.copyOfRange(inserted, half, inserted.length);
+        newEnds[chunk] = start(chunk) + half;
+        newEnds[chunk + 1] = ends[chunk] + 1;
+        newByteEnds[chunk] = (chunk == 0 ? 0 : byteEnds[chunk - 1]) + serializedSize(newChunks[chunk]);
+        newByteEnds[chunk + 1] = byteEnds[chunk] + atomSize;
+        for (int i = chunk + 1; i < chunks.length; i++) {
+            newChunks[i + 1] = chunks[i];
+            newEnds[i + 1] = ends[i] + 1;
+            newByteEnds[i + 1] = byteEnds[i] + atomSize;
+        }
+        return new PersistentAtomList(newChunks, newEnds, newByteEnds);
+    }
+
+    /** @return a list equal to this one, but with the atom at <code>index</code> removed */
+    public PersistentAtomList without(int index) {
+        int chunk = chunkFor(index);
+        int offset = index - start(chunk);
+        ByteBuffer[] old = chunks[chunk];
+        int atomSize = AtomLayerSerialization.serializedSize(old[offset]);
+
+        if (old.length == 1) {
+            ByteBuffer[][] newChunks = new ByteBuffer[chunks.length - 1][];
+            int[] newEnds = new int[chunks.length - 1];
+            int[] newByteEnds = new int[chunks.length - 1];
+            System.arraycopy(chunks, 0, newChunks, 0, chunk);
+            System.arraycopy(ends, 0, newEnds, 0, chunk);
+            System.arraycopy(byteEnds, 0, newByteEnds, 0, chunk);
+            for (int i = chunk + 1; i < chunks.length; i++) {
+                newChunks[i - 1] = chunks[i];
+                newEnds[i - 1] = ends[i] - 1;
+                newByteEnds[i - 1] = byteEnds[i] - atomSize;
+            }
+            return new PersistentAtomList(newChunks, newEnds, newByteEnds);
+        }
+
+        ByteBuffer[] removed = new ByteBuffer[old.length - 1];
+        System.arraycopy(old, 0, removed, 0, offset);
+        System.arraycopy(old, offset + 1, removed, offset, old.length - offset - 1);
+        ByteBuffer[][] newChunks = chunks.clone();
+        newChunks[chunk] = removed;
+        return new PersistentAtomList(newChunks, adjust(ends, chunk, -1), adjust(byteEnds, chunk, -atomSize));
+    }
+
+    /**
+     * <p>
+     * Lexicographically merges two lists, producing the same result as {@link Lexicographic#merge(List, List)}. Where
+     * both lists reach the start of the same shared chunk at the same time, the chunk is added to the result as-is
+     * without comparing its atoms.
+     * </p>
+     *
+     * <p>
+     * If the merged result is equal to <code>a</code> or <code>b</code>, that list is returned instead.
+     * </p>
+     *
+     * @param a a list of atoms, possibly null
+     * @param b a list of atoms, possibly null
+     * @return a and b, lexicographically merged
+     */
+    public static PersistentAtomList merge(PersistentAtomList a, PersistentAtomList b) {
+        if (a == b || b == null || b.chunks.length == 0) {
+            return a;
+        } else if (a == null || a.chunks.length == 0) {
+            return b;
+        }
+
+        final ByteBuffer[][] chunksA = a.chunks, chunksB = b.chunks;
+        final int countA = chunksA.length, countB = chunksB.length;
+        Builder merged = new Builder(Math.max(a.size(), b.size()));
+        boolean onlyA = true, onlyB = true; // whether every merged atom came from a, or from b, respectively
+        int ca = 0, ia = 0, cb = 0, ib = 0;
+        while (ca < countA && cb < countB) {
+            if (ia == 0 && ib == 0 && chunksA[ca] == chunksB[cb]) {
+                merged.addChunk(chunksA[ca], a.chunkSerializedSize(ca));
+                ca++;
+                cb++;
+                continue;
+            }
+            ByteBuffer atomA = chunksA[ca][ia], atomB = chunksB[cb][ib];
+            int comparison = atomA == atomB ? 0 : Lexicographic.compare(atomA, atomB);
+            if (comparison <= 0) {
+                merged.add(atomA);
+                if (++ia == chunksA[ca].length) {
+                    ca++;
+                    ia = 0;
+                }
+            }
+            if (comparison >= 0) {
+                if (comparison > 0) {
+                    merged.add(atomB);
+                }
+                if (++ib == chunksB[cb].length) {
+                    cb++;
+                    ib = 0;
+                }
+            }
+            onlyA &= comparison <= 0;
+            onlyB &= comparison >= 0;
+        }
+
+        if (ca < countA) {
+            onlyB = false;
+        } else if (cb < countB) {
+            onlyA = false;
+        }
+        if (onlyA) {
+            return a;
+        } else if (onlyB) {
+            return b;
+        }
+
+        merged.addRemaining(a, ca, ia);
+        merged.addRemaining(b, cb, ib);
+        return merged.build();
+    }
+
+    private int start(int chunk) {
+        return chunk == 0 ? 0 : ends[chunk - 1];
+    }
+
+    private int chunkSerializedSize(int chunk) {
+        return byteEnds[chunk] - (chunk == 0 ? 0 : byteEnds[chunk - 1]);
+    }
+
+    private static int serializedSize(ByteBuffer[] chunk) {
+        int size = 0;
+        for (ByteBuffer atom : chunk) {
+            size += AtomLayerSerialization.serializedSize(atom);
+        }
+        return size;
+    }
+
+    /** @return a copy of <code>values</code> with <code>delta</code> added to every value from index <code>from</code> */
+    private static int[] adjust(int[] values, int from, int delta) {
+        int[] adjusted = values.clone();
+        for (int i = from; i < adjusted.length; i++) {
+            adjusted[i] += delta;
+        }
+        return adjusted;
+    }
+
+    private int chunkFor(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        int lo = 0, hi = ends.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] <= index) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Accumulates atoms and existing chunks into a new list. Individually added atoms are packed into new chunks;
+     * existing chunks are shared as-is.
+     */
+    private static final class Builder {
+
+        private ByteBuffer[][] chunks;
+        private int[] ends;
+        private int[] byteEnds;
+        private int chunkCount = 0;
+        private int size = 0;
+        private int bytes = 0;
+
+        private ByteBuffer[] pending = null;
+        private int pendingCount = 0;
+        private int pendingBytes = 0;
+
+        Builder(int expectedSize) {
+            int expectedChunks = Math.max(1, (expectedSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            chunks = new ByteBuffer[expectedChunks][];
+            ends = new int[expectedChunks];
+            byteEnds = new int[expectedChunks];
+        }
+
+        void add(ByteBuffer atom) {
+            if (pending == null) {
+                pending = new ByteBuffer[CHUNK_SIZE];
+            }
+            pending[pendingCount++] = atom;
+            pendingBytes += AtomLayerSerialization.serializedSize(atom);
+            if (pendingCount == CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void addChunk(ByteBuffer[] chunk, int chunkBytes) {
+            flush();
+            append(chunk, chunkBytes);
+        }
+
+        /** Adds the atoms of <code>source</code>, starting at atom <code>i</code> of chunk <code>c</code> */
+        void addRemaining(PersistentAtomList source, int c, int i) {
+            ByteBuffer[][] sourceChunks = source.chunks;
+            if (c < sourceChunks.length && i > 0) {
+                for (; i < sourceChunks[c].length; i++) {
+                    add(sourceChunks[c][i]);
+                }
+                c++;
+            }
+            for (; c < sourceChunks.length; c++) {
+                addChunk(sourceChunks[c], source.chunkSerializedSize(c));
+            }
+        }
+
+        private void flush() {
+            if (pendingCount > 0) {
+                append(pendingCount == CHUNK_SIZE ? pending : Arrays.copyOf(pending, pendingCount), pendingBytes);
+                pending = null;
+                pendingCount = 0;
+                pendingBytes = 0;
+            }
+        }
+
+        private void append(ByteBuffer[] chunk, int chunkBytes) {
+            if (chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+                ends = Arrays.copyOf(ends, chunkCount * 2);
+                byteEnds = Arrays.copyOf(byteEnds, chunkCount * 2);
+            }
+            size += chunk.length;
+            bytes += chunkBytes;
+            chunks[chunkCount] = chunk;
+            ends[chunkCount] = size;
+            byteEnds[chunkCount] = bytes;
+            chunkCount++;
+        }
+
+        PersistentAtomList build() {
+            flush();
+            if (chunkCount == 0) {
+                return EMPTY;
+            }
+            return new PersistentAtomList(Arrays.copyOf(chunks, chunkCount), Arrays.copyOf(ends, chunkCount),
+                                          Arrays.copyOf(byteEnds, chunkCount));
+        }
+    }
+
+}
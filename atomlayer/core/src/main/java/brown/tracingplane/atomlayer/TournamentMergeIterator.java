@@ -0,0 +1,146 @@
+package brown.tracingplane.atomlayer;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>
+ * Produces the same output as {@link MergeIterator}, but uses a tournament tree to find the next value. Producing a
+ * value costs {@code O(log k)} comparisons per input iterator that is advanced, rather than {@code O(k)} comparisons,
+ * where {@code k} is the number of input iterators. Use this when merging many iterators, e.g., when joining the
+ * baggage of many parallel branches.
+ * </p>
+ *
+ * <p>
+ * Like {@link MergeIterator}, if two or more iterators produce the same element at the same time, the element is only
+ * output once and all of those iterators are advanced.
+ * </p>
+ *
+ * @param <T>
+ */
+public class TournamentMergeIterator<T> implements Iterator<T> {
+
+    private static final byte ACTIVE = 0;
+    private static final byte DEFERRED = 1;
+    private static final byte EXHAUSTED = 2;
+
+    private final Comparator<? super T> comparator;
+    private final Iterator<? extends T>[] iterators;
+    private final T[] heads;
+    private final byte[] states;
+    private final int k;
+
+    /**
+     * tree[0] is the index of the overall winning iterator. tree[1..k-1] are internal nodes; the children of node n
+     * are 2n and 2n+1, where a position p >= k refers to iterator p - k.
+     */
+    private final int[] tree;
+
+    /** Reusable buffer for the iterators that produced the value being returned */
+    private final int[] deferred;
+
+    @SuppressWarnings("unchecked")
+    public TournamentMergeIterator(List<? extends Iterator<? extends T>> iterators, Comparator<? super T> comparator) {
+        this.comparator = comparator;
+
+        int count = 0;
+        for (Iterator<? extends T> it : iterators) {
+            if (it != null && it.hasNext()) {
+                count++;
+            }
+        }
+
+        this.k = count;
+        this.iterators = new Iterator[k];
+        this.heads = (T[]) new Object[k];
+        this.states = new byte[k];
+        this.tree = new int[Math.max(k, 1)];
+        this.deferred = new int[k];
+
+        int i = 0;
+        for (Iterator<? extends T> it : iterators) {
+            if (it != null && it.hasNext()) {
+                this.iterators[i] = it;
+                load(i);
+                i++;
+            }
+        }
+
+        if (k > 1) {
+            tree[0] = build(1);
+        }
+    }
+
+    /** Reads the next head of the specified iterator */
+    private void load(int i) {
+        T next = iterators[i].hasNext() ? iterators[i].next() : null;
+        heads[i] = next;
+        states[i] = next == null ? EXHAUSTED : ACTIVE;
+    }
+
+    /** @return true if iterator {@code a}'s head should be output before iterator {@code b}'s */
+    private boolean beats(int a, int b) {
+        if (states[a] != ACTIVE || states[b] != ACTIVE) {
+            return states[a] < states[b] || (states[a] == states[b] && a < b);
+        }
+        int comparison = comparator.compare(heads[a], heads[b]);
+        return comparison < 0 || (comparison == 0 && a < b);
+    }
+
+    private int winnerAt(int position) {
+        return position >= k ? position - k : tree[position];
+    }
+
+    private int build(int node) {
+        if (node >= k) {
+            return node - k;
+        }
+        int left = build(2 * node), right = build(2 * node + 1);
+        return tree[node] = beats(left, right) ? left : right;
+    }
+
+    /** Replays the matches on the path from the specified iterator to the root, after its head has changed */
+    private void update(int i) {
+        if (k == 1) {
+            return;
+        }
+        for (int node = (i + k) >> 1; node > 0; node >>= 1) {
+            int left = winnerAt(2 * node), right = winnerAt(2 * node + 1);
+            tree[node] = beats(left, right) ? left : right;
+        }
+        tree[0] = tree[1];
+    }
+
+    @Override
+    public boolean hasNext() {
+        return k > 0 && states[tree[0]] == ACTIVE;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            return null;
+        }
+
+        // Set aside every iterator whose head equals the winning value, so that the value is only output once
+        int winner = tree[0];
+        T value = heads[winner];
+        int deferredCount = 0;
+        do {
+            states[winner] = DEFERRED;
+            deferred[deferredCount++] = winner;
+            update(winner);
+            winner = tree[0];
+        } while (states[winner] == ACTIVE && comparator.compare(heads[winner], value) == 0);
+
+        // Then advance them
+        for (int i = 0; i < deferredCount; i++) {
+            load(deferred[i]);
+            update(deferred[i]);
+        }
+
+        return value;
+    }
+
+}
@@ -1,5 +1,6 @@
 package brown.tracingplane.atomlayer;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Comparator;
@@ -9,7 +10,10 @@ import com.google.common.primitives.UnsignedBytes;
 import com.google.common.primitives.UnsignedLongs;
 import sun.misc.Unsafe;
 
-/** Adapted from Guava's com.google.common.primitives.UnsignedBytes to provide comparators for unsigned ByteBuffers */
+/**
+ * Adapted from Guava's com.google.common.primitives.UnsignedBytes to provide comparators for unsigned ByteBuffers.
+ * Heap, direct and read-only buffers are all compared in place, without copying and without modifying their position.
+ */
 public final class UnsignedByteBuffer {
     private UnsignedByteBuffer() {}
 
@@ -19,6 +23,26 @@ public final class UnsignedByteBuffer {
         return lexicographicalComparator().compare(a, b);
     }
 
+    /**
+     * Lexicographically compares {@code leftLength} bytes of {@code left}, starting at absolute index
+     * {@code leftOffset}, with {@code rightLength} bytes of {@code right}, starting at absolute index
+     * {@code rightOffset}. Does not modify the position or limit of either buffer.
+     */
+    public static int compare(ByteBuffer left, int leftOffset, int leftLength, ByteBuffer right, int rightOffset,
+                              int rightLength) {
+        checkBounds(left, leftOffset, leftLength);
+        checkBounds(right, rightOffset, rightLength);
+        return LexicographicalComparatorHolder.BEST_COMPARATOR.compare(left, leftOffset, leftLength, right,
+                                                                       rightOffset, rightLength);
+    }
+
+    private static void checkBounds(ByteBuffer buf, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > buf.limit() - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length +
+                                                ") out of bounds for buffer limit " + buf.limit());
+        }
+    }
+
     /**
      * Returns a comparator that compares two {@code java.nio.ByteBuffer}s
      * <a href="http://en.wikipedia.org/wiki/Lexicographical_order">lexicographically</a>. That is, it compares, using
@@ -36,14 +60,27 @@ public final class UnsignedByteBuffer {
         return LexicographicalComparatorHolder.BEST_COMPARATOR;
     }
 
+    /**
+     * Returns the pure Java comparator that compares one byte at a time, regardless of whether a faster implementation
+     * is available. Exposed for tests and benchmarks; use {@link #lexicographicalComparator()} instead.
+     */
     @VisibleForTesting
-    static Comparator<ByteBuffer> lexicographicalComparatorJavaImpl() {
+    public static Comparator<ByteBuffer> lexicographicalComparatorJavaImpl() {
         return LexicographicalComparatorHolder.PureJavaComparator.INSTANCE;
     }
 
     /**
-     * Provides a lexicographical comparator implementation; either a Java implementation or a faster implementation
-     * based on {@link Unsafe}.
+     * Returns the Java comparator that compares eight bytes at a time, regardless of whether a faster implementation is
+     * available. Exposed for tests and benchmarks; use {@link #lexicographicalComparator()} instead.
+     */
+    @VisibleForTesting
+    public static Comparator<ByteBuffer> lexicographicalComparatorWordImpl() {
+        return LexicographicalComparatorHolder.WordComparator.INSTANCE;
+    }
+
+    /**
+     * Provides a lexicographical comparator implementation; either a word-at-a-time Java implementation or a faster
+     * implementation based on {@link Unsafe}.
      *
      * <p>
      * Uses reflection to gracefully fall back to the Java implementation if {@code Unsafe} isn't available.
@@ -53,10 +90,27 @@ public final class UnsignedByteBuffer {
         static final String UNSAFE_COMPARATOR_NAME =
                 LexicographicalComparatorHolder.class.getName() + "$UnsafeComparator";
 
-        static final Comparator<ByteBuffer> BEST_COMPARATOR = getBestComparator();
+        static final ByteBufferComparator BEST_COMPARATOR = getBestComparator();
+
+        /**
+         * A comparator that can also compare ranges of buffers specified by absolute index. Implementations never
+         * modify the position or limit of the buffers they compare, so they are safe to use on buffers that are shared
+         * between threads.
+         */
+        interface ByteBufferComparator extends Comparator<ByteBuffer> {
+
+            int compare(ByteBuffer left, int leftOffset, int leftLength, ByteBuffer right, int rightOffset,
+                        int rightLength);
+
+            @Override
+            default int compare(ByteBuffer left, ByteBuffer right) {
+                return compare(left, left.position(), left.remaining(), right, right.position(), right.remaining());
+            }
+
+        }
 
         @VisibleForTesting
-        enum UnsafeComparator implements Comparator<ByteBuffer> {
+        enum UnsafeComparator implements ByteBufferComparator {
                                                                  INSTANCE;
 
             static final boolean BIG_ENDIAN = ByteOrder.nativeOrder().equals(ByteOrder.BIG_ENDIAN);
@@ -75,6 +129,17 @@ public final class UnsignedByteBuffer {
             /** The offset to the first element in a byte array. */
             static final int BYTE_ARRAY_BASE_OFFSET;
 
+            /** The offset of the field of {@link Buffer} holding the memory address of a direct buffer. */
+            static final long ADDRESS_FIELD_OFFSET;
+
+            /**
+             * The offsets of the fields of {@link ByteBuffer} holding the backing array and array offset of a heap
+             * buffer. These are used to read read-only heap buffers, whose array is not otherwise accessible. -1 if
+             * the fields could not be found.
+             */
+            static final long HEAP_ARRAY_FIELD_OFFSET;
+            static final long HEAP_OFFSET_FIELD_OFFSET;
+
             static {
                 theUnsafe = getUnsafe();
 
@@ -84,6 +149,27 @@ public final class UnsignedByteBuffer {
                 if (theUnsafe.arrayIndexScale(byte[].class) != 1) {
                     throw new AssertionError();
                 }
+
+                ADDRESS_FIELD_OFFSET = fieldOffset(Buffer.class, "address");
+                if (ADDRESS_FIELD_OFFSET < 0) {
+                    throw new AssertionError();
+                }
+
+                long heapArrayFieldOffset = fieldOffset(ByteBuffer.class, "hb");
+                long heapOffsetFieldOffset = fieldOffset(ByteBuffer.class, "offset");
+                if (heapArrayFieldOffset < 0 || heapOffsetFieldOffset < 0) {
+                    heapArrayFieldOffset = heapOffsetFieldOffset = -1;
+                }
+                HEAP_ARRAY_FIELD_OFFSET = heapArrayFieldOffset;
+                HEAP_OFFSET_FIELD_OFFSET = heapOffsetFieldOffset;
+            }
+
+            private static long fieldOffset(Class<?> cls, String name) {
+                try {
+                    return theUnsafe.objectFieldOffset(cls.getDeclaredField(name));
+                } catch (NoSuchFieldException | SecurityException e) {
+                    return -1;
+                }
             }
 
             /**
@@ -118,57 +204,98 @@ public final class UnsignedByteBuffer {
                 }
             }
 
+            /**
+             * @return the object to pass to {@link Unsafe#getLong(Object, long)} when reading from {@code buf}: the
+             *         backing array for a heap buffer, or null for a direct buffer
+             */
+            private static Object base(ByteBuffer buf) {
+                if (buf.hasArray()) {
+                    return buf.array();
+                } else if (buf.isDirect()) {
+                    return null;
+                } else {
+                    return theUnsafe.getObject(buf, HEAP_ARRAY_FIELD_OFFSET);
+                }
+            }
+
+            /**
+             * @return the offset to pass to {@link Unsafe#getLong(Object, long)} to read index 0 of {@code buf}: an
+             *         array offset for a heap buffer, or a memory address for a direct buffer
+             */
+            private static long address(ByteBuffer buf) {
+                if (buf.hasArray()) {
+                    return BYTE_ARRAY_BASE_OFFSET + buf.arrayOffset();
+                } else if (buf.isDirect()) {
+                    return theUnsafe.getLong(buf, ADDRESS_FIELD_OFFSET);
+                } else {
+                    return BYTE_ARRAY_BASE_OFFSET + theUnsafe.getInt(buf, HEAP_OFFSET_FIELD_OFFSET);
+                }
+            }
+
+            /** @return true if the contents of {@code buf} can be read directly */
+            private static boolean supported(ByteBuffer buf) {
+                return buf.hasArray() || buf.isDirect() || HEAP_ARRAY_FIELD_OFFSET >= 0;
+            }
+
             @Override
-            public int compare(ByteBuffer left, ByteBuffer right) {
-                if (!left.hasArray() || !right.hasArray()) {
-                    // TODO: might nonetheless be faster to copy bytes out of buffers in chunks of 8
-                    return UnsignedByteBuffer.lexicographicalComparatorJavaImpl().compare(left, right);
+            public int compare(ByteBuffer left, int leftOffset, int leftLength, ByteBuffer right, int rightOffset,
+                               int rightLength) {
+                if (!supported(left) || !supported(right)) {
+                    return WordComparator.INSTANCE.compare(left, leftOffset, leftLength, right, rightOffset,
+                                                           rightLength);
                 }
-                int initialLeftPosition = left.position();
-                int initialRightPosition = right.position();
+                final Object leftBase = base(left);
+                final Object rightBase = base(right);
+                final long leftAddress = address(left) + leftOffset;
+                final long rightAddress = address(right) + rightOffset;
 
-                try {
-                    int minLength = Math.min(left.remaining(), right.remaining());
-                    int minWords = minLength / Longs.BYTES;
-
-                    byte[] leftArray = left.array();
-                    byte[] rightArray = right.array();
-                    int leftOffset = left.arrayOffset() + initialLeftPosition;
-                    int rightOffset = right.arrayOffset() + initialRightPosition;
-
-                    /* Compare 8 bytes at a time. Benchmarking shows comparing 8 bytes at a time is no slower than
-                     * comparing 4 bytes at a time even on 32-bit. On the other hand, it is substantially faster on
-                     * 64-bit. */
-                    for (int i = 0; i < minWords * Longs.BYTES; i += Longs.BYTES) {
-                        long lw = theUnsafe.getLong(leftArray, BYTE_ARRAY_BASE_OFFSET + leftOffset + (long) i);
-                        long rw = theUnsafe.getLong(rightArray, BYTE_ARRAY_BASE_OFFSET + rightOffset + (long) i);
-                        if (lw != rw) {
-                            if (BIG_ENDIAN) {
-                                return UnsignedLongs.compare(lw, rw);
-                            }
+                int minLength = Math.min(leftLength, rightLength);
+                int minWords = minLength / Longs.BYTES;
 
-                            /* We want to compare only the first index where left[index] != right[index]. This
-                             * corresponds to the least significant nonzero byte in lw ^ rw, since lw and rw are
-                             * little-endian. Long.numberOfTrailingZeros(diff) tells us the least significant nonzero
-                             * bit, and zeroing out the first three bits of L.nTZ gives us the shift to get that least
-                             * significant nonzero byte. */
-                            int n = Long.numberOfTrailingZeros(lw ^ rw) & ~0x7;
-                            return ((int) ((lw >>> n) & UNSIGNED_MASK)) - ((int) ((rw >>> n) & UNSIGNED_MASK));
-                        }
+                /* Compare 8 bytes at a time. Benchmarking shows comparing 8 bytes at a time is no slower than
+                 * comparing 4 bytes at a time even on 32-bit. On the other hand, it is substantially faster on
+                 * 64-bit. */
+                for (int i = 0; i < minWords * Longs.BYTES; i += Longs.BYTES) {
+                    long lw = theUnsafe.getLong(leftBase, leftAddress + i);
+                    long rw = theUnsafe.getLong(rightBase, rightAddress + i);
+                    if (lw != rw) {
+                        return compareWords(lw, rw);
                     }
+                }
 
-                    // The epilogue to cover the last (minLength % 8) elements.
+                if (minWords > 0 && minLength % Longs.BYTES != 0) {
+                    /* Cover the last (minLength % 8) elements with one more word that overlaps bytes already known to
+                     * be equal, so the first difference within it is still the first difference overall */
+                    long lw = theUnsafe.getLong(leftBase, leftAddress + minLength - Longs.BYTES);
+                    long rw = theUnsafe.getLong(rightBase, rightAddress + minLength - Longs.BYTES);
+                    if (lw != rw) {
+                        return compareWords(lw, rw);
+                    }
+                } else {
+                    // The epilogue for atoms shorter than 8 bytes
                     for (int i = minWords * Longs.BYTES; i < minLength; i++) {
-                        int result = UnsignedBytes.compare(leftArray[leftOffset + i], rightArray[rightOffset + i]);
+                        int result = UnsignedBytes.compare(theUnsafe.getByte(leftBase, leftAddress + i),
+                                                           theUnsafe.getByte(rightBase, rightAddress + i));
                         if (result != 0) {
                             return result;
                         }
                     }
-                    return left.remaining() - right.remaining();
-                } finally {
-                    left.position(initialLeftPosition);
-                    right.position(initialRightPosition);
                 }
+                return leftLength - rightLength;
+            }
+
+            /** Compares two unequal words that were read in native byte order */
+            private static int compareWords(long lw, long rw) {
+                if (BIG_ENDIAN) {
+                    return UnsignedLongs.compare(lw, rw);
+                }
+
+                /* We want to compare only the first index where left[index] != right[index]. This corresponds to
+                 * the least significant nonzero byte in lw ^ rw, since lw and rw are little-endian.
+                 * Long.numberOfTrailingZeros(diff) tells us the least significant nonzero bit, and zeroing out the
+                 * first three bits of L.nTZ gives us the shift to get that least significant nonzero byte. */
+                int n = Long.numberOfTrailingZeros(lw ^ rw) & ~0x7;
+                return ((int) ((lw >>> n) & UNSIGNED_MASK)) - ((int) ((rw >>> n) & UNSIGNED_MASK));
             }
 
             @Override
@@ -177,26 +304,83 @@ public final class UnsignedByteBuffer {
             }
         }
 
-        enum PureJavaComparator implements Comparator<ByteBuffer> {
-                                                                   INSTANCE;
+        /**
+         * Compares 8 bytes at a time using {@link ByteBuffer#getLong(int)}, without {@link Unsafe}. Works on any kind of
+         * buffer; used when {@link Unsafe} is unavailable or cannot read a particular buffer.
+         */
+        enum WordComparator implements ByteBufferComparator {
+                                                             INSTANCE;
 
             @Override
-            public int compare(ByteBuffer left, ByteBuffer right) {
-                int initialLeftPosition = left.position();
-                int initialRightPosition = right.position();
-                try {
-                    int minLength = Math.min(left.remaining(), right.remaining());
-                    for (int i = 0; i < minLength; i++) {
-                        int result = UnsignedBytes.compare(left.get(), right.get());
+            public int compare(ByteBuffer left, int leftOffset, int leftLength, ByteBuffer right, int rightOffset,
+                               int rightLength) {
+                final boolean leftLittleEndian = left.order() == ByteOrder.LITTLE_ENDIAN;
+                final boolean rightLittleEndian = right.order() == ByteOrder.LITTLE_ENDIAN;
+
+                int minLength = Math.min(leftLength, rightLength);
+                int minWords = minLength / Longs.BYTES;
+
+                for (int i = 0; i < minWords * Longs.BYTES; i += Longs.BYTES) {
+                    long lw = getLong(left, leftOffset + i, leftLittleEndian);
+                    long rw = getLong(right, rightOffset + i, rightLittleEndian);
+                    if (lw != rw) {
+                        return compareWords(lw, rw);
+                    }
+                }
+
+                if (minWords > 0 && minLength % Longs.BYTES != 0) {
+                    // One more word, overlapping bytes already known to be equal
+                    long lw = getLong(left, leftOffset + minLength - Longs.BYTES, leftLittleEndian);
+                    long rw = getLong(right, rightOffset + minLength - Longs.BYTES, rightLittleEndian);
+                    if (lw != rw) {
+                        return compareWords(lw, rw);
+                    }
+                } else {
+                    for (int i = minWords * Longs.BYTES; i < minLength; i++) {
+                        int result = UnsignedBytes.compare(left.get(leftOffset + i), right.get(rightOffset + i));
                         if (result != 0) {
                             return result;
                         }
                     }
-                    return left.remaining() - right.remaining();
-                } finally {
-                    left.position(initialLeftPosition);
-                    right.position(initialRightPosition);
                 }
+                return leftLength - rightLength;
+            }
+
+            /** Reads the 8 bytes at {@code index} as a big-endian long, regardless of the buffer's byte order */
+            private static long getLong(ByteBuffer buf, int index, boolean littleEndian) {
+                long word = buf.getLong(index);
+                return littleEndian ? Long.reverseBytes(word) : word;
+            }
+
+            /**
+             * Compares two unequal big-endian words. The first differing byte is the most significant nonzero byte of
+             * lw ^ rw; Long.numberOfLeadingZeros rounded down to a multiple of 8 locates it.
+             */
+            private static int compareWords(long lw, long rw) {
+                int n = 56 - (Long.numberOfLeadingZeros(lw ^ rw) & ~0x7);
+                return ((int) ((lw >>> n) & UNSIGNED_MASK)) - ((int) ((rw >>> n) & UNSIGNED_MASK));
+            }
+
+            @Override
+            public String toString() {
+                return "UnsignedBytes.lexicographicalComparator() (word-at-a-time Java version)";
+            }
+        }
+
+        enum PureJavaComparator implements ByteBufferComparator {
+                                                                   INSTANCE;
+
+            @Override
+            public int compare(ByteBuffer left, int leftOffset, int leftLength, ByteBuffer right, int rightOffset,
+                               int rightLength) {
+                int minLength = Math.min(leftLength, rightLength);
+                for (int i = 0; i < minLength; i++) {
+                    int result = UnsignedBytes.compare(left.get(leftOffset + i), right.get(rightOffset + i));
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                return leftLength - rightLength;
             }
 
             @Override
@@ -206,16 +390,15 @@ public final class UnsignedByteBuffer {
         }
 
         /** @return the Unsafe-using Comparator, or falls back to the pure-Java implementation if unable to do so. */
-        static Comparator<ByteBuffer> getBestComparator() {
+        static ByteBufferComparator getBestComparator() {
             try {
                 Class<?> theClass = Class.forName(UNSAFE_COMPARATOR_NAME);
 
-                // yes, UnsafeComparator does implement Comparator<byte[]>
-                @SuppressWarnings("unchecked")
-                Comparator<ByteBuffer> comparator = (Comparator<ByteBuffer>) theClass.getEnumConstants()[0];
+                // yes, UnsafeComparator does implement ByteBufferComparator
+                ByteBufferComparator comparator = (ByteBufferComparator) theClass.getEnumConstants()[0];
                 return comparator;
             } catch (Throwable t) { // ensure we really catch *everything*
-                return lexicographicalComparatorJavaImpl();
+                return WordComparator.INSTANCE;
             }
         }
     }
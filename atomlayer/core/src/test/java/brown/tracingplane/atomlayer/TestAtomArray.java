@@ -0,0 +1,137 @@
+package brown.tracingplane.atomlayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class TestAtomArray {
+
+    private static List<ByteBuffer> randomAtoms(Random r, int count) {
+        List<ByteBuffer> atoms = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[r.nextInt(200)];
+            r.nextBytes(bytes);
+            atoms.add(ByteBuffer.wrap(bytes));
+        }
+        return Lexicographic.sort(atoms);
+    }
+
+    @Test
+    public void testDeserializeNulls() {
+        assertNull(AtomLayerSerialization.deserializeArray((ByteBuffer) null));
+        assertNull(AtomLayerSerialization.deserializeArray((byte[]) null));
+        assertNull(AtomLayerSerialization.deserializeArray(new byte[0]));
+    }
+
+    @Test
+    public void testDeserializeMatchesList() {
+        Random r = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            List<ByteBuffer> atoms = randomAtoms(r, 1 + r.nextInt(20));
+            byte[] bytes = AtomLayerSerialization.serialize(atoms);
+
+            AtomArray array = AtomLayerSerialization.deserializeArray(bytes);
+            assertEquals(atoms, array);
+            assertEquals(AtomLayerSerialization.deserialize(bytes), array);
+            for (int j = 0; j < atoms.size(); j++) {
+                assertEquals(atoms.get(j).remaining(), array.length(j));
+                assertEquals(0, array.compare(j, atoms.get(j)));
+            }
+            assertEquals(bytes.length, array.serializedSize());
+            assertArrayEquals(bytes, AtomLayerSerialization.serialize(array));
+        }
+    }
+
+    @Test
+    public void testDeserializeAdvancesPosition() {
+        List<ByteBuffer> atoms = randomAtoms(new Random(1), 5);
+        ByteBuffer buf = ByteBuffer.wrap(AtomLayerSerialization.serialize(atoms));
+        AtomArray array = AtomLayerSerialization.deserializeArray(buf);
+        assertEquals(0, buf.remaining());
+        assertEquals(atoms, array);
+    }
+
+    @Test
+    public void testDeserializeDirectBuffer() {
+        List<ByteBuffer> atoms = randomAtoms(new Random(2), 10);
+        byte[] bytes = AtomLayerSerialization.serialize(atoms);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.flip();
+
+        AtomArray array = AtomLayerSerialization.deserializeArray(direct);
+        assertEquals(atoms, array);
+        assertArrayEquals(bytes, AtomLayerSerialization.serialize(array));
+    }
+
+    @Test
+    public void testPrematureEnd() {
+        List<ByteBuffer> atoms = randomAtoms(new Random(3), 5);
+        byte[] bytes = AtomLayerSerialization.serialize(atoms);
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        AtomArray array = AtomLayerSerialization.deserializeArray(truncated);
+        assertEquals(atoms.subList(0, 4), array);
+        assertEquals(AtomLayerSerialization.serializedSize(atoms.subList(0, 4)), array.serializedSize());
+        assertArrayEquals(AtomLayerSerialization.serialize(atoms.subList(0, 4)), AtomLayerSerialization.serialize(array));
+    }
+
+    @Test
+    public void testNonCanonicalLengthPrefix() {
+        // A length of 1 encoded as a two-byte varint
+        byte[] bytes = { (byte) 0x81, 0x00, 0x05, 0x01, 0x07 };
+        AtomArray array = AtomLayerSerialization.deserializeArray(bytes);
+        assertEquals(2, array.size());
+        assertEquals(ByteBuffer.wrap(new byte[] { 0x05 }), array.get(0));
+        assertEquals(ByteBuffer.wrap(new byte[] { 0x07 }), array.get(1));
+        assertEquals(4, array.serializedSize());
+        assertArrayEquals(new byte[] { 0x01, 0x05, 0x01, 0x07 }, AtomLayerSerialization.serialize(array));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable() {
+        AtomArray array = AtomLayerSerialization.deserializeArray(new byte[] { 0x01, 0x05 });
+        array.add(ByteBuffer.allocate(1));
+    }
+
+    @Test
+    public void testMergeMatchesList() {
+        Random r = new Random(4);
+        for (int i = 0; i < 100; i++) {
+            List<ByteBuffer> common = randomAtoms(r, 1 + r.nextInt(10));
+            List<ByteBuffer> a = new ArrayList<>(common);
+            a.addAll(randomAtoms(r, r.nextInt(3)));
+            List<ByteBuffer> b = new ArrayList<>(common);
+            b.addAll(randomAtoms(r, r.nextInt(3)));
+            Lexicographic.sort(a);
+            Lexicographic.sort(b);
+
+            AtomArray arrayA = AtomLayerSerialization.deserializeArray(AtomLayerSerialization.serialize(a));
+            AtomArray arrayB = AtomLayerSerialization.deserializeArray(AtomLayerSerialization.serialize(b));
+
+            assertEquals(Lexicographic.merge(a, b), Lexicographic.merge(arrayA, arrayB));
+        }
+    }
+
+    @Test
+    public void testMergeIdenticalDoesNotCopy() {
+        List<ByteBuffer> atoms = randomAtoms(new Random(5), 10);
+        byte[] bytes = AtomLayerSerialization.serialize(atoms);
+        AtomArray a = AtomLayerSerialization.deserializeArray(bytes);
+        AtomArray b = AtomLayerSerialization.deserializeArray(bytes);
+        assertSame(a, Lexicographic.merge(a, b));
+
+        AtomArray prefix = AtomLayerSerialization.deserializeArray(AtomLayerSerialization.serialize(atoms.subList(0, 5)));
+        assertSame(a, Lexicographic.merge(prefix, a));
+        assertTrue(Lexicographic.merge(a, prefix) == a);
+    }
+
+}
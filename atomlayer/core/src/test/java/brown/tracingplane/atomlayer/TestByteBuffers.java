@@ -79,4 +79,32 @@ public class TestByteBuffers {
         
     }
 
+    @Test
+    public void testCopyDirectAndReadOnly() {
+        byte[] bytes = new byte[100];
+        new Random(0).nextBytes(bytes);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.position(10);
+        ByteBuffer heap = ByteBuffer.wrap(bytes);
+        heap.position(10);
+
+        for (ByteBuffer src : new ByteBuffer[] { direct, direct.asReadOnlyBuffer(), heap.asReadOnlyBuffer() }) {
+            ByteBuffer dest = ByteBuffer.allocate(90);
+            ByteBuffers.copyTo(src, dest);
+            assertEquals(10, src.position());
+            dest.flip();
+            assertEquals(heap, dest);
+        }
+    }
+
+    @Test
+    public void testGetStringDirect() {
+        ByteBuffer direct = ByteBuffer.allocateDirect(5);
+        direct.put("hello".getBytes());
+        direct.position(1);
+        assertEquals("ello", ByteBuffers.getString(direct));
+        assertEquals(1, direct.position());
+    }
+
 }
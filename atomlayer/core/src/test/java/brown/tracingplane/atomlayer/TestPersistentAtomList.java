@@ -0,0 +1,173 @@
+package brown.tracingplane.atomlayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class TestPersistentAtomList {
+
+    private static ByteBuffer randomAtom(Random r) {
+        byte[] bytes = new byte[1 + r.nextInt(4)];
+        r.nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static List<ByteBuffer> randomAtoms(Random r, int count) {
+        List<ByteBuffer> atoms = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            atoms.add(randomAtom(r));
+        }
+        return atoms;
+    }
+
+    @Test
+    public void testOf() {
+        Random r = new Random(0);
+        for (int size : new int[] { 0, 1, 31, 32, 33, 64, 100 }) {
+            List<ByteBuffer> atoms = randomAtoms(r, size);
+            PersistentAtomList list = PersistentAtomList.of(atoms);
+            assertEquals(atoms, list);
+            assertEquals(atoms, new ArrayList<>(list));
+            assertSame(list, PersistentAtomList.of(list));
+        }
+        assertSame(PersistentAtomList.EMPTY, PersistentAtomList.of(null));
+    }
+
+    @Test
+    public void testUpdates() {
+        Random r = new Random(1);
+        List<ByteBuffer> expected = new ArrayList<>();
+        PersistentAtomList list = PersistentAtomList.EMPTY;
+        for (int i = 0; i < 2000; i++) {
+            PersistentAtomList previous = list;
+            List<ByteBuffer> previousExpected = new ArrayList<>(expected);
+
+            int op = expected.isEmpty() ? 0 : r.nextInt(3);
+            if (op == 0) {
+                int index = r.nextInt(expected.size() + 1);
+                ByteBuffer atom = randomAtom(r);
+                expected.add(index, atom);
+                list = list.withInserted(index, atom);
+            } else if (op == 1) {
+                int index = r.nextInt(expected.size());
+                ByteBuffer atom = randomAtom(r);
+                expected.set(index, atom);
+                list = list.with(index, atom);
+            } else if (i % 5 == 0) {
+                int index = r.nextInt(expected.size());
+                expected.remove(index);
+                list = list.without(index);
+            }
+
+            assertEquals(expected, list);
+            assertEquals(previousExpected, previous);
+            assertEquals(AtomLayerSerialization.serializedSize(expected), list.serializedSize());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        PersistentAtomList.of(randomAtoms(new Random(2), 5)).add(ByteBuffer.allocate(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() {
+        PersistentAtomList.of(randomAtoms(new Random(3), 40)).get(40);
+    }
+
+    @Test
+    public void testMergeMatchesLexicographic() {
+        Random r = new Random(4);
+        for (int i = 0; i < 500; i++) {
+            List<ByteBuffer> a = randomAtoms(r, r.nextInt(100));
+            List<ByteBuffer> b = randomAtoms(r, r.nextInt(100));
+            if (r.nextBoolean()) {
+                Lexicographic.sort(a);
+                Lexicographic.sort(b);
+            }
+            List<ByteBuffer> expected = Lexicographic.merge(new ArrayList<>(a), new ArrayList<>(b));
+            assertEquals(expected, PersistentAtomList.merge(PersistentAtomList.of(a), PersistentAtomList.of(b)));
+            assertEquals(expected, Lexicographic.merge(PersistentAtomList.of(a), b));
+        }
+    }
+
+    @Test
+    public void testMergeBranches() {
+        Random r = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            List<ByteBuffer> atoms = randomAtoms(r, 1 + r.nextInt(300));
+            Lexicographic.sort(atoms);
+            PersistentAtomList parent = PersistentAtomList.of(atoms);
+
+            PersistentAtomList a = parent, b = parent;
+            for (int j = r.nextInt(4); j > 0; j--) {
+                a = a.withInserted(r.nextInt(a.size() + 1), randomAtom(r));
+            }
+            for (int j = r.nextInt(4); j > 0; j--) {
+                b = b.withInserted(r.nextInt(b.size() + 1), randomAtom(r));
+            }
+
+            List<ByteBuffer> expected = Lexicographic.merge(new ArrayList<>(a), new ArrayList<>(b));
+            PersistentAtomList merged = PersistentAtomList.merge(a, b);
+            assertEquals(expected, merged);
+            assertEquals(AtomLayerSerialization.serializedSize(expected), merged.serializedSize());
+        }
+    }
+
+    @Test
+    public void testMergeReturnsInput() {
+        Random r = new Random(6);
+        List<ByteBuffer> atoms = randomAtoms(r, 100);
+        Lexicographic.sort(atoms);
+        PersistentAtomList a = PersistentAtomList.of(atoms);
+        PersistentAtomList b = a.without(99).without(50).without(0);
+
+        assertSame(a, PersistentAtomList.merge(a, a));
+        assertSame(a, PersistentAtomList.merge(a, b));
+        assertSame(a, PersistentAtomList.merge(b, a));
+        assertSame(a, PersistentAtomList.merge(a, PersistentAtomList.EMPTY));
+        assertSame(a, PersistentAtomList.merge(null, a));
+        assertTrue(PersistentAtomList.merge(a, a.withInserted(0, ByteBuffer.allocate(0))) != a);
+    }
+
+    @Test
+    public void testMergeAppended() {
+        Random r = new Random(7);
+        for (int size : new int[] { 1, 31, 32, 33, 100 }) {
+            List<ByteBuffer> atoms = randomAtoms(r, size);
+            Lexicographic.sort(atoms);
+            PersistentAtomList parent = PersistentAtomList.of(atoms);
+            PersistentAtomList child = parent;
+            for (int i = 0; i < 5; i++) {
+                child = child.withInserted(child.size(), ByteBuffer.wrap(new byte[] { -1, -1, -1, -1, -1, (byte) i }));
+            }
+            assertSame(child, PersistentAtomList.merge(parent, child));
+            assertSame(child, PersistentAtomList.merge(child, parent));
+        }
+    }
+
+    @Test
+    public void testHashCodeAndEquals() {
+        Random r = new Random(8);
+        List<ByteBuffer> atoms = randomAtoms(r, 100);
+        PersistentAtomList a = PersistentAtomList.of(atoms);
+        PersistentAtomList b = PersistentAtomList.of(new ArrayList<>(atoms));
+        assertEquals(atoms.hashCode(), a.hashCode());
+        assertEquals(a, b);
+        assertEquals(a, atoms);
+        assertEquals(atoms, a);
+
+        PersistentAtomList c = a.with(40, ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7 }));
+        assertFalse(a.equals(c));
+        assertFalse(c.equals(a));
+        assertEquals(a, c.with(40, atoms.get(40)));
+        assertEquals(a, a.withInserted(0, atoms.get(0)).without(0));
+    }
+
+}
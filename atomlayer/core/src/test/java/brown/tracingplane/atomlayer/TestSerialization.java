@@ -1,9 +1,14 @@
 package brown.tracingplane.atomlayer;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import org.junit.Test;
 import brown.tracingplane.atomlayer.AtomLayerSerialization;
 
@@ -20,4 +25,50 @@ public class TestSerialization {
 
     }
 
+    private static ByteBuffer direct(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+        buf.put(bytes);
+        buf.flip();
+        return buf;
+    }
+
+    @Test
+    public void testDirectAndReadOnlyAtoms() throws IOException {
+        Random r = new Random(0);
+        List<ByteBuffer> heap = new ArrayList<>();
+        List<ByteBuffer> direct = new ArrayList<>();
+        List<ByteBuffer> readOnly = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] bytes = new byte[r.nextInt(AtomLayerSerialization.CHUNK_SIZE * 2)];
+            r.nextBytes(bytes);
+            heap.add(ByteBuffer.wrap(bytes));
+            direct.add(direct(bytes));
+            readOnly.add(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+        }
+        byte[] expected = AtomLayerSerialization.serialize(heap);
+
+        for (List<ByteBuffer> atoms : new List[] { direct, readOnly }) {
+            assertArrayEquals(expected, AtomLayerSerialization.serialize(atoms));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (ByteBuffer atom : atoms) {
+                AtomLayerSerialization.writeAtom(atom, out);
+                assertEquals(0, atom.position());
+            }
+            assertArrayEquals(expected, out.toByteArray());
+        }
+    }
+
+    @Test
+    public void testDeserializeDirect() {
+        List<ByteBuffer> atoms = new ArrayList<>();
+        atoms.add(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        atoms.add(ByteBuffer.wrap(new byte[] { 4, 5 }));
+        ByteBuffer serialized = direct(AtomLayerSerialization.serialize(atoms));
+
+        assertEquals(atoms, AtomLayerSerialization.deserialize(serialized.duplicate()));
+        assertEquals(atoms, AtomLayerSerialization.deserialize(serialized.asReadOnlyBuffer()));
+        assertEquals(atoms, AtomLayerSerialization.deserializeArray(serialized.duplicate()));
+    }
+
 }
@@ -0,0 +1,144 @@
+package brown.tracingplane.atomlayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class TestSerializeWithLimit {
+
+    private static List<ByteBuffer> randomAtoms(Random r, int count) {
+        List<ByteBuffer> atoms = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[r.nextInt(200)];
+            r.nextBytes(bytes);
+            atoms.add(ByteBuffer.wrap(bytes));
+        }
+        return atoms;
+    }
+
+    private static byte[] expected(List<ByteBuffer> atoms, int limit) {
+        return AtomLayerSerialization.serialize(AtomLayerOverflow.trimToSize(atoms, limit));
+    }
+
+    private static byte[] written(ByteBuffer out, int begin, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = out.get(begin + i);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testNullAndEmpty() {
+        ByteBuffer out = ByteBuffer.allocate(10);
+        assertEquals(0, AtomLayerSerialization.serialize(null, 5, out));
+        assertEquals(0, AtomLayerSerialization.serialize(new ArrayList<ByteBuffer>(), 5, out));
+        assertEquals(0, out.position());
+    }
+
+    @Test
+    public void testMatchesTrimToSize() {
+        Random r = new Random(0);
+        ByteBuffer heap = ByteBuffer.allocate(AtomLayerSerialization.MAX_SCRATCH_SIZE);
+        ByteBuffer direct = ByteBuffer.allocateDirect(AtomLayerSerialization.MAX_SCRATCH_SIZE);
+        for (int i = 0; i < 500; i++) {
+            List<ByteBuffer> atoms = randomAtoms(r, 1 + r.nextInt(20));
+            byte[] full = AtomLayerSerialization.serialize(atoms);
+            AtomArray array = AtomLayerSerialization.deserializeArray(full);
+            int limit = r.nextInt(full.length + 10);
+
+            byte[] expected = expected(atoms, limit);
+            assertArrayEquals(expected, AtomLayerSerialization.serialize(atoms, limit));
+            assertArrayEquals(expected, AtomLayerSerialization.serialize(array, limit));
+
+            for (ByteBuffer out : new ByteBuffer[] { heap, direct }) {
+                for (List<ByteBuffer> input : new List[] { atoms, array }) {
+                    out.clear();
+                    int begin = r.nextInt(10);
+                    out.position(begin);
+                    int length = AtomLayerSerialization.serialize(input, limit, out);
+                    assertEquals(expected.length, length);
+                    assertEquals(begin + length, out.position());
+                    assertArrayEquals(expected, written(out, begin, length));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExactLimits() {
+        List<ByteBuffer> atoms = new ArrayList<>();
+        atoms.add(ByteBuffer.allocate(4));
+        atoms.add(ByteBuffer.allocate(4));
+
+        ByteBuffer out = ByteBuffer.allocate(20);
+        for (int limit = 1; limit < 6; limit++) {
+            out.clear();
+            assertEquals(1, AtomLayerSerialization.serialize(atoms, limit, out));
+            assertEquals(0, out.get(0));
+        }
+        for (int limit = 6; limit < 10; limit++) {
+            out.clear();
+            assertEquals(6, AtomLayerSerialization.serialize(atoms, limit, out));
+            assertEquals(0, out.get(5));
+        }
+        for (int limit = 10; limit < 20; limit++) {
+            out.clear();
+            assertEquals(10, AtomLayerSerialization.serialize(atoms, limit, out));
+        }
+        out.clear();
+        assertEquals(10, AtomLayerSerialization.serialize(atoms, 0, out));
+    }
+
+    @Test
+    public void testOutputTooSmall() {
+        List<ByteBuffer> atoms = randomAtoms(new Random(1), 10);
+        ByteBuffer out = ByteBuffer.allocate(12);
+        out.position(2);
+        try {
+            AtomLayerSerialization.serialize(atoms, 0, out);
+            fail("Expected BufferOverflowException");
+        } catch (BufferOverflowException e) {
+            assertEquals(2, out.position());
+        }
+    }
+
+    @Test
+    public void testAtomsUnmodified() {
+        List<ByteBuffer> atoms = randomAtoms(new Random(2), 10);
+        List<ByteBuffer> copies = new ArrayList<>();
+        for (ByteBuffer atom : atoms) {
+            copies.add(atom.duplicate());
+        }
+        AtomLayerSerialization.serialize(atoms, 300, ByteBuffer.allocate(300));
+        assertEquals(copies, atoms);
+        for (int i = 0; i < atoms.size(); i++) {
+            assertEquals(copies.get(i).position(), atoms.get(i).position());
+        }
+    }
+
+    @Test
+    public void testWriteWithLimit() throws IOException {
+        Random r = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            List<ByteBuffer> atoms = randomAtoms(r, 1 + r.nextInt(20));
+            int limit = r.nextInt(AtomLayerSerialization.serializedSize(atoms) + 10);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AtomLayerSerialization.write(out, atoms, limit);
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            AtomLayerSerialization.write(expected, AtomLayerOverflow.trimToSize(atoms, limit));
+            assertArrayEquals(expected.toByteArray(), out.toByteArray());
+        }
+    }
+
+}
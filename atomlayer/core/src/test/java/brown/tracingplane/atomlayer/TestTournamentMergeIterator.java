@@ -0,0 +1,147 @@
+package brown.tracingplane.atomlayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+import com.google.common.collect.Lists;
+
+public class TestTournamentMergeIterator {
+
+    private static final Comparator<Integer> integerComparator = new Comparator<Integer>() {
+        public int compare(Integer o1, Integer o2) {
+            return Integer.compare(o1, o2);
+        }
+    };
+
+    private static List<Integer> drain(Iterator<Integer> it) {
+        List<Integer> values = new ArrayList<>();
+        while (it.hasNext()) {
+            values.add(it.next());
+        }
+        return values;
+    }
+
+    private static List<List<Integer>> randomInputs(Random r, boolean sorted) {
+        List<List<Integer>> inputs = new ArrayList<>();
+        int count = r.nextInt(70);
+        for (int i = 0; i < count; i++) {
+            List<Integer> input = new ArrayList<>();
+            int size = r.nextInt(20);
+            for (int j = 0; j < size; j++) {
+                input.add(r.nextInt(30));
+            }
+            if (sorted) {
+                input = new ArrayList<>(new TreeSet<>(input));
+            }
+            inputs.add(r.nextInt(10) == 0 ? null : input);
+        }
+        return inputs;
+    }
+
+    private static List<Iterator<Integer>> iterators(List<List<Integer>> inputs) {
+        List<Iterator<Integer>> iterators = new ArrayList<>();
+        for (List<Integer> input : inputs) {
+            iterators.add(input == null ? null : input.iterator());
+        }
+        return iterators;
+    }
+
+    @Test
+    public void testMatchesMergeIterator() {
+        Random r = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            List<List<Integer>> inputs = randomInputs(r, i % 2 == 0);
+            List<Integer> expected = drain(new MergeIterator<>(iterators(inputs), integerComparator));
+            List<Integer> actual = drain(new TournamentMergeIterator<>(iterators(inputs), integerComparator));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        TournamentMergeIterator<Integer> it =
+                new TournamentMergeIterator<>(Collections.<Iterator<Integer>> emptyList(), integerComparator);
+        assertFalse(it.hasNext());
+        assertNull(it.next());
+
+        it = new TournamentMergeIterator<>(Lists.newArrayList(null, Collections.<Integer> emptyIterator()),
+                                           integerComparator);
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testDuplicatesWithinOneInputAreKept() {
+        List<Iterator<Integer>> iterators = Lists.newArrayList(Lists.newArrayList(1, 1, 3).iterator(),
+                                                               Lists.newArrayList(1, 2).iterator(),
+                                                               Lists.newArrayList(2).iterator());
+        assertEquals(Lists.newArrayList(1, 1, 2, 3),
+                     drain(new TournamentMergeIterator<>(iterators, integerComparator)));
+    }
+
+    private static List<ByteBuffer> atoms(int... values) {
+        List<ByteBuffer> atoms = new ArrayList<>();
+        for (int value : values) {
+            atoms.add(ByteBuffer.wrap(new byte[] { (byte) value }));
+        }
+        return atoms;
+    }
+
+    @Test
+    public void testMergeAll() {
+        Random r = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            List<List<ByteBuffer>> lists = new ArrayList<>();
+            List<ByteBuffer> expected = null;
+            int count = r.nextInt(10);
+            for (int j = 0; j < count; j++) {
+                TreeSet<Integer> values = new TreeSet<>();
+                int size = r.nextInt(10);
+                for (int k = 0; k < size; k++) {
+                    values.add(r.nextInt(100));
+                }
+                int[] sorted = new int[values.size()];
+                int k = 0;
+                for (Integer value : values) {
+                    sorted[k++] = value;
+                }
+                List<ByteBuffer> list = atoms(sorted);
+                lists.add(list);
+                expected = Lexicographic.merge(expected, list);
+            }
+            assertEquals(expected, Lexicographic.mergeAll(lists));
+        }
+    }
+
+    @Test
+    public void testMergeAllReturnsInput() {
+        List<ByteBuffer> a = atoms(1, 2, 3, 4);
+        List<ByteBuffer> b = atoms(1, 3);
+        List<ByteBuffer> c = atoms(2, 4);
+        assertSame(a, Lexicographic.mergeAll(Lists.newArrayList(b, a, c, null, a)));
+        assertSame(a, Lexicographic.mergeAll(Lists.newArrayList(a, a, a)));
+        assertNull(Lexicographic.mergeAll(null));
+        assertNull(Lexicographic.mergeAll(Lists.<List<ByteBuffer>> newArrayList(null, null)));
+    }
+
+    @Test
+    public void testMergeIteratorsSkipsExhausted() {
+        Iterator<ByteBuffer> merged = Lexicographic.merge(atoms().iterator(), atoms(1, 3).iterator(),
+                                                          atoms(2).iterator());
+        List<ByteBuffer> values = new ArrayList<>();
+        while (merged.hasNext()) {
+            values.add(merged.next());
+        }
+        assertEquals(atoms(1, 2, 3), values);
+    }
+
+}
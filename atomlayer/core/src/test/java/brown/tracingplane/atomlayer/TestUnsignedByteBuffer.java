@@ -1,8 +1,11 @@
 package brown.tracingplane.atomlayer;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Comparator;
+import java.util.Random;
 import org.junit.Test;
 import brown.tracingplane.atomlayer.TypeUtils;
 import brown.tracingplane.atomlayer.UnsignedByteBuffer;
@@ -75,4 +78,73 @@ public class TestUnsignedByteBuffer {
         assertTrue(comparator.compare(b, a) > 0);
     }
 
+    private static ByteBuffer[] variants(byte[] bytes, int padding) {
+        ByteBuffer heap = ByteBuffer.allocate(bytes.length + padding);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + padding);
+        for (ByteBuffer buf : new ByteBuffer[] { heap, direct }) {
+            buf.position(padding);
+            buf.put(bytes);
+            buf.position(padding);
+        }
+        return new ByteBuffer[] { heap, direct, heap.asReadOnlyBuffer(), direct.asReadOnlyBuffer(), heap.slice(),
+                                  direct.slice(), direct.duplicate().order(ByteOrder.LITTLE_ENDIAN) };
+    }
+
+    @Test
+    public void testDirectAndReadOnlyBuffers() {
+        Random r = new Random(0);
+        Comparator<ByteBuffer> unsafe = UnsignedByteBuffer.lexicographicalComparator();
+        Comparator<ByteBuffer> java = UnsignedByteBuffer.lexicographicalComparatorJavaImpl();
+        Comparator<ByteBuffer> word = UnsignedByteBuffer.lexicographicalComparatorWordImpl();
+        for (int i = 0; i < 1000; i++) {
+            byte[] a = new byte[r.nextInt(40)];
+            byte[] b = new byte[r.nextInt(40)];
+            r.nextBytes(a);
+            r.nextBytes(b);
+            if (r.nextBoolean()) {
+                System.arraycopy(a, 0, b, 0, Math.min(a.length, b.length));
+            }
+            int expected = Integer.signum(Lexicographic.compare(a, b));
+            for (ByteBuffer left : variants(a, r.nextInt(10))) {
+                for (ByteBuffer right : variants(b, r.nextInt(10))) {
+                    int leftPosition = left.position(), rightPosition = right.position();
+                    assertEquals(expected, Integer.signum(unsafe.compare(left, right)));
+                    assertEquals(expected, Integer.signum(java.compare(left, right)));
+                    assertEquals(expected, Integer.signum(word.compare(left, right)));
+                    assertEquals(expected, Integer.signum(UnsignedByteBuffer.compare(left, left.position(),
+                                                                                     left.remaining(), right,
+                                                                                     right.position(),
+                                                                                     right.remaining())));
+                    assertEquals(leftPosition, left.position());
+                    assertEquals(rightPosition, right.position());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testComparatorsAgreeOnByteDifference() {
+        Random r = new Random(1);
+        Comparator<ByteBuffer> unsafe = UnsignedByteBuffer.lexicographicalComparator();
+        Comparator<ByteBuffer> word = UnsignedByteBuffer.lexicographicalComparatorWordImpl();
+        for (int length = 1; length <= 32; length++) {
+            for (int i = 0; i < length; i++) {
+                byte[] a = new byte[length];
+                r.nextBytes(a);
+                byte[] b = a.clone();
+                b[i] = (byte) r.nextInt();
+                int expected = Lexicographic.compare(a, b);
+                assertEquals(expected, unsafe.compare(ByteBuffer.wrap(a), ByteBuffer.wrap(b)));
+                assertEquals(expected, word.compare(ByteBuffer.wrap(a), ByteBuffer.wrap(b)));
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testAbsoluteCompareChecksBounds() {
+        ByteBuffer a = ByteBuffer.allocateDirect(8);
+        ByteBuffer b = ByteBuffer.allocateDirect(8);
+        UnsignedByteBuffer.compare(a, 4, 8, b, 0, 8);
+    }
+
 }
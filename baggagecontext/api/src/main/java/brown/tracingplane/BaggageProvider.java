@@ -1,6 +1,7 @@
 package brown.tracingplane;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 
 /**
  * <p>
@@ -50,6 +51,39 @@ public interface BaggageProvider<B extends BaggageContext> {
      */
     public B join(B left, B right);
 
+    /**
+     * Merge the contents of all of the provided baggage instances and return as baggage. This is equivalent to
+     * successively calling {@link #join(BaggageContext, BaggageContext)}, but implementations can override it to
+     * merge many instances at once more efficiently, e.g., when joining the results of many parallel branches. The
+     * provided instances should be treated as discarded (or reused) after this method call.
+     * 
+     * @param baggages baggage instances to merge, each possibly null
+     * @return a baggage instance with merged contents from all of <code>baggages</code>
+     */
+    public default B joinAll(Collection<B> baggages) {
+        B joined = null;
+        for (B baggage : baggages) {
+            joined = join(joined, baggage);
+        }
+        return joined;
+    }
+
+    /**
+     * Merge <code>right</code> into <code>left</code>, as {@link #join(BaggageContext, BaggageContext)}, but with the
+     * additional guarantee from the caller that <code>right</code> is being absorbed into <code>left</code>: any state
+     * that only <code>right</code> knows about is not held by any other baggage instance, e.g., because
+     * <code>right</code> was branched from <code>left</code> and has not been serialized or branched since. This lets
+     * implementations fold state rather than accumulate it. By default, this is the same as
+     * {@link #join(BaggageContext, BaggageContext)}.
+     * 
+     * @param left a baggage instance, possibly null
+     * @param right a baggage instance, possibly null, that will not be joined anywhere else
+     * @return a baggage instance with merged contents from <code>left</code> and <code>right</code>
+     */
+    public default B compact(B left, B right) {
+        return join(left, right);
+    }
+
     /**
      * Deserialize the provided serialized baggage representation.
      * 
@@ -1,6 +1,10 @@
 package brown.tracingplane;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 
 /**
  * <p>
@@ -13,20 +17,49 @@ import java.nio.ByteBuffer;
  * override the {@link BaggageProvider} implementation in use, then set the <code>baggage.provider</code> property to
  * the {@link BaggageProviderFactory} of your choice.
  * </p>
+ * 
+ * <p>
+ * The provider is bound into a {@link MutableCallSite}, so that the JIT treats it as a constant and can inline its
+ * methods into callers. With the no-op provider configured, calls to this class compile away entirely.
+ * </p>
  *
  */
 public class Baggage {
 
-    static BaggageProvider<BaggageContext> provider = DefaultBaggageProvider.getWrapped();
+    private static final MutableCallSite providerSite = new MutableCallSite(constant(DefaultBaggageProvider.getWrapped()));
+    private static final MethodHandle providerHandle = providerSite.dynamicInvoker();
 
     /** Not instantiable */
     private Baggage() {}
 
+    private static MethodHandle constant(BaggageProvider<BaggageContext> provider) {
+        return MethodHandles.constant(BaggageProvider.class, provider);
+    }
+
+    /** @return the provider in use by the static API */
+    @SuppressWarnings("unchecked")
+    static BaggageProvider<BaggageContext> provider() {
+        try {
+            return (BaggageProvider<BaggageContext>) providerHandle.invokeExact();
+        } catch (Throwable t) {
+            throw new AssertionError(t); // A constant method handle does not throw
+        }
+    }
+
+    /**
+     * Replaces the provider in use by the static API, e.g., for tests. Code that was compiled against the previous
+     * provider is deoptimized.
+     */
+    static void setProvider(BaggageProvider<BaggageContext> provider) {
+        providerSite.setTarget(constant(provider));
+        MutableCallSite.syncAll(new MutableCallSite[] { providerSite });
+    }
+
     /**
      * @return a new instance of {@link B}, which may be null to indicate an empty baggage
      */
     public static BaggageContext newInstance() {
-        return provider.newInstance();
+        return provider().newInstance();
     }
 
     /**
@@ -37,7 +70,7 @@ public class Baggage {
      * @param baggage a baggage context
      */
     public static void discard(BaggageContext baggage) {
-        provider.discard(baggage);
+        provider().discard(baggage);
     }
 
     /**
@@ -49,7 +82,7 @@ public class Baggage {
      * @return a baggage instance branched from <code>from</code>, possibly null
      */
     public static BaggageContext branch(BaggageContext from) {
-        return provider.branch(from);
+        return provider().branch(from);
     }
 
     /**
@@ -61,7 +94,32 @@ public class Baggage {
      * @return a baggage instance with merged contents from <code>left</code> and <code>right</code>
      */
     public static BaggageContext join(BaggageContext left, BaggageContext right) {
-        return provider.join(left, right);
+        return provider().join(left, right);
+    }
+
+    /**
+     * Merge the contents of all of the provided baggage instances and return as baggage. This is more efficient than
+     * successive calls to {@link #join(BaggageContext, BaggageContext)} when joining many instances, e.g., the results
+     * of a scatter/gather. The provided instances should be treated as discarded (or reused) after this method call.
+     * 
+     * @param baggages baggage instances, each possibly null
+     * @return a baggage instance with merged contents from all of <code>baggages</code>
+     */
+    public static BaggageContext joinAll(Collection<BaggageContext> baggages) {
+        return provider().joinAll(baggages);
+    }
+
+    /**
+     * Merge <code>right</code> into <code>left</code>, as {@link #join(BaggageContext, BaggageContext)}, where the
+     * caller guarantees that <code>right</code> will not be joined anywhere else; see
+     * {@link BaggageProvider#compact(BaggageContext, BaggageContext)}.
+     * 
+     * @param left a baggage instance, possibly null
+     * @param right a baggage instance, possibly null
+     * @return a baggage instance with merged contents from <code>left</code> and <code>right</code>
+     */
+    public static BaggageContext compact(BaggageContext left, BaggageContext right) {
+        return provider().compact(left, right);
     }
 
     /**
@@ -71,7 +129,7 @@ public class Baggage {
      * @return a deserialized baggage instance, possibly null
      */
     public static BaggageContext deserialize(byte[] serialized) {
-        return provider.deserialize(serialized, 0, serialized == null ? 0 : serialized.length);
+        return provider().deserialize(serialized, 0, serialized == null ? 0 : serialized.length);
     }
 
     /**
@@ -83,7 +141,7 @@ public class Baggage {
      * @return a deserialized baggage instance, possibly null
      */
     public static BaggageContext deserialize(byte[] serialized, int offset, int length) {
-        return provider.deserialize(serialized, offset, length);
+        return provider().deserialize(serialized, offset, length);
     }
 
     /**
@@ -93,7 +151,7 @@ public class Baggage {
      * @return a deserialized baggage instance, possibly null
      */
     public static BaggageContext deserialize(ByteBuffer buf) {
-        return provider.deserialize(buf);
+        return provider().deserialize(buf);
     }
 
     /**
@@ -104,7 +162,7 @@ public class Baggage {
      * @return the serialized representation of <code>baggage</code>, which might be null or an empty byte array
      */
     public static byte[] serialize(BaggageContext baggage) {
-        return provider.serialize(baggage);
+        return provider().serialize(baggage);
     }
 
     /**
@@ -117,7 +175,7 @@ public class Baggage {
      * @return the serialized representation of <code>baggage</code>, which might be null or an empty byte array
      */
     public static byte[] serialize(BaggageContext baggage, int maximumSerializedSize) {
-        return provider.serialize(baggage, maximumSerializedSize);
+        return provider().serialize(baggage, maximumSerializedSize);
     }
 
 }
@@ -1,6 +1,9 @@
 package brown.tracingplane;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -74,6 +77,28 @@ class BaggageProviderProxy<B extends BaggageContext> implements BaggageProvider<
         return null;
     }
 
+    @Override
+    public BaggageContext compact(BaggageContext left, BaggageContext right) {
+        if (provider.isValid(left) && provider.isValid(right)) {
+            return provider.compact((B) left, (B) right);
+        }
+        return join(left, right);
+    }
+
+    @Override
+    public BaggageContext joinAll(Collection<BaggageContext> baggages) {
+        List<B> valid = new ArrayList<>(baggages.size());
+        for (BaggageContext baggage : baggages) {
+            if (provider.isValid(baggage)) {
+                valid.add((B) baggage);
+            } else {
+                log.warn("discarding incompatible baggage to {}.joinAll; baggage class is {}",
+                         provider.getClass().getName(), baggage.getClass().getName());
+            }
+        }
+        return provider.joinAll(valid);
+    }
+
     @Override
     public BaggageContext deserialize(byte[] serialized, int offset, int length) {
         return provider.deserialize(serialized, offset, length);
@@ -12,18 +12,24 @@ import brown.tracingplane.impl.NoOpBaggageContextProviderFactory;
  * <p>
  * Loads the {@link BaggageProviderFactory} specified by <code>baggage.provider</code> using reflection.
  * </p>
+ * 
+ * <p>
+ * By default, the loaded provider is used as-is by the static {@link Baggage} API, so baggage instances of the wrong type
+ * will cause a {@link ClassCastException}. Setting <code>baggage.validate</code> to true wraps the provider with a
+ * {@link BaggageProviderProxy}, which checks {@link BaggageProvider#isValid(BaggageContext)} on every argument and
+ * instead logs and discards incompatible baggage.
+ * </p>
  */
 public class DefaultBaggageProvider {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultBaggageProvider.class);
 
     private final BaggageProviderFactory factory;
-    private final BaggageProvider<? extends BaggageContext> provider;
-    private final BaggageProvider<BaggageContext> wrappedProvider;
-
-    private DefaultBaggageProvider() {
-        Config config = ConfigFactory.load();
+    final BaggageProvider<? extends BaggageContext> provider;
+    final BaggageProvider<BaggageContext> wrappedProvider;
 
+    @SuppressWarnings("unchecked")
+    DefaultBaggageProvider(Config config) {
         BaggageProviderFactory factory = null;
         if (!config.hasPath("baggage.provider")) {
             log.warn("No BaggageProviderFactory has been configured using baggage.provider -- baggage propagation will be disabled");
@@ -59,21 +65,36 @@ public class DefaultBaggageProvider {
         } else {
             this.factory = factory;
             this.provider = factory.provider();
-            this.wrappedProvider = BaggageProviderProxy.wrap(this.provider);
+            if (validate(config)) {
+                this.wrappedProvider = BaggageProviderProxy.wrap(this.provider);
+            } else {
+                this.wrappedProvider = (BaggageProvider<BaggageContext>) this.provider;
+            }
+        }
+    }
+
+    /** @return true if <code>baggage.validate</code> is configured to be true */
+    private static boolean validate(Config config) {
+        if (!config.hasPath("baggage.validate")) {
+            return false;
+        }
+        try {
+            return config.getBoolean("baggage.validate");
+        } catch (ConfigException.WrongType e) {
+            Object v = config.getAnyRef("baggage.validate");
+            log.error("Invalid baggage.validate has been configured -- baggage will not be validated.  Expected a boolean for baggage.validate, found " +
+                      v.getClass().getName() + ": " + v);
+            return false;
         }
     }
 
-    private static DefaultBaggageProvider instance = null;
+    /** Lazily loads the configured provider the first time it is used; class initialization makes this thread-safe */
+    private static class Holder {
+        static final DefaultBaggageProvider instance = new DefaultBaggageProvider(ConfigFactory.load());
+    }
 
     private static DefaultBaggageProvider instance() {
-        if (instance == null) {
-            synchronized (DefaultBaggageProvider.class) {
-                if (instance == null) {
-                    instance = new DefaultBaggageProvider();
-                }
-            }
-        }
-        return instance;
+        return Holder.instance;
     }
 
     /**
@@ -86,9 +107,9 @@ public class DefaultBaggageProvider {
     }
 
     /**
-     * @return the configured {@link BaggageProvider} instance, wrapped with a {@link BaggageProviderProxy}. The default
-     *         baggage provider can be set using -Dbaggage.provider. If no instance has been configured, this method
-     *         will return a {@link NoOpBaggageContextProvider}.
+     * @return the configured {@link BaggageProvider} instance, wrapped with a {@link BaggageProviderProxy} if
+     *         <code>baggage.validate</code> is true. The default baggage provider can be set using -Dbaggage.provider.
+     *         If no instance has been configured, this method will return a {@link NoOpBaggageContextProvider}.
      */
     public static BaggageProvider<BaggageContext> getWrapped() {
         return instance().wrappedProvider;
@@ -1,6 +1,7 @@
 package brown.tracingplane.impl;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import brown.tracingplane.BaggageContext;
 import brown.tracingplane.BaggageProvider;
 
@@ -32,6 +33,11 @@ public class NoOpBaggageContextProvider implements BaggageProvider<BaggageContex
         return null;
     }
 
+    @Override
+    public BaggageContext joinAll(Collection<BaggageContext> baggages) {
+        return null;
+    }
+
     @Override
     public BaggageContext deserialize(byte[] serialized, int offset, int length) {
         return null;
@@ -3,9 +3,13 @@ package brown.tracingplane;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.Test;
+import com.typesafe.config.ConfigFactory;
 import brown.tracingplane.impl.NoOpBaggageContextProvider;
 
 public class TestStaticAPI {
@@ -26,7 +30,7 @@ public class TestStaticAPI {
 
     @Test
     public void testStaticAPICallsInvokeDefaultProvider() {
-        assertEquals(DefaultBaggageProvider.get(), Baggage.provider);
+        assertEquals(DefaultBaggageProvider.get(), Baggage.provider());
 
         assertNull(Baggage.newInstance());
         assertNull(Baggage.branch(null));
@@ -136,9 +140,9 @@ public class TestStaticAPI {
 
     @Test
     public void testStaticAPICallsInvokeProvider() {
-        BaggageProvider<BaggageContext> originalProvider = Baggage.provider;
+        BaggageProvider<BaggageContext> originalProvider = Baggage.provider();
         BaggageProviderForTest providerForTest = new BaggageProviderForTest();
-        Baggage.provider = BaggageProviderProxy.wrap(providerForTest);
+        Baggage.setProvider(BaggageProviderProxy.wrap(providerForTest));
 
         try {
             providerForTest.expect(0, 0, 0, 0, 0, 0, 0, 0, 0);
@@ -161,8 +165,42 @@ public class TestStaticAPI {
             Baggage.deserialize((byte[]) null);
             providerForTest.expect(0, 0, 0, 0, 0, 1, 0, 0, 0);
         } finally {
-            Baggage.provider = originalProvider;
+            Baggage.setProvider(originalProvider);
         }
     }
 
+    public static class BaggageProviderFactoryForTest implements BaggageProviderFactory {
+        @Override
+        public BaggageProvider<?> provider() {
+            return new BaggageProviderForTest();
+        }
+    }
+
+    private static DefaultBaggageProvider load(Object validate) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("baggage.provider", BaggageProviderFactoryForTest.class.getName());
+        if (validate != null) {
+            config.put("baggage.validate", validate);
+        }
+        return new DefaultBaggageProvider(ConfigFactory.parseMap(config));
+    }
+
+    @Test
+    public void testValidationIsOptIn() {
+        DefaultBaggageProvider unvalidated = load(null);
+        assertTrue(unvalidated.provider instanceof BaggageProviderForTest);
+        assertSame(unvalidated.provider, unvalidated.wrappedProvider);
+
+        DefaultBaggageProvider disabled = load(false);
+        assertSame(disabled.provider, disabled.wrappedProvider);
+
+        DefaultBaggageProvider invalid = load("sometimes");
+        assertSame(invalid.provider, invalid.wrappedProvider);
+
+        DefaultBaggageProvider validated = load(true);
+        assertTrue(validated.wrappedProvider instanceof BaggageProviderProxy);
+        validated.wrappedProvider.branch(null);
+        assertEquals(1, ((BaggageProviderForTest) validated.provider).isValid);
+    }
+
 }
@@ -1,6 +1,10 @@
 package brown.tracingplane;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 
 /**
  * <p>
@@ -29,20 +33,48 @@ import java.nio.ByteBuffer;
  * <code>baggage.provider</code> property). By default, the {@link TransitLayer} used will be
  * {@link ThreadLocalTransitLayer}; this can be overridden using <code>baggage.transit</code>.
  * </p>
+ * 
+ * <p>
+ * Like the provider of {@link Baggage}, the transit layer is bound into a {@link MutableCallSite}, so that the JIT
+ * treats it as a constant and can inline its methods into callers.
+ * </p>
  *
  */
 public class ActiveBaggage {
 
-    static TransitLayer transit = DefaultTransitLayer.get();
+    private static final MutableCallSite transitSite = new MutableCallSite(constant(DefaultTransitLayer.get()));
+    private static final MethodHandle transitHandle = transitSite.dynamicInvoker();
 
     /** Not instantiable */
     private ActiveBaggage() {}
 
+    private static MethodHandle constant(TransitLayer transit) {
+        return MethodHandles.constant(TransitLayer.class, transit);
+    }
+
+    /** @return the transit layer in use by the static API */
+    static TransitLayer transit() {
+        try {
+            return (TransitLayer) transitHandle.invokeExact();
+        } catch (Throwable t) {
+            throw new AssertionError(t); // A constant method handle does not throw
+        }
+    }
+
+    /**
+     * Replaces the transit layer in use by the static API, e.g., for tests. Code that was compiled against the previous
+     * transit layer is deoptimized.
+     */
+    static void setTransit(TransitLayer transit) {
+        transitSite.setTarget(constant(transit));
+        MutableCallSite.syncAll(new MutableCallSite[] { transitSite });
+    }
+
     /**
      * Discard the currently active {@link BaggageContext}.
      */
     public static void discard() {
-        transit.discard();
+        transit().discard();
     }
 
     /**
@@ -53,7 +85,7 @@ public class ActiveBaggage {
      * @return a baggage instance branched from the currently active context, possibly null
      */
     public static BaggageContext branch() {
-        return transit.branch();
+        return transit().branch();
     }
 
     /**
@@ -64,7 +96,7 @@ public class ActiveBaggage {
      * @return a baggage instance branched from the currently active context and serialized, possibly null
      */
     public static byte[] branchBytes() {
-        return transit.branchBytes();
+        return transit().branchBytes();
     }
 
     /**
@@ -74,7 +106,18 @@ public class ActiveBaggage {
      * @param otherContext another baggage context, possibly null
      */
     public static void join(BaggageContext otherContext) {
-        transit.join(otherContext);
+        transit().join(otherContext);
+    }
+
+    /**
+     * Merges the contents of all of <code>otherContexts</code> into the currently active context, e.g., the contexts
+     * returned by many parallel branches. This is more efficient than calling {@link #join(BaggageContext)} for each.
+     * <code>otherContexts</code> should not be reused after calling this method, and should be treated as discarded.
+     * 
+     * @param otherContexts other baggage contexts, each possibly null
+     */
+    public static void joinAll(Collection<BaggageContext> otherContexts) {
+        transit().joinAll(otherContexts);
     }
 
     /**
@@ -83,7 +126,7 @@ public class ActiveBaggage {
      * @param serializedContext a serialized baggage context, possibly null
      */
     public static void join(ByteBuffer serializedContext) {
-        transit.join(serializedContext);
+        transit().join(serializedContext);
     }
 
     /**
@@ -94,7 +137,7 @@ public class ActiveBaggage {
      * @param length length of bytes to use
      */
     public static void join(byte[] serialized, int offset, int length) {
-        transit.join(serialized, offset, length);
+        transit().join(serialized, offset, length);
     }
 
     /**
@@ -105,7 +148,7 @@ public class ActiveBaggage {
      * @param baggage The new baggage context to activate.
      */
     public static void set(BaggageContext baggage) {
-        transit.set(baggage);
+        transit().set(baggage);
     }
 
     /**
@@ -115,7 +158,7 @@ public class ActiveBaggage {
      * @param serializedContext a serialized baggage context, possibly null
      */
     public static void set(ByteBuffer serializedContext) {
-        transit.set(serializedContext);
+        transit().set(serializedContext);
     }
 
     /**
@@ -126,7 +169,7 @@ public class ActiveBaggage {
      * @param length length of serialized bytes
      */
     public static void set(byte[] serialized, int offset, int length) {
-        transit.set(serialized, offset, length);
+        transit().set(serialized, offset, length);
     }
 
     /**
@@ -136,7 +179,7 @@ public class ActiveBaggage {
      * @return the current {@link BaggageContext}.
      */
     public static BaggageContext take() {
-        return transit.take();
+        return transit().take();
     }
 
     /**
@@ -146,7 +189,7 @@ public class ActiveBaggage {
      * @return the current {@link BaggageContext}.
      */
     public static byte[] takeBytes() {
-        return transit.takeBytes();
+        return transit().takeBytes();
     }
 
     /**
@@ -156,7 +199,7 @@ public class ActiveBaggage {
      * @return the active {@link BaggageContext}
      */
     public static BaggageContext peek() {
-        return transit.peek();
+        return transit().peek();
     }
 
     /**
@@ -168,7 +211,7 @@ public class ActiveBaggage {
      * @param context an updated version of the currently active baggage context.
      */
     public static void update(BaggageContext baggage) {
-        transit.update(baggage);
+        transit().update(baggage);
     }
 
 }
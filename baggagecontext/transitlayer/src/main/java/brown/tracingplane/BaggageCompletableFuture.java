@@ -0,0 +1,76 @@
+package brown.tracingplane;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link CompletableFuture} for a {@link BaggageTask}. Like {@link BaggageFuture}, once the task has finished, the
+ * first call to <code>get</code>, <code>join</code> or <code>getNow</code> joins the task's resulting baggage into the
+ * active baggage of the calling execution. Dependent stages, e.g., from <code>thenApply</code>, do not join it.
+ */
+class BaggageCompletableFuture<V> extends CompletableFuture<V> {
+
+    final BaggageTask<V> task;
+
+    BaggageCompletableFuture(BaggageTask<V> task) {
+        this.task = task;
+    }
+
+    /** Runs the task on the current thread and completes this future with its outcome */
+    void run() {
+        V value;
+        try {
+            value = task.call();
+        } catch (Throwable t) {
+            completeExceptionally(t);
+            return;
+        }
+        complete(value);
+    }
+
+    void joinResult() {
+        BaggageContext result = task.takeResult();
+        if (result != null) {
+            ActiveBaggage.join(result);
+        }
+    }
+
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+        try {
+            return super.get();
+        } finally {
+            joinResult();
+        }
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            return super.get(timeout, unit);
+        } finally {
+            joinResult();
+        }
+    }
+
+    @Override
+    public V join() {
+        try {
+            return super.join();
+        } finally {
+            joinResult();
+        }
+    }
+
+    @Override
+    public V getNow(V valueIfAbsent) {
+        try {
+            return super.getNow(valueIfAbsent);
+        } finally {
+            joinResult();
+        }
+    }
+
+}
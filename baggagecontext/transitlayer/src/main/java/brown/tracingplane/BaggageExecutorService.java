@@ -0,0 +1,151 @@
+package brown.tracingplane;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An {@link ExecutorService} that wraps submitted tasks in {@link BaggageTask}s; see
+ * {@link BaggageExecutors#wrap(ExecutorService)}
+ */
+class BaggageExecutorService implements ExecutorService {
+
+    final ExecutorService executor;
+
+    BaggageExecutorService(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(BaggageTask.discardingResult(command));
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        BaggageTask<T> wrapped = BaggageTask.of(task);
+        return new BaggageFuture<>(executor.submit((Callable<T>) wrapped), wrapped);
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result) {
+        BaggageTask<Void> wrapped = BaggageTask.of(task);
+        return new BaggageFuture<>(executor.submit((Runnable) wrapped, result), wrapped);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        BaggageTask<Void> wrapped = BaggageTask.of(task);
+        return new BaggageFuture<>(executor.submit((Callable<Void>) wrapped), wrapped);
+    }
+
+    private static <T> List<BaggageTask<T>> wrapAll(Collection<? extends Callable<T>> tasks) {
+        List<BaggageTask<T>> wrapped = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            wrapped.add(BaggageTask.of(task));
+        }
+        return wrapped;
+    }
+
+    private static <T> List<Future<T>> wrapFutures(List<Future<T>> futures, List<BaggageTask<T>> tasks) {
+        List<Future<T>> wrapped = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            wrapped.add(new BaggageFuture<>(futures.get(i), tasks.get(i)));
+        }
+        return wrapped;
+    }
+
+    /** Joins the resulting baggage of all finished tasks into the active baggage */
+    static void joinResults(Collection<? extends BaggageTask<?>> tasks) {
+        List<BaggageContext> results = new ArrayList<>(tasks.size());
+        for (BaggageTask<?> task : tasks) {
+            BaggageContext result = task.takeResult();
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        if (results.size() == 1) {
+            ActiveBaggage.join(results.get(0));
+        } else if (results.size() > 1) {
+            ActiveBaggage.joinAll(results);
+        }
+    }
+
+    /** The resulting baggage of all tasks is joined into the active baggage once, after all of the tasks finish */
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        List<BaggageTask<T>> wrapped = wrapAll(tasks);
+        try {
+            return wrapFutures(executor.invokeAll(wrapped), wrapped);
+        } finally {
+            joinResults(wrapped);
+        }
+    }
+
+    /** See {@link #invokeAll(Collection)}; tasks that do not finish in time are joined by their futures' get methods */
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout,
+                                         TimeUnit unit) throws InterruptedException {
+        List<BaggageTask<T>> wrapped = wrapAll(tasks);
+        try {
+            return wrapFutures(executor.invokeAll(wrapped, timeout, unit), wrapped);
+        } finally {
+            joinResults(wrapped);
+        }
+    }
+
+    /** The resulting baggage of every task that finished, not just the successful one, is joined */
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException,
+                                                                   ExecutionException {
+        List<BaggageTask<T>> wrapped = wrapAll(tasks);
+        try {
+            return executor.invokeAny(wrapped);
+        } finally {
+            joinResults(wrapped);
+        }
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout,
+                           TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        List<BaggageTask<T>> wrapped = wrapAll(tasks);
+        try {
+            return executor.invokeAny(wrapped, timeout, unit);
+        } finally {
+            joinResults(wrapped);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+}
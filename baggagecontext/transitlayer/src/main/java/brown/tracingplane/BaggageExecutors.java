@@ -0,0 +1,177 @@
+package brown.tracingplane;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Wrappers for executors and futures that propagate the {@link ActiveBaggage} of the submitting execution to the tasks
+ * it submits, and join the tasks' baggage back once they finish.
+ * </p>
+ *
+ * <p>
+ * Each submitted task branches the submitting execution's active baggage exactly once, when it is submitted. If the
+ * submitting execution has no active baggage, nothing is branched. While a task runs, its branched baggage is the
+ * active baggage of the worker thread, and the worker thread's previous baggage is restored when the task finishes.
+ * </p>
+ *
+ * <p>
+ * The baggage that is active when a task finishes is joined into the active baggage of whichever execution first calls
+ * <code>get</code> on the task's future (or <code>join</code>, for {@link CompletableFuture}s).
+ * {@link ExecutorService#invokeAll(Collection)} joins the baggage of all of the tasks at once, using
+ * {@link ActiveBaggage#joinAll(Collection)}, and {@link #joinAll(Collection)} does the same for futures of tasks
+ * submitted individually. Tasks submitted with {@link Executor#execute(Runnable)} have no future, so their baggage is
+ * discarded.
+ * </p>
+ */
+public class BaggageExecutors {
+
+    /** Not instantiable */
+    private BaggageExecutors() {}
+
+    /**
+     * @param task a task to run with a branch of the currently active baggage
+     * @return a task that runs <code>task</code> with a branch of the currently active baggage, then discards it
+     */
+    public static Runnable wrap(Runnable task) {
+        return BaggageTask.discardingResult(task);
+    }
+
+    /**
+     * @param task a task to run with a branch of the currently active baggage
+     * @return a task that runs <code>task</code> with a branch of the currently active baggage, then discards it
+     */
+    public static <V> Callable<V> wrap(Callable<V> task) {
+        return BaggageTask.discardingResult(task);
+    }
+
+    /**
+     * @param executor an executor
+     * @return an executor that runs tasks with a branch of the baggage that was active when they were submitted
+     */
+    public static Executor wrap(Executor executor) {
+        if (executor instanceof ExecutorService) {
+            return wrap((ExecutorService) executor);
+        }
+        return command -> executor.execute(BaggageTask.discardingResult(command));
+    }
+
+    /**
+     * Wraps an {@link ExecutorService}, including a {@link ForkJoinPool}, as described in {@link BaggageExecutors}
+     *
+     * @param executor an executor service
+     * @return an executor service that propagates baggage to and from the tasks submitted to it
+     */
+    public static ExecutorService wrap(ExecutorService executor) {
+        if (executor instanceof ScheduledExecutorService) {
+            return wrap((ScheduledExecutorService) executor);
+        } else if (executor instanceof BaggageExecutorService) {
+            return executor;
+        }
+        return new BaggageExecutorService(executor);
+    }
+
+    /**
+     * Wraps a {@link ScheduledExecutorService} as described in {@link BaggageExecutors}. Periodic tasks branch the
+     * baggage that was active when they were scheduled each time they run, and their baggage is always discarded.
+     *
+     * @param executor a scheduled executor service
+     * @return a scheduled executor service that propagates baggage to and from the tasks submitted to it
+     */
+    public static ScheduledExecutorService wrap(ScheduledExecutorService executor) {
+        if (executor instanceof BaggageScheduledExecutorService) {
+            return executor;
+        }
+        return new BaggageScheduledExecutorService(executor);
+    }
+
+    /**
+     * @return {@link ForkJoinPool#commonPool()}, wrapped as described in {@link BaggageExecutors}
+     */
+    public static ExecutorService commonPool() {
+        return wrap(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Like {@link CompletableFuture#supplyAsync(Supplier, Executor)}, but the supplier runs with a branch of the
+     * currently active baggage. The supplier's resulting baggage is joined by the first call to <code>get</code> or
+     * <code>join</code> on the returned future, but not by dependent stages.
+     *
+     * @param supplier a function returning the value to complete the future with
+     * @param executor the executor to run the supplier with
+     * @return a new {@link CompletableFuture}
+     */
+    public static <U> CompletableFuture<U> supplyAsync(Supplier<U> supplier, Executor executor) {
+        BaggageCompletableFuture<U> future = new BaggageCompletableFuture<>(BaggageTask.of(supplier::get));
+        unwrap(executor).execute(future::run);
+        return future;
+    }
+
+    /**
+     * Like {@link #supplyAsync(Supplier, Executor)}, using {@link ForkJoinPool#commonPool()}
+     *
+     * @param supplier a function returning the value to complete the future with
+     * @return a new {@link CompletableFuture}
+     */
+    public static <U> CompletableFuture<U> supplyAsync(Supplier<U> supplier) {
+        return supplyAsync(supplier, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Like {@link CompletableFuture#runAsync(Runnable, Executor)}, but the task runs with a branch of the currently
+     * active baggage; see {@link #supplyAsync(Supplier, Executor)}
+     *
+     * @param runnable the task to run
+     * @param executor the executor to run the task with
+     * @return a new {@link CompletableFuture}
+     */
+    public static CompletableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        BaggageCompletableFuture<Void> future = new BaggageCompletableFuture<>(BaggageTask.of(runnable));
+        unwrap(executor).execute(future::run);
+        return future;
+    }
+
+    /**
+     * Like {@link #runAsync(Runnable, Executor)}, using {@link ForkJoinPool#commonPool()}
+     *
+     * @param runnable the task to run
+     * @return a new {@link CompletableFuture}
+     */
+    public static CompletableFuture<Void> runAsync(Runnable runnable) {
+        return runAsync(runnable, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Joins the resulting baggage of the finished tasks of <code>futures</code> into the currently active baggage, with
+     * a single call to {@link ActiveBaggage#joinAll(Collection)}. The futures should have been returned by an executor
+     * or method of {@link BaggageExecutors}; other futures are ignored, as are futures whose baggage was already joined.
+     *
+     * @param futures futures of tasks submitted using {@link BaggageExecutors}
+     */
+    public static void joinAll(Collection<? extends Future<?>> futures) {
+        List<BaggageTask<?>> tasks = new ArrayList<>(futures.size());
+        for (Future<?> future : futures) {
+            if (future instanceof BaggageFuture) {
+                tasks.add(((BaggageFuture<?>) future).task);
+            } else if (future instanceof BaggageCompletableFuture) {
+                tasks.add(((BaggageCompletableFuture<?>) future).task);
+            }
+        }
+        BaggageExecutorService.joinResults(tasks);
+    }
+
+    /** Tasks that are already wrapped would otherwise branch the submitting execution's baggage a second time */
+    private static Executor unwrap(Executor executor) {
+        return executor instanceof BaggageExecutorService ? ((BaggageExecutorService) executor).executor : executor;
+    }
+
+}
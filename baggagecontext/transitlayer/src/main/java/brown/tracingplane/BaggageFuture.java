@@ -0,0 +1,63 @@
+package brown.tracingplane;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link Future} for a {@link BaggageTask}. Once the task has finished, the first call to <code>get</code> joins the
+ * task's resulting baggage into the active baggage of the calling execution.
+ */
+class BaggageFuture<V> implements Future<V> {
+
+    final Future<V> future;
+    final BaggageTask<?> task;
+
+    BaggageFuture(Future<V> future, BaggageTask<?> task) {
+        this.future = future;
+        this.task = task;
+    }
+
+    /** Joins the task's resulting baggage into the active baggage, if the task has finished and it was not joined yet */
+    void joinResult() {
+        BaggageContext result = task.takeResult();
+        if (result != null) {
+            ActiveBaggage.join(result);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return future.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return future.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+        try {
+            return future.get();
+        } finally {
+            joinResult();
+        }
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            return future.get(timeout, unit);
+        } finally {
+            joinResult();
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package brown.tracingplane;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScheduledExecutorService} that wraps submitted tasks in {@link BaggageTask}s; see
+ * {@link BaggageExecutors#wrap(ScheduledExecutorService)}
+ */
+class BaggageScheduledExecutorService extends BaggageExecutorService implements ScheduledExecutorService {
+
+    BaggageScheduledExecutorService(ScheduledExecutorService executor) {
+        super(executor);
+    }
+
+    private ScheduledExecutorService scheduler() {
+        return (ScheduledExecutorService) executor;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        BaggageTask<Void> wrapped = BaggageTask.of(command);
+        return new BaggageScheduledFuture<>(scheduler().schedule((Callable<Void>) wrapped, delay, unit), wrapped);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        BaggageTask<V> wrapped = BaggageTask.of(callable);
+        return new BaggageScheduledFuture<>(scheduler().schedule((Callable<V>) wrapped, delay, unit), wrapped);
+    }
+
+    /** Each run of the task branches the baggage that was active when it was scheduled, and discards its result */
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return scheduler().scheduleAtFixedRate(BaggageTask.periodic(command), initialDelay, period, unit);
+    }
+
+    /** Each run of the task branches the baggage that was active when it was scheduled, and discards its result */
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return scheduler().scheduleWithFixedDelay(BaggageTask.periodic(command), initialDelay, delay, unit);
+    }
+
+}
@@ -0,0 +1,26 @@
+package brown.tracingplane;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScheduledFuture} for a one-shot {@link BaggageTask}; see {@link BaggageFuture}
+ */
+class BaggageScheduledFuture<V> extends BaggageFuture<V> implements ScheduledFuture<V> {
+
+    BaggageScheduledFuture(ScheduledFuture<V> future, BaggageTask<?> task) {
+        super(future, task);
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return ((ScheduledFuture<V>) future).getDelay(unit);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+        return ((ScheduledFuture<V>) future).compareTo(o);
+    }
+
+}
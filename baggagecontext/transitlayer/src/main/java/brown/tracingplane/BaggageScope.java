@@ -0,0 +1,187 @@
+package brown.tracingplane;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <p>
+ * A structured fork/join scope for baggage. Subtasks forked in the scope each run with a branch of the baggage that was
+ * active when they were forked, and the resulting baggage of all of the subtasks is joined back into the active baggage
+ * of the scope's owner with a single {@link ActiveBaggage#joinAll(java.util.Collection)}, when the owner calls
+ * {@link #join()} or closes the scope. For example:
+ *
+ * <pre>
+ * try (BaggageScope scope = BaggageScope.open(executor)) {
+ *     Future&lt;A&gt; a = scope.fork(() -&gt; fetchA());
+ *     Future&lt;B&gt; b = scope.fork(() -&gt; fetchB());
+ *     scope.join();
+ *     return combine(a.get(), b.get());
+ * }
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * Subtasks run on the executor the scope was opened with, so any executor can be used, including a thread-per-task
+ * executor. Unlike futures returned by {@link BaggageExecutors}, the futures returned by {@link #fork(Callable)} do not
+ * join baggage themselves; only the scope does. The baggage of subtasks that are cancelled while running is discarded.
+ * </p>
+ *
+ * <p>
+ * A scope is owned by the thread that opened it, and only the owner may join or close it.
+ * </p>
+ */
+public class BaggageScope implements AutoCloseable {
+
+    private final Executor executor;
+    private final Thread owner;
+    private final List<BaggageTask<?>> tasks = new ArrayList<>();
+    private final List<Future<?>> futures = new ArrayList<>();
+    private volatile boolean closed = false;
+
+    private BaggageScope(Executor executor) {
+        this.executor = executor;
+        this.owner = Thread.currentThread();
+    }
+
+    /**
+     * Opens a new scope owned by the current thread
+     *
+     * @param executor the executor that subtasks forked in the scope will run on
+     * @return a new scope
+     */
+    public static BaggageScope open(Executor executor) {
+        return new BaggageScope(executor);
+    }
+
+    /**
+     * Forks a subtask that runs with a branch of the currently active baggage. If there is no active baggage, nothing is
+     * branched.
+     *
+     * @param task the subtask to run
+     * @return a future for the subtask's result
+     * @throws IllegalStateException if the scope is closed
+     */
+    public <T> Future<T> fork(Callable<T> task) {
+        if (closed) {
+            throw new IllegalStateException("BaggageScope is closed");
+        }
+        BaggageTask<T> wrapped = BaggageTask.of(task);
+        FutureTask<T> future = new FutureTask<>(wrapped);
+        synchronized (tasks) {
+            tasks.add(wrapped);
+            futures.add(future);
+        }
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Like {@link #fork(Callable)}, for a subtask that returns no result
+     *
+     * @param task the subtask to run
+     * @return a future that completes when the subtask finishes
+     * @throws IllegalStateException if the scope is closed
+     */
+    public Future<?> fork(Runnable task) {
+        return fork(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Waits for all of the subtasks forked so far to finish, then joins their resulting baggage into the currently
+     * active baggage. Subtasks that are forked afterwards are joined by the next call to {@link #join()} or
+     * {@link #close()}.
+     *
+     * @return this scope
+     * @throws InterruptedException if interrupted while waiting; baggage of the subtasks that had finished is joined
+     * @throws IllegalStateException if the current thread does not own the scope
+     */
+    public BaggageScope join() throws InterruptedException {
+        checkOwner();
+        List<BaggageTask<?>> joining;
+        List<Future<?>> waiting;
+        synchronized (tasks) {
+            joining = new ArrayList<>(tasks);
+            waiting = new ArrayList<>(futures);
+        }
+        try {
+            for (Future<?> future : waiting) {
+                await(future);
+            }
+        } finally {
+            // Only subtasks that were done before their results were taken are forgotten; one that finishes afterwards
+            // keeps its result until the next join
+            boolean[] done = new boolean[waiting.size()];
+            List<BaggageTask<?>> finished = new ArrayList<>(joining.size());
+            for (int i = 0; i < done.length; i++) {
+                done[i] = waiting.get(i).isDone();
+                if (done[i]) {
+                    finished.add(joining.get(i));
+                }
+            }
+            BaggageExecutorService.joinResults(finished);
+            synchronized (tasks) {
+                for (int i = done.length - 1; i >= 0; i--) {
+                    if (done[i]) {
+                        tasks.remove(i);
+                        futures.remove(i);
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Closes the scope, waiting for any remaining subtasks to finish and joining their resulting baggage into the
+     * currently active baggage. If the current thread is interrupted while waiting, unfinished subtasks are cancelled
+     * and the interrupt status is restored.
+     *
+     * @throws IllegalStateException if the current thread does not own the scope
+     */
+    @Override
+    public void close() {
+        checkOwner();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            join();
+        } catch (InterruptedException e) {
+            synchronized (tasks) {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+                BaggageExecutorService.joinResults(tasks);
+                tasks.clear();
+                futures.clear();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkOwner() {
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("BaggageScope is owned by " + owner);
+        }
+    }
+
+    /** Waits for the future to finish, ignoring how it finished */
+    private static void await(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException | CancellationException e) {
+            // The subtask's outcome is reported by its own future
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package brown.tracingplane;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Wraps a task so that it runs with baggage that was branched from the submitting execution's active baggage. The
+ * baggage is branched once, when the task is created, and only if the submitting execution has active baggage.
+ * Periodic tasks branch again from that baggage each time they run.
+ * </p>
+ *
+ * <p>
+ * While the task runs, the baggage it was created with is active, and whatever baggage the worker thread had before is
+ * restored afterwards. The baggage that is active when the task finishes is kept, so that it can be joined back into
+ * the submitting execution with {@link #takeResult()}. Tasks created with <code>discardingResult</code> or
+ * {@link #periodic(Runnable)} discard it instead.
+ * </p>
+ */
+final class BaggageTask<V> implements Runnable, Callable<V> {
+
+    private final Callable<V> task;
+    private final boolean keepResult;
+    private final boolean periodic;
+    private BaggageContext baggage;
+    private final AtomicReference<BaggageContext> result;
+
+    private BaggageTask(Callable<V> task, boolean keepResult, boolean periodic) {
+        this.task = task;
+        this.keepResult = keepResult;
+        this.periodic = periodic;
+        this.baggage = ActiveBaggage.peek() == null ? null : ActiveBaggage.branch();
+        this.result = keepResult ? new AtomicReference<>() : null;
+    }
+
+    static <V> BaggageTask<V> of(Callable<V> task) {
+        return new BaggageTask<>(task, true, false);
+    }
+
+    static BaggageTask<Void> of(Runnable task) {
+        return new BaggageTask<>(callable(task), true, false);
+    }
+
+    /** Creates a task whose resulting baggage is discarded, e.g., for {@link java.util.concurrent.Executor#execute} */
+    static BaggageTask<Void> discardingResult(Runnable task) {
+        return new BaggageTask<>(callable(task), false, false);
+    }
+
+    /** Creates a task whose resulting baggage is discarded */
+    static <V> BaggageTask<V> discardingResult(Callable<V> task) {
+        return new BaggageTask<>(task, false, false);
+    }
+
+    /** Creates a task that can run more than once; its resulting baggage is discarded each time */
+    static BaggageTask<Void> periodic(Runnable task) {
+        return new BaggageTask<>(callable(task), false, true);
+    }
+
+    private static Callable<Void> callable(Runnable task) {
+        return () -> {
+            task.run();
+            return null;
+        };
+    }
+
+    @Override
+    public V call() throws Exception {
+        BaggageContext previous = ActiveBaggage.take();
+        if (periodic) {
+            ActiveBaggage.set(baggage == null ? null : branch(baggage));
+        } else {
+            ActiveBaggage.set(baggage);
+            baggage = null;
+        }
+        try {
+            return task.call();
+        } finally {
+            if (keepResult) {
+                result.set(ActiveBaggage.take());
+            } else {
+                ActiveBaggage.discard();
+            }
+            ActiveBaggage.set(previous);
+        }
+    }
+
+    /** Branches <code>baggage</code> with the transit layer's provider; there must be no active baggage */
+    private static BaggageContext branch(BaggageContext baggage) {
+        ActiveBaggage.set(baggage);
+        BaggageContext branched = ActiveBaggage.branch();
+        ActiveBaggage.take();
+        return branched;
+    }
+
+    @Override
+    public void run() {
+        try {
+            call();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the baggage that was active when the task finished, or null if the task has not finished or its baggage
+     *         has already been taken. Returns non-null at most once.
+     */
+    BaggageContext takeResult() {
+        return result == null ? null : result.getAndSet(null);
+    }
+
+}
@@ -61,17 +61,13 @@ public class DefaultTransitLayer {
         }
     }
 
-    private static DefaultTransitLayer instance = null;
+    /** Lazily loads the configured transit layer the first time it is used; class initialization makes this thread-safe */
+    private static class Holder {
+        static final DefaultTransitLayer instance = new DefaultTransitLayer();
+    }
 
     private static DefaultTransitLayer instance() {
-        if (instance == null) {
-            synchronized (DefaultTransitLayer.class) {
-                if (instance == null) {
-                    instance = new DefaultTransitLayer();
-                }
-            }
-        }
-        return instance;
+        return Holder.instance;
     }
 
     /**
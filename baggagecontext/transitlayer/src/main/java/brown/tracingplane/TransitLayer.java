@@ -1,6 +1,7 @@
 package brown.tracingplane;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 
 /**
  * <p>
@@ -71,6 +72,20 @@ public interface TransitLayer {
      */
     public void join(BaggageContext otherContext);
 
+    /**
+     * Merges the contents of all of <code>otherContexts</code> into the currently active context. The provided contexts
+     * should not be reused after calling this method, and should be treated as discarded. The default implementation
+     * joins each context in turn; implementations should override it to use
+     * {@link BaggageProvider#joinAll(Collection)}.
+     * 
+     * @param otherContexts other baggage contexts, each possibly null
+     */
+    public default void joinAll(Collection<BaggageContext> otherContexts) {
+        for (BaggageContext otherContext : otherContexts) {
+            join(otherContext);
+        }
+    }
+
     /**
      * Deserializes the provided context and merges it into the currently active context.
      * 
@@ -0,0 +1,44 @@
+package brown.tracingplane.impl;
+
+import brown.tracingplane.BaggageContext;
+
+/**
+ * <p>
+ * A {@link Thread} with a field that holds its active baggage. {@link BaggageThreadTransitLayer} reads and writes this
+ * field directly instead of going through a {@link ThreadLocal}.
+ * </p>
+ * 
+ * <p>
+ * Thread pools can create {@link BaggageThread}s using a {@link BaggageThreadFactory}.
+ * </p>
+ */
+public class BaggageThread extends Thread {
+
+    /** The active baggage of this thread; only accessed by this thread */
+    BaggageContext baggage;
+
+    public BaggageThread() {
+        super();
+    }
+
+    public BaggageThread(Runnable target) {
+        super(target);
+    }
+
+    public BaggageThread(String name) {
+        super(name);
+    }
+
+    public BaggageThread(Runnable target, String name) {
+        super(target, name);
+    }
+
+    public BaggageThread(ThreadGroup group, Runnable target, String name) {
+        super(group, target, name);
+    }
+
+    public BaggageThread(ThreadGroup group, Runnable target, String name, long stackSize) {
+        super(group, target, name, stackSize);
+    }
+
+}
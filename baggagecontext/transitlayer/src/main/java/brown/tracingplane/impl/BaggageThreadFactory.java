@@ -0,0 +1,65 @@
+package brown.tracingplane.impl;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A {@link ThreadFactory} that creates {@link BaggageThread}s, for use with thread pools when the
+ * {@link BaggageThreadTransitLayer} is in use, e.g.:
+ * 
+ * <pre>
+ * ExecutorService pool = Executors.newFixedThreadPool(16, new BaggageThreadFactory("rpc-handler"));
+ * </pre>
+ * </p>
+ * 
+ * <p>
+ * Like {@link java.util.concurrent.Executors#defaultThreadFactory()}, threads are created in the current thread's
+ * thread group, with normal priority, and are numbered in the order they are created.
+ * </p>
+ */
+public class BaggageThreadFactory implements ThreadFactory {
+
+    private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+    private final ThreadGroup group;
+    private final String namePrefix;
+    private final boolean daemon;
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    /** Creates non-daemon threads named <code>baggage-pool-N-thread-M</code> */
+    public BaggageThreadFactory() {
+        this("baggage-pool-" + poolNumber.getAndIncrement(), false);
+    }
+
+    /**
+     * Creates non-daemon threads named <code>prefix-thread-M</code>
+     * 
+     * @param prefix the prefix of the names of created threads
+     */
+    public BaggageThreadFactory(String prefix) {
+        this(prefix, false);
+    }
+
+    /**
+     * @param prefix the prefix of the names of created threads
+     * @param daemon whether created threads are daemon threads
+     */
+    public BaggageThreadFactory(String prefix, boolean daemon) {
+        SecurityManager s = System.getSecurityManager();
+        this.group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
+        this.namePrefix = prefix + "-thread-";
+        this.daemon = daemon;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread t = new BaggageThread(group, r, namePrefix + threadNumber.getAndIncrement(), 0);
+        t.setDaemon(daemon);
+        if (t.getPriority() != Thread.NORM_PRIORITY) {
+            t.setPriority(Thread.NORM_PRIORITY);
+        }
+        return t;
+    }
+
+}
@@ -0,0 +1,151 @@
+package brown.tracingplane.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.BaggageProvider;
+import brown.tracingplane.TransitLayer;
+
+/**
+ * <p>
+ * A {@link TransitLayer} like {@link ThreadLocalTransitLayer}, that keeps the active baggage of {@link BaggageThread}s
+ * in a field of the thread instead of in a {@link ThreadLocal}. On a {@link BaggageThread}, {@link #peek()} is a plain
+ * field read, and {@link #take()} and {@link #set(BaggageContext)} are plain field writes, with no hash lookups or
+ * stale-entry expunging. Other threads fall back to a {@link ThreadLocal}, exactly as {@link ThreadLocalTransitLayer}
+ * does.
+ * </p>
+ *
+ * <p>
+ * Thread pools can create {@link BaggageThread}s using a {@link BaggageThreadFactory}. Since a {@link BaggageThread}
+ * has only one baggage field, all instances of this class share it.
+ * </p>
+ *
+ * <p>
+ * To use the {@link BaggageThreadTransitLayer}, configure <code>baggage.transit</code> to use
+ * {@link BaggageThreadTransitLayerFactory}, e.g.:
+ *
+ * <pre>
+ *      -Dbaggage.transit=brown.tracingplane.impl.BaggageThreadTransitLayerFactory
+ * </pre>
+ * </p>
+ */
+public class BaggageThreadTransitLayer implements TransitLayer {
+
+    private final BaggageProvider<BaggageContext> provider;
+    private final ThreadLocal<BaggageContext> fallback = new ThreadLocal<BaggageContext>();
+
+    /**
+     * @param provider the implementation of {@link BaggageProvider} in use by this transit layer
+     */
+    public BaggageThreadTransitLayer(BaggageProvider<BaggageContext> provider) {
+        this.provider = provider;
+    }
+
+    private BaggageContext get() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof BaggageThread) {
+            return ((BaggageThread) thread).baggage;
+        }
+        return fallback.get();
+    }
+
+    private void put(BaggageContext baggage) {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof BaggageThread) {
+            ((BaggageThread) thread).baggage = baggage;
+        } else {
+            fallback.set(baggage);
+        }
+    }
+
+    private BaggageContext remove() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof BaggageThread) {
+            BaggageThread baggageThread = (BaggageThread) thread;
+            BaggageContext baggage = baggageThread.baggage;
+            baggageThread.baggage = null;
+            return baggage;
+        }
+        try {
+            return fallback.get();
+        } finally {
+            fallback.remove();
+        }
+    }
+
+    @Override
+    public void discard() {
+        remove();
+    }
+
+    @Override
+    public BaggageContext branch() {
+        return provider.branch(get());
+    }
+
+    @Override
+    public byte[] branchBytes() {
+        return provider.serialize(provider.branch(get()));
+    }
+
+    @Override
+    public void join(BaggageContext otherContext) {
+        put(provider.join(get(), otherContext));
+    }
+
+    @Override
+    public void joinAll(Collection<BaggageContext> otherContexts) {
+        List<BaggageContext> contexts = new ArrayList<>(otherContexts.size() + 1);
+        contexts.add(get());
+        contexts.addAll(otherContexts);
+        put(provider.joinAll(contexts));
+    }
+
+    @Override
+    public void join(ByteBuffer serializedContext) {
+        put(provider.join(get(), provider.deserialize(serializedContext)));
+    }
+
+    @Override
+    public void join(byte[] serialized, int offset, int length) {
+        put(provider.join(get(), provider.deserialize(serialized, offset, length)));
+    }
+
+    @Override
+    public void set(BaggageContext baggage) {
+        put(baggage);
+    }
+
+    @Override
+    public void set(ByteBuffer serializedContext) {
+        put(provider.deserialize(serializedContext));
+    }
+
+    @Override
+    public void set(byte[] serialized, int offset, int length) {
+        put(provider.deserialize(serialized, offset, length));
+    }
+
+    @Override
+    public BaggageContext take() {
+        return remove();
+    }
+
+    @Override
+    public byte[] takeBytes() {
+        return provider.serialize(remove());
+    }
+
+    @Override
+    public BaggageContext peek() {
+        return get();
+    }
+
+    @Override
+    public void update(BaggageContext baggage) {
+        put(baggage);
+    }
+
+}
@@ -1,6 +1,7 @@
 package brown.tracingplane.impl;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import brown.tracingplane.ActiveBaggage;
 import brown.tracingplane.BaggageContext;
 import brown.tracingplane.TransitLayer;
@@ -44,6 +45,9 @@ public class NoOpTransitLayer implements TransitLayer {
     @Override
     public void join(BaggageContext otherContext) {}
 
+    @Override
+    public void joinAll(Collection<BaggageContext> otherContexts) {}
+
     @Override
     public void join(ByteBuffer serializedContext) {}
 
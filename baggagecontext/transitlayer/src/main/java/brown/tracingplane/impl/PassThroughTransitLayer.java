@@ -0,0 +1,189 @@
+package brown.tracingplane.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.BaggageProvider;
+import brown.tracingplane.TransitLayer;
+
+/**
+ * <p>
+ * A thread-local {@link TransitLayer}, like {@link ThreadLocalTransitLayer}, intended for processes such as proxies and
+ * load balancers that forward baggage without reading it.
+ * </p>
+ * 
+ * <p>
+ * Serialized baggage that is set on this transit layer is kept as-is rather than deserialized. It is returned verbatim
+ * by {@link #branchBytes()} and {@link #takeBytes()}, so relaying baggage from an inbound request to an outbound
+ * request does not parse or re-serialize it. The baggage is only deserialized if it is accessed or modified as a
+ * {@link BaggageContext}, e.g., by {@link #peek()}, {@link #branch()} or one of the join methods.
+ * </p>
+ * 
+ * <p>
+ * To use the {@link PassThroughTransitLayer}, configure <code>baggage.transit</code> to use
+ * {@link PassThroughTransitLayerFactory}, e.g.:
+ * 
+ * <pre>
+ *      -Dbaggage.transit=brown.tracingplane.impl.PassThroughTransitLayerFactory
+ * </pre>
+ * </p>
+ */
+public class PassThroughTransitLayer implements TransitLayer {
+
+    /** The current baggage of a thread, held either as a context or as serialized bytes that have not been parsed */
+    private static class Current {
+        BaggageContext baggage;
+        byte[] serialized;
+    }
+
+    private final BaggageProvider<BaggageContext> provider;
+    private final ThreadLocal<Current> current = new ThreadLocal<Current>() {
+        @Override
+        protected Current initialValue() {
+            return new Current();
+        }
+    };
+
+    /**
+     * @param provider the implementation of {@link BaggageProvider} in use by this transit layer
+     */
+    public PassThroughTransitLayer(BaggageProvider<BaggageContext> provider) {
+        this.provider = provider;
+    }
+
+    /** @return the current baggage of this thread as a {@link BaggageContext}, deserializing it if necessary */
+    private BaggageContext get(Current current) {
+        if (current.serialized != null) {
+            current.baggage = provider.deserialize(current.serialized, 0, current.serialized.length);
+            current.serialized = null;
+        }
+        return current.baggage;
+    }
+
+    private void setSerialized(Current current, byte[] serialized) {
+        current.baggage = null;
+        current.serialized = serialized.length == 0 ? null : serialized;
+    }
+
+    private static void clear(Current current) {
+        current.baggage = null;
+        current.serialized = null;
+    }
+
+    @Override
+    public void discard() {
+        current.remove();
+    }
+
+    @Override
+    public BaggageContext branch() {
+        return provider.branch(get(current.get()));
+    }
+
+    @Override
+    public byte[] branchBytes() {
+        Current current = this.current.get();
+        if (current.serialized != null) {
+            return current.serialized.clone();
+        }
+        return provider.serialize(provider.branch(current.baggage));
+    }
+
+    @Override
+    public void join(BaggageContext otherContext) {
+        Current current = this.current.get();
+        current.baggage = provider.join(get(current), otherContext);
+    }
+
+    @Override
+    public void joinAll(Collection<BaggageContext> otherContexts) {
+        Current current = this.current.get();
+        List<BaggageContext> contexts = new ArrayList<>(otherContexts.size() + 1);
+        contexts.add(get(current));
+        contexts.addAll(otherContexts);
+        current.baggage = provider.joinAll(contexts);
+    }
+
+    @Override
+    public void join(ByteBuffer serializedContext) {
+        Current current = this.current.get();
+        if (current.baggage == null && current.serialized == null) {
+            set(serializedContext);
+        } else {
+            current.baggage = provider.join(get(current), provider.deserialize(serializedContext));
+        }
+    }
+
+    @Override
+    public void join(byte[] serialized, int offset, int length) {
+        Current current = this.current.get();
+        if (current.baggage == null && current.serialized == null) {
+            set(serialized, offset, length);
+        } else {
+            current.baggage = provider.join(get(current), provider.deserialize(serialized, offset, length));
+        }
+    }
+
+    @Override
+    public void set(BaggageContext baggage) {
+        Current current = this.current.get();
+        current.baggage = baggage;
+        current.serialized = null;
+    }
+
+    @Override
+    public void set(ByteBuffer serializedContext) {
+        if (serializedContext == null) {
+            clear(current.get());
+        } else {
+            byte[] serialized = new byte[serializedContext.remaining()];
+            serializedContext.duplicate().get(serialized);
+            setSerialized(current.get(), serialized);
+        }
+    }
+
+    @Override
+    public void set(byte[] serialized, int offset, int length) {
+        if (serialized == null) {
+            clear(current.get());
+        } else {
+            setSerialized(current.get(), Arrays.copyOfRange(serialized, offset, offset + length));
+        }
+    }
+
+    @Override
+    public BaggageContext take() {
+        try {
+            return get(current.get());
+        } finally {
+            current.remove();
+        }
+    }
+
+    @Override
+    public byte[] takeBytes() {
+        try {
+            Current current = this.current.get();
+            if (current.serialized != null) {
+                return current.serialized;
+            }
+            return provider.serialize(current.baggage);
+        } finally {
+            current.remove();
+        }
+    }
+
+    @Override
+    public BaggageContext peek() {
+        return get(current.get());
+    }
+
+    @Override
+    public void update(BaggageContext baggage) {
+        set(baggage);
+    }
+
+}
@@ -0,0 +1,30 @@
+package brown.tracingplane.impl;
+
+import brown.tracingplane.DefaultBaggageProvider;
+import brown.tracingplane.TransitLayer;
+import brown.tracingplane.TransitLayerFactory;
+
+/**
+ * <p>
+ * The {@link TransitLayerFactory} that creates {@link PassThroughTransitLayer} instances. To use it, set
+ * <code>baggage.transit</code> to be this class, e.g.:
+ * 
+ * <pre>
+ * -Dbaggage.transit=brown.tracingplane.impl.PassThroughTransitLayerFactory
+ * </pre>
+ * 
+ * or in the typesafe config <code>application.conf</code>:
+ * 
+ * <pre>
+ * baggage.transit = "brown.tracingplane.impl.PassThroughTransitLayerFactory"
+ * </pre>
+ * </p>
+ */
+public class PassThroughTransitLayerFactory implements TransitLayerFactory {
+
+    @Override
+    public TransitLayer transitlayer() {
+        return new PassThroughTransitLayer(DefaultBaggageProvider.getWrapped());
+    }
+
+}
@@ -1,6 +1,9 @@
 package brown.tracingplane.impl;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import brown.tracingplane.BaggageContext;
 import brown.tracingplane.BaggageProvider;
 import brown.tracingplane.TransitLayer;
@@ -63,6 +66,14 @@ public class ThreadLocalTransitLayer implements TransitLayer {
         current.set(provider.join(current.get(), otherContext));
     }
 
+    @Override
+    public void joinAll(Collection<BaggageContext> otherContexts) {
+        List<BaggageContext> contexts = new ArrayList<>(otherContexts.size() + 1);
+        contexts.add(current.get());
+        contexts.addAll(otherContexts);
+        current.set(provider.joinAll(contexts));
+    }
+
     @Override
     public void join(ByteBuffer serializedContext) {
         current.set(provider.join(current.get(), provider.deserialize(serializedContext)));
@@ -19,7 +19,7 @@ public class TestActiveBaggage {
 
     @Test
     public void testStaticAPICallsInvokeDefaultTransitLayer() {
-        assertEquals(DefaultTransitLayer.get(), ActiveBaggage.transit);
+        assertEquals(DefaultTransitLayer.get(), ActiveBaggage.transit());
 
         // Invoke methods, expect no exception
         ActiveBaggage.discard();
@@ -157,9 +157,9 @@ public class TestActiveBaggage {
     
     @Test
     public void testActiveBaggageAPICallsInvokeTransitLayer() {
-        TransitLayer originalTransitLayer = ActiveBaggage.transit;
+        TransitLayer originalTransitLayer = ActiveBaggage.transit();
         TransitLayerForTest transitForTest = new TransitLayerForTest();
-        ActiveBaggage.transit = transitForTest;
+        ActiveBaggage.setTransit(transitForTest);
         
         try {
             ActiveBaggage.discard();
@@ -189,7 +189,7 @@ public class TestActiveBaggage {
             ActiveBaggage.update(null);
             transitForTest.expect(0,0,0,0,0,0,0,0,0,0,0,0,1);
         } finally {
-            ActiveBaggage.transit = originalTransitLayer;
+            ActiveBaggage.setTransit(originalTransitLayer);
         }
     }
 
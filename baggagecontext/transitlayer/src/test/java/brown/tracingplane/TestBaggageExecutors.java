@@ -0,0 +1,261 @@
+package brown.tracingplane;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import brown.tracingplane.impl.ThreadLocalTransitLayer;
+
+public class TestBaggageExecutors {
+
+    static class SetContext implements BaggageContext {
+        final Set<String> values;
+
+        SetContext(Set<String> values) {
+            this.values = values;
+        }
+    }
+
+    /** Baggage is a set of strings; joins take the union. Counts how often baggage is branched */
+    static class CountingProvider implements BaggageProvider<BaggageContext> {
+        int branched = 0;
+
+        public boolean isValid(BaggageContext baggage) {
+            return baggage == null || baggage instanceof SetContext;
+        }
+
+        public BaggageContext newInstance() {
+            return null;
+        }
+
+        public void discard(BaggageContext baggage) {}
+
+        public synchronized BaggageContext branch(BaggageContext from) {
+            branched++;
+            return from == null ? null : new SetContext(new HashSet<>(((SetContext) from).values));
+        }
+
+        public BaggageContext join(BaggageContext left, BaggageContext right) {
+            if (left == null || right == null) {
+                return left == null ? right : left;
+            }
+            ((SetContext) left).values.addAll(((SetContext) right).values);
+            return left;
+        }
+
+        public BaggageContext deserialize(byte[] serialized, int offset, int length) {
+            return null;
+        }
+
+        public BaggageContext deserialize(ByteBuffer buf) {
+            return null;
+        }
+
+        public byte[] serialize(BaggageContext baggage) {
+            return null;
+        }
+
+        public byte[] serialize(BaggageContext baggage, int maximumSerializedSize) {
+            return null;
+        }
+    }
+
+    TransitLayer originalTransitLayer;
+    CountingProvider provider;
+    ExecutorService executor;
+
+    @Before
+    public void setup() {
+        originalTransitLayer = ActiveBaggage.transit();
+        provider = new CountingProvider();
+        ActiveBaggage.setTransit(new ThreadLocalTransitLayer(provider));
+        executor = BaggageExecutors.wrap(Executors.newFixedThreadPool(4));
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+        ActiveBaggage.setTransit(originalTransitLayer);
+    }
+
+    private static void set(String... values) {
+        ActiveBaggage.set(new SetContext(new HashSet<>(Arrays.asList(values))));
+    }
+
+    private static Set<String> active() {
+        BaggageContext active = ActiveBaggage.peek();
+        return active == null ? null : ((SetContext) active).values;
+    }
+
+    private static void add(String value) {
+        if (ActiveBaggage.peek() == null) {
+            set(value);
+        } else {
+            active().add(value);
+        }
+    }
+
+    @Test
+    public void testTaskSeesBranchedBaggage() throws Exception {
+        set("a");
+        Future<Set<String>> future = executor.submit(() -> {
+            Set<String> seen = new HashSet<>(active());
+            add("b");
+            return seen;
+        });
+        add("c");
+
+        assertEquals(new HashSet<>(Arrays.asList("a")), future.get());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), active());
+        assertEquals(1, provider.branched);
+
+        // The result is only joined once
+        active().remove("b");
+        future.get();
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")), active());
+    }
+
+    @Test
+    public void testNoBranchWithoutBaggage() throws Exception {
+        ActiveBaggage.discard();
+        Future<?> future = executor.submit(() -> add("b"));
+        future.get();
+        assertEquals(0, provider.branched);
+        assertEquals(new HashSet<>(Arrays.asList("b")), active());
+        ActiveBaggage.discard();
+    }
+
+    @Test
+    public void testWorkerBaggageIsRestored() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            single.submit(() -> set("worker")).get();
+            set("a");
+            BaggageExecutors.wrap(single).submit(() -> add("b")).get();
+            assertEquals(new HashSet<>(Arrays.asList("worker")), single.submit(() -> active()).get());
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInvokeAllJoinsOnce() throws Exception {
+        set("a");
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String value = "task" + i;
+            tasks.add(() -> {
+                add(value);
+                return null;
+            });
+        }
+        executor.invokeAll(tasks);
+        assertEquals(10, provider.branched);
+        assertEquals(11, active().size());
+    }
+
+    @Test
+    public void testJoinAll() throws Exception {
+        set("a");
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String value = "task" + i;
+            futures.add(executor.submit(() -> add(value)));
+        }
+        for (Future<?> future : futures) {
+            while (!future.isDone()) {
+                Thread.sleep(1);
+            }
+        }
+        futures.add(CompletableFuture.completedFuture(null));
+        assertEquals(1, active().size());
+        BaggageExecutors.joinAll(futures);
+        assertEquals(11, active().size());
+    }
+
+    @Test
+    public void testExecuteDiscardsBaggage() throws Exception {
+        set("a");
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            add("b");
+            done.countDown();
+        });
+        done.await();
+        assertEquals(new HashSet<>(Arrays.asList("a")), active());
+    }
+
+    @Test
+    public void testScheduledExecutor() throws Exception {
+        ScheduledExecutorService scheduler = BaggageExecutors.wrap(Executors.newScheduledThreadPool(1));
+        try {
+            set("a");
+            ScheduledFuture<Set<String>> future = scheduler.schedule(() -> {
+                add("b");
+                return new HashSet<>(active());
+            }, 1, TimeUnit.MILLISECONDS);
+            assertEquals(new HashSet<>(Arrays.asList("a", "b")), future.get());
+            assertEquals(new HashSet<>(Arrays.asList("a", "b")), active());
+
+            // Periodic tasks start from the scheduled baggage every time
+            CountDownLatch runs = new CountDownLatch(3);
+            List<Set<String>> seen = new ArrayList<>();
+            scheduler.scheduleAtFixedRate(() -> {
+                synchronized (seen) {
+                    seen.add(new HashSet<>(active()));
+                }
+                add("run" + runs.getCount());
+                runs.countDown();
+            }, 0, 1, TimeUnit.MILLISECONDS);
+            runs.await();
+            synchronized (seen) {
+                for (Set<String> values : seen) {
+                    assertEquals(new HashSet<>(Arrays.asList("a", "b")), values);
+                }
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCompletableFuture() throws Exception {
+        set("a");
+        CompletableFuture<Boolean> future = BaggageExecutors.supplyAsync(() -> {
+            add("b");
+            return active().contains("a");
+        }, executor);
+        assertTrue(future.join());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), active());
+        assertEquals(1, provider.branched);
+
+        BaggageExecutors.runAsync(() -> add("c")).get();
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), active());
+    }
+
+    @Test
+    public void testWrapRunnable() {
+        ActiveBaggage.discard();
+        Runnable task = BaggageExecutors.wrap(() -> add("a"));
+        task.run();
+        assertNull(active());
+    }
+
+}
@@ -0,0 +1,176 @@
+package brown.tracingplane;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import brown.tracingplane.TestBaggageExecutors.CountingProvider;
+import brown.tracingplane.TestBaggageExecutors.SetContext;
+import brown.tracingplane.impl.ThreadLocalTransitLayer;
+
+public class TestBaggageScope {
+
+    TransitLayer originalTransitLayer;
+    CountingProvider provider;
+    ExecutorService executor;
+
+    @Before
+    public void setup() {
+        originalTransitLayer = ActiveBaggage.transit();
+        provider = new CountingProvider();
+        ActiveBaggage.setTransit(new ThreadLocalTransitLayer(provider));
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+        ActiveBaggage.discard();
+        ActiveBaggage.setTransit(originalTransitLayer);
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static Set<String> active() {
+        BaggageContext active = ActiveBaggage.peek();
+        return active == null ? null : ((SetContext) active).values;
+    }
+
+    private static void add(String value) {
+        if (ActiveBaggage.peek() == null) {
+            ActiveBaggage.set(new SetContext(set(value)));
+        } else {
+            active().add(value);
+        }
+    }
+
+    @Test
+    public void testJoin() throws Exception {
+        add("a");
+        try (BaggageScope scope = BaggageScope.open(executor)) {
+            Future<Set<String>> b = scope.fork(() -> {
+                Set<String> seen = new HashSet<>(active());
+                add("b");
+                return seen;
+            });
+            scope.fork(() -> add("c"));
+            add("d");
+
+            scope.join();
+            assertEquals(set("a"), b.get());
+            assertEquals(set("a", "b", "c", "d"), active());
+            assertEquals(2, provider.branched);
+
+            // Futures do not join baggage, and subtasks are only joined once
+            active().remove("b");
+            b.get();
+            scope.join();
+            assertEquals(set("a", "c", "d"), active());
+        }
+        assertEquals(set("a", "c", "d"), active());
+    }
+
+    @Test
+    public void testCloseJoins() {
+        CountDownLatch latch = new CountDownLatch(1);
+        try (BaggageScope scope = BaggageScope.open(executor)) {
+            scope.fork(() -> {
+                latch.await();
+                add("a");
+                return null;
+            });
+            latch.countDown();
+        }
+        assertEquals(0, provider.branched);
+        assertEquals(set("a"), active());
+    }
+
+    @Test
+    public void testForkAfterJoin() throws Exception {
+        add("a");
+        try (BaggageScope scope = BaggageScope.open(executor)) {
+            scope.fork(() -> add("b"));
+            scope.join();
+            scope.fork(() -> add("c"));
+        }
+        assertEquals(set("a", "b", "c"), active());
+    }
+
+    @Test
+    public void testNestedScopes() {
+        add("a");
+        try (BaggageScope scope = BaggageScope.open(executor)) {
+            scope.fork(() -> {
+                try (BaggageScope inner = BaggageScope.open(executor)) {
+                    inner.fork(() -> add("c"));
+                }
+                add("b");
+            });
+        }
+        assertEquals(set("a", "b", "c"), active());
+    }
+
+    @Test
+    public void testInterruptedJoin() throws Exception {
+        add("a");
+        CountDownLatch latch = new CountDownLatch(1);
+        try (BaggageScope scope = BaggageScope.open(executor)) {
+            scope.fork(() -> add("b"));
+            Future<?> c = scope.fork(() -> {
+                latch.await();
+                add("c");
+                return null;
+            });
+            Thread.currentThread().interrupt();
+            try {
+                scope.join();
+                fail("Join was not interrupted");
+            } catch (InterruptedException e) {}
+
+            // A subtask that was not done when the join was interrupted is joined by the next join
+            latch.countDown();
+            c.get();
+            scope.join();
+            assertEquals(set("a", "b", "c"), active());
+        }
+        assertEquals(set("a", "b", "c"), active());
+    }
+
+    @Test
+    public void testClosed() {
+        BaggageScope scope = BaggageScope.open(executor);
+        scope.close();
+        scope.close();
+        try {
+            scope.fork(() -> add("a"));
+            fail("Forked in a closed scope");
+        } catch (IllegalStateException e) {}
+        assertNull(active());
+    }
+
+    @Test
+    public void testOwner() throws Exception {
+        try (BaggageScope scope = BaggageScope.open(executor)) {
+            Future<?> f = executor.submit(() -> scope.join());
+            try {
+                f.get();
+                fail("Joined a scope from another thread");
+            } catch (ExecutionException e) {
+                assertEquals(IllegalStateException.class, e.getCause().getClass());
+            }
+        }
+    }
+
+}
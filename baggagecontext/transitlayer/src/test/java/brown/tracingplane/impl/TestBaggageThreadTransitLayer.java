@@ -0,0 +1,99 @@
+package brown.tracingplane.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import org.junit.Before;
+import org.junit.Test;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.impl.TestPassThroughTransitLayer.BytesContext;
+import brown.tracingplane.impl.TestPassThroughTransitLayer.CountingProvider;
+
+public class TestBaggageThreadTransitLayer {
+
+    BaggageThreadTransitLayer transit;
+
+    @Before
+    public void setup() {
+        transit = new BaggageThreadTransitLayer(new CountingProvider());
+    }
+
+    /** Runs the callable on a new thread created by the factory and returns its result */
+    private static <T> T runOn(BaggageThreadFactory factory, Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<>(callable);
+        Thread thread = factory == null ? new Thread(task) : factory.newThread(task);
+        thread.start();
+        return task.get();
+    }
+
+    @Test
+    public void testFactory() {
+        BaggageThreadFactory factory = new BaggageThreadFactory("test", true);
+        Thread a = factory.newThread(() -> {});
+        Thread b = factory.newThread(() -> {});
+        assertTrue(a instanceof BaggageThread);
+        assertTrue(a.isDaemon());
+        assertEquals("test-thread-1", a.getName());
+        assertEquals("test-thread-2", b.getName());
+        assertFalse(new BaggageThreadFactory().newThread(() -> {}).isDaemon());
+    }
+
+    @Test
+    public void testBaggageThreadUsesField() throws Exception {
+        BaggageContext baggage = new BytesContext(new byte[] { 1 });
+        runOn(new BaggageThreadFactory(), () -> {
+            BaggageThread thread = (BaggageThread) Thread.currentThread();
+            assertNull(transit.peek());
+
+            transit.set(baggage);
+            assertSame(baggage, thread.baggage);
+            assertSame(baggage, transit.peek());
+
+            transit.join(new BytesContext(new byte[] { 2 }));
+            assertArrayEquals(new byte[] { 1, 2 }, ((BytesContext) thread.baggage).bytes);
+
+            assertSame(thread.baggage, transit.take());
+            assertNull(thread.baggage);
+            assertNull(transit.peek());
+            return null;
+        });
+    }
+
+    @Test
+    public void testInstancesShareField() throws Exception {
+        BaggageThreadTransitLayer other = new BaggageThreadTransitLayer(new CountingProvider());
+        BaggageContext baggage = new BytesContext(new byte[] { 1 });
+        runOn(new BaggageThreadFactory(), () -> {
+            transit.set(baggage);
+            assertSame(baggage, other.peek());
+            other.discard();
+            assertNull(transit.peek());
+            return null;
+        });
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        BaggageContext baggage = new BytesContext(new byte[] { 1 });
+        runOn(null, () -> {
+            assertNull(transit.peek());
+            transit.set(baggage);
+            assertSame(baggage, transit.peek());
+            assertArrayEquals(new byte[] { 1 }, transit.takeBytes());
+            assertNull(transit.peek());
+            return null;
+        });
+
+        // Baggage is per-thread
+        transit.set(baggage);
+        assertNull(runOn(null, () -> transit.peek()));
+        assertNull(runOn(new BaggageThreadFactory(), () -> transit.peek()));
+        assertSame(baggage, transit.take());
+    }
+
+}
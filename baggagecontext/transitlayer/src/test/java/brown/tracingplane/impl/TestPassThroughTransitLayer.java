@@ -0,0 +1,143 @@
+package brown.tracingplane.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.BaggageProvider;
+
+public class TestPassThroughTransitLayer {
+
+    static class BytesContext implements BaggageContext {
+        final byte[] bytes;
+
+        BytesContext(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /** Baggage is just bytes; joins concatenate. Counts how often baggage is deserialized and serialized */
+    static class CountingProvider implements BaggageProvider<BaggageContext> {
+        int deserialized = 0, serialized = 0;
+
+        public boolean isValid(BaggageContext baggage) {
+            return baggage == null || baggage instanceof BytesContext;
+        }
+
+        public BaggageContext newInstance() {
+            return null;
+        }
+
+        public void discard(BaggageContext baggage) {}
+
+        public BaggageContext branch(BaggageContext from) {
+            return from;
+        }
+
+        public BaggageContext join(BaggageContext left, BaggageContext right) {
+            if (left == null || right == null) {
+                return left == null ? right : left;
+            }
+            byte[] l = ((BytesContext) left).bytes, r = ((BytesContext) right).bytes;
+            byte[] joined = Arrays.copyOf(l, l.length + r.length);
+            System.arraycopy(r, 0, joined, l.length, r.length);
+            return new BytesContext(joined);
+        }
+
+        public BaggageContext deserialize(byte[] serialized, int offset, int length) {
+            deserialized++;
+            return new BytesContext(Arrays.copyOfRange(serialized, offset, offset + length));
+        }
+
+        public BaggageContext deserialize(ByteBuffer buf) {
+            byte[] bytes = new byte[buf.remaining()];
+            buf.duplicate().get(bytes);
+            return deserialize(bytes, 0, bytes.length);
+        }
+
+        public byte[] serialize(BaggageContext baggage) {
+            serialized++;
+            return baggage == null ? new byte[0] : ((BytesContext) baggage).bytes.clone();
+        }
+
+        public byte[] serialize(BaggageContext baggage, int maximumSerializedSize) {
+            return serialize(baggage);
+        }
+    }
+
+    CountingProvider provider;
+    PassThroughTransitLayer transit;
+
+    @Before
+    public void setup() {
+        provider = new CountingProvider();
+        transit = new PassThroughTransitLayer(provider);
+    }
+
+    @Test
+    public void testRelayIsVerbatim() {
+        byte[] inbound = new byte[] { 9, 1, 2, 3, 4, 9 };
+        transit.set(inbound, 1, 4);
+        inbound[2] = 100;
+
+        byte[] branched = transit.branchBytes();
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, branched);
+        assertNotSame(branched, transit.branchBytes());
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, transit.takeBytes());
+
+        transit.set(ByteBuffer.wrap(new byte[] { 5, 6 }));
+        assertArrayEquals(new byte[] { 5, 6 }, transit.takeBytes());
+
+        assertEquals(0, provider.deserialized);
+        assertEquals(0, provider.serialized);
+    }
+
+    @Test
+    public void testDeserializedOnAccess() {
+        transit.set(new byte[] { 1, 2 }, 0, 2);
+        BaggageContext peeked = transit.peek();
+        assertArrayEquals(new byte[] { 1, 2 }, ((BytesContext) peeked).bytes);
+        assertSame(peeked, transit.peek());
+        assertEquals(1, provider.deserialized);
+
+        assertArrayEquals(new byte[] { 1, 2 }, transit.takeBytes());
+        assertEquals(1, provider.serialized);
+        assertNull(transit.peek());
+    }
+
+    @Test
+    public void testJoin() {
+        // Joining into empty baggage is the same as setting it
+        transit.join(new byte[] { 1, 2 }, 0, 2);
+        assertEquals(0, provider.deserialized);
+
+        transit.join(ByteBuffer.wrap(new byte[] { 3 }));
+        assertEquals(2, provider.deserialized);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, transit.takeBytes());
+
+        transit.set(new byte[] { 1 }, 0, 1);
+        transit.join(new BytesContext(new byte[] { 2 }));
+        assertArrayEquals(new byte[] { 1, 2 }, ((BytesContext) transit.take()).bytes);
+    }
+
+    @Test
+    public void testEmptyAndDiscard() {
+        transit.set(new byte[0], 0, 0);
+        assertNull(transit.peek());
+
+        transit.set(new byte[] { 1 }, 0, 1);
+        transit.discard();
+        assertNull(transit.take());
+
+        transit.set(new BytesContext(new byte[] { 7 }));
+        transit.set((ByteBuffer) null);
+        assertNull(transit.peek());
+    }
+
+}
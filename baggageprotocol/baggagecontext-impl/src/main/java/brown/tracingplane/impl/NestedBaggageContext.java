@@ -2,6 +2,7 @@ package brown.tracingplane.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -97,4 +98,47 @@ public class NestedBaggageContext implements BaggageContext {
         }
     }
 
+    /**
+     * Merges all of the provided contexts into the first non-null context, merging data atoms with a single k-way
+     * lexicographic merge per bag rather than one merge per context.
+     */
+    static NestedBaggageContext mergeAll(Collection<NestedBaggageContext> contexts) {
+        NestedBaggageContext merged = null;
+        List<List<ByteBuffer>> dataAtoms = new ArrayList<>(contexts.size());
+        Map<BagKey, List<NestedBaggageContext>> children = new TreeMap<>();
+        for (NestedBaggageContext context : contexts) {
+            if (context == null || context == merged) {
+                continue;
+            }
+            if (merged == null) {
+                merged = context;
+            }
+            merged.didOverflow |= context.didOverflow;
+            dataAtoms.add(context.dataAtoms);
+            if (context.children != null) {
+                for (BagKey childKey : context.children.keySet()) {
+                    List<NestedBaggageContext> childContexts = children.get(childKey);
+                    if (childContexts == null) {
+                        children.put(childKey, childContexts = new ArrayList<>());
+                    }
+                    childContexts.add(context.children.get(childKey));
+                }
+            }
+        }
+
+        if (merged != null) {
+            merged.dataAtoms = Lexicographic.mergeAll(dataAtoms);
+            if (merged.dataAtoms == null) {
+                merged.dataAtoms = new ArrayList<>();
+            }
+            if (merged.children == null) {
+                merged.children = new TreeMap<>();
+            }
+            for (BagKey childKey : children.keySet()) {
+                merged.children.put(childKey, mergeAll(children.get(childKey)));
+            }
+        }
+        return merged;
+    }
+
 }
@@ -1,6 +1,7 @@
 package brown.tracingplane.impl;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.List;
 import brown.tracingplane.BaggageContext;
 import brown.tracingplane.BaggageProvider;
@@ -44,15 +45,20 @@ public class NestedBaggageContextProvider implements BaggageProvider<NestedBagga
         }
     }
 
+    @Override
+    public NestedBaggageContext joinAll(Collection<NestedBaggageContext> baggages) {
+        return NestedBaggageContext.mergeAll(baggages);
+    }
+
     @Override
     public NestedBaggageContext deserialize(byte[] serialized, int offset, int length) {
-        List<ByteBuffer> atoms = AtomLayerSerialization.deserialize(serialized, offset, length);
+        List<ByteBuffer> atoms = AtomLayerSerialization.deserializeArray(serialized, offset, length);
         return NestedBaggageContext.parse(BaggageReader.create(atoms));
     }
 
     @Override
     public NestedBaggageContext deserialize(ByteBuffer buf) {
-        List<ByteBuffer> atoms = AtomLayerSerialization.deserialize(buf);
+        List<ByteBuffer> atoms = AtomLayerSerialization.deserializeArray(buf);
         return NestedBaggageContext.parse(BaggageReader.create(atoms));
     }
 
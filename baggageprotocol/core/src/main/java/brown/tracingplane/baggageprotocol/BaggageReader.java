@@ -9,6 +9,7 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.google.common.collect.Queues;
+import brown.tracingplane.atomlayer.AtomArray;
 import brown.tracingplane.atomlayer.Lexicographic;
 import brown.tracingplane.baggageprotocol.AtomPrefixTypes.Level;
 import brown.tracingplane.baggageprotocol.AtomPrefixes.AtomPrefix;
@@ -24,6 +25,13 @@ public class BaggageReader implements ElementReader {
 
     private final Iterator<ByteBuffer> it;
     private List<ByteBuffer> overflowAtoms = null;
+
+    /* When reading from an AtomArray, atoms are visited using a single reusable view, and a standalone buffer is only
+     * created for atoms that are retained (headers that are entered, unprocessed atoms, and data that is read) */
+    private final AtomArray array;
+    private final ByteBuffer cursor;
+    private int nextIndex = 0;
+
     private final List<ByteBuffer> unprocessedAtoms = new ArrayList<>(Level.LEVELS);
 
     private boolean didReadData = false;
@@ -36,12 +44,23 @@ public class BaggageReader implements ElementReader {
 
     private BaggageReader(Iterator<ByteBuffer> it) {
         this.it = it;
+        this.array = null;
+        this.cursor = null;
+        advanceNext();
+    }
+
+    private BaggageReader(AtomArray array) {
+        this.it = null;
+        this.array = array;
+        this.cursor = array.buffer().duplicate();
         advanceNext();
     }
 
     public static BaggageReader create(Iterable<ByteBuffer> itbl) {
         if (itbl == null) {
             return create(Collections.emptyIterator());
+        } else if (itbl instanceof AtomArray) {
+            return new BaggageReader((AtomArray) itbl);
         } else {
             return create(itbl.iterator());
         }
@@ -55,9 +74,14 @@ public class BaggageReader implements ElementReader {
         }
     }
 
+    /**
+     * Creates a reader over the lexicographic merge of the provided iterators, as produced by
+     * {@link Lexicographic#merge(Iterator, Iterator, Iterator...)}
+     */
+    @SafeVarargs
     public static BaggageReader create(Iterator<ByteBuffer> first, Iterator<ByteBuffer> second,
-                                       Iterator<ByteBuffer> more) {
-        return new BaggageReader(Lexicographic.merge(first, second, more));
+                                       Iterator<ByteBuffer>... more) {
+        return create(Lexicographic.merge(first, second, more));
     }
 
     /**
@@ -66,8 +90,8 @@ public class BaggageReader implements ElementReader {
      * @return true if there are more atoms; false if we have exhausted the input iterator
      */
     private boolean advanceNext() {
-        while (it.hasNext()) {
-            nextAtom = it.next();
+        while (hasNextAtom()) {
+            nextAtom = readAtom();
             if (BaggageProtocol.OVERFLOW_MARKER.equals(nextAtom)) {
                 if (!encounteredOverflow) {
                     encounteredOverflow = true;
@@ -85,6 +109,35 @@ public class BaggageReader implements ElementReader {
         return false;
     }
 
+    private boolean hasNextAtom() {
+        return array == null ? it.hasNext() : nextIndex < array.size();
+    }
+
+    private ByteBuffer readAtom() {
+        if (array == null) {
+            return it.next();
+        }
+        int offset = array.offset(nextIndex);
+        cursor.limit(offset + array.length(nextIndex));
+        cursor.position(offset);
+        nextIndex++;
+        return cursor;
+    }
+
+    /**
+     * Returns a buffer for the current atom that can be kept after the reader advances. Unless the reader is reading
+     * from an {@link AtomArray}, this is simply the current atom.
+     */
+    private ByteBuffer retainAtom() {
+        if (array == null) {
+            return nextAtom;
+        }
+        int index = nextIndex - 1;
+        ByteBuffer atom = array.get(index);
+        atom.position(cursor.position() - array.offset(index));
+        return atom;
+    }
+
     private void rewindAtom() {
         nextAtom.position(nextAtom.position() - 1);
     }
@@ -105,8 +158,9 @@ public class BaggageReader implements ElementReader {
         // Save the header
         rewindAtom();
         currentLevel = nextAtomPrefix.level(currentLevel);
-        currentPath.addLast(nextAtom);
-        unprocessedAtoms.add(nextAtom);
+        ByteBuffer header = retainAtom();
+        currentPath.addLast(header);
+        unprocessedAtoms.add(header);
 
         // Move to next atom
         advanceNext();
@@ -171,7 +225,7 @@ public class BaggageReader implements ElementReader {
      */
     public ByteBuffer nextData() {
         if (hasData()) {
-            ByteBuffer currentAtom = nextAtom;
+            ByteBuffer currentAtom = retainAtom();
             advanceNext();
             didReadData = true;
             return currentAtom;
@@ -245,7 +299,7 @@ public class BaggageReader implements ElementReader {
     public void keepData() {
         while (hasData()) {
             rewindAtom();
-            unprocessedAtoms.add(nextAtom);
+            unprocessedAtoms.add(retainAtom());
             advanceNext();
         }
     }
@@ -1,32 +1,83 @@
 package brown.tracingplane.baggageprotocol;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import com.google.common.collect.Lists;
+import brown.tracingplane.atomlayer.AtomLayerSerialization;
 import brown.tracingplane.atomlayer.ByteBuffers;
 import brown.tracingplane.atomlayer.Lexicographic;
 import brown.tracingplane.baggageprotocol.AtomPrefixes.DataPrefix;
 
 /**
+ * <p>
  * Used for writing out baggage atoms that adhere to the baggage protocol
+ * </p>
+ * 
+ * <p>
+ * Writers created with {@link #createPooled()} reuse a per-thread atom list and backing buffers across
+ * serializations. The atoms of a pooled writer are only valid until the writer is {@link #close()}d, so they must be
+ * copied (e.g., serialized with {@link brown.tracingplane.atomlayer.AtomLayerSerialization}) before then:
+ * 
+ * <pre>
+ * try (BaggageWriter writer = BaggageWriter.createPooled()) {
+ *     ...
+ *     return AtomLayerSerialization.serialize(writer.atoms());
+ * }
+ * </pre>
+ * </p>
+ * 
+ * <p>
+ * Writers created with {@link #createStreaming(ByteBuffer)} write length-prefixed atoms directly to an output buffer
+ * as soon as their position in the output is settled, rather than collecting them in an atom list.
+ * </p>
  * 
  * TODO: comments and documentation
  */
-public class BaggageWriter implements ElementWriter {
+public class BaggageWriter implements ElementWriter, AutoCloseable {
+
+    /** The size of each backing buffer; larger buffers allocated for oversized atoms are not kept by pooled writers */
+    private static final int BACKING_BUFFER_SIZE = 1024;
+
+    /** The maximum number of backing buffers kept by a pooled writer between uses */
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    private static final ThreadLocal<BaggageWriter> pool = new ThreadLocal<BaggageWriter>() {
+        @Override
+        protected BaggageWriter initialValue() {
+            return new BaggageWriter(null, true);
+        }
+    };
 
     private int currentLevel = -1;
     private int currentBagBeginIndex = 0;
     private boolean wroteOverflow = false;
     private final List<ByteBuffer> atoms = Lists.newArrayList();
 
-    private final SharedBackingBuffer backing = new SharedBackingBuffer(1024);
+    private final SharedBackingBuffer backing = new SharedBackingBuffer(BACKING_BUFFER_SIZE);
 
     private ByteBuffer nextAtomToMerge = null;
-    private final Iterator<ByteBuffer> atomsToMerge;
+    private Iterator<ByteBuffer> atomsToMerge;
+
+    /** If not null, atoms are written here as soon as their position in the output is settled */
+    private ByteBuffer out = null;
+
+    /** True if this writer belongs to the thread-local pool; inUse is true between createPooled and close */
+    private final boolean pooled;
+    private boolean inUse = false;
 
     private BaggageWriter(Iterator<ByteBuffer> mergeWith) {
+        this(mergeWith, false);
+    }
+
+    private BaggageWriter(Iterator<ByteBuffer> mergeWith, boolean pooled) {
+        this.pooled = pooled;
+        mergeWith(mergeWith);
+    }
+
+    private void mergeWith(Iterator<ByteBuffer> mergeWith) {
         atomsToMerge = mergeWith;
         if (mergeWith != null && mergeWith.hasNext()) {
             nextAtomToMerge = atomsToMerge.next();
@@ -37,6 +88,34 @@ public class BaggageWriter implements ElementWriter {
         return new BaggageWriter(null);
     }
 
+    /**
+     * Returns this thread's pooled writer, or a new writer if the pooled writer is already in use. The writer should
+     * be {@link #close()}d after its atoms have been used.
+     */
+    public static BaggageWriter createPooled() {
+        return createPooledAndMergeWith((Iterator<ByteBuffer>) null);
+    }
+
+    /** Like {@link #createPooled()}, but merges with the provided atoms as in {@link #createAndMergeWith(Iterable)} */
+    public static BaggageWriter createPooledAndMergeWith(Iterator<ByteBuffer> atoms) {
+        BaggageWriter writer = pool.get();
+        if (writer.inUse) {
+            return new BaggageWriter(atoms);
+        }
+        writer.inUse = true;
+        writer.mergeWith(atoms);
+        return writer;
+    }
+
+    /**
+     * Like {@link #createPooled()}, but merges with the provided atoms as in
+     * {@link #createAndMergeWith(Iterable, Iterable)}
+     */
+    public static BaggageWriter createPooledAndMergeWith(Iterable<ByteBuffer> a0, Iterable<ByteBuffer> a1) {
+        return createPooledAndMergeWith(Lexicographic.merge(a0 == null ? null : a0.iterator(),
+                                                            a1 == null ? null : a1.iterator()));
+    }
+
     public static BaggageWriter createAndMergeWith(Iterable<ByteBuffer> atoms) {
         return createAndMergeWith(atoms == null ? null : atoms.iterator());
     }
@@ -53,7 +132,33 @@ public class BaggageWriter implements ElementWriter {
         return new BaggageWriter(Lexicographic.merge(a0, a1));
     }
 
+    /**
+     * <p>
+     * Returns a pooled writer, as with {@link #createPooled()}, that writes the serialized form of its atoms (as would
+     * be produced by {@link brown.tracingplane.atomlayer.AtomLayerSerialization#serialize(List)}) directly to
+     * <code>out</code>. Atoms are written when the enclosing bag is entered or exited, since until then they might be
+     * sorted or dropped; call {@link #finish()} to write any remaining atoms. {@link #atoms()} only returns atoms that
+     * have not yet been written.
+     * </p>
+     * 
+     * <p>
+     * If <code>out</code> runs out of space, a {@link java.nio.BufferOverflowException} is thrown
+     * </p>
+     * 
+     * @param out the buffer to write serialized atoms to
+     * @return a writer that must be closed once writing is finished
+     */
+    public static BaggageWriter createStreaming(ByteBuffer out) {
+        BaggageWriter writer = createPooled();
+        writer.out = out;
+        return writer;
+    }
+
     public BaggageWriter enter(BagKey field) {
+        if (out != null) {
+            flush();
+            write(false);
+        }
         currentLevel++;
         if (field instanceof BagKey.Indexed) {
             writeHeader(currentLevel, (BagKey.Indexed) field);
@@ -69,10 +174,11 @@ public class BaggageWriter implements ElementWriter {
         flush();
 
         // If the bag has no data, drop the bag
-        if (isHeader(atoms.get(atoms.size() - 1))) {
+        if (!atoms.isEmpty() && isHeader(atoms.get(atoms.size() - 1))) {
             atoms.remove(atoms.size() - 1);
         }
 
+        write(false);
         currentBagBeginIndex = atoms.size();
         return this;
     }
@@ -144,10 +250,13 @@ public class BaggageWriter implements ElementWriter {
         return this;
     }
 
-    /** Sort any data written between the start of the current bag and now */
+    /**
+     * Sort any data written between the start of the current bag and now. Atoms are sorted lexicographically, the same
+     * order that the atom layer merges them in.
+     */
     public void sortData() {
         flush();
-        Collections.sort(atoms.subList(currentBagBeginIndex, atoms.size()));
+        Collections.sort(atoms.subList(currentBagBeginIndex, atoms.size()), Lexicographic.BYTE_BUFFER_COMPARATOR);
     }
 
     /** Ensure that any buffers created with newDataAtom are finished. */
@@ -165,6 +274,26 @@ public class BaggageWriter implements ElementWriter {
             doAddAtom(nextAtomToMerge);
             nextAtomToMerge = atomsToMerge.hasNext() ? atomsToMerge.next() : null;
         }
+        write(true);
+    }
+
+    /**
+     * For streaming writers, writes the atoms whose position in the output is settled to the output buffer and removes
+     * them from the atom list. Unless <code>all</code> is set, trailing headers are kept, since they are dropped if
+     * their bag turns out to be empty.
+     */
+    private void write(boolean all) {
+        if (out == null) {
+            return;
+        }
+        int count = atoms.size();
+        while (!all && count > 0 && isHeader(atoms.get(count - 1))) {
+            count--;
+        }
+        for (int i = 0; i < count; i++) {
+            AtomLayerSerialization.writeAtom(atoms.get(i), out);
+        }
+        atoms.subList(0, count).clear();
     }
 
     /**
@@ -201,6 +330,26 @@ public class BaggageWriter implements ElementWriter {
         doAddAtom(atom);
     }
 
+    /**
+     * Releases a pooled writer so that the next call to {@link #createPooled()} on this thread can reuse its atom list
+     * and backing buffers. The atoms returned by {@link #atoms()} must not be used after this call. Has no effect on
+     * writers that were not created by {@link #createPooled()}.
+     */
+    @Override
+    public void close() {
+        if (pooled && inUse) {
+            currentLevel = -1;
+            currentBagBeginIndex = 0;
+            wroteOverflow = false;
+            atoms.clear();
+            backing.reset();
+            nextAtomToMerge = null;
+            atomsToMerge = null;
+            out = null;
+            inUse = false;
+        }
+    }
+
     private void doAddAtom(ByteBuffer atom) {
         if (wroteOverflow && BaggageProtocol.OVERFLOW_MARKER.equals(atom)) {
             return;
@@ -214,16 +363,37 @@ public class BaggageWriter implements ElementWriter {
         ByteBuffer current;
         ByteBuffer backingBuffer;
 
+        /** Buffers allocated since the last reset that can be reused after the next reset, and the next to reuse */
+        final List<ByteBuffer> allocated = new ArrayList<>();
+        int nextReusable = 0;
+
         SharedBackingBuffer(int backingBufferSize) {
             this.backingBufferSize = backingBufferSize;
         }
 
         void ensureCapacity(int requiredCapacity) {
             if (backingBuffer == null || backingBuffer.remaining() < requiredCapacity) {
-                backingBuffer = ByteBuffer.allocate(Math.max(backingBufferSize, requiredCapacity));
+                if (requiredCapacity <= backingBufferSize && nextReusable < allocated.size()) {
+                    backingBuffer = allocated.get(nextReusable++);
+                    backingBuffer.clear();
+                } else {
+                    backingBuffer = ByteBuffer.allocate(Math.max(backingBufferSize, requiredCapacity));
+                    if (pooled && backingBuffer.capacity() == backingBufferSize
+                        && allocated.size() < MAX_POOLED_BUFFERS) {
+                        allocated.add(backingBuffer);
+                        nextReusable = allocated.size();
+                    }
+                }
             }
         }
 
+        /** Discards the current contents, so that the buffers can be reused */
+        void reset() {
+            current = null;
+            backingBuffer = null;
+            nextReusable = 0;
+        }
+
         ByteBuffer newAtom(int expectedSize) {
             finish();
             ensureCapacity(expectedSize);
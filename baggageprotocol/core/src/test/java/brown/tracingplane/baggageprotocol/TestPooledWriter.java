@@ -0,0 +1,72 @@
+package brown.tracingplane.baggageprotocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import brown.tracingplane.atomlayer.AtomLayerSerialization;
+
+public class TestPooledWriter {
+
+    private static void write(BaggageWriter writer, Random r) {
+        for (int i = 0; i < 5; i++) {
+            writer.enter(BagKey.indexed(i));
+            for (int j = 0; j < 50; j++) {
+                byte[] bytes = new byte[1 + r.nextInt(100)];
+                r.nextBytes(bytes);
+                writer.newDataAtom(bytes.length).put(bytes);
+            }
+            writer.sortData();
+            writer.exit();
+        }
+    }
+
+    @Test
+    public void testPooledMatchesUnpooled() {
+        for (int seed = 0; seed < 10; seed++) {
+            BaggageWriter unpooled = BaggageWriter.create();
+            write(unpooled, new Random(seed));
+            byte[] expected = AtomLayerSerialization.serialize(unpooled.atoms());
+
+            try (BaggageWriter pooled = BaggageWriter.createPooled()) {
+                write(pooled, new Random(seed));
+                assertArrayEquals(expected, AtomLayerSerialization.serialize(pooled.atoms()));
+            }
+        }
+    }
+
+    @Test
+    public void testPooledMergeWith() {
+        List<ByteBuffer> a = new ArrayList<>(), b = new ArrayList<>();
+        a.add(ByteBuffer.wrap(new byte[] { 0, 1 }));
+        b.add(ByteBuffer.wrap(new byte[] { 0, 2 }));
+
+        List<ByteBuffer> expected = BaggageWriter.createAndMergeWith(a, b).atoms();
+        try (BaggageWriter pooled = BaggageWriter.createPooledAndMergeWith(a, b)) {
+            assertEquals(expected, pooled.atoms());
+        }
+    }
+
+    @Test
+    public void testWriterIsReused() {
+        BaggageWriter first;
+        try (BaggageWriter writer = BaggageWriter.createPooled()) {
+            first = writer;
+
+            // The pooled writer is in use, so a nested writer is a new instance
+            try (BaggageWriter nested = BaggageWriter.createPooled()) {
+                assertNotSame(writer, nested);
+            }
+        }
+        try (BaggageWriter writer = BaggageWriter.createPooled()) {
+            assertSame(first, writer);
+            assertEquals(0, writer.atoms().size());
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package brown.tracingplane.baggageprotocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import brown.tracingplane.atomlayer.AtomArray;
+import brown.tracingplane.atomlayer.AtomLayerSerialization;
+import brown.tracingplane.atomlayer.ByteBuffers;
+
+/**
+ * Checks that reading baggage from an {@link AtomArray} behaves identically to reading from a list of atoms
+ */
+public class TestReaderAtomArray {
+
+    private static final Random r = new Random(0);
+
+    private static ByteBuffer randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        r.nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static void writeRandomBag(BaggageWriter writer, int depth) {
+        for (int i = 0; i < r.nextInt(4); i++) {
+            ByteBuffers.copyTo(randomBytes(1 + r.nextInt(10)), writer.newDataAtom(10));
+        }
+        writer.sortData();
+        if (depth > 0) {
+            for (int i = 0; i < 4; i++) {
+                if (r.nextBoolean()) {
+                    writer.enter(BagKey.indexed(i));
+                    writeRandomBag(writer, depth - 1);
+                    writer.exit();
+                }
+            }
+        }
+    }
+
+    private static List<ByteBuffer> randomBaggage() {
+        BaggageWriter writer = BaggageWriter.create();
+        writeRandomBag(writer, 3);
+        return writer.atoms();
+    }
+
+    /** Reads only the data in bags with even keys, and returns everything observed by the reader */
+    private static List<Object> readEvenBags(BaggageReader reader) {
+        List<Object> observed = new ArrayList<>();
+        readEvenBags(reader, observed);
+        observed.add(reader.overflowAtoms());
+        observed.add(reader.unprocessedAtoms());
+        return observed;
+    }
+
+    private static void readEvenBags(BaggageReader reader, List<Object> observed) {
+        while (reader.hasData()) {
+            observed.add(reader.nextData());
+        }
+        for (int i = 0; i < 4; i += 2) {
+            if (reader.enter(BagKey.indexed(i))) {
+                observed.add(i);
+                readEvenBags(reader, observed);
+                reader.exit();
+            }
+        }
+    }
+
+    @Test
+    public void testReadersAgree() {
+        for (int i = 0; i < 200; i++) {
+            List<ByteBuffer> atoms = randomBaggage();
+            byte[] serialized = AtomLayerSerialization.serialize(atoms);
+
+            List<Object> expected = readEvenBags(BaggageReader.create(AtomLayerSerialization.deserialize(serialized)));
+            List<Object> actual = readEvenBags(BaggageReader.create(AtomLayerSerialization.deserializeArray(serialized)));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testDataRetainsPrefix() {
+        BaggageWriter writer = BaggageWriter.create();
+        writer.enter(BagKey.indexed(3));
+        ByteBuffers.copyTo(randomBytes(8), writer.newDataAtom(8));
+        writer.exit();
+
+        AtomArray array = AtomLayerSerialization.deserializeArray(AtomLayerSerialization.serialize(writer.atoms()));
+        BaggageReader reader = BaggageReader.create(array);
+        assertTrue(reader.enter(BagKey.indexed(3)));
+        ByteBuffer data = reader.nextData();
+        assertEquals(8, data.remaining());
+        assertEquals(1, data.position());
+        reader.exit();
+        assertFalse(reader.hasNext());
+    }
+
+}
@@ -0,0 +1,52 @@
+package brown.tracingplane.baggageprotocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import brown.tracingplane.atomlayer.AtomLayerSerialization;
+
+public class TestStreamingWriter {
+
+    /** Writes randomly nested bags, some of which are empty and some of which have sorted data */
+    private static void write(BaggageWriter writer, Random r, int depth) {
+        int bags = r.nextInt(4);
+        for (int i = 0; i < bags; i++) {
+            writer.enter(BagKey.indexed(i * 2 + r.nextInt(2)));
+            int data = r.nextInt(3) == 0 ? 0 : r.nextInt(10);
+            for (int j = 0; j < data; j++) {
+                byte[] bytes = new byte[r.nextInt(20)];
+                r.nextBytes(bytes);
+                writer.newDataAtom(bytes.length).put(bytes);
+            }
+            if (r.nextBoolean()) {
+                writer.sortData();
+            }
+            if (depth > 0) {
+                write(writer, r, depth - 1);
+            }
+            writer.exit();
+        }
+    }
+
+    @Test
+    public void testStreamingMatchesSerialize() {
+        for (int seed = 0; seed < 200; seed++) {
+            BaggageWriter writer = BaggageWriter.create();
+            write(writer, new Random(seed), 3);
+            byte[] expected = AtomLayerSerialization.serialize(writer.atoms());
+
+            ByteBuffer out = ByteBuffer.allocate(expected.length + 10);
+            try (BaggageWriter streaming = BaggageWriter.createStreaming(out)) {
+                write(streaming, new Random(seed), 3);
+                streaming.finish();
+                assertEquals(0, streaming.atoms().size());
+            }
+            assertEquals(expected.length, out.position());
+            assertArrayEquals(expected, Arrays.copyOf(out.array(), out.position()));
+        }
+    }
+
+}
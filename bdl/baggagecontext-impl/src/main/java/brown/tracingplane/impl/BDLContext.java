@@ -1,22 +1,27 @@
 package brown.tracingplane.impl;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.google.common.collect.Lists;
 import brown.tracingplane.BaggageContext;
 import brown.tracingplane.BaggageListener;
 import brown.tracingplane.atomlayer.AtomLayerOverflow;
+import brown.tracingplane.atomlayer.AtomLayerSerialization;
 import brown.tracingplane.atomlayer.Lexicographic;
 import brown.tracingplane.atomlayer.StringUtils;
 import brown.tracingplane.baggageprotocol.BagKey;
 import brown.tracingplane.baggageprotocol.BaggageReader;
 import brown.tracingplane.baggageprotocol.BaggageWriter;
 import brown.tracingplane.bdl.Bag;
+import brown.tracingplane.bdl.BaggageHandler;
 import brown.tracingplane.impl.BaggageHandlerRegistry.Registrations;
 
 /**
@@ -88,7 +93,8 @@ public class BDLContext implements BaggageContext {
      * 
      * Note: have not actually implemented the ability to add more handlers at runtime.
      * 
-     * The bags variable stores non-null objects that we have parsed.
+     * The bags variable stores non-null objects that we have parsed. Bags for registered keys are stored in an array
+     * indexed by the key's registration slot; see {@link BagSlots}.
      * 
      * In future it would be nice to make the following improvement:
      * 
@@ -102,18 +108,27 @@ public class BDLContext implements BaggageContext {
      * 
      */
 
-    Map<BagKey, Bag> bags = null;
+    BagSlots bags = null;
     List<ByteBuffer> overflowAtoms = null;
     List<ByteBuffer> unprocessedAtoms = null;
     Map<Object, Object> attachments = null;
 
+    /**
+     * If this context was parsed lazily, the handlers to parse bags in {@link #unprocessedAtoms} with on first access;
+     * null otherwise. {@link #resolved} tracks the keys whose bags have already been parsed from the unprocessed atoms.
+     */
+    Registrations lazyRegistrations = null;
+    Set<BagKey> resolved = null;
+
     /** Get the value mapped to a key, or null if no mapping */
     public Bag get(BagKey key) {
-        return bags == null ? null : bags.get(key);
+        resolve(key);
+        return bags == null ? null : bags.handOut(key);
     }
 
     /** Remove the mapping for the specified key. Returns this object */
     public BDLContext remove(BagKey key) {
+        resolve(key);
         if (bags != null) {
             bags.remove(key);
         }
@@ -125,14 +140,22 @@ public class BDLContext implements BaggageContext {
         if (value == null) {
             remove(key);
         } else {
-            if (bags == null) {
-                bags = new TreeMap<>();
-            }
-            bags.put(key, value);
+            resolve(key);
+            bags().put(key, value);
+            bags.handOut(key); // the caller keeps a reference to the bag
         }
         return this;
     }
 
+    /** Returns the bags of this context, creating them if necessary */
+    private BagSlots bags() {
+        if (bags == null) {
+            bags = new BagSlots(lazyRegistrations == null ? BaggageHandlerRegistry.instance.registrations
+                                                          : lazyRegistrations);
+        }
+        return bags;
+    }
+
     /**
      * Gets the attachment mapped to the specified key, if there is one; returns null otherwise.
      */
@@ -186,53 +209,160 @@ public class BDLContext implements BaggageContext {
     }
 
     BaggageWriter serialize() {
-        BaggageWriter writer = BaggageWriter.createAndMergeWith(overflowAtoms, unprocessedAtoms);
+        return writeBags(BaggageWriter.createAndMergeWith(overflowAtoms, unprocessedAtoms));
+    }
 
-        for (BagKey key : bags.keySet()) {
-            Bag bag = bags.get(key);
-            if (bag != null) {
+    /**
+     * Like {@link #serialize()}, but uses a pooled {@link BaggageWriter} which must be closed once its atoms have been
+     * used
+     */
+    BaggageWriter serializePooled() {
+        return writeBags(BaggageWriter.createPooledAndMergeWith(overflowAtoms, unprocessedAtoms));
+    }
+
+    /**
+     * Writes the serialized form of this context to <code>out</code>. If there are no overflow or unprocessed atoms to
+     * merge with, bags are streamed directly into <code>out</code> without collecting their atoms in a list first.
+     */
+    void serializeTo(ByteBuffer out) {
+        if (overflowAtoms == null && unprocessedAtoms == null) {
+            try (BaggageWriter writer = writeBags(BaggageWriter.createStreaming(out))) {
+                writer.finish();
+            }
+        } else {
+            try (BaggageWriter writer = serializePooled()) {
+                AtomLayerSerialization.serialize(writer.atoms(), 0, out);
+            }
+        }
+    }
+
+    private BaggageWriter writeBags(BaggageWriter writer) {
+        if (bags != null) {
+            bags.forEach((key, bag) -> {
                 writer.enter(key);
                 bag.handler().serialize(writer, bag);
                 writer.exit();
-            }
+            });
         }
 
         return writer;
     }
 
+    /**
+     * @return the serialized size of this context. The size of each bag is remembered by {@link BagSlots}, but bags
+     *         that have changed since, or that have ever been handed out by {@link #get(BagKey)} or
+     *         {@link #put(BagKey, Bag)}, are serialized again on every call. If the context has overflow or
+     *         unprocessed atoms, they are merged with the bags' atoms when serialized, so the whole context is
+     *         serialized instead.
+     */
+    int serializedSize() {
+        if (overflowAtoms == null && unprocessedAtoms == null) {
+            return bags == null ? 0 : bags.serializedSize();
+        }
+        try (BaggageWriter writer = serializePooled()) {
+            return AtomLayerSerialization.serializedSize(writer.atoms());
+        }
+    }
+
+    /**
+     * @return the contents of this context as a plain {@link BDLContext}; only differs from this context for a
+     *         {@link ConcurrentBDLContext}
+     */
+    BDLContext contents() {
+        return this;
+    }
+
     BDLContext mergeWith(BDLContext second) {
         if (second == null) return this;
 
+        second = second.contents();
+        mergeLazyRegistrations(second);
+        mergeBagsWith(second);
+        overflowAtoms = AtomLayerOverflow.mergeOverflowAtoms(overflowAtoms, second.overflowAtoms);
+        unprocessedAtoms = Lexicographic.merge(unprocessedAtoms, second.unprocessedAtoms);
+        // Ignore attachments of second
+        return this;
+    }
+
+    /**
+     * Like {@link #mergeWith(BDLContext)}, but bags are joined with {@link BaggageHandler#compact(Bag, Bag)}, so
+     * <code>second</code> must not be joined anywhere else.
+     */
+    BDLContext compactWith(BDLContext second) {
+        if (second == null) return this;
+
+        second = second.contents();
+        mergeLazyRegistrations(second);
         if (bags == null) {
             bags = second.bags;
         } else if (second.bags != null) {
-            for (BagKey key : second.bags.keySet()) {
-                Bag firstBag = bags.get(key);
-                if (firstBag == null) {
-                    bags.put(key, second.bags.get(key));
-                } else {
-                    bags.put(key, firstBag.handler().join(firstBag, second.bags.get(key)));
-                }
-            }
+            bags.compactWith(second.bags);
         }
-
         overflowAtoms = AtomLayerOverflow.mergeOverflowAtoms(overflowAtoms, second.overflowAtoms);
         unprocessedAtoms = Lexicographic.merge(unprocessedAtoms, second.unprocessedAtoms);
-        // Ignore attachments of second
         return this;
     }
 
+    private void mergeBagsWith(BDLContext second) {
+        if (bags == null) {
+            bags = second.bags;
+        } else if (second.bags != null) {
+            bags.joinWith(second.bags);
+        }
+    }
+
+    /**
+     * Merges all of the provided contexts into the first non-null context. Bags are joined by their handlers as in
+     * {@link #mergeWith(BDLContext)}, but unprocessed atoms are merged with a single k-way merge rather than one merge
+     * per context.
+     */
+    static BDLContext mergeAll(Collection<BDLContext> contexts) {
+        BDLContext merged = null;
+        List<List<ByteBuffer>> unprocessedAtoms = new ArrayList<>(contexts.size());
+        for (BDLContext context : contexts) {
+            if (context == null || (context = context.contents()) == merged) {
+                continue;
+            }
+            if (merged == null) {
+                merged = context;
+            } else {
+                merged.mergeLazyRegistrations(context);
+                merged.mergeBagsWith(context);
+                merged.overflowAtoms = AtomLayerOverflow.mergeOverflowAtoms(merged.overflowAtoms,
+                                                                            context.overflowAtoms);
+            }
+            unprocessedAtoms.add(context.unprocessedAtoms);
+        }
+        if (merged != null) {
+            merged.unprocessedAtoms = Lexicographic.mergeAll(unprocessedAtoms);
+        }
+        return merged;
+    }
+
+    /**
+     * If <code>second</code> has bags that have not yet been parsed, they are merged into our unprocessed atoms, so
+     * every key might need to be parsed again
+     */
+    private void mergeLazyRegistrations(BDLContext second) {
+        if (second.lazyRegistrations != null && second.unprocessedAtoms != null) {
+            if (lazyRegistrations == null) {
+                lazyRegistrations = second.lazyRegistrations;
+            }
+            resolved = null;
+        }
+    }
+
     BDLContext branch() {
         BDLContext other = new BDLContext();
         if (bags != null) {
-            other.bags = new TreeMap<>();
-            for (BagKey key : bags.keySet()) {
-                Bag bag = bags.get(key);
-                other.bags.put(key, bag.handler().branch(bag));
-            }
+            other.bags = bags.branch();
         }
         other.overflowAtoms = overflowAtoms;
         other.unprocessedAtoms = unprocessedAtoms;
+        other.lazyRegistrations = lazyRegistrations;
+        if (resolved != null) {
+            other.resolved = new HashSet<>(resolved);
+        }
 
         if (attachments != null) {
             other.attachments = new HashMap<>(attachments);
@@ -241,6 +371,68 @@ public class BDLContext implements BaggageContext {
         return other;
     }
 
+    /**
+     * <p>
+     * Creates a {@link BDLContext} from the provided atoms without parsing any bags. All of the atoms are kept as
+     * unprocessed atoms, and bags with registered handlers are only parsed when first accessed with
+     * {@link #get(BagKey)}, {@link #put(BagKey, Bag)} or {@link #remove(BagKey)}. Bags that are never accessed are
+     * serialized as-is.
+     * </p>
+     * 
+     * <p>
+     * If a context with a parsed bag is joined with a context where the same bag has not been parsed, the unparsed
+     * atoms are parsed and joined into the bag when it is next accessed. If the bag is not accessed again, the atoms of
+     * both are merged when serialized, as they would be by a process with no handler registered for the bag.
+     * </p>
+     */
+    static BDLContext parseLazily(BaggageHandlerRegistry registry, List<ByteBuffer> atoms) {
+        if (atoms == null || atoms.isEmpty()) {
+            return null;
+        }
+        BDLContext bbcontents = new BDLContext();
+        bbcontents.unprocessedAtoms = atoms;
+        bbcontents.lazyRegistrations = registry.registrations;
+        return bbcontents;
+    }
+
+    /** If the bag for the specified key has not yet been parsed from the unprocessed atoms, parses it */
+    private void resolve(BagKey key) {
+        if (lazyRegistrations == null || unprocessedAtoms == null || (resolved != null && resolved.contains(key))) {
+            return;
+        }
+        BaggageHandler<?> handler = lazyRegistrations.keysToHandlers.get(key);
+        if (handler == null) {
+            return;
+        }
+
+        // Earlier resolves took the overflow marker out of the unprocessed atoms, so merge it back in to parse bags after
+        // the marker as overflowed, as eager parsing would
+        BaggageReader reader = overflowAtoms == null ? BaggageReader.create(unprocessedAtoms)
+                                                     : BaggageReader.create(unprocessedAtoms.iterator(),
+                                                                            overflowAtoms.iterator());
+        if (reader.enter(key)) {
+            Bag parsed = handler.parse(reader);
+            reader.exit();
+            if (parsed != null) {
+                Bag existing = bags == null ? null : bags.get(key);
+                if (existing != null) {
+                    parsed = existing.handler().join(existing, parsed);
+                }
+                bags().put(key, parsed);
+            }
+        }
+        reader.finish();
+        unprocessedAtoms = reader.unprocessedAtoms();
+        if (reader.didOverflow()) {
+            overflowAtoms = reader.overflowAtoms();
+        }
+
+        if (resolved == null) {
+            resolved = new HashSet<>();
+        }
+        resolved.add(key);
+    }
+
     /** Parse an instance of BDLContext from the provided atoms */
     static BDLContext parseFrom(BaggageHandlerRegistry registry, BaggageReader reader) {
         if (reader == null) {
@@ -259,8 +451,9 @@ public class BDLContext implements BaggageContext {
                 }
                 if (bbcontents == null) {
                     bbcontents = new BDLContext();
+                    bbcontents.bags = new BagSlots(reg);
                 }
-                bbcontents.put(key, parsed);
+                bbcontents.bags.put(key, parsed);
                 reader.exit();
             }
         }
@@ -290,10 +483,7 @@ public class BDLContext implements BaggageContext {
     public String toString() {
         List<String> lines = Lists.newArrayList();
         if (bags != null) {
-            for (BagKey key : bags.keySet()) {
-                Bag bag = bags.get(key);
-                lines.add(String.format("%s: %s", key, bag));
-            }
+            bags.forEach((key, bag) -> lines.add(String.format("%s: %s", key, bag)));
         }
         if (attachments != null) {
             for (Object key : attachments.keySet()) {
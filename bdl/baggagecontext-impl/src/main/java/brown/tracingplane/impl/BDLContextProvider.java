@@ -1,6 +1,8 @@
 package brown.tracingplane.impl;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -15,8 +17,8 @@ import brown.tracingplane.atomlayer.AtomLayerSerialization;
 import brown.tracingplane.baggageprotocol.BagKey;
 import brown.tracingplane.baggageprotocol.BaggageReader;
 import brown.tracingplane.baggageprotocol.BaggageWriter;
-import brown.tracingplane.bdl.BDLUtils;
 import brown.tracingplane.bdl.Bag;
+import brown.tracingplane.bdl.BaggageHandler;
 
 /**
  * <p>
@@ -40,12 +42,23 @@ public class BDLContextProvider implements BaggageProvider<BDLContext> {
      */
     private BaggageHandlerRegistry registry;
 
+    /**
+     * If true, deserialized contexts only parse bags when they are first accessed; see
+     * {@link BDLContext#parseLazily(BaggageHandlerRegistry, List)}
+     */
+    private final boolean lazy;
+
     BDLContextProvider() {
         this(BaggageHandlerRegistry.instance);
     }
 
     BDLContextProvider(BaggageHandlerRegistry registry) {
+        this(registry, false);
+    }
+
+    BDLContextProvider(BaggageHandlerRegistry registry, boolean lazy) {
         this.registry = registry;
+        this.lazy = lazy;
     }
 
     @Override
@@ -87,23 +100,34 @@ public class BDLContextProvider implements BaggageProvider<BDLContext> {
      */
     BiFunction<BDLContext, BDLContext, BDLContext> joinFunction = (l, r) -> l == null ? r : l.mergeWith(r);
 
+    /**
+     * True once a {@link JoinListener} has been registered, in which case {@link #joinAll(Collection)} joins contexts
+     * one at a time so that the listeners observe every join
+     */
+    boolean hasJoinListeners = false;
+
     @Override
     public BDLContext join(BDLContext left, BDLContext right) {
         return joinFunction.apply(left, right);
     }
 
+    @Override
+    public BDLContext joinAll(Collection<BDLContext> baggages) {
+        if (hasJoinListeners) {
+            return BaggageProvider.super.joinAll(baggages);
+        } else {
+            return BDLContext.mergeAll(baggages);
+        }
+    }
+
     /**
-     * Additional operation provided by {@link BDLContext} to compact a context. This is a prototype, its behavior is
-     * datatype-dependent and generally should not be used. Its implementation is kinda hacky since I'm not sure if this
-     * should be incorporated into the main API yet. Currently only {@link CounterImpl} actually implements compaction.
+     * Joins <code>right</code> into <code>left</code> using each bag's {@link BaggageHandler#compact(Bag, Bag)}.
+     * Currently only {@link CounterImpl} folds state during compaction; other bags are joined as usual. Join
+     * listeners are not invoked.
      */
+    @Override
     public BDLContext compact(BDLContext left, BDLContext right) {
-        BDLUtils.is_compaction.set(true);
-        try {
-            return joinFunction.apply(left, right);
-        } finally {
-            BDLUtils.is_compaction.set(false);
-        }
+        return left == null ? right : left.compactWith(right);
     }
 
     /**
@@ -115,34 +139,84 @@ public class BDLContextProvider implements BaggageProvider<BDLContext> {
     public void addListener(final JoinListener<BDLContext> listener) {
         final BiFunction<BDLContext, BDLContext, BDLContext> wrappedJoinFunction = joinFunction;
         joinFunction = (l, r) -> listener.join(l, r, wrappedJoinFunction);
+        hasJoinListeners = true;
     }
 
     @Override
     public BDLContext deserialize(byte[] serialized, int offset, int length) {
-        List<ByteBuffer> atoms = AtomLayerSerialization.deserialize(serialized, offset, length);
-        BaggageReader reader = BaggageReader.create(atoms);
-        return BDLContext.parseFrom(registry, reader);
+        List<ByteBuffer> atoms = AtomLayerSerialization.deserializeArray(serialized, offset, length);
+        return parse(atoms);
     }
 
     @Override
     public BDLContext deserialize(ByteBuffer buf) {
-        List<ByteBuffer> atoms = AtomLayerSerialization.deserialize(buf);
-        BaggageReader reader = BaggageReader.create(atoms);
-        return BDLContext.parseFrom(registry, reader);
+        List<ByteBuffer> atoms = AtomLayerSerialization.deserializeArray(buf);
+        return parse(atoms);
+    }
+
+    private BDLContext parse(List<ByteBuffer> atoms) {
+        if (lazy) {
+            return BDLContext.parseLazily(registry, atoms);
+        } else {
+            return BDLContext.parseFrom(registry, BaggageReader.create(atoms));
+        }
     }
 
     @Override
     public byte[] serialize(BDLContext baggage) {
         if (baggage == null) return null;
-        BaggageWriter writer = baggage.serialize();
-        return AtomLayerSerialization.serialize(writer.atoms());
+        try (BaggageWriter writer = baggage.serializePooled()) {
+            return AtomLayerSerialization.serialize(writer.atoms());
+        }
     }
 
     @Override
     public byte[] serialize(BDLContext baggage, int maximumSerializedSize) {
         if (baggage == null) return null;
-        BaggageWriter writer = baggage.serialize();
-        return AtomLayerSerialization.serialize(writer.atoms(), maximumSerializedSize);
+        try (BaggageWriter writer = baggage.serializePooled()) {
+            return AtomLayerSerialization.serialize(writer.atoms(), maximumSerializedSize);
+        }
+    }
+
+    /**
+     * Serializes the provided baggage directly into <code>out</code>, starting at its current position. Unless the
+     * baggage carries atoms that it could not parse, this avoids creating an intermediate list of atoms or byte array.
+     * 
+     * @param baggage the baggage to serialize, possibly null
+     * @param out the buffer to write to
+     * @return the number of bytes written
+     * @throws BufferOverflowException if <code>out</code> has insufficient space, in which case the position of
+     *             <code>out</code> is unchanged
+     */
+    public int serialize(BDLContext baggage, ByteBuffer out) {
+        if (baggage == null) return 0;
+        int start = out.position();
+        try {
+            baggage.serializeTo(out);
+        } catch (BufferOverflowException e) {
+            out.position(start);
+            throw e;
+        }
+        return out.position() - start;
+    }
+
+    /**
+     * Returns a {@link ConcurrentBDLContext} with the contents of <code>baggage</code>, which several threads can then
+     * get and set bags in at the same time. Each thread sees only its own changes until the context is branched, joined,
+     * serialized or consolidated, which must only happen once the threads have finished.
+     * 
+     * @param baggage the baggage to share between threads, which may be null, indicating the empty baggage. It should be
+     *            treated as discarded after this method call.
+     * @return a {@link ConcurrentBDLContext}, or <code>baggage</code> itself if it is already one
+     */
+    public static ConcurrentBDLContext concurrent(BaggageContext baggage) {
+        if (baggage instanceof ConcurrentBDLContext) {
+            return (ConcurrentBDLContext) baggage;
+        } else if (baggage instanceof BDLContext) {
+            return new ConcurrentBDLContext((BDLContext) baggage);
+        } else {
+            return new ConcurrentBDLContext(null);
+        }
     }
 
     /**
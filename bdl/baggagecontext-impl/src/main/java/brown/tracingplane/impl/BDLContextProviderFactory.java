@@ -1,17 +1,32 @@
 package brown.tracingplane.impl;
 
+import com.typesafe.config.ConfigFactory;
 import brown.tracingplane.BaggageContext;
 import brown.tracingplane.BaggageProvider;
 import brown.tracingplane.BaggageProviderFactory;
 
 /**
+ * <p>
  * {@link BaggageProviderFactory} for {@link BDLContextProvider}
+ * </p>
+ * 
+ * <p>
+ * If the <code>bdl.lazy</code> configuration value is true, bags in deserialized contexts are only parsed when they
+ * are first accessed. This suits processes that mostly forward baggage without reading it:
+ * 
+ * <pre>
+ * -Dbdl.lazy=true
+ * </pre>
+ * </p>
  */
 public class BDLContextProviderFactory implements BaggageProviderFactory {
 
+    private static final String LAZY_CONFIGURATION_KEY = "bdl.lazy";
+
     @Override
     public BaggageProvider<? extends BaggageContext> provider() {
-        return new BDLContextProvider(BaggageHandlerRegistry.instance);
+        boolean lazy = ConfigFactory.load().getBoolean(LAZY_CONFIGURATION_KEY);
+        return new BDLContextProvider(BaggageHandlerRegistry.instance, lazy);
     }
 
 }
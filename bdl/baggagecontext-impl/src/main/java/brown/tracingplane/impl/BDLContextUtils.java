@@ -1,6 +1,5 @@
 package brown.tracingplane.impl;
 
-import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -19,13 +18,15 @@ public class BDLContextUtils {
     private BDLContextUtils() {}
 
     /**
-     * Ideally, this is an instance method, but for now we're doing it here
+     * Returns the serialized size of the provided context. The context remembers the serialized size of each of its
+     * bags, but bags that have changed since, or that have ever been returned by {@link BDLContext#get(BagKey)} or
+     * passed to {@link BDLContext#put(BagKey, Bag)}, are serialized again on every call.
      */
     public static int serializedSize(BaggageContext instance) {
         if (instance == null || !(instance instanceof BDLContext)) {
             return 0;
         } else {
-            return AtomLayerSerialization.serializedSize(((BDLContext) instance).serialize().atoms());
+            return ((BDLContext) instance).serializedSize();
         }
     }
 
@@ -34,13 +35,10 @@ public class BDLContextUtils {
      */
     public static int serializedSizeOfBag(Bag bag) {
         if (bag != null) {
-            BaggageWriter writer = BaggageWriter.create();
-            bag.handler().serialize(writer, bag);
-            int size = 0;
-            for (ByteBuffer atom : writer.atoms()) {
-                size += 1 + atom.remaining();
+            try (BaggageWriter writer = BaggageWriter.createPooled()) {
+                bag.handler().serialize(writer, bag);
+                return AtomLayerSerialization.serializedSize(writer.atoms());
             }
-            return size;
         }
         return 0;
     }
@@ -50,15 +48,12 @@ public class BDLContextUtils {
      */
     public static int serializedSize(BagKey key, Bag bag) {
         if (bag != null) {
-            BaggageWriter writer = BaggageWriter.create();
-            writer.enter(key);
-            bag.handler().serialize(writer, bag);
-            writer.exit();
-            int size = 0;
-            for (ByteBuffer atom : writer.atoms()) {
-                size += 1 + atom.remaining();
+            try (BaggageWriter writer = BaggageWriter.createPooled()) {
+                writer.enter(key);
+                bag.handler().serialize(writer, bag);
+                writer.exit();
+                return AtomLayerSerialization.serializedSize(writer.atoms());
             }
-            return size;
         }
         return 0;
     }
@@ -75,17 +70,15 @@ public class BDLContextUtils {
             return Collections.emptyMap();
         }
 
+        instance = instance.contents();
         Map<String, String> summary = new HashMap<>();
         summary.put("BaggageTotalSize", String.valueOf(serializedSize(instance)));
 
         if (instance.bags != null) {
-            for (BagKey key : instance.bags.keySet()) {
-                Bag bag = instance.bags.get(key);
-                if (bag != null) {
-                    String name = bag.getClass().getSimpleName();
-                    summary.put(name, String.valueOf(serializedSize(key, bag)));
-                }
-            }
+            instance.bags.forEach((key, bag) -> {
+                String name = bag.getClass().getSimpleName();
+                summary.put(name, String.valueOf(serializedSize(key, bag)));
+            });
         }
         if (instance.overflowAtoms != null) {
             summary.put("OverflowAtoms", TypeUtils.toHexString(instance.overflowAtoms, ","));
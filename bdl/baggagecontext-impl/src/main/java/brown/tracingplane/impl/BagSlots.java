@@ -0,0 +1,261 @@
+package brown.tracingplane.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.bdl.Bag;
+import brown.tracingplane.bdl.BaggageHandler;
+import brown.tracingplane.impl.BaggageHandlerRegistry.Registrations;
+
+/**
+ * <p>
+ * The bags of a {@link BDLContext}. Bags for keys that are registered in {@link Registrations} are stored in an array
+ * indexed by the key's slot, so getting a bag is a constant-time lookup and branching is an array copy. Bags for keys
+ * that are not registered are kept in a small sorted overflow map.
+ * </p>
+ *
+ * <p>
+ * {@link #forEach(BiConsumer)} visits bags in {@link BagKey} order, which is the order that the baggage protocol
+ * requires bags to be written in.
+ * </p>
+ *
+ * <p>
+ * The serialized size of each registered slot's bag is remembered when measured by {@link #serializedSize()}. Bags are
+ * modified in place by whoever holds them, so once a bag has been handed out to a caller with {@link #handOut(BagKey)},
+ * it is serialized again on every call until the bag is removed. Remembered sizes therefore only save work for bags
+ * that no caller holds, such as bags that were parsed or branched and have not been accessed since.
+ * </p>
+ */
+class BagSlots {
+
+    /** {@link #sizes} value of a slot whose bag has not been measured since it last changed */
+    static final int UNMEASURED = -1;
+
+    /** {@link #sizes} value of a slot whose bag has been handed out, and so might change at any time */
+    static final int HANDED_OUT = -2;
+
+    final Registrations registrations;
+    final Bag[] slots;
+    final int[] sizes;
+    TreeMap<BagKey, Bag> overflow = null;
+    int size = 0;
+
+    BagSlots(Registrations registrations) {
+        this.registrations = registrations;
+        this.slots = new Bag[registrations.keys.length];
+        this.sizes = new int[registrations.keys.length];
+        Arrays.fill(sizes, UNMEASURED);
+    }
+
+    /** Get the bag mapped to a key, or null if no mapping */
+    Bag get(BagKey key) {
+        int slot = registrations.slot(key);
+        if (slot >= 0) {
+            return slots[slot];
+        }
+        return overflow == null ? null : overflow.get(key);
+    }
+
+    /**
+     * Get the bag mapped to a key, or null if no mapping, like {@link #get(BagKey)}. The caller might modify the bag, so
+     * it will be measured again by every call to {@link #serializedSize()}.
+     */
+    Bag handOut(BagKey key) {
+        int slot = registrations.slot(key);
+        if (slot >= 0) {
+            Bag bag = slots[slot];
+            if (bag != null) {
+                sizes[slot] = HANDED_OUT;
+            }
+            return bag;
+        }
+        return overflow == null ? null : overflow.get(key);
+    }
+
+    /**
+     * Set the bag for a key; the bag must not be null. If the previous bag was handed out, the new bag is treated as
+     * handed out too, since it might be the previous bag or a join of it.
+     */
+    void put(BagKey key, Bag bag) {
+        int slot = registrations.slot(key);
+        if (slot >= 0) {
+            if (slots[slot] == null) {
+                size++;
+            }
+            slots[slot] = bag;
+            if (sizes[slot] != HANDED_OUT) {
+                sizes[slot] = UNMEASURED;
+            }
+        } else {
+            if (overflow == null) {
+                overflow = new TreeMap<>();
+            }
+            if (overflow.put(key, bag) == null) {
+                size++;
+            }
+        }
+    }
+
+    /** Remove the mapping for a key */
+    void remove(BagKey key) {
+        int slot = registrations.slot(key);
+        if (slot >= 0) {
+            if (slots[slot] != null) {
+                slots[slot] = null;
+                size--;
+            }
+            sizes[slot] = UNMEASURED;
+        } else if (overflow != null && overflow.remove(key) != null) {
+            size--;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Creates a copy of these slots, branching each bag with its handler */
+    BagSlots branch() {
+        BagSlots other = new BagSlots(registrations);
+        for (int i = 0; i < slots.length; i++) {
+            Bag bag = slots[i];
+            if (bag != null) {
+                other.slots[i] = bag.handler().branch(bag);
+                other.sizes[i] = sizes[i] == HANDED_OUT ? UNMEASURED : sizes[i];
+            }
+        }
+        if (overflow != null) {
+            other.overflow = new TreeMap<>();
+            for (Map.Entry<BagKey, Bag> entry : overflow.entrySet()) {
+                Bag bag = entry.getValue();
+                other.overflow.put(entry.getKey(), bag.handler().branch(bag));
+            }
+        }
+        other.size = size;
+        return other;
+    }
+
+    /**
+     * Joins the bags of <code>other</code> into these slots. If both were created with the same registrations, bags are
+     * joined slot by slot; otherwise they are joined by key.
+     */
+    void joinWith(BagSlots other) {
+        joinWith(other, false);
+    }
+
+    /** Like {@link #joinWith(BagSlots)}, but bags are joined with {@link BaggageHandler#compact(Bag, Bag)} */
+    void compactWith(BagSlots other) {
+        joinWith(other, true);
+    }
+
+    private void joinWith(BagSlots other, boolean compact) {
+        if (other.registrations == registrations) {
+            for (int i = 0; i < slots.length; i++) {
+                Bag otherBag = other.slots[i];
+                if (otherBag != null) {
+                    Bag bag = slots[i];
+                    if (bag == null) {
+                        slots[i] = otherBag;
+                        size++;
+                    } else {
+                        slots[i] = join(bag, otherBag, compact);
+                    }
+                    sizes[i] = sizes[i] == HANDED_OUT || other.sizes[i] == HANDED_OUT ? HANDED_OUT : UNMEASURED;
+                }
+            }
+            if (other.overflow != null) {
+                for (Map.Entry<BagKey, Bag> entry : other.overflow.entrySet()) {
+                    join(entry.getKey(), entry.getValue(), compact);
+                }
+            }
+        } else {
+            other.forEach((key, otherBag) -> {
+                join(key, otherBag, compact);
+                if (other.isHandedOut(key)) {
+                    handOut(key);
+                }
+            });
+        }
+    }
+
+    private boolean isHandedOut(BagKey key) {
+        int slot = registrations.slot(key);
+        return slot >= 0 && sizes[slot] == HANDED_OUT;
+    }
+
+    private void join(BagKey key, Bag otherBag, boolean compact) {
+        Bag bag = get(key);
+        put(key, bag == null ? otherBag : join(bag, otherBag, compact));
+    }
+
+    private static Bag join(Bag bag, Bag otherBag, boolean compact) {
+        BaggageHandler<?> handler = bag.handler();
+        return compact ? handler.compact(bag, otherBag) : handler.join(bag, otherBag);
+    }
+
+    /**
+     * @return the total serialized size of the bags. Registered slots reuse their size from the previous call unless
+     *         their bag has changed since or has been handed out; bags in the overflow map are always measured.
+     */
+    int serializedSize() {
+        BagKey[] keys = registrations.keys;
+        int total = 0;
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                if (sizes[i] >= 0) {
+                    total += sizes[i];
+                } else {
+                    int bagSize = BDLContextUtils.serializedSize(keys[i], slots[i]);
+                    if (sizes[i] == UNMEASURED) {
+                        sizes[i] = bagSize;
+                    }
+                    total += bagSize;
+                }
+            }
+        }
+        if (overflow != null) {
+            for (Map.Entry<BagKey, Bag> entry : overflow.entrySet()) {
+                total += BDLContextUtils.serializedSize(entry.getKey(), entry.getValue());
+            }
+        }
+        return total;
+    }
+
+    /** Visits each bag in {@link BagKey} order */
+    void forEach(BiConsumer<BagKey, Bag> action) {
+        BagKey[] keys = registrations.keys;
+        if (overflow == null) {
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] != null) {
+                    action.accept(keys[i], slots[i]);
+                }
+            }
+            return;
+        }
+
+        // Interleave the registered keys with the overflow keys
+        Iterator<Map.Entry<BagKey, Bag>> it = overflow.entrySet().iterator();
+        Map.Entry<BagKey, Bag> next = it.hasNext() ? it.next() : null;
+        for (int i = 0; i < slots.length; i++) {
+            while (next != null && next.getKey().compareTo(keys[i]) < 0) {
+                action.accept(next.getKey(), next.getValue());
+                next = it.hasNext() ? it.next() : null;
+            }
+            if (slots[i] != null) {
+                action.accept(keys[i], slots[i]);
+            }
+        }
+        while (next != null) {
+            action.accept(next.getKey(), next.getValue());
+            next = it.hasNext() ? it.next() : null;
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package brown.tracingplane.impl;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -49,6 +50,9 @@ public class BaggageHandlerRegistry {
 
     private static final String BAGS_CONFIGURATION_KEY = "bag";
 
+    /** Indexed keys with an index below this are looked up by index rather than by hashing */
+    private static final int MAX_INDEXED_SLOT = 1024;
+
     static final BaggageHandlerRegistry instance = BaggageHandlerRegistry.create();
 
     Registrations registrations;
@@ -107,20 +111,62 @@ public class BaggageHandlerRegistry {
         final Map<BaggageHandler<?>, BagKey> handlersToKeys = new HashMap<>();
         final Map<BagKey, BaggageHandler<?>> keysToHandlers = new TreeMap<>();
 
+        /**
+         * Registered keys are assigned slots, their position in {@link #keys}. indexedSlots maps the index of an
+         * indexed key directly to its slot; other keys are looked up in otherSlots
+         */
+        final int[] indexedSlots;
+        final Map<BagKey, Integer> otherSlots = new HashMap<>();
+
         Registrations(Map<BagKey, BaggageHandler<?>> mapping) {
-            keys = new BagKey[mapping.size()];
-            handlers = new BaggageHandler<?>[mapping.size()];
+            keysToHandlers.putAll(mapping);
+            keys = new BagKey[keysToHandlers.size()];
+            handlers = new BaggageHandler<?>[keysToHandlers.size()];
 
             int i = 0;
-            for (BagKey key : mapping.keySet()) {
-                BaggageHandler<?> handler = mapping.get(key);
+            int maxIndex = -1;
+            for (BagKey key : keysToHandlers.keySet()) {
+                BaggageHandler<?> handler = keysToHandlers.get(key);
 
-                keysToHandlers.put(key, handler);
                 handlersToKeys.put(handler, key);
                 keys[i] = key;
                 handlers[i] = handler;
+                if (key instanceof BagKey.Indexed && ((BagKey.Indexed) key).index < MAX_INDEXED_SLOT) {
+                    maxIndex = Math.max(maxIndex, ((BagKey.Indexed) key).index);
+                }
                 i++;
             }
+
+            indexedSlots = new int[maxIndex + 1];
+            Arrays.fill(indexedSlots, -1);
+            for (int slot = 0; slot < keys.length; slot++) {
+                int index = keys[slot] instanceof BagKey.Indexed ? ((BagKey.Indexed) keys[slot]).index : -1;
+                if (index >= 0 && index < indexedSlots.length && indexedSlots[index] < 0) {
+                    indexedSlots[index] = slot;
+                } else {
+                    otherSlots.put(keys[slot], slot);
+                }
+            }
+        }
+
+        /**
+         * @return the slot of the specified key, i.e., its position in {@link #keys}, or -1 if it is not registered
+         */
+        int slot(BagKey key) {
+            if (key instanceof BagKey.Indexed) {
+                int index = ((BagKey.Indexed) key).index;
+                if (index >= 0 && index < indexedSlots.length) {
+                    int slot = indexedSlots[index];
+                    if (slot >= 0 && keys[slot].equals(key)) {
+                        return slot;
+                    }
+                }
+            }
+            if (otherSlots.isEmpty()) {
+                return -1;
+            }
+            Integer slot = otherSlots.get(key);
+            return slot == null ? -1 : slot;
         }
 
         /**
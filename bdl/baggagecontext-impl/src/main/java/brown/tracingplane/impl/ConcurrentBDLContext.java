@@ -0,0 +1,252 @@
+package brown.tracingplane.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
+import brown.tracingplane.bdl.Bag;
+
+/**
+ * <p>
+ * A {@link BDLContext} that several threads can access at the same time, e.g., parallel stream workers that each add
+ * to the same request's baggage. Create one with {@link BDLContextProvider#concurrent(brown.tracingplane.BaggageContext)}.
+ * </p>
+ *
+ * <p>
+ * Each thread that accesses the context implicitly gets its own branch of it, and {@link #get(BagKey)},
+ * {@link #put(BagKey, Bag)}, {@link #remove(BagKey)} and the attachment methods operate on the calling thread's branch.
+ * Threads therefore only see their own contributions, and apart from the first access by each thread, no locks are
+ * taken and no state is shared between threads.
+ * </p>
+ *
+ * <p>
+ * The branches of all threads are joined back together when the context is read as a whole: when it is branched,
+ * joined or serialized, or when {@link #consolidate()} is called. As for any fork/join, the contributing threads must
+ * have finished contributing before this happens, e.g., by waiting for the parallel stream or the tasks' futures.
+ * Branching or joining the context returns a plain {@link BDLContext}.
+ * </p>
+ *
+ * <p>
+ * Joining alone would undo removals, so each thread's removed and replaced bags and its attachment changes are
+ * recorded, and applied before joining. If any thread removes or replaces a bag, the bag is dropped from the
+ * consolidated contents and from the branches of threads that did not, so the result only has the bags that threads
+ * put for that key. Attachment changes of different threads are applied in no particular order.
+ * </p>
+ */
+public class ConcurrentBDLContext extends BDLContext {
+
+    /** The contents of this context as of the last consolidation; never modified while threads contribute */
+    private BDLContext base;
+
+    /** Each contributing thread's branch of the base */
+    private final ConcurrentHashMap<Thread, Contribution> contributions = new ConcurrentHashMap<>();
+
+    /** A thread's branch of the base, plus the changes that joining the branch would not carry over */
+    private static class Contribution {
+        final BDLContext context;
+
+        /** Keys whose bags this thread removed or replaced */
+        Set<BagKey> overwritten = null;
+
+        /** Attachments this thread set, mapped to null if it detached them */
+        Map<Object, Object> attachments = null;
+
+        /** Whether this thread cleared the attachments before making the changes in {@link #attachments} */
+        boolean clearedAttachments = false;
+
+        Contribution(BDLContext context) {
+            this.context = context;
+        }
+
+        void overwrite(BagKey key) {
+            if (overwritten == null) {
+                overwritten = new HashSet<>();
+            }
+            overwritten.add(key);
+        }
+
+        void attach(Object key, Object value) {
+            if (key != null) {
+                if (attachments == null) {
+                    attachments = new HashMap<>();
+                }
+                attachments.put(key, value);
+            }
+        }
+    }
+
+    ConcurrentBDLContext(BDLContext base) {
+        this.base = base;
+    }
+
+    /** @return the calling thread's contribution to this context, creating it if this is the thread's first access */
+    private Contribution local() {
+        Thread thread = Thread.currentThread();
+        Contribution local = contributions.get(thread);
+        if (local == null) {
+            local = contribute(thread);
+        }
+        return local;
+    }
+
+    private synchronized Contribution contribute(Thread thread) {
+        Contribution local = new Contribution(base == null ? new BDLContext() : base.branch());
+        contributions.put(thread, local);
+        return local;
+    }
+
+    /**
+     * Joins the contributions of all threads into a single context, which subsequent accesses branch from. The threads
+     * that contributed must have finished contributing.
+     *
+     * @return the consolidated contents of this context, possibly null
+     */
+    public synchronized BDLContext consolidate() {
+        if (!contributions.isEmpty()) {
+            Set<BagKey> overwritten = new HashSet<>();
+            Map<Object, Object> attachments = new HashMap<>();
+            if (base != null && base.attachments != null) {
+                attachments.putAll(base.attachments);
+            }
+            for (Contribution contribution : contributions.values()) {
+                if (contribution.overwritten != null) {
+                    overwritten.addAll(contribution.overwritten);
+                }
+                if (contribution.clearedAttachments) {
+                    attachments.clear();
+                }
+                if (contribution.attachments != null) {
+                    contribution.attachments.forEach((key, value) -> {
+                        if (value == null) {
+                            attachments.remove(key);
+                        } else {
+                            attachments.put(key, value);
+                        }
+                    });
+                }
+            }
+
+            // Drop the bags that some thread removed or replaced, except where a thread put them
+            List<BDLContext> all = new ArrayList<>(contributions.size() + 1);
+            if (base != null) {
+                overwritten.forEach(base::remove);
+                all.add(base);
+            }
+            for (Contribution contribution : contributions.values()) {
+                for (BagKey key : overwritten) {
+                    if (contribution.overwritten == null || !contribution.overwritten.contains(key)) {
+                        contribution.context.remove(key);
+                    }
+                }
+                all.add(contribution.context);
+            }
+            contributions.clear();
+            base = BDLContext.mergeAll(all);
+            base.attachments = attachments.isEmpty() ? null : attachments;
+        }
+        return base;
+    }
+
+    @Override
+    BDLContext contents() {
+        BDLContext contents = consolidate();
+        return contents == null ? new BDLContext() : contents;
+    }
+
+    @Override
+    public Bag get(BagKey key) {
+        return local().context.get(key);
+    }
+
+    @Override
+    public BDLContext remove(BagKey key) {
+        Contribution local = local();
+        local.context.remove(key);
+        local.overwrite(key);
+        return this;
+    }
+
+    @Override
+    public BDLContext put(BagKey key, Bag value) {
+        Contribution local = local();
+        local.context.put(key, value);
+        local.overwrite(key);
+        return this;
+    }
+
+    @Override
+    public Object getAttachment(Object key) {
+        return local().context.getAttachment(key);
+    }
+
+    @Override
+    public BDLContext detach(Object key) {
+        Contribution local = local();
+        local.context.detach(key);
+        local.attach(key, null);
+        return this;
+    }
+
+    @Override
+    public BDLContext attach(Object key, Object value) {
+        Contribution local = local();
+        local.context.attach(key, value);
+        local.attach(key, value);
+        return this;
+    }
+
+    @Override
+    public void clearAttachments() {
+        Contribution local = local();
+        local.context.clearAttachments();
+        local.clearedAttachments = true;
+        local.attachments = null;
+    }
+
+    @Override
+    BaggageWriter serialize() {
+        return contents().serialize();
+    }
+
+    @Override
+    BaggageWriter serializePooled() {
+        return contents().serializePooled();
+    }
+
+    @Override
+    void serializeTo(ByteBuffer out) {
+        contents().serializeTo(out);
+    }
+
+    @Override
+    int serializedSize() {
+        return contents().serializedSize();
+    }
+
+    @Override
+    BDLContext mergeWith(BDLContext second) {
+        return contents().mergeWith(second);
+    }
+
+    @Override
+    BDLContext compactWith(BDLContext second) {
+        return contents().compactWith(second);
+    }
+
+    @Override
+    BDLContext branch() {
+        return contents().branch();
+    }
+
+    @Override
+    public String toString() {
+        return contents().toString();
+    }
+
+}
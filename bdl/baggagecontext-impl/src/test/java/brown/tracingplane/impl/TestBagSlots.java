@@ -0,0 +1,144 @@
+package brown.tracingplane.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.bdl.Bag;
+import brown.tracingplane.bdl.CounterImpl;
+import brown.tracingplane.bdl.SpecialTypes.Counter;
+
+public class TestBagSlots {
+
+    static final BagKey A = BagKey.indexed(3), B = BagKey.indexed(7), NAMED = BagKey.named("named");
+    static final BagKey UNREGISTERED_LOW = BagKey.indexed(1), UNREGISTERED_MID = BagKey.indexed(5),
+            UNREGISTERED_HIGH = BagKey.indexed(2000);
+
+    BaggageHandlerRegistry registry;
+
+    @Before
+    public void createRegistry() {
+        registry = BaggageHandlerRegistry.empty();
+        registry.doAdd(A, CounterImpl.Handler.instance);
+        registry.doAdd(B, CounterImpl.Handler.instance);
+        registry.doAdd(NAMED, CounterImpl.Handler.instance);
+    }
+
+    private static Counter counter(long value) {
+        Counter counter = new CounterImpl();
+        counter.increment(value);
+        return counter;
+    }
+
+    private static List<BagKey> keys(BagSlots slots) {
+        List<BagKey> keys = new ArrayList<>();
+        slots.forEach((key, bag) -> keys.add(key));
+        return keys;
+    }
+
+    @Test
+    public void testSlotLookup() {
+        BaggageHandlerRegistry.Registrations reg = registry.registrations;
+        assertEquals(reg.keys.length, 3);
+        for (int i = 0; i < reg.keys.length; i++) {
+            assertEquals(i, reg.slot(reg.keys[i]));
+        }
+        assertEquals(-1, reg.slot(UNREGISTERED_LOW));
+        assertEquals(-1, reg.slot(UNREGISTERED_HIGH));
+        assertEquals(-1, reg.slot(BagKey.named("other")));
+    }
+
+    @Test
+    public void testGetPutRemove() {
+        BagSlots slots = new BagSlots(registry.registrations);
+        assertNull(slots.get(A));
+
+        Counter a = counter(1), mid = counter(2);
+        slots.put(A, a);
+        slots.put(UNREGISTERED_MID, mid);
+        assertSame(a, slots.get(A));
+        assertSame(mid, slots.get(UNREGISTERED_MID));
+        assertEquals(2, slots.size());
+
+        slots.put(A, counter(3));
+        assertEquals(2, slots.size());
+
+        slots.remove(A);
+        slots.remove(B);
+        slots.remove(UNREGISTERED_MID);
+        assertNull(slots.get(A));
+        assertNull(slots.get(UNREGISTERED_MID));
+        assertEquals(0, slots.size());
+    }
+
+    @Test
+    public void testIterationOrder() {
+        BagSlots slots = new BagSlots(registry.registrations);
+        slots.put(UNREGISTERED_HIGH, counter(1));
+        slots.put(NAMED, counter(1));
+        slots.put(B, counter(1));
+        slots.put(UNREGISTERED_MID, counter(1));
+        slots.put(A, counter(1));
+        slots.put(UNREGISTERED_LOW, counter(1));
+
+        List<BagKey> keys = keys(slots);
+        assertEquals(6, keys.size());
+        for (int i = 1; i < keys.size(); i++) {
+            assertEquals(-1, Integer.signum(keys.get(i - 1).compareTo(keys.get(i))));
+        }
+    }
+
+    @Test
+    public void testBranch() {
+        BagSlots slots = new BagSlots(registry.registrations);
+        slots.put(A, counter(5));
+        slots.put(UNREGISTERED_MID, counter(6));
+
+        BagSlots branched = slots.branch();
+        assertEquals(2, branched.size());
+        assertNotSame(slots.get(A), branched.get(A));
+        assertEquals(5, ((Counter) branched.get(A)).getValue());
+        assertEquals(6, ((Counter) branched.get(UNREGISTERED_MID)).getValue());
+
+        ((Counter) branched.get(A)).increment();
+        assertEquals(5, ((Counter) slots.get(A)).getValue());
+    }
+
+    @Test
+    public void testJoin() {
+        BagSlots first = new BagSlots(registry.registrations);
+        first.put(A, counter(5));
+        BagSlots second = first.branch();
+        ((Counter) first.get(A)).increment(2);
+        ((Counter) second.get(A)).increment(3);
+        second.put(B, counter(4));
+
+        first.joinWith(second);
+        assertEquals(2, first.size());
+        assertEquals(10, ((Counter) first.get(A)).getValue());
+        assertEquals(4, ((Counter) first.get(B)).getValue());
+    }
+
+    @Test
+    public void testJoinDifferentRegistrations() {
+        BagSlots first = new BagSlots(registry.registrations);
+        first.put(A, counter(5));
+
+        registry.doRemove(B);
+        BagSlots second = new BagSlots(registry.registrations);
+        second.put(A, counter(6));
+        second.put(B, counter(7));
+
+        first.joinWith(second);
+        Bag b = first.get(B);
+        assertEquals(11, ((Counter) first.get(A)).getValue());
+        assertEquals(7, ((Counter) b).getValue());
+        assertEquals(2, keys(first).size());
+    }
+
+}
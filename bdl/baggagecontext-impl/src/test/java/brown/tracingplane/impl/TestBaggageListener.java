@@ -1,6 +1,8 @@
 package brown.tracingplane.impl;
 
 import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 import brown.tracingplane.BaggageListener.BranchListener;
@@ -178,4 +180,21 @@ public class TestBaggageListener {
 //        assertEquals(2, joinCount2.get());
 //    }
 
+    @Test
+    public void testJoinAllInvokesJoinListener() {
+        final AtomicInteger joinCount = new AtomicInteger(0);
+        JoinListener<BDLContext> joinListener = (l, r, wrapped) -> {
+            joinCount.getAndIncrement();
+            return wrapped.apply(l, r);
+        };
+        provider.addListener(joinListener);
+
+        List<BDLContext> contexts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            contexts.add(new BDLContext());
+        }
+        provider.joinAll(contexts);
+        assertEquals(5, joinCount.get());
+    }
+
 }
@@ -0,0 +1,45 @@
+package brown.tracingplane.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.bdl.CounterImpl;
+import brown.tracingplane.bdl.SpecialTypes.Counter;
+
+public class TestCompact {
+
+    BDLContextProvider provider = new BDLContextProvider(BaggageHandlerRegistry.empty());
+
+    BagKey key = BagKey.indexed(3);
+
+    private Counter counter(BaggageContext baggage) {
+        return (Counter) BDLContextProvider.get(baggage, key);
+    }
+
+    private int serializedSize(BDLContext baggage) {
+        return provider.serialize(baggage).length;
+    }
+
+    @Test
+    public void testCompactFoldsCounters() {
+        BDLContext joined = (BDLContext) BDLContextProvider.set(null, key, new CounterImpl());
+        BDLContext compacted = (BDLContext) BDLContextProvider.set(null, key, new CounterImpl());
+        counter(joined).increment();
+        counter(compacted).increment();
+
+        for (int i = 0; i < 100; i++) {
+            BDLContext a = provider.branch(joined), b = provider.branch(compacted);
+            counter(a).increment();
+            counter(b).increment();
+            joined = provider.join(joined, a);
+            compacted = provider.compact(compacted, b);
+        }
+
+        assertEquals(101, counter(joined).getValue());
+        assertEquals(101, counter(compacted).getValue());
+        assertTrue(serializedSize(compacted) * 50 < serializedSize(joined));
+    }
+
+}
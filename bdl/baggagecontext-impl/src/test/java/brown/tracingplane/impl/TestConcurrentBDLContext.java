@@ -0,0 +1,184 @@
+package brown.tracingplane.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.bdl.CounterImpl;
+import brown.tracingplane.bdl.SpecialTypes.Counter;
+
+public class TestConcurrentBDLContext {
+
+    BDLContextProvider provider = new BDLContextProvider(BaggageHandlerRegistry.empty());
+
+    BagKey key = BagKey.indexed(3);
+
+    private Counter counter(BaggageContext baggage) {
+        return (Counter) BDLContextProvider.get(baggage, key);
+    }
+
+    private static CounterImpl newCounter(long value) {
+        CounterImpl counter = new CounterImpl();
+        counter.increment(value);
+        return counter;
+    }
+
+    private BaggageContext withCounter(long value) {
+        return BDLContextProvider.set(null, key, newCounter(value));
+    }
+
+    /** Runs the task in several threads at once and waits for them; rethrows any assertion failure */
+    private static void runInThreads(int threads, Runnable task) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> started = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(task);
+            thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+            thread.start();
+            started.add(thread);
+        }
+        for (Thread thread : started) {
+            thread.join();
+        }
+        if (failure.get() instanceof AssertionError) {
+            throw (AssertionError) failure.get();
+        }
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void testConcurrent() {
+        ConcurrentBDLContext concurrent = BDLContextProvider.concurrent(withCounter(1));
+        assertSame(concurrent, BDLContextProvider.concurrent(concurrent));
+        assertNull(BDLContextProvider.concurrent(null).consolidate());
+        assertNull(BDLContextProvider.concurrent(new BaggageContext() {}).consolidate());
+    }
+
+    @Test
+    public void testThreadsSeeOwnContributions() throws InterruptedException {
+        ConcurrentBDLContext concurrent = BDLContextProvider.concurrent(withCounter(1));
+        assertEquals(1, counter(concurrent).getValue());
+
+        runInThreads(1, () -> {
+            counter(concurrent).increment();
+            assertEquals(2, counter(concurrent).getValue());
+        });
+        assertEquals(1, counter(concurrent).getValue());
+
+        concurrent.consolidate();
+        assertEquals(2, counter(concurrent).getValue());
+    }
+
+    @Test
+    public void testParallelIncrements() throws InterruptedException {
+        ConcurrentBDLContext concurrent = BDLContextProvider.concurrent(withCounter(1));
+        runInThreads(8, () -> {
+            for (int i = 0; i < 1000; i++) {
+                counter(concurrent).increment();
+            }
+        });
+        assertEquals(8001, counter(provider.branch(concurrent)).getValue());
+
+        // Contributions after consolidation branch from the consolidated contents
+        runInThreads(2, () -> counter(concurrent).increment());
+        assertEquals(8003, counter(concurrent.consolidate()).getValue());
+    }
+
+    @Test
+    public void testSetFromThreads() throws InterruptedException {
+        ConcurrentBDLContext concurrent = BDLContextProvider.concurrent(null);
+        runInThreads(4, () -> {
+            BaggageContext set = BDLContextProvider.set(concurrent, key, new CounterImpl());
+            assertSame(concurrent, set);
+            counter(concurrent).increment(10);
+        });
+        assertEquals(40, counter(concurrent.consolidate()).getValue());
+    }
+
+    @Test
+    public void testRemove() throws InterruptedException {
+        ConcurrentBDLContext concurrent = BDLContextProvider.concurrent(withCounter(1));
+        concurrent.remove(key);
+        assertNull(counter(concurrent));
+        concurrent.consolidate();
+        assertNull(counter(concurrent));
+        assertEquals(0, BDLContextUtils.serializedSize(concurrent));
+
+        // Bags removed by one thread are dropped from the branches of the others too
+        ConcurrentBDLContext other = BDLContextProvider.concurrent(withCounter(1));
+        runInThreads(1, () -> other.remove(key));
+        runInThreads(2, () -> counter(other).increment());
+        assertNull(counter(other.consolidate()));
+    }
+
+    @Test
+    public void testReplace() throws InterruptedException {
+        ConcurrentBDLContext concurrent = BDLContextProvider.concurrent(withCounter(1));
+        runInThreads(1, () -> concurrent.put(key, newCounter(100)));
+        runInThreads(2, () -> counter(concurrent).increment());
+        assertEquals(100, counter(concurrent.consolidate()).getValue());
+
+        // Bags put by several threads are joined
+        runInThreads(2, () -> concurrent.put(key, newCounter(10)));
+        assertEquals(20, counter(concurrent.consolidate()).getValue());
+
+        concurrent.put(key, newCounter(7));
+        assertEquals(7, counter(concurrent.consolidate()).getValue());
+    }
+
+    @Test
+    public void testAttachments() throws InterruptedException {
+        BaggageContext baggage = withCounter(1);
+        ((BDLContext) baggage).attach("base", "b").attach("other", "o");
+        ConcurrentBDLContext concurrent = BDLContextProvider.concurrent(baggage);
+        runInThreads(1, () -> concurrent.attach("k", "v"));
+        runInThreads(1, () -> concurrent.detach("base"));
+        assertNull(concurrent.getAttachment("k"));
+        concurrent.consolidate();
+        assertEquals("v", concurrent.getAttachment("k"));
+        assertNull(concurrent.getAttachment("base"));
+        assertEquals("o", concurrent.getAttachment("other"));
+
+        concurrent.attach("k", "v2");
+        concurrent.consolidate();
+        assertEquals("v2", concurrent.getAttachment("k"));
+
+        runInThreads(1, () -> {
+            concurrent.clearAttachments();
+            concurrent.attach("after", "a");
+        });
+        concurrent.consolidate();
+        assertNull(concurrent.getAttachment("k"));
+        assertNull(concurrent.getAttachment("other"));
+        assertEquals("a", concurrent.getAttachment("after"));
+        assertEquals(1, counter(concurrent).getValue());
+    }
+
+    @Test
+    public void testJoinAndSerialize() throws InterruptedException {
+        ConcurrentBDLContext concurrent = BDLContextProvider.concurrent(withCounter(1));
+        runInThreads(4, () -> counter(concurrent).increment());
+        byte[] serialized = provider.serialize(concurrent);
+        assertArrayEquals(provider.serialize(concurrent.consolidate()), serialized);
+
+        BDLContext joined = provider.join((BDLContext) withCounter(1), concurrent);
+        assertTrue(!(joined instanceof ConcurrentBDLContext));
+        assertEquals(6, counter(joined).getValue());
+
+        ConcurrentBDLContext other = BDLContextProvider.concurrent(withCounter(1));
+        runInThreads(2, () -> counter(other).increment());
+        List<BDLContext> all = new ArrayList<>();
+        all.add(null);
+        all.add(other);
+        all.add((BDLContext) withCounter(5));
+        assertEquals(8, counter(provider.joinAll(all)).getValue());
+    }
+
+}
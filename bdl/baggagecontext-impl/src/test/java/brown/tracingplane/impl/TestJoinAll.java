@@ -0,0 +1,55 @@
+package brown.tracingplane.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import brown.tracingplane.atomlayer.AtomLayerSerialization;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
+
+public class TestJoinAll {
+
+    BDLContextProvider provider = new BDLContextProvider(BaggageHandlerRegistry.empty());
+
+    /** No handlers are registered, so the bags written here end up as unprocessed atoms */
+    private byte[] randomBaggage(Random r) {
+        BaggageWriter writer = BaggageWriter.create();
+        for (int i = 0; i < 3; i++) {
+            writer.enter(BagKey.indexed(r.nextInt(10)));
+            for (int j = 0; j < 3; j++) {
+                byte[] bytes = new byte[4];
+                r.nextBytes(bytes);
+                writer.writeBytes(ByteBuffer.wrap(bytes));
+            }
+            writer.exit();
+        }
+        return AtomLayerSerialization.serialize(writer.atoms());
+    }
+
+    @Test
+    public void testJoinAllMatchesJoin() {
+        Random r = new Random(0);
+        for (int i = 0; i < 20; i++) {
+            List<byte[]> serialized = new ArrayList<>();
+            for (int j = 0; j < 10; j++) {
+                serialized.add(randomBaggage(r));
+            }
+
+            BDLContext pairwise = null;
+            List<BDLContext> contexts = new ArrayList<>();
+            for (byte[] bytes : serialized) {
+                pairwise = provider.join(pairwise, provider.deserialize(bytes, 0, bytes.length));
+                contexts.add(provider.deserialize(bytes, 0, bytes.length));
+            }
+            contexts.add(null);
+
+            assertArrayEquals(provider.serialize(pairwise), provider.serialize(provider.joinAll(contexts)));
+        }
+        assertNull(provider.joinAll(new ArrayList<BDLContext>()));
+    }
+
+}
@@ -0,0 +1,101 @@
+package brown.tracingplane.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Test;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.bdl.CounterImpl;
+import brown.tracingplane.bdl.SpecialTypes.Counter;
+
+public class TestLazyParsing {
+
+    static final BagKey A = BagKey.indexed(3), B = BagKey.indexed(4), UNREGISTERED = BagKey.indexed(5);
+
+    BDLContextProvider eager, lazy;
+
+    @Before
+    public void createProviders() {
+        BaggageHandlerRegistry registry = BaggageHandlerRegistry.empty();
+        registry.doAdd(A, CounterImpl.Handler.instance);
+        registry.doAdd(B, CounterImpl.Handler.instance);
+        eager = new BDLContextProvider(registry);
+        lazy = new BDLContextProvider(registry, true);
+    }
+
+    private static Counter counter(long value) {
+        Counter counter = new CounterImpl();
+        counter.increment(value);
+        return counter;
+    }
+
+    private static long value(BDLContext ctx, BagKey key) {
+        return ((Counter) ctx.get(key)).getValue();
+    }
+
+    private byte[] serialized() {
+        BDLContext ctx = new BDLContext();
+        ctx.put(A, counter(5)).put(B, counter(7)).put(UNREGISTERED, counter(11));
+        return eager.serialize(ctx);
+    }
+
+    private BDLContext deserialize(BDLContextProvider provider, byte[] bytes) {
+        return provider.deserialize(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void testUntouchedBagsPassThrough() {
+        byte[] bytes = serialized();
+        BDLContext ctx = deserialize(lazy, bytes);
+        assertNull(ctx.bags);
+        assertArrayEquals(bytes, lazy.serialize(ctx));
+        assertArrayEquals(bytes, lazy.serialize(lazy.branch(ctx)));
+    }
+
+    @Test
+    public void testParseOnAccess() {
+        byte[] bytes = serialized();
+        BDLContext ctx = deserialize(lazy, bytes);
+        assertEquals(5, value(ctx, A));
+        assertEquals(1, ctx.bags.size());
+        assertEquals(7, value(ctx, B));
+        assertNull(ctx.get(UNREGISTERED));
+        assertEquals(5, value(ctx, A));
+        assertArrayEquals(bytes, lazy.serialize(ctx));
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        byte[] bytes = serialized();
+        BDLContext expected = deserialize(eager, bytes);
+        expected.remove(A);
+        expected.put(B, counter(1));
+
+        BDLContext ctx = deserialize(lazy, bytes);
+        ctx.remove(A);
+        ctx.put(B, counter(1));
+        assertNull(ctx.get(A));
+        assertEquals(1, value(ctx, B));
+        assertEquals(eager.serialize(expected).length, lazy.serialize(ctx).length);
+    }
+
+    @Test
+    public void testJoinParsedWithUnparsed() {
+        BDLContext parsed = deserialize(lazy, serialized());
+        ((Counter) parsed.get(A)).increment(100);
+
+        BDLContext unparsed = deserialize(lazy, serialized());
+        BDLContext other = new BDLContext().put(A, counter(1000));
+        BDLContext joined = lazy.join(lazy.join(other, parsed), unparsed);
+
+        BDLContext expected = eager.join(eager.join(new BDLContext().put(A, counter(1000)),
+                                                    deserialize(eager, serialized())),
+                                         deserialize(eager, serialized()));
+        ((Counter) expected.get(A)).increment(100);
+
+        assertEquals(value(expected, A), value(joined, A));
+        assertEquals(value(expected, B), value(joined, B));
+    }
+
+}
@@ -0,0 +1,68 @@
+package brown.tracingplane.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.bdl.CounterImpl;
+import brown.tracingplane.bdl.SpecialTypes.Counter;
+
+public class TestSerializeToBuffer {
+
+    BDLContextProvider provider = new BDLContextProvider(BaggageHandlerRegistry.empty());
+
+    private static BDLContext withCounters(int count) {
+        BDLContext ctx = new BDLContext();
+        for (int i = 0; i < count; i++) {
+            Counter counter = new CounterImpl();
+            counter.increment(i + 1);
+            ctx.put(BagKey.indexed(i), counter);
+        }
+        return ctx;
+    }
+
+    private byte[] serializeToBuffer(BDLContext ctx, ByteBuffer out) {
+        int start = out.position();
+        int written = provider.serialize(ctx, out);
+        assertEquals(out.position() - start, written);
+        return Arrays.copyOfRange(out.array(), start, out.position());
+    }
+
+    @Test
+    public void testMatchesSerialize() {
+        for (int count = 0; count < 5; count++) {
+            BDLContext ctx = withCounters(count);
+            ByteBuffer out = ByteBuffer.allocate(1024);
+            out.position(7);
+            assertArrayEquals(provider.serialize(ctx), serializeToBuffer(ctx, out));
+        }
+        assertEquals(0, provider.serialize(null, ByteBuffer.allocate(0)));
+    }
+
+    @Test
+    public void testUnprocessedAtoms() {
+        // Deserialized with no registered handlers, so the bags are kept as unprocessed atoms
+        byte[] serialized = provider.serialize(withCounters(3));
+        BDLContext ctx = provider.deserialize(serialized, 0, serialized.length);
+        ctx.put(BagKey.indexed(10), withCounters(1).get(BagKey.indexed(0)));
+        assertArrayEquals(provider.serialize(ctx), serializeToBuffer(ctx, ByteBuffer.allocate(1024)));
+    }
+
+    @Test
+    public void testOverflow() {
+        BDLContext ctx = withCounters(4);
+        ByteBuffer out = ByteBuffer.allocate(provider.serialize(ctx).length - 1);
+        out.position(1);
+        try {
+            provider.serialize(ctx, out);
+            fail("Expected BufferOverflowException");
+        } catch (BufferOverflowException e) {
+            assertEquals(1, out.position());
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package brown.tracingplane.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import org.junit.Before;
+import org.junit.Test;
+import brown.tracingplane.atomlayer.AtomLayerSerialization;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.bdl.CounterImpl;
+import brown.tracingplane.bdl.SpecialTypes.Counter;
+
+public class TestSerializedSize {
+
+    static final BagKey A = BagKey.indexed(3), B = BagKey.indexed(7), UNREGISTERED = BagKey.indexed(5);
+
+    BaggageHandlerRegistry registry;
+    BDLContextProvider provider;
+
+    @Before
+    public void createRegistry() {
+        registry = BaggageHandlerRegistry.empty();
+        registry.doAdd(A, CounterImpl.Handler.instance);
+        registry.doAdd(B, CounterImpl.Handler.instance);
+        provider = new BDLContextProvider(registry);
+    }
+
+    private static Counter counter(long value) {
+        Counter counter = new CounterImpl();
+        counter.increment(value);
+        return counter;
+    }
+
+    /** Creates a context whose bags haven't been handed out, as if it had been parsed */
+    private BDLContext withCounter(BagKey key, long value) {
+        BDLContext ctx = new BDLContext();
+        ctx.bags = new BagSlots(registry.registrations);
+        ctx.bags.put(key, counter(value));
+        return ctx;
+    }
+
+    private void assertSize(BDLContext ctx) {
+        assertEquals(provider.serialize(ctx).length, BDLContextUtils.serializedSize(ctx));
+    }
+
+    @Test
+    public void testSizeIsCached() {
+        BDLContext ctx = withCounter(A, 5);
+        int size = BDLContextUtils.serializedSize(ctx);
+        assertEquals(provider.serialize(ctx).length, size);
+
+        int slot = registry.registrations.slot(A);
+        assertEquals(size, ctx.bags.sizes[slot]);
+        assertEquals(size, BDLContextUtils.serializedSize(ctx));
+
+        // Bags that might be modified by their callers are measured every time, but not cached
+        ctx.get(A);
+        assertEquals(size, BDLContextUtils.serializedSize(ctx));
+        assertEquals(BagSlots.HANDED_OUT, ctx.bags.sizes[slot]);
+
+        // Branches start with the sizes of the parent's bags that weren't handed out
+        BDLContext parent = withCounter(A, 5);
+        parent.serializedSize();
+        BDLContext branched = parent.put(B, counter(1)).branch();
+        assertEquals(size, branched.bags.sizes[slot]);
+        assertEquals(BagSlots.UNMEASURED, branched.bags.sizes[registry.registrations.slot(B)]);
+        assertSize(branched);
+    }
+
+    @Test
+    public void testHandedOutBagsAreMeasured() {
+        BDLContext ctx = withCounter(A, 5);
+        Counter held = (Counter) ctx.get(A);
+        int size = BDLContextUtils.serializedSize(ctx);
+        assertEquals(provider.serialize(ctx).length, size);
+
+        // The held counter is modified after the size was measured
+        BDLContext branched = provider.branch(ctx);
+        ((Counter) branched.get(A)).increment();
+        CounterImpl.Handler.instance.join((CounterImpl) held, (CounterImpl) branched.get(A));
+        assertNotEquals(size, provider.serialize(ctx).length);
+        assertSize(ctx);
+
+        Counter put = counter(1);
+        ctx.put(B, put);
+        assertSize(ctx);
+        put.increment(1000000);
+        assertSize(ctx);
+    }
+
+    @Test
+    public void testSizeIsInvalidated() {
+        BDLContext ctx = withCounter(A, 5);
+        BDLContextUtils.serializedSize(ctx);
+
+        ((Counter) ctx.get(A)).increment(1000000);
+        assertSize(ctx);
+
+        ctx.put(B, counter(1));
+        assertSize(ctx);
+
+        ctx.put(UNREGISTERED, counter(7));
+        assertSize(ctx);
+
+        ctx.remove(A);
+        assertSize(ctx);
+    }
+
+    @Test
+    public void testBranchAndJoin() {
+        BDLContext ctx1 = withCounter(A, 5);
+        int size = BDLContextUtils.serializedSize(ctx1);
+
+        BDLContext ctx2 = provider.branch(ctx1);
+        assertEquals(size, BDLContextUtils.serializedSize(ctx2));
+        assertEquals(AtomLayerSerialization.serializedSize(ctx2.serialize().atoms()), size);
+
+        BDLContext ctx3 = withCounter(B, 9);
+        BDLContextUtils.serializedSize(ctx3);
+        BDLContext joined = provider.join(ctx2, ctx3);
+        assertSize(joined);
+        assertEquals(AtomLayerSerialization.serializedSize(joined.serialize().atoms()),
+                     BDLContextUtils.serializedSize(joined));
+
+        // Bags handed out by the joined context stay handed out
+        BDLContext ctx4 = withCounter(A, 1);
+        Counter held = (Counter) ctx4.get(A);
+        joined = provider.join(withCounter(B, 1), ctx4);
+        BDLContextUtils.serializedSize(joined);
+        held.increment(1000000);
+        assertSize(joined);
+    }
+
+}
@@ -35,6 +35,10 @@ public class BBC {
         @Parameter(names = { "--java_out" }, description = "Output directory to generate Java source files")
         String javaOut = null;
 
+        @Parameter(names = { "--primitive_fields" },
+                   description = "Generate primitive int and long bag fields with presence bits, and LongSet for sets of 64-bit integers, instead of boxed types")
+        boolean primitiveFields = false;
+
         @Parameter(description = "file1 file2 ...")
         List<String> files = new ArrayList<>();
 
@@ -43,7 +47,7 @@ public class BBC {
     public static void compile(Settings settings) throws CompileException {
         Set<BaggageBuffersDeclaration> linked = Linker.link(settings);
         if (settings.javaOut != null) {
-            new JavaCompiler().compile(settings.javaOut, linked);
+            new JavaCompiler(settings.primitiveFields).compile(settings.javaOut, linked);
         }
     }
 
@@ -81,6 +81,46 @@ object Ast {
       }
     }
     case class Map(keyType: PrimitiveType, valueType: FieldType) extends ParameterizedType(List[FieldType](keyType, valueType)) with BuiltInType
+
+    /** A set that keeps at most capacity elements, evicting deterministically so that joins are commutative */
+    case class BoundedSet(of: PrimitiveType, capacity: Int) extends ParameterizedType(List[FieldType](of)) with BuiltInType {
+      override def isValid(): Boolean = {
+        return capacity > 0
+      }
+      override def toString(): String = {
+        return s"BoundedSet<$of, $capacity>"
+      }
+    }
+
+    /** A HyperLogLog sketch with 2^precision registers, joined by register-wise max */
+    case class HyperLogLog(precision: Int) extends BuiltInType {
+      override def isValid(): Boolean = {
+        return precision >= 4 && precision <= 16
+      }
+      override def toString(): String = {
+        return s"hll<$precision>"
+      }
+    }
+
+    /** A count-min sketch with depth rows of width counters, joined by counter-wise max */
+    case class CountMinSketch(depth: Int, width: Int) extends BuiltInType {
+      override def isValid(): Boolean = {
+        return depth > 0 && width > 0
+      }
+      override def toString(): String = {
+        return s"cms<$depth, $width>"
+      }
+    }
+
+    /** A Bloom filter with the specified number of bits and hashes, joined by bitwise or */
+    case class BloomFilter(bits: Int, hashes: Int) extends BuiltInType {
+      override def isValid(): Boolean = {
+        return bits > 0 && bits % 64 == 0 && hashes > 0
+      }
+      override def toString(): String = {
+        return s"bloom<$bits, $hashes>"
+      }
+    }
     
     
   }
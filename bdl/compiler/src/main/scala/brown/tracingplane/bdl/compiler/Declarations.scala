@@ -48,8 +48,19 @@ object Declarations {
   /** Matches built-in parameterized types */
   val parameterizedType: P[BuiltInType] = P(
       (("set<" | "Set<") ~ eatws ~/ fieldtype ~ eatws ~ ">").map(BuiltInType.Set(_)) |
+      (("boundedset<" | "BoundedSet<") ~ eatws ~/ primitiveType ~ eatws ~ "," ~ eatws ~/ fieldindex ~ eatws ~ ">").map { case (of, n) => BuiltInType.BoundedSet(of, n) } |
       (("map<" | "Map<") ~ eatws ~/ primitiveType ~ eatws ~ "," ~ eatws ~/ fieldtype ~ eatws ~ ">").map { case (k, v) => BuiltInType.Map(k, v) } |
-      (("Counter" | "counter") ~ "<>".?).map(_ => BuiltInType.Counter))
+      (("Counter" | "counter") ~ "<>".?).map(_ => BuiltInType.Counter) |
+      sketchType)
+
+  /** Matches sketch types, whose parameters are optional */
+  val sketchType: P[BuiltInType] = P(
+      ("hll" ~ !(letter | digit | "_") ~ ("<" ~ eatws ~/ fieldindex ~ eatws ~ ">").?).map {
+        p => BuiltInType.HyperLogLog(p.getOrElse(10)) } |
+      ("cms" ~ !(letter | digit | "_") ~ ("<" ~ eatws ~/ fieldindex ~ eatws ~ "," ~ eatws ~/ fieldindex ~ eatws ~ ">").?).map {
+        dw => dw.map { case (d, w) => BuiltInType.CountMinSketch(d, w) }.getOrElse(BuiltInType.CountMinSketch(4, 128)) } |
+      ("bloom" ~ !(letter | digit | "_") ~ ("<" ~ eatws ~/ fieldindex ~ eatws ~ "," ~ eatws ~/ fieldindex ~ eatws ~ ">").?).map {
+        bh => bh.map { case (b, h) => BuiltInType.BloomFilter(b, h) }.getOrElse(BuiltInType.BloomFilter(1024, 3)) })
       
       
 
@@ -6,8 +6,34 @@ import scala.collection.mutable.LinkedHashMap
 import brown.tracingplane.bdl.compiler.Ast._
 import brown.tracingplane.bdl.compiler.Ast.BuiltInType._
 
-/** Compiles BaggageBuffers declarations to Java */
-class JavaCompiler extends Compiler {
+/**
+ * Compiles BaggageBuffers declarations to Java.
+ *
+ * If primitiveFields is true, bag fields of int32 and int64 types are generated as primitive int and long fields with
+ * presence bits, and sets of int64 types are generated as LongSet, so that parsing, branching and joining them does
+ * not box values.
+ */
+class JavaCompiler(val primitiveFields: Boolean) extends Compiler {
+
+  def this() = this(false)
+
+  /** Bags can have at most this many primitive fields; any further fields use boxed types */
+  val maxPrimitiveFields = 64
+
+  /** @return the primitive Java type to use for a field of the specified type, if primitive fields are enabled */
+  def primitiveType(fieldType: FieldType): Option[String] = {
+    if (!primitiveFields) {
+      return None
+    }
+    fieldType match {
+      case BuiltInType.int32 | BuiltInType.sint32 | BuiltInType.fixed32 | BuiltInType.sfixed32 => return Some("int")
+      case BuiltInType.int64 | BuiltInType.sint64 | BuiltInType.fixed64 | BuiltInType.sfixed64 => return Some("long")
+      case _ => return None
+    }
+  }
+
+  /** @return true if the specified set element type should use LongSet */
+  def isLongSetElement(of: FieldType): Boolean = primitiveType(of) == Some("long")
 
   override def compile(outputDir: String, objectDecl: ObjectDeclaration): Unit = {
     compiler(objectDecl).compile(outputDir)
@@ -44,6 +70,14 @@ class JavaCompiler extends Compiler {
 
     // Built-in types that are used
     def Set = importIfPossible("java.util.Set")
+    def LongSet = importIfPossible("brown.tracingplane.bdl.LongSet")
+    def BoundedSet = importIfPossible("brown.tracingplane.bdl.BoundedSet")
+    def SerializedOrder = importIfPossible("brown.tracingplane.bdl.SerializedOrder")
+    def HyperLogLog = importIfPossible("brown.tracingplane.bdl.HyperLogLog")
+    def CountMinSketch = importIfPossible("brown.tracingplane.bdl.CountMinSketch")
+    def BloomFilter = importIfPossible("brown.tracingplane.bdl.BloomFilter")
+    def Cast = importIfPossible("brown.tracingplane.bdl.Cast")
+    def AtomLayerException = importIfPossible("brown.tracingplane.atomlayer.AtomLayerException")
     def Map = importIfPossible("java.util.Map")
     def ByteBuffer = importIfPossible("java.nio.ByteBuffer")
     def Objects = importIfPossible("java.util.Objects")
@@ -107,9 +141,14 @@ class JavaCompiler extends Compiler {
         case BuiltInType.string => return "String"
         case BuiltInType.bytes => return "java.nio.ByteBuffer"
 
+        case BuiltInType.Set(of) if isLongSetElement(of) => return s"$LongSet"
         case BuiltInType.Set(of) => return s"$Set<${javaType(of)}>"
+        case BuiltInType.BoundedSet(of, _) => return s"$BoundedSet<${javaType(of)}>"
         case BuiltInType.Map(k, v) => return s"$Map<${javaType(k)}, ${javaType(v)}>"
         case BuiltInType.Counter => return s"$Counter"
+        case BuiltInType.HyperLogLog(_) => return s"$HyperLogLog"
+        case BuiltInType.CountMinSketch(_, _) => return s"$CountMinSketch"
+        case BuiltInType.BloomFilter(_, _) => return s"$BloomFilter"
 
         case UserDefinedType(packageName, name, _) => return importIfPossible(s"$packageName.${javaName(name)}")
       }
@@ -123,8 +162,14 @@ class JavaCompiler extends Compiler {
         case prim: PrimitiveType => return s"$Parsers.${prim}Parser()"
         case udt: UserDefinedType => return handler(udt)
         case BuiltInType.Counter => return s"($Parser)$counterHandler"
+        case BuiltInType.Set(of) if isLongSetElement(of) => return s"$Parsers.${of}SetParser()"
+        case BuiltInType.Set(of: PrimitiveType) => return s"$Parsers.<${javaType(of)}>setParser(${parser(of)}, $SerializedOrder.${of}Order())"
         case BuiltInType.Set(of) => return s"$Parsers.<${javaType(of)}>setParser(${parser(of)})"
+        case BuiltInType.BoundedSet(of, n) => return s"$Parsers.<${javaType(of)}>boundedSetParser(${parser(of)}, $n, $SerializedOrder.${of}Order())"
         case BuiltInType.Map(k, v) => return s"$Parsers.<${javaType(k)},${javaType(v)}>mapParser(${keyParser(k)}, ${parser(v)})"
+        case BuiltInType.HyperLogLog(p) => return s"$Parsers.hllParser($p)"
+        case BuiltInType.CountMinSketch(d, w) => return s"$Parsers.cmsParser($d, $w)"
+        case BuiltInType.BloomFilter(b, h) => return s"$Parsers.bloomParser($b, $h)"
       }
     }
 
@@ -133,8 +178,14 @@ class JavaCompiler extends Compiler {
         case prim: PrimitiveType => return s"$Serializers.${prim}Serializer()"
         case udt: UserDefinedType => return handler(udt)
         case BuiltInType.Counter => return s"($Serializer)$counterHandler"
+        case BuiltInType.Set(of) if isLongSetElement(of) => return s"$Serializers.${of}SetSerializer()"
+        case BuiltInType.Set(of: PrimitiveType) => return s"$Serializers.<${javaType(of)}>setSerializer(${serializer(of)}, $SerializedOrder.${of}Order())"
         case BuiltInType.Set(of) => return s"$Serializers.<${javaType(of)}>setSerializer(${serializer(of)})"
+        case BuiltInType.BoundedSet(of, _) => return s"$Serializers.<${javaType(of)}>boundedSetSerializer(${serializer(of)}, $SerializedOrder.${of}Order())"
         case BuiltInType.Map(k, v) => return s"$Serializers.<${javaType(k)},${javaType(v)}>mapSerializer(${keySerializer(k)}, ${serializer(v)})"
+        case BuiltInType.HyperLogLog(p) => return s"$Serializers.hllSerializer($p)"
+        case BuiltInType.CountMinSketch(d, w) => return s"$Serializers.cmsSerializer($d, $w)"
+        case BuiltInType.BloomFilter(b, h) => return s"$Serializers.bloomSerializer($b, $h)"
       }
     }
 
@@ -149,8 +200,13 @@ class JavaCompiler extends Compiler {
           }
         }
         case BuiltInType.Counter => return s"($Joiner)$counterHandler"
+        case BuiltInType.Set(of) if isLongSetElement(of) => return s"$Joiners.longSetUnion()"
         case BuiltInType.Set(of) => return s"$Joiners.<${javaType(of)}>setUnion()"
+        case BuiltInType.BoundedSet(of, _) => return s"$Joiners.<${javaType(of)}>boundedSetUnion()"
         case BuiltInType.Map(k, v) => return s"$Joiners.<${javaType(k)}, ${javaType(v)}>mapMerge(${joiner(v)})"
+        case BuiltInType.HyperLogLog(_) => return s"$Joiners.hllMerge()"
+        case BuiltInType.CountMinSketch(_, _) => return s"$Joiners.cmsMerge()"
+        case BuiltInType.BloomFilter(_, _) => return s"$Joiners.bloomMerge()"
       }
     }
 
@@ -164,8 +220,13 @@ class JavaCompiler extends Compiler {
           }
         }
         case BuiltInType.Counter => return s"($Brancher)$counterHandler"
+        case BuiltInType.Set(of) if isLongSetElement(of) => return s"$Branchers.longSet()"
         case BuiltInType.Set(of) => return s"$Branchers.<${javaType(of)}>set()"
+        case BuiltInType.BoundedSet(of, _) => return s"$Branchers.<${javaType(of)}>boundedSet()"
         case BuiltInType.Map(k, v) => return s"$Branchers.<${javaType(k)}, ${javaType(v)}>map(${brancher(v)})"
+        case BuiltInType.HyperLogLog(_) => return s"$Branchers.hll()"
+        case BuiltInType.CountMinSketch(_, _) => return s"$Branchers.cms()"
+        case BuiltInType.BloomFilter(_, _) => return s"$Branchers.bloom()"
       }
     }
 
@@ -175,6 +236,7 @@ class JavaCompiler extends Compiler {
       val lambdaVarname = s"_v$recurseCount"
       fieldtype match {
         case set: BuiltInType.Set => s"$BBUtils.toString($instance)"
+        case set: BuiltInType.BoundedSet => s"$BBUtils.toString($instance)"
         case BuiltInType.Map(k, v) => s"$BBUtils.toString($instance, $lambdaVarname -> ${toStringStatement(v, lambdaVarname, recurseCount + 1)})"
         case _ => s"String.valueOf($instance)"
       }
@@ -425,8 +487,12 @@ class JavaCompiler extends Compiler {
 
       def joinStatement(left: String, right: String, newInstance: String) = s"$newInstance.$Name = $JoinerName.join($left.$Name, $right.$Name);"
 
+      def compactStatement(left: String, right: String, newInstance: String) = s"$newInstance.$Name = $JoinerName.compact($left.$Name, $right.$Name);"
+
       def toString(instance: String) = s"""$instance.$Name == null ? "" : $BBUtils.indent(String.format("$Name = %s\\n", ${toStringStatement(decl.fieldtype, s"$instance.$Name")}))"""
 
+      def accessorsDeclaration: String = ""
+
     }
 
     class BuiltInFieldToCompile(decl: FieldDeclaration) extends FieldToCompile(decl) {
@@ -442,6 +508,82 @@ class JavaCompiler extends Compiler {
           private static final $Joiner<$Type> $JoinerName = ${joiner(decl.fieldtype)};"""
     }
 
+    /**
+     * A primitive int or long field. The field is private and its presence is tracked by a bit of the bag's _present
+     * field, so it is accessed with generated has/get/set/clear methods.
+     */
+    class PrimitiveFieldToCompile(decl: FieldDeclaration, primitive: String, bit: Int) extends FieldToCompile(decl) {
+      val ParserName = ""
+      val SerializerName = ""
+      val BrancherName = ""
+      val JoinerName = ""
+      val privateFieldsDeclaration = ""
+
+      val PresenceMask = s"0x${java.lang.Long.toHexString(1L << bit)}L"
+      val AccessorName = Name.head.toUpper + Name.tail
+      val PrimitiveDefault = if (primitive == "long") "0L" else "0"
+
+      val WriteMethod = decl.fieldtype match {
+        case BuiltInType.int32 => "writeUInt32"
+        case BuiltInType.sint32 => "writeSInt32"
+        case BuiltInType.fixed32 | BuiltInType.sfixed32 => "writeFixed32"
+        case BuiltInType.int64 => "writeUInt64"
+        case BuiltInType.sint64 => "writeSInt64"
+        case _ => "writeFixed64"
+      }
+
+      override val fieldDeclaration = s"private $primitive $Name = $PrimitiveDefault;"
+
+      override def accessorsDeclaration = s"""
+          public boolean has$AccessorName() {
+              return (_present & $PresenceMask) != 0;
+          }
+
+          public $primitive get$AccessorName() {
+              return $Name;
+          }
+
+          public void set$AccessorName($primitive $Name) {
+              this.$Name = $Name;
+              _present |= $PresenceMask;
+          }
+
+          public void clear$AccessorName() {
+              this.$Name = $PrimitiveDefault;
+              _present &= ~$PresenceMask;
+          }"""
+
+      override def parseStatement(reader: String, instance: String) = s"""
+          if ($reader.enter($BagKeyName)) {
+              $ByteBuffer _buf;
+              while ((_buf = $reader.nextData()) != null) {
+                  try {
+                      $instance.set$AccessorName($Cast.as_${decl.fieldtype}(_buf));
+                      break;
+                  } catch ($AtomLayerException e) {
+                      continue;
+                  }
+              }
+              $reader.exit();
+          }"""
+
+      override def serializeStatement(writer: String, instance: String) = s"""
+          if ($instance.has$AccessorName()) {
+              $writer.enter($BagKeyName);
+              $WriterHelpers.$WriteMethod($writer, $instance.$Name);
+              $writer.exit();
+          }"""
+
+      override def branchStatement(instance: String, newInstance: String) = s"if ($instance.has$AccessorName()) $newInstance.set$AccessorName($instance.$Name);"
+
+      override def joinStatement(left: String, right: String, newInstance: String) = s"if (!$left.has$AccessorName() && $right.has$AccessorName()) $newInstance.set$AccessorName($right.$Name);"
+
+      override def compactStatement(left: String, right: String, newInstance: String) = joinStatement(left, right, newInstance)
+
+      override def toString(instance: String) = s"""!$instance.has$AccessorName() ? "" : $BBUtils.indent(String.format("$Name = %s\\n", String.valueOf($instance.$Name)))"""
+
+    }
+
     class CounterToCompile(decl: FieldDeclaration) extends FieldToCompile(decl) {
       val HandlerName = s"_${Name}Handler"
       val ParserName = HandlerName
@@ -483,9 +625,15 @@ class JavaCompiler extends Compiler {
       val PackageName: String = decl.packageName
       val varName: String = Name.head.toLower + Name.tail
 
+      var primitiveCount = 0
+
       val fields = decl.fields.sortWith(_.index < _.index).map {
         x =>
           x match {
+            case FieldDeclaration(fieldtype, _, _) if primitiveType(fieldtype).isDefined && primitiveCount < maxPrimitiveFields => {
+              primitiveCount += 1
+              new PrimitiveFieldToCompile(x, primitiveType(fieldtype).get, primitiveCount - 1)
+            }
             case FieldDeclaration(BuiltInType.Counter, _, _) => new CounterToCompile(x)
             case FieldDeclaration(fieldtype: UserDefinedType, _, _) => {
               fieldtype.structType match {
@@ -505,6 +653,8 @@ class JavaCompiler extends Compiler {
             ${fields.map(_.fieldDeclaration).mkString("\n")}
         
             public boolean _overflow = false;
+            ${if (primitiveCount > 0) "private long _present = 0L;" else ""}
+            ${fields.map(_.accessorsDeclaration).mkString("\n")}
 
             /**
              * <p>
@@ -678,6 +828,18 @@ class JavaCompiler extends Compiler {
                         return left;
                     }
                 }
+    
+                @Override
+                public $Name compact($Name left, $Name right) {
+                    if (left == null) {
+                        return right;
+                    } else if (right == null) {
+                        return left;
+                    } else {
+                        ${fields.map(_.compactStatement("left", "right", "left")).mkString("\n")}
+                        return left;
+                    }
+                }
             }
         }"""
 
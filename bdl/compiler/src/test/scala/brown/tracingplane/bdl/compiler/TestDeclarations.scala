@@ -45,6 +45,37 @@ class TestDeclarations extends FunSuite {
     }
   }
 
+  test("Test bounded set") {
+    for ((name, builtin) <- builtins) {
+      val parseString = s"boundedset<$name, 16>"
+      val Parsed.Success(res, _) = fieldtype.parse(parseString)
+      res match {
+        case BuiltInType.BoundedSet(of, 16) => assert(of == builtin)
+        case _ => fail(s"Expected to parse $parseString to a bounded set of $name")
+      }
+    }
+    assert(!BuiltInType.BoundedSet(BuiltInType.fixed64, 0).isValid)
+  }
+
+  test("Test sketch types") {
+    val expected = Map(
+      "hll" -> BuiltInType.HyperLogLog(10),
+      "hll<12>" -> BuiltInType.HyperLogLog(12),
+      "cms" -> BuiltInType.CountMinSketch(4, 128),
+      "cms< 3, 64 >" -> BuiltInType.CountMinSketch(3, 64),
+      "bloom" -> BuiltInType.BloomFilter(1024, 3),
+      "bloom<256, 4>" -> BuiltInType.BloomFilter(256, 4))
+    for ((parseString, sketch) <- expected) {
+      val Parsed.Success(res, _) = fieldtype.parse(parseString)
+      assert(res == sketch)
+      assert(res.isValid)
+    }
+    val Parsed.Success(res, _) = fieldtype.parse("hllCount")
+    assert(res.isInstanceOf[UserDefinedType])
+    assert(!BuiltInType.HyperLogLog(20).isValid)
+    assert(!BuiltInType.BloomFilter(100, 3).isValid)
+  }
+
   test("Test user defined type") {
     for (name <- userdefineds) {
       val Parsed.Success(res, _) = fieldtype.parse(name)
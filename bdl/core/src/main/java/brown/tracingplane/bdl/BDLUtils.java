@@ -14,6 +14,10 @@ public class BDLUtils {
         return set == null ? "{ }" : "{ " + StringUtils.join(set, ", ") + " }";
     }
     
+    public static String toString(LongSet set) {
+        return set == null ? "{ }" : set.toString();
+    }
+    
     public static <V> String toString(Map<?, V> map, Function<V, String> valueToStringFunction) {
         if (map == null) {
             return "{ }";
@@ -55,13 +59,5 @@ public class BDLUtils {
             return a.equals(b);
         }
     }
-    
-    // This is a hack to add 'compaction' joins without deploying them to all the interfaces.
-    // At this point in time it's still a question of whether compact joins are useful
-    public static final ThreadLocal<Boolean> is_compaction = new ThreadLocal<Boolean>() {
-        @Override public Boolean initialValue() {
-            return false;
-        }
-    };
 
 }
@@ -35,6 +35,23 @@ public interface BaggageHandler<T extends Bag> extends Parser<T>, Serializer<T>,
         }
     }
 
+    @SuppressWarnings("unchecked")
+    public default T compact(Bag first, Bag second) {
+        if (isInstance(first)) {
+            if (isInstance(second)) {
+                return ((Joiner<T>) this).compact((T) first, (T) second);
+            } else {
+                return (T) first;
+            }
+        } else {
+            if (isInstance(second)) {
+                return (T) second;
+            } else {
+                return null;
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public default T branch(Bag from) {
         if (isInstance(from)) {
@@ -0,0 +1,170 @@
+package brown.tracingplane.bdl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A Bloom filter, used for the BDL <code>bloom</code> and <code>bloom&lt;bits, hashes&gt;</code> types.
+ * {@link #mightContain(long)} never returns false for a value that was added, and returns true for a value that was
+ * not added with a probability that depends on the number of bits, the number of hashes and the number of values
+ * added.
+ * </p>
+ *
+ * <p>
+ * Filters are joined by taking the bitwise or. The serialized form is a single data atom containing the bits, so its
+ * size does not depend on the number of values added.
+ * </p>
+ */
+public final class BloomFilter {
+
+    public static final int DEFAULT_BITS = 1024;
+    public static final int DEFAULT_HASHES = 3;
+
+    final int bits;
+    final int hashes;
+    final long[] words;
+
+    public BloomFilter() {
+        this(DEFAULT_BITS, DEFAULT_HASHES);
+    }
+
+    /**
+     * @param bits the number of bits in the filter; must be a positive multiple of 64
+     * @param hashes the number of bits set for each value
+     */
+    public BloomFilter(int bits, int hashes) {
+        if (bits <= 0 || bits % Long.SIZE != 0) {
+            throw new IllegalArgumentException("Bits must be a positive multiple of 64, got " + bits);
+        } else if (hashes <= 0) {
+            throw new IllegalArgumentException("Hashes must be positive, got " + hashes);
+        }
+        this.bits = bits;
+        this.hashes = hashes;
+        this.words = new long[bits / Long.SIZE];
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    public void add(long value) {
+        addHash(SketchHashing.hash(value));
+    }
+
+    public void add(String value) {
+        addHash(SketchHashing.hash(value));
+    }
+
+    public void add(ByteBuffer value) {
+        addHash(SketchHashing.hash(value));
+    }
+
+    public boolean mightContain(long value) {
+        return containsHash(SketchHashing.hash(value));
+    }
+
+    public boolean mightContain(String value) {
+        return containsHash(SketchHashing.hash(value));
+    }
+
+    public boolean mightContain(ByteBuffer value) {
+        return containsHash(SketchHashing.hash(value));
+    }
+
+    /** The i'th bit of a value is h1 + i * h2, where h1 and h2 are the two halves of the 64-bit hash */
+    private int bit(long hash, int i) {
+        int h1 = (int) hash, h2 = (int) (hash >>> 32);
+        return Math.floorMod(h1 + i * h2, bits);
+    }
+
+    private void addHash(long hash) {
+        for (int i = 0; i < hashes; i++) {
+            int bit = bit(hash, i);
+            words[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+        }
+    }
+
+    private boolean containsHash(long hash) {
+        for (int i = 0; i < hashes; i++) {
+            int bit = bit(hash, i);
+            if ((words[bit / Long.SIZE] & (1L << (bit % Long.SIZE))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Merges <code>other</code> into this filter. Returns false if the filters have different parameters */
+    public boolean merge(BloomFilter other) {
+        if (other.bits != bits || other.hashes != hashes) {
+            return false;
+        }
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= other.words[i];
+        }
+        return true;
+    }
+
+    /** @return true if no values have been added */
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public BloomFilter copy() {
+        BloomFilter copy = new BloomFilter(bits, hashes);
+        System.arraycopy(words, 0, copy.words, 0, words.length);
+        return copy;
+    }
+
+    /** @return the number of bytes in the serialized form of a filter with the specified number of bits */
+    static int serializedSize(int bits) {
+        return bits / Byte.SIZE;
+    }
+
+    void writeTo(ByteBuffer buf) {
+        for (long word : words) {
+            buf.putLong(word);
+        }
+    }
+
+    /** Reads bits from <code>buf</code>, merging them into this filter. Returns false if the size is wrong */
+    boolean mergeFrom(ByteBuffer buf) {
+        if (buf.remaining() != serializedSize(bits)) {
+            return false;
+        }
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= buf.getLong(buf.position() + i * Long.BYTES);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof BloomFilter)) {
+            return false;
+        }
+        BloomFilter o = (BloomFilter) other;
+        return bits == o.bits && hashes == o.hashes && Arrays.equals(words, o.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilter(bits=" + bits + ", hashes=" + hashes + ")";
+    }
+
+}
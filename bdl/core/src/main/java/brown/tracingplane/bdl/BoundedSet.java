@@ -0,0 +1,153 @@
+package brown.tracingplane.bdl;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * <p>
+ * A {@link java.util.Set} that holds at most {@link #capacity()} values, used for the BDL
+ * <code>boundedset&lt;T, N&gt;</code> type. When a value is added to a full set, the value with the largest rank is
+ * evicted, where a value's rank is a mix of its {@link Object#hashCode()}, with ties broken by the set's order.
+ * </p>
+ *
+ * <p>
+ * A bounded set therefore keeps the <code>N</code> values with the smallest ranks out of all of the values that were
+ * added to it. Since ranks are deterministic, this is a uniform sample that does not depend on the order in which
+ * values were added, or on the order in which branches are joined; joining sets is commutative and associative, and
+ * the serialized size of the set stays constant regardless of fan-in. The hash codes of the boxed primitive types,
+ * {@link String} and {@link java.nio.ByteBuffer} are defined by their content, so all processes agree on ranks.
+ * </p>
+ *
+ * <p>
+ * Values are stored in a {@link SortedArraySet}, so that {@link #branch()} does not copy and the set can be serialized
+ * without sorting.
+ * </p>
+ *
+ * @param <T> the type of values in the set
+ */
+public final class BoundedSet<T> extends AbstractSet<T> {
+
+    private final int capacity;
+    private final SortedArraySet<T> values;
+
+    /**
+     * @param capacity the maximum number of values to keep
+     * @param order the order to keep values in, typically a {@link SerializedOrder}. If null, values must be
+     *            {@link Comparable} and are kept in their natural order.
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedSet(int capacity, Comparator<? super T> order) {
+        this(capacity, new SortedArraySet<T>(order != null ? order : (Comparator<? super T>) Comparator.naturalOrder()));
+    }
+
+    private BoundedSet(int capacity, SortedArraySet<T> values) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.values = values;
+    }
+
+    /** @return the maximum number of values that this set keeps */
+    public int capacity() {
+        return capacity;
+    }
+
+    /** @return the comparator that this set's values are ordered by */
+    public Comparator<? super T> comparator() {
+        return values.comparator();
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return values.contains(value);
+    }
+
+    /**
+     * Adds the value, then evicts the value with the largest rank if the set is over capacity. Returns true if the set
+     * changed, i.e., the value was not already present and was not itself evicted.
+     */
+    @Override
+    public boolean add(T value) {
+        if (!values.add(value)) {
+            return false;
+        }
+        trim();
+        return values.contains(value);
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        return values.remove(value);
+    }
+
+    @Override
+    public void clear() {
+        values.clear();
+    }
+
+    /** Adds all of the values, keeping the values with the smallest ranks. Merging two bounded sets is linear. */
+    @Override
+    public boolean addAll(Collection<? extends T> other) {
+        boolean changed;
+        if (other instanceof BoundedSet) {
+            changed = values.addAll(((BoundedSet<? extends T>) other).values);
+        } else {
+            changed = values.addAll(other);
+        }
+        if (changed) {
+            trim();
+        }
+        return changed;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return values.iterator();
+    }
+
+    /** @return a new set with the same values, that shares this set's storage until either is modified */
+    public BoundedSet<T> branch() {
+        return new BoundedSet<>(capacity, values.branch());
+    }
+
+    /** Evicts the values with the largest ranks until the set is within capacity */
+    void trim() {
+        int size = values.size();
+        if (size <= capacity) {
+            return;
+        }
+        long[] ranks = new long[size];
+        for (int i = 0; i < size; i++) {
+            ranks[i] = rank(values.get(i));
+        }
+
+        // Keep values ranked below the threshold. Of the values ranked at the threshold, keep the first in order
+        long[] sorted = ranks.clone();
+        Arrays.sort(sorted);
+        long threshold = sorted[capacity - 1];
+        int tiesToKeep = 0;
+        for (int i = capacity - 1; i >= 0 && sorted[i] == threshold; i--) {
+            tiesToKeep++;
+        }
+        boolean[] keep = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            keep[i] = ranks[i] < threshold || (ranks[i] == threshold && tiesToKeep-- > 0);
+        }
+        values.retain(keep);
+    }
+
+    /** A deterministic rank for a value, spreading its hash code with the 64-bit murmur3 finalizer */
+    static long rank(Object value) {
+        return SketchHashing.mix(value.hashCode());
+    }
+
+}
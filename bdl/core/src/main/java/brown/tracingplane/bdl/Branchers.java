@@ -24,11 +24,56 @@ public class Branchers {
     public static <V> Brancher<Set<V>> set() {
         return new Brancher<Set<V>>() {
             public Set<V> branch(Set<V> from) {
+                if (from instanceof SortedArraySet) {
+                    return ((SortedArraySet<V>) from).branch();
+                }
                 return from == null ? null : new HashSet<V>(from);
             }
         };
     }
 
+    /** Branches a {@link BoundedSet} without copying its values; see {@link BoundedSet#branch()} */
+    public static <V> Brancher<BoundedSet<V>> boundedSet() {
+        return new Brancher<BoundedSet<V>>() {
+            public BoundedSet<V> branch(BoundedSet<V> from) {
+                return from == null ? null : from.branch();
+            }
+        };
+    }
+
+    /** Branches a {@link LongSet} without copying its values; see {@link LongSet#branch()} */
+    public static Brancher<LongSet> longSet() {
+        return new Brancher<LongSet>() {
+            public LongSet branch(LongSet from) {
+                return from == null ? null : from.branch();
+            }
+        };
+    }
+
+    public static Brancher<HyperLogLog> hll() {
+        return new Brancher<HyperLogLog>() {
+            public HyperLogLog branch(HyperLogLog from) {
+                return from == null ? null : from.copy();
+            }
+        };
+    }
+
+    public static Brancher<CountMinSketch> cms() {
+        return new Brancher<CountMinSketch>() {
+            public CountMinSketch branch(CountMinSketch from) {
+                return from == null ? null : from.copy();
+            }
+        };
+    }
+
+    public static Brancher<BloomFilter> bloom() {
+        return new Brancher<BloomFilter>() {
+            public BloomFilter branch(BloomFilter from) {
+                return from == null ? null : from.copy();
+            }
+        };
+    }
+
     public static <K, V> Brancher<Map<K, V>> map(Brancher<V> valueBrancher) {
         return new Brancher<Map<K, V>>() {
             public Map<K, V> branch(Map<K, V> from) {
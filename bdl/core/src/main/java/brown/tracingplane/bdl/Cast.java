@@ -63,6 +63,51 @@ public class Cast {
         return buf.remaining() == 8 ? buf.getLong(buf.position()) : null;
     }
 
+    /*
+     * Primitive casts, used by compiled classes with primitive fields to avoid boxing. These throw an exception rather
+     * than returning null if the buffer does not contain a valid value.
+     */
+
+    public static int as_int32(ByteBuffer buf) throws AtomLayerException {
+        return UnsignedLexVarint.readLexVarUInt32(buf);
+    }
+
+    public static int as_sint32(ByteBuffer buf) throws AtomLayerException {
+        return SignedLexVarint.readLexVarInt32(buf);
+    }
+
+    public static int as_fixed32(ByteBuffer buf) throws AtomLayerException {
+        checkLength(buf, Integer.BYTES);
+        return buf.getInt(buf.position());
+    }
+
+    public static int as_sfixed32(ByteBuffer buf) throws AtomLayerException {
+        return as_fixed32(buf);
+    }
+
+    public static long as_int64(ByteBuffer buf) throws AtomLayerException {
+        return UnsignedLexVarint.readLexVarUInt64(buf);
+    }
+
+    public static long as_sint64(ByteBuffer buf) throws AtomLayerException {
+        return SignedLexVarint.readLexVarInt64(buf);
+    }
+
+    public static long as_fixed64(ByteBuffer buf) throws AtomLayerException {
+        checkLength(buf, Long.BYTES);
+        return buf.getLong(buf.position());
+    }
+
+    public static long as_sfixed64(ByteBuffer buf) throws AtomLayerException {
+        return as_fixed64(buf);
+    }
+
+    private static void checkLength(ByteBuffer buf, int expected) throws AtomLayerException {
+        if (buf.remaining() != expected) {
+            throw new AtomLayerException("Expected " + expected + " bytes, found " + buf.remaining());
+        }
+    }
+
     public static Float to_float(ByteBuffer buf) {
         return buf.remaining() == 4 ? buf.getFloat(buf.position()) : null;
     }
@@ -0,0 +1,173 @@
+package brown.tracingplane.bdl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A count-min sketch that estimates per-key counts, used for the BDL <code>cms</code> and
+ * <code>cms&lt;depth, width&gt;</code> types. The sketch has <code>depth</code> rows of <code>width</code> 4-byte
+ * counters. Within a single sketch, an estimate is never lower than the true count, and is higher by at most about
+ * <code>2 / width</code> of the total count with probability <code>1 - 2^-depth</code>. Once branches have been joined,
+ * an estimate can also be lower than the true count, as described below.
+ * </p>
+ *
+ * <p>
+ * Sketches are joined by taking the counter-wise max rather than the sum. Baggage is copied when it branches, so both
+ * branches carry the counts from before the branch; summing them when the branches rejoin would double-count. With
+ * max, counts are exact for keys that were only incremented on one of the joined branches, and are a lower bound for
+ * keys that were incremented on several.
+ * </p>
+ *
+ * <p>
+ * The serialized form is a single data atom containing the counters, so its size does not depend on the number of keys.
+ * </p>
+ */
+public final class CountMinSketch {
+
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int DEFAULT_WIDTH = 128;
+
+    final int depth;
+    final int width;
+    final int[] counters;
+
+    public CountMinSketch() {
+        this(DEFAULT_DEPTH, DEFAULT_WIDTH);
+    }
+
+    public CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("Depth and width must be positive, got " + depth + " and " + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new int[depth * width];
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public void add(long key, int count) {
+        addHash(SketchHashing.hash(key), count);
+    }
+
+    public void add(String key, int count) {
+        addHash(SketchHashing.hash(key), count);
+    }
+
+    public void add(ByteBuffer key, int count) {
+        addHash(SketchHashing.hash(key), count);
+    }
+
+    public long estimate(long key) {
+        return estimateHash(SketchHashing.hash(key));
+    }
+
+    public long estimate(String key) {
+        return estimateHash(SketchHashing.hash(key));
+    }
+
+    public long estimate(ByteBuffer key) {
+        return estimateHash(SketchHashing.hash(key));
+    }
+
+    /** Row i uses the hash h1 + i * h2, where h1 and h2 are the two halves of the 64-bit hash */
+    private int index(long hash, int row) {
+        int h1 = (int) hash, h2 = (int) (hash >>> 32);
+        return row * width + Math.floorMod(h1 + row * h2, width);
+    }
+
+    private void addHash(long hash, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count-min sketches only support non-negative counts, got " + count);
+        }
+        for (int row = 0; row < depth; row++) {
+            int i = index(hash, row);
+            long updated = (long) counters[i] + count;
+            counters[i] = updated > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) updated;
+        }
+    }
+
+    private long estimateHash(long hash) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /** Merges <code>other</code> into this sketch. Returns false if the sketches have different dimensions */
+    public boolean merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            return false;
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = Math.max(counters[i], other.counters[i]);
+        }
+        return true;
+    }
+
+    /** @return true if nothing has been counted */
+    public boolean isEmpty() {
+        for (int counter : counters) {
+            if (counter != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public CountMinSketch copy() {
+        CountMinSketch copy = new CountMinSketch(depth, width);
+        System.arraycopy(counters, 0, copy.counters, 0, counters.length);
+        return copy;
+    }
+
+    /** @return the number of bytes in the serialized form of a sketch with the specified dimensions */
+    static int serializedSize(int depth, int width) {
+        return depth * width * Integer.BYTES;
+    }
+
+    void writeTo(ByteBuffer buf) {
+        for (int counter : counters) {
+            buf.putInt(counter);
+        }
+    }
+
+    /** Reads counters from <code>buf</code>, merging them into this sketch. Returns false if the size is wrong */
+    boolean mergeFrom(ByteBuffer buf) {
+        if (buf.remaining() != serializedSize(depth, width)) {
+            return false;
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = Math.max(counters[i], buf.getInt(buf.position() + i * Integer.BYTES));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof CountMinSketch)) {
+            return false;
+        }
+        CountMinSketch o = (CountMinSketch) other;
+        return depth == o.depth && width == o.width && Arrays.equals(counters, o.counters);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(counters);
+    }
+
+    @Override
+    public String toString() {
+        return "CountMinSketch(depth=" + depth + ", width=" + width + ")";
+    }
+
+}
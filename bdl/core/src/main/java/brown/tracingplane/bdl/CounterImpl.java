@@ -3,10 +3,7 @@ package brown.tracingplane.bdl;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Random;
-import java.util.TreeMap;
 import brown.tracingplane.atomlayer.AtomLayerException;
 import brown.tracingplane.atomlayer.StringUtils;
 import brown.tracingplane.atomlayer.UnsignedLexVarint;
@@ -16,31 +13,101 @@ import brown.tracingplane.baggageprotocol.BaggageWriter;
 import brown.tracingplane.bdl.SpecialTypes.Counter;
 
 /**
+ * <p>
  * Implements the special {@link Counter} type based on the P-Counter CRDT; the {@code counter} BDL type uses this.
+ * </p>
+ *
+ * <p>
+ * Each counter that increments is assigned a random 4-byte component ID, and the value of the counter is the sum of
+ * the values of all components. Component IDs and values are stored in parallel primitive arrays, sorted by component
+ * ID in the same order as their serialized {@link BagKey}s, so parsing and serializing are linear and joining merges
+ * the two arrays in linear time. {@link #branch()} does not copy the arrays; the original and the branch share them
+ * until either is next modified.
+ * </p>
+ *
+ * <p>
+ * Joining never removes components, so a counter that is branched and joined many times accumulates one component per
+ * branch that incremented. {@link Handler#compact(CounterImpl, CounterImpl)} folds those components back into one.
+ * </p>
  */
 public class CounterImpl implements Counter {
 
     private static final Random r = new Random(System.currentTimeMillis()); // TODO: properly seed rng uniquely
 
-    private BagKey componentId = null;
-    private Map<BagKey, Long> componentValues = null;
+    private static final int[] NO_IDS = new int[0];
+    private static final long[] NO_VALUES = new long[0];
+
+    private boolean hasComponentId = false;
+    private int componentId;
+
+    /** Component IDs, in unsigned order, which is the order of their serialized BagKeys */
+    private int[] ids = NO_IDS;
+    private long[] values = NO_VALUES;
+    private int size = 0;
+
+    /** True if ids and values might be shared with another counter, and must be copied before they are modified */
+    private boolean shared = false;
 
     @Override
     public BaggageHandler<?> handler() {
         return Handler.instance;
     }
 
-    private BagKey newComponentId() {
+    /** @return the number of components of this counter */
+    int componentCount() {
+        return size;
+    }
+
+    private int newComponentId() {
         while (true) {
-            ByteBuffer id = ByteBuffer.allocate(4);
-            r.nextBytes(id.array());
-            BagKey key = BagKey.keyed(id);
-            if (!componentValues.containsKey(key)) {
-                return key;
+            int id = r.nextInt();
+            if (indexOf(id) < 0) {
+                return id;
             }
         }
     }
 
+    /** Binary search for the component ID; returns -(insertion point) - 1 if it is not present */
+    private int indexOf(int id) {
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Integer.compareUnsigned(ids[mid], id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /** Ensures the arrays can hold <code>capacity</code> components and are not shared */
+    private void ensureWritable(int capacity) {
+        if (!shared && capacity <= ids.length) {
+            return;
+        }
+        int length = Math.max(capacity, Math.min(ids.length * 2, capacity + 16));
+        int[] newIds = new int[length];
+        long[] newValues = new long[length];
+        System.arraycopy(ids, 0, newIds, 0, size);
+        System.arraycopy(values, 0, newValues, 0, size);
+        ids = newIds;
+        values = newValues;
+        shared = false;
+    }
+
+    private void insert(int index, int id, long value) {
+        ensureWritable(size + 1);
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        ids[index] = id;
+        values[index] = value;
+        size++;
+    }
+
     @Override
     public void increment() {
         increment(1);
@@ -48,77 +115,145 @@ public class CounterImpl implements Counter {
 
     @Override
     public void increment(long quantity) {
-        if (componentValues == null) {
-            componentValues = new TreeMap<>();
-        }
-        if (componentId == null) {
-            componentValues.put(componentId = newComponentId(), quantity);
+        if (!hasComponentId) {
+            componentId = newComponentId();
+            hasComponentId = true;
+            insert(-(indexOf(componentId) + 1), componentId, quantity);
         } else {
-            componentValues.put(componentId, componentValues.get(componentId) + quantity);
+            ensureWritable(size);
+            values[indexOf(componentId)] += quantity;
         }
     }
 
-    private void putMax(BagKey key, Long value) {
-        if (componentValues == null) {
-            componentValues = new TreeMap<>();
+    /** Used while parsing, where components are usually encountered in order */
+    private void putMax(int id, long value) {
+        if (size == 0 || Integer.compareUnsigned(ids[size - 1], id) < 0) {
+            insert(size, id, value);
+            return;
         }
-        Long existingValue = componentValues.get(key);
-        if (existingValue == null || existingValue < value) {
-            componentValues.put(key, value);
+        int index = indexOf(id);
+        if (index < 0) {
+            insert(-(index + 1), id, value);
+        } else if (values[index] < value) {
+            ensureWritable(size);
+            values[index] = value;
         }
     }
 
     @Override
     public long getValue() {
-        return componentValues == null ? 0 : componentValues.values().stream().reduce(0L, (l, r) -> l + r);
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value += values[i];
+        }
+        return value;
     }
 
     private void serialize(BaggageWriter writer) {
-        if (componentValues == null) {
-            return;
-        }
-
-        for (Entry<BagKey, Long> entry : componentValues.entrySet()) {
-            writer.enter(entry.getKey());
-            UnsignedLexVarint.writeReverseLexVarUInt64(writer.newDataAtom(9), entry.getValue());
+        for (int i = 0; i < size; i++) {
+            ByteBuffer id = ByteBuffer.allocate(4);
+            id.putInt(0, ids[i]);
+            writer.enter(BagKey.keyed(id));
+            UnsignedLexVarint.writeReverseLexVarUInt64(writer.newDataAtom(9), values[i]);
             writer.exit();
         }
     }
 
     private CounterImpl mergeWith(CounterImpl other) {
-        if (other == null || other.componentValues == null) {
+        if (other == null || other.size == 0) {
+            return this;
+        }
+        if (size == 0) {
+            ids = other.ids;
+            values = other.values;
+            size = other.size;
+            shared = other.shared = true;
             return this;
         }
 
-        boolean is_compaction = BDLUtils.is_compaction.get();
+        int[] newIds = new int[size + other.size];
+        long[] newValues = new long[size + other.size];
+        int i = 0, j = 0, k = 0;
+        while (i < size && j < other.size) {
+            int cmp = Integer.compareUnsigned(ids[i], other.ids[j]);
+            if (cmp < 0) {
+                newIds[k] = ids[i];
+                newValues[k++] = values[i++];
+            } else if (cmp > 0) {
+                newIds[k] = other.ids[j];
+                newValues[k++] = other.values[j++];
+            } else {
+                newIds[k] = ids[i];
+                newValues[k++] = Math.max(values[i++], other.values[j++]);
+            }
+        }
+        for (; i < size; i++, k++) {
+            newIds[k] = ids[i];
+            newValues[k] = values[i];
+        }
+        for (; j < other.size; j++, k++) {
+            newIds[k] = other.ids[j];
+            newValues[k] = other.values[j];
+        }
+        ids = newIds;
+        values = newValues;
+        size = k;
+        shared = false;
+        return this;
+    }
 
-        if (is_compaction) {
-            for (Entry<BagKey, Long> entry : other.componentValues.entrySet()) {
-                Long existingValue = componentValues.get(entry.getKey());
-                if (existingValue == null) {
-                    // We can compact the new value into our own component ID
-                    increment(entry.getValue());
-                } else {
-                    // We already knew about this component ID so we can't compact it
-                    componentValues.put(entry.getKey(), Math.max(entry.getValue(), existingValue));
-                }
+    /**
+     * Like {@link #mergeWith(CounterImpl)}, but components that only <code>other</code> knows about are folded into our
+     * own component instead of being kept. If we do not have our own component yet, we reclaim the component ID of
+     * <code>other</code>, since <code>other</code> is discarded after the join.
+     */
+    private CounterImpl compactWith(CounterImpl other) {
+        if (other == null || other.size == 0) {
+            return this;
+        }
+
+        long folded = 0;
+        int[] newIds = new int[size + 1];
+        long[] newValues = new long[size + 1];
+        int i = 0, j = 0, k = 0;
+        while (i < size || j < other.size) {
+            int cmp = i == size ? 1 : j == other.size ? -1 : Integer.compareUnsigned(ids[i], other.ids[j]);
+            if (cmp < 0) {
+                newIds[k] = ids[i];
+                newValues[k++] = values[i++];
+            } else if (cmp > 0) {
+                folded += other.values[j++];
+            } else {
+                newIds[k] = ids[i];
+                newValues[k++] = Math.max(values[i++], other.values[j++]);
             }
-        } else {
-            for (Entry<BagKey, Long> entry : other.componentValues.entrySet()) {
-                Long existingValue = componentValues.get(entry.getKey());
-                Long newValue = existingValue == null ? entry.getValue() : Math.max(entry.getValue(), existingValue);
-                componentValues.put(entry.getKey(), newValue);
+        }
+        ids = newIds;
+        values = newValues;
+        size = k;
+        shared = false;
+
+        if (folded != 0) {
+            if (!hasComponentId && other.hasComponentId && indexOf(other.componentId) < 0) {
+                componentId = other.componentId;
+                hasComponentId = true;
+                insert(-(indexOf(componentId) + 1), componentId, folded);
+            } else {
+                increment(folded);
             }
         }
         return this;
     }
 
     private CounterImpl branch() {
-        if (componentValues == null) {
+        if (size == 0) {
             return null;
         }
         CounterImpl other = new CounterImpl();
-        other.componentValues = new TreeMap<>(componentValues);
+        other.ids = ids;
+        other.values = values;
+        other.size = size;
+        shared = other.shared = true;
         return other;
     }
 
@@ -126,12 +261,14 @@ public class CounterImpl implements Counter {
     public String toString() {
         StringBuilder b = new StringBuilder();
         b.append(getValue());
-        if (componentValues != null && componentValues.size() > 1) {
+        if (size > 1) {
             b.append(" (");
             List<String> entries = new ArrayList<>();
-            componentValues.entrySet().forEach(e -> {
-                entries.add(e.getKey() + " = " + e.getValue());
-            });
+            for (int i = 0; i < size; i++) {
+                ByteBuffer id = ByteBuffer.allocate(4);
+                id.putInt(0, ids[i]);
+                entries.add(BagKey.keyed(id) + " = " + values[i]);
+            }
             b.append(StringUtils.join(entries, ", "));
             b.append(")");
         }
@@ -152,6 +289,15 @@ public class CounterImpl implements Counter {
             BagKey nextComponentKey = null;
             while ((nextComponentKey = reader.enter()) != null) {
                 try {
+                    // Component IDs are always 4-byte keyed bags; anything else was not written by a counter
+                    if (!(nextComponentKey instanceof BagKey.Keyed)) {
+                        continue;
+                    }
+                    ByteBuffer id = ((BagKey.Keyed) nextComponentKey).key;
+                    if (id.remaining() != 4) {
+                        continue;
+                    }
+
                     ByteBuffer data = reader.nextData();
                     if (data == null) {
                         continue;
@@ -167,7 +313,7 @@ public class CounterImpl implements Counter {
                     if (counter == null) {
                         counter = new CounterImpl();
                     }
-                    counter.putMax(nextComponentKey, value);
+                    counter.putMax(id.getInt(id.position()), value);
                 } finally {
                     reader.exit();
                 }
@@ -192,6 +338,21 @@ public class CounterImpl implements Counter {
             }
         }
 
+        /**
+         * Joins <code>second</code> into <code>first</code>, folding the components that only <code>second</code>
+         * knows about into a single component of <code>first</code>. This is only safe if no other counter holds those
+         * components, e.g., if <code>second</code> was branched from <code>first</code> and has not been serialized or
+         * branched since.
+         */
+        @Override
+        public CounterImpl compact(CounterImpl first, CounterImpl second) {
+            if (first == null) {
+                return second;
+            } else {
+                return first.compactWith(second);
+            }
+        }
+
         @Override
         public CounterImpl branch(CounterImpl from) {
             return from == null ? null : from.branch();
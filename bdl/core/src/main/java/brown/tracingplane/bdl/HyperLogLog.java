@@ -0,0 +1,168 @@
+package brown.tracingplane.bdl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A HyperLogLog sketch that estimates the number of distinct values added to it, used for the BDL <code>hll</code> and
+ * <code>hll&lt;precision&gt;</code> types. The sketch has <code>2^precision</code> one-byte registers, and the
+ * standard error of its estimate is about <code>1.04 / sqrt(2^precision)</code>.
+ * </p>
+ *
+ * <p>
+ * Sketches are joined by taking the register-wise max, so joining is idempotent, commutative and associative, and
+ * neither the cost of joining nor the serialized size depend on how many values were added. The serialized form is a
+ * single data atom containing the registers.
+ * </p>
+ */
+public final class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 10;
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    final int precision;
+    final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and " +
+                                               MAX_PRECISION + ", got " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    public void add(long value) {
+        addHash(SketchHashing.hash(value));
+    }
+
+    public void add(String value) {
+        addHash(SketchHashing.hash(value));
+    }
+
+    public void add(ByteBuffer value) {
+        addHash(SketchHashing.hash(value));
+    }
+
+    private void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        if (registers[index] < rank) {
+            registers[index] = rank;
+        }
+    }
+
+    /** @return the estimated number of distinct values added to this sketch */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Small range correction: linear counting
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+        case 16:
+            return 0.673;
+        case 32:
+            return 0.697;
+        case 64:
+            return 0.709;
+        default:
+            return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /** Merges <code>other</code> into this sketch. Returns false if the sketches have different precisions */
+    public boolean merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            return false;
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] < other.registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+        return true;
+    }
+
+    /** @return true if no values have been added */
+    public boolean isEmpty() {
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog(precision);
+        System.arraycopy(registers, 0, copy.registers, 0, registers.length);
+        return copy;
+    }
+
+    /** @return the number of bytes in the serialized form of a sketch with the specified precision */
+    static int serializedSize(int precision) {
+        return 1 << precision;
+    }
+
+    void writeTo(ByteBuffer buf) {
+        buf.put(registers);
+    }
+
+    /** Reads registers from <code>buf</code>, merging them into this sketch. Returns false if the size is wrong */
+    boolean mergeFrom(ByteBuffer buf) {
+        if (buf.remaining() != registers.length) {
+            return false;
+        }
+        for (int i = 0; i < registers.length; i++) {
+            byte register = buf.get(buf.position() + i);
+            if (registers[i] < register) {
+                registers[i] = register;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof HyperLogLog)) {
+            return false;
+        }
+        HyperLogLog o = (HyperLogLog) other;
+        return precision == o.precision && Arrays.equals(registers, o.registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registers);
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLog(precision=" + precision + ", estimate=" + estimate() + ")";
+    }
+
+}
@@ -4,4 +4,14 @@ public interface Joiner<T> {
 
     public T join(T first, T second);
 
+    /**
+     * Like {@link #join(Object, Object)}, but the caller guarantees that <code>second</code> is being absorbed into
+     * <code>first</code>: nothing else holds the state that only <code>second</code> knows about, and
+     * <code>second</code> will not be joined anywhere else. Types such as {@link CounterImpl} can use this to fold
+     * state rather than accumulate it. By default, this is the same as {@link #join(Object, Object)}.
+     */
+    public default T compact(T first, T second) {
+        return join(first, second);
+    }
+
 }
@@ -2,6 +2,7 @@ package brown.tracingplane.bdl;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BinaryOperator;
 
 /**
  * Merge logic for primitive BDL types {@link #first()}, sets, and maps.
@@ -32,6 +33,7 @@ public class Joiners {
         };
     }
 
+    /** Adds the second set to the first. If both are {@link SortedArraySet}s of the same order, this is linear */
     public static <V> Joiner<Set<V>> setUnion() {
         return new Joiner<Set<V>>() {
             public Set<V> join(Set<V> firstSet, Set<V> secondSet) {
@@ -47,25 +49,128 @@ public class Joiners {
         };
     }
 
+    /** Union of two {@link BoundedSet}s, keeping the values with the smallest ranks; see {@link BoundedSet} */
+    public static <V> Joiner<BoundedSet<V>> boundedSetUnion() {
+        return new Joiner<BoundedSet<V>>() {
+            public BoundedSet<V> join(BoundedSet<V> firstSet, BoundedSet<V> secondSet) {
+                if (firstSet == null) {
+                    return secondSet;
+                } else if (secondSet == null) {
+                    return firstSet;
+                } else {
+                    firstSet.addAll(secondSet);
+                    return firstSet;
+                }
+            }
+        };
+    }
+
+    public static Joiner<LongSet> longSetUnion() {
+        return new Joiner<LongSet>() {
+            public LongSet join(LongSet firstSet, LongSet secondSet) {
+                if (firstSet == null) {
+                    return secondSet;
+                } else if (secondSet == null) {
+                    return firstSet;
+                } else {
+                    firstSet.addAll(secondSet);
+                    return firstSet;
+                }
+            }
+        };
+    }
+
+    /**
+     * Merges {@link HyperLogLog}s by taking the register-wise max; throws an {@link IllegalArgumentException} if their
+     * precisions differ
+     */
+    public static Joiner<HyperLogLog> hllMerge() {
+        return new Joiner<HyperLogLog>() {
+            public HyperLogLog join(HyperLogLog first, HyperLogLog second) {
+                if (first == null) {
+                    return second;
+                } else if (second == null) {
+                    return first;
+                } else if (!first.merge(second)) {
+                    throw new IllegalArgumentException("Cannot join HyperLogLogs with precisions " + first.precision +
+                                                       " and " + second.precision);
+                } else {
+                    return first;
+                }
+            }
+        };
+    }
+
+    /**
+     * Merges {@link CountMinSketch}s by taking the counter-wise max, see {@link CountMinSketch}; throws an
+     * {@link IllegalArgumentException} if their dimensions differ
+     */
+    public static Joiner<CountMinSketch> cmsMerge() {
+        return new Joiner<CountMinSketch>() {
+            public CountMinSketch join(CountMinSketch first, CountMinSketch second) {
+                if (first == null) {
+                    return second;
+                } else if (second == null) {
+                    return first;
+                } else if (!first.merge(second)) {
+                    throw new IllegalArgumentException("Cannot join CountMinSketches of " + first.depth + "x" +
+                                                       first.width + " and " + second.depth + "x" + second.width);
+                } else {
+                    return first;
+                }
+            }
+        };
+    }
+
+    /**
+     * Merges {@link BloomFilter}s by taking the bitwise or; throws an {@link IllegalArgumentException} if their
+     * parameters differ
+     */
+    public static Joiner<BloomFilter> bloomMerge() {
+        return new Joiner<BloomFilter>() {
+            public BloomFilter join(BloomFilter first, BloomFilter second) {
+                if (first == null) {
+                    return second;
+                } else if (second == null) {
+                    return first;
+                } else if (!first.merge(second)) {
+                    throw new IllegalArgumentException("Cannot join a BloomFilter of " + first.bits + " bits and " +
+                                                       first.hashes + " hashes with one of " + second.bits +
+                                                       " bits and " + second.hashes + " hashes");
+                } else {
+                    return first;
+                }
+            }
+        };
+    }
+
     public static <K, V> Joiner<Map<K, V>> mapMerge(Joiner<V> valueJoiner) {
         return new Joiner<Map<K, V>>() {
             public Map<K, V> join(Map<K, V> firstMap, Map<K, V> secondMap) {
-                if (firstMap == null) {
-                    return secondMap;
-                } else if (secondMap == null) {
-                    return firstMap;
+                return merge(firstMap, secondMap, valueJoiner::join);
+            }
+
+            public Map<K, V> compact(Map<K, V> firstMap, Map<K, V> secondMap) {
+                return merge(firstMap, secondMap, valueJoiner::compact);
+            }
+        };
+    }
+
+    private static <K, V> Map<K, V> merge(Map<K, V> firstMap, Map<K, V> secondMap, BinaryOperator<V> valueJoiner) {
+        if (firstMap == null) {
+            return secondMap;
+        } else if (secondMap == null) {
+            return firstMap;
+        } else {
+            for (K key : secondMap.keySet()) {
+                if (firstMap.containsKey(key)) {
+                    firstMap.put(key, valueJoiner.apply(firstMap.get(key), secondMap.get(key)));
                 } else {
-                    for (K key : secondMap.keySet()) {
-                        if (firstMap.containsKey(key)) {
-                            firstMap.put(key, valueJoiner.join(firstMap.get(key), secondMap.get(key)));
-                        } else {
-                            firstMap.put(key, secondMap.get(key));
-                        }
-                    }
-                    return firstMap;
+                    firstMap.put(key, secondMap.get(key));
                 }
             }
-        };
+            return firstMap;
+        }
     }
 
 }
@@ -0,0 +1,261 @@
+package brown.tracingplane.bdl;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>
+ * A set of primitive longs, backed by a sorted <code>long[]</code>. Compiled BDL classes use {@link LongSet} in place
+ * of <code>Set&lt;Long&gt;</code> for <code>set&lt;int64&gt;</code>, <code>set&lt;sint64&gt;</code>,
+ * <code>set&lt;fixed64&gt;</code> and <code>set&lt;sfixed64&gt;</code> fields when the compiler is run with primitive
+ * fields enabled, so that parsing, branching and joining do not box values.
+ * </p>
+ *
+ * <p>
+ * {@link #branch()} does not copy the values; the original and the branch share the backing array until either is next
+ * modified. {@link #addAll(LongSet)} merges the two sorted arrays in linear time.
+ * </p>
+ */
+public final class LongSet {
+
+    private static final long[] EMPTY = new long[0];
+
+    private long[] values;
+    private int size;
+
+    /** True if the values array might be shared with another set, and must be copied before it is modified */
+    private boolean shared;
+
+    /** Set while parsing if values have been appended out of order or with duplicates */
+    private boolean unsorted;
+
+    public LongSet() {
+        this.values = EMPTY;
+    }
+
+    private LongSet(long[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    /** @return a new set containing the specified values */
+    public static LongSet of(long... values) {
+        LongSet set = new LongSet();
+        for (long value : values) {
+            set.append(value);
+        }
+        set.normalize();
+        return set;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** @return the i'th smallest value in this set */
+    public long get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return values[i];
+    }
+
+    public boolean contains(long value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    /** Adds the value to this set. Returns true if the set did not already contain the value */
+    public boolean add(long value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            return false;
+        }
+        index = -(index + 1);
+        long[] target = writableArray(size + 1);
+        System.arraycopy(values, index, target, index + 1, size - index);
+        if (target != values) {
+            System.arraycopy(values, 0, target, 0, index);
+            values = target;
+        }
+        values[index] = value;
+        size++;
+        return true;
+    }
+
+    /** Removes the value from this set. Returns true if the set contained the value */
+    public boolean remove(long value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) {
+            return false;
+        }
+        if (shared) {
+            values = Arrays.copyOf(values, size);
+            shared = false;
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    /** Adds all of the values of <code>other</code> to this set, merging the two sorted arrays in linear time */
+    public void addAll(LongSet other) {
+        if (other == null || other.size == 0 || other == this) {
+            return;
+        } else if (size == 0) {
+            values = other.values;
+            size = other.size;
+            shared = other.shared = true;
+            return;
+        }
+
+        long[] a = values, b = other.values;
+        int sizeA = size, sizeB = other.size;
+
+        // Common case when joining branches: the other set has nothing new
+        int i = 0, j = 0;
+        while (i < sizeA && j < sizeB) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] == b[j]) {
+                i++;
+                j++;
+            } else {
+                break;
+            }
+        }
+        if (j == sizeB) {
+            return;
+        }
+
+        long[] merged = new long[sizeA + sizeB];
+        int n = 0;
+        i = 0;
+        j = 0;
+        while (i < sizeA && j < sizeB) {
+            if (a[i] < b[j]) {
+                merged[n++] = a[i++];
+            } else if (a[i] > b[j]) {
+                merged[n++] = b[j++];
+            } else {
+                merged[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < sizeA) {
+            merged[n++] = a[i++];
+        }
+        while (j < sizeB) {
+            merged[n++] = b[j++];
+        }
+        values = merged;
+        size = n;
+        shared = false;
+    }
+
+    /** @return a new set with the same values as this set, that shares this set's array until either is modified */
+    public LongSet branch() {
+        LongSet branched = new LongSet(values, size);
+        if (size > 0) {
+            shared = branched.shared = true;
+        }
+        return branched;
+    }
+
+    /** Performs the action for each value of this set, in ascending order */
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(values[i]);
+        }
+    }
+
+    /** @return a copy of the values of this set, in ascending order */
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Appends a value without checking order or duplicates. Used while parsing, where values usually arrive in order;
+     * {@link #normalize()} must be called once all values are appended.
+     */
+    void append(long value) {
+        if (size > 0 && value <= values[size - 1]) {
+            unsorted = true;
+        }
+        long[] target = writableArray(size + 1);
+        if (target != values) {
+            System.arraycopy(values, 0, target, 0, size);
+            values = target;
+        }
+        values[size++] = value;
+    }
+
+    /** Sorts and removes duplicates after values have been appended with {@link #append(long)} */
+    void normalize() {
+        if (!unsorted) {
+            return;
+        }
+        Arrays.sort(values, 0, size);
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (n == 0 || values[i] != values[n - 1]) {
+                values[n++] = values[i];
+            }
+        }
+        size = n;
+        unsorted = false;
+    }
+
+    /** @return an array to write <code>capacity</code> values to; either {@link #values} or a new, larger array */
+    private long[] writableArray(int capacity) {
+        if (!shared && capacity <= values.length) {
+            return values;
+        }
+        shared = false;
+        return new long[Math.max(capacity, Math.min(values.length * 2, capacity + 1024))];
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        } else if (!(other instanceof LongSet)) {
+            return false;
+        }
+        LongSet o = (LongSet) other;
+        if (size != o.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (values[i] != o.values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + Long.hashCode(values[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("{ ");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                b.append(", ");
+            }
+            b.append(values[i]);
+        }
+        return b.append(" }").toString();
+    }
+
+}
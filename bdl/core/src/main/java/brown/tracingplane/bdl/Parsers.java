@@ -3,6 +3,7 @@ package brown.tracingplane.bdl;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -11,6 +12,7 @@ import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import brown.tracingplane.atomlayer.AtomLayerException;
 import brown.tracingplane.baggageprotocol.BagKey;
 import brown.tracingplane.baggageprotocol.BaggageReader;
 import brown.tracingplane.baggageprotocol.ElementReader;
@@ -79,10 +81,121 @@ public class Parsers {
         return castNext(ReaderHelpers.to_bytes);
     }
 
+    public static ElementParser<LongSet> int64SetParser() {
+        return longSetParser(Cast::as_int64);
+    }
+
+    public static ElementParser<LongSet> sint64SetParser() {
+        return longSetParser(Cast::as_sint64);
+    }
+
+    public static ElementParser<LongSet> fixed64SetParser() {
+        return longSetParser(Cast::as_fixed64);
+    }
+
+    public static ElementParser<LongSet> sfixed64SetParser() {
+        return longSetParser(Cast::as_sfixed64);
+    }
+
     public static <T> ElementParser<Set<T>> setParser(ElementParser<T> elementParser) {
         return collect(elementParser, () -> new HashSet<T>());
     }
 
+    /**
+     * Like {@link #setParser(ElementParser)}, but collects values into a {@link SortedArraySet} with the specified order.
+     * If the order is {@link SerializedOrder}, values are read in order and are simply appended. If the order is null,
+     * this is the same as {@link #setParser(ElementParser)}.
+     */
+    public static <T> ElementParser<Set<T>> setParser(ElementParser<T> elementParser, Comparator<? super T> order) {
+        if (order == null) {
+            return setParser(elementParser);
+        }
+        return new ElementParser<Set<T>>() {
+            public Set<T> parse(ElementReader reader) {
+                SortedArraySet<T> out = null;
+                T next = null;
+                while ((next = elementParser.parse(reader)) != null) {
+                    if (out == null) {
+                        out = new SortedArraySet<T>(order);
+                    }
+                    out.append(next);
+                }
+                if (out != null) {
+                    out.normalize();
+                }
+                return out;
+            }
+        };
+    }
+
+    /**
+     * Parses a {@link BoundedSet} with the specified capacity. If more values than the capacity were serialized, the
+     * values with the smallest ranks are kept.
+     */
+    public static <T> ElementParser<BoundedSet<T>> boundedSetParser(ElementParser<T> elementParser, int capacity,
+                                                                    Comparator<? super T> order) {
+        ElementParser<Set<T>> setParser = setParser(elementParser, order);
+        return new ElementParser<BoundedSet<T>>() {
+            public BoundedSet<T> parse(ElementReader reader) {
+                Set<T> values = setParser.parse(reader);
+                if (values == null) {
+                    return null;
+                }
+                BoundedSet<T> out = new BoundedSet<T>(capacity, order);
+                out.addAll(values);
+                return out;
+            }
+        };
+    }
+
+    /**
+     * Parses a {@link HyperLogLog} with the specified precision. Every data atom of the right size is merged into the
+     * result, since atom-level merges can leave more than one; atoms of the wrong size are ignored.
+     */
+    public static ElementParser<HyperLogLog> hllParser(int precision) {
+        return new ElementParser<HyperLogLog>() {
+            public HyperLogLog parse(ElementReader reader) {
+                HyperLogLog out = new HyperLogLog(precision);
+                boolean valid = false;
+                ByteBuffer buf = null;
+                while ((buf = reader.nextData()) != null) {
+                    valid |= out.mergeFrom(buf);
+                }
+                return valid ? out : null;
+            }
+        };
+    }
+
+    /** Parses a {@link CountMinSketch} with the specified dimensions; see {@link #hllParser(int)} */
+    public static ElementParser<CountMinSketch> cmsParser(int depth, int width) {
+        return new ElementParser<CountMinSketch>() {
+            public CountMinSketch parse(ElementReader reader) {
+                CountMinSketch out = new CountMinSketch(depth, width);
+                boolean valid = false;
+                ByteBuffer buf = null;
+                while ((buf = reader.nextData()) != null) {
+                    valid |= out.mergeFrom(buf);
+                }
+                return valid ? out : null;
+            }
+        };
+    }
+
+    /** Parses a {@link BloomFilter} with the specified parameters; see {@link #hllParser(int)} */
+    public static ElementParser<BloomFilter> bloomParser(int bits, int hashes) {
+        return new ElementParser<BloomFilter>() {
+            public BloomFilter parse(ElementReader reader) {
+                BloomFilter out = new BloomFilter(bits, hashes);
+                boolean valid = false;
+                ByteBuffer buf = null;
+                while ((buf = reader.nextData()) != null) {
+                    valid |= out.mergeFrom(buf);
+                }
+                return valid ? out : null;
+            }
+        };
+    }
+
     public static <T> ElementParser<List<T>> listParser(ElementParser<T> elementParser) {
         return collect(elementParser, () -> new ArrayList<T>());
     }
@@ -120,6 +233,38 @@ public class Parsers {
         };
     }
 
+    /** Casts a data atom to a primitive long */
+    @FunctionalInterface
+    static interface LongCast {
+        long apply(ByteBuffer buf) throws AtomLayerException;
+    }
+
+    /** Like {@link #setParser(ElementParser)} but collects values into a {@link LongSet} without boxing them */
+    static ElementParser<LongSet> longSetParser(LongCast cast) {
+        return new ElementParser<LongSet>() {
+            public LongSet parse(ElementReader reader) {
+                LongSet out = null;
+                ByteBuffer buf = null;
+                while ((buf = reader.nextData()) != null) {
+                    long value;
+                    try {
+                        value = cast.apply(buf);
+                    } catch (AtomLayerException e) {
+                        continue;
+                    }
+                    if (out == null) {
+                        out = new LongSet();
+                    }
+                    out.append(value);
+                }
+                if (out != null) {
+                    out.normalize();
+                }
+                return out;
+            }
+        };
+    }
+
     static <T> ElementParser<T> castNext(Function<ByteBuffer, T> cast) {
         return new ElementParser<T>() {
             public T parse(ElementReader reader) {
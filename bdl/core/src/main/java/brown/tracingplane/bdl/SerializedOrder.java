@@ -0,0 +1,108 @@
+package brown.tracingplane.bdl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import brown.tracingplane.atomlayer.Lexicographic;
+
+/**
+ * <p>
+ * Comparators that order values of primitive BDL types the same way as their serialized data atoms are ordered
+ * lexicographically. A {@link SortedArraySet} kept in one of these orders can be serialized without sorting its atoms
+ * afterwards, and parsed without sorting its values.
+ * </p>
+ *
+ * <p>
+ * {@link #stringOrder()} returns null if the platform's default charset is not UTF-8, since strings are serialized with
+ * the default charset and only UTF-8 byte order is known to match code point order.
+ * </p>
+ */
+public class SerializedOrder {
+
+    private SerializedOrder() {}
+
+    private static final Comparator<Boolean> BOOL = Boolean::compare;
+    private static final Comparator<Integer> UNSIGNED_INT = Integer::compareUnsigned;
+    private static final Comparator<Integer> SIGNED_INT = Integer::compare;
+    private static final Comparator<Long> UNSIGNED_LONG = Long::compareUnsigned;
+    private static final Comparator<Long> SIGNED_LONG = Long::compare;
+    private static final Comparator<Float> FLOAT = (a, b) -> Integer.compareUnsigned(Float.floatToIntBits(a),
+                                                                                     Float.floatToIntBits(b));
+    private static final Comparator<Double> DOUBLE = (a, b) -> Long.compareUnsigned(Double.doubleToLongBits(a),
+                                                                                    Double.doubleToLongBits(b));
+    private static final Comparator<String> STRING = Charset.defaultCharset().equals(StandardCharsets.UTF_8)
+            ? SerializedOrder::compareCodePoints : null;
+    private static final Comparator<ByteBuffer> BYTES = Lexicographic.BYTE_BUFFER_COMPARATOR;
+
+    public static Comparator<Boolean> taintOrder() {
+        return BOOL;
+    }
+
+    public static Comparator<Boolean> boolOrder() {
+        return BOOL;
+    }
+
+    public static Comparator<Integer> int32Order() {
+        return UNSIGNED_INT;
+    }
+
+    public static Comparator<Integer> sint32Order() {
+        return SIGNED_INT;
+    }
+
+    public static Comparator<Integer> fixed32Order() {
+        return UNSIGNED_INT;
+    }
+
+    public static Comparator<Integer> sfixed32Order() {
+        return UNSIGNED_INT;
+    }
+
+    public static Comparator<Long> int64Order() {
+        return UNSIGNED_LONG;
+    }
+
+    public static Comparator<Long> sint64Order() {
+        return SIGNED_LONG;
+    }
+
+    public static Comparator<Long> fixed64Order() {
+        return UNSIGNED_LONG;
+    }
+
+    public static Comparator<Long> sfixed64Order() {
+        return UNSIGNED_LONG;
+    }
+
+    public static Comparator<Float> floatOrder() {
+        return FLOAT;
+    }
+
+    public static Comparator<Double> doubleOrder() {
+        return DOUBLE;
+    }
+
+    public static Comparator<String> stringOrder() {
+        return STRING;
+    }
+
+    public static Comparator<ByteBuffer> bytesOrder() {
+        return BYTES;
+    }
+
+    /** Compares strings by code point, which is the order of their UTF-8 encodings */
+    static int compareCodePoints(String a, String b) {
+        int i = 0, j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i), cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+}
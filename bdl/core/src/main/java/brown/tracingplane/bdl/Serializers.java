@@ -1,11 +1,13 @@
 package brown.tracingplane.bdl;
 
 import java.nio.ByteBuffer;
+import java.util.Comparator;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
 import brown.tracingplane.atomlayer.Lexicographic;
 import brown.tracingplane.baggageprotocol.BagKey;
 import brown.tracingplane.baggageprotocol.BaggageWriter;
@@ -173,6 +175,159 @@ public class Serializers {
         };
     }
 
+    /**
+     * Like {@link #setSerializer(ElementSerializer)}, but if the set is a {@link SortedArraySet} in the specified order,
+     * its values are already in the order of their serialized atoms and are not sorted again.
+     */
+    public static <T> ElementSerializer<Set<T>> setSerializer(ElementSerializer<T> elementSerializer,
+                                                              Comparator<? super T> order) {
+        if (order == null) {
+            return setSerializer(elementSerializer);
+        }
+        return new ElementSerializer<Set<T>>() {
+            public void serialize(ElementWriter writer, Set<T> instance) {
+                if (instance == null) {
+                    return;
+                }
+                for (T value : instance) {
+                    elementSerializer.serialize(writer, value);
+                }
+                if (!(instance instanceof SortedArraySet) || ((SortedArraySet<T>) instance).comparator() != order) {
+                    writer.sortData();
+                }
+            }
+        };
+    }
+
+    /** Like {@link #setSerializer(ElementSerializer, Comparator)}, for {@link BoundedSet}s */
+    public static <T> ElementSerializer<BoundedSet<T>> boundedSetSerializer(ElementSerializer<T> elementSerializer,
+                                                                            Comparator<? super T> order) {
+        return new ElementSerializer<BoundedSet<T>>() {
+            public void serialize(ElementWriter writer, BoundedSet<T> instance) {
+                if (instance == null) {
+                    return;
+                }
+                for (T value : instance) {
+                    elementSerializer.serialize(writer, value);
+                }
+                if (order == null || instance.comparator() != order) {
+                    writer.sortData();
+                }
+            }
+        };
+    }
+
+    /** Writes a {@link HyperLogLog} as a single data atom containing its registers; empty sketches are not written */
+    public static ElementSerializer<HyperLogLog> hllSerializer() {
+        return new ElementSerializer<HyperLogLog>() {
+            public void serialize(ElementWriter writer, HyperLogLog instance) {
+                if (instance == null || instance.isEmpty()) {
+                    return;
+                }
+                instance.writeTo(writer.newDataAtom(HyperLogLog.serializedSize(instance.precision)));
+            }
+        };
+    }
+
+    /** Writes a {@link CountMinSketch} as a single data atom containing its counters; empty sketches are not written */
+    public static ElementSerializer<CountMinSketch> cmsSerializer() {
+        return new ElementSerializer<CountMinSketch>() {
+            public void serialize(ElementWriter writer, CountMinSketch instance) {
+                if (instance == null || instance.isEmpty()) {
+                    return;
+                }
+                instance.writeTo(writer.newDataAtom(CountMinSketch.serializedSize(instance.depth, instance.width)));
+            }
+        };
+    }
+
+    /** Writes a {@link BloomFilter} as a single data atom containing its bits; empty filters are not written */
+    public static ElementSerializer<BloomFilter> bloomSerializer() {
+        return new ElementSerializer<BloomFilter>() {
+            public void serialize(ElementWriter writer, BloomFilter instance) {
+                if (instance == null || instance.isEmpty()) {
+                    return;
+                }
+                instance.writeTo(writer.newDataAtom(BloomFilter.serializedSize(instance.bits)));
+            }
+        };
+    }
+
+    /**
+     * Like {@link #hllSerializer()}, but throws an {@link IllegalArgumentException} for a sketch without the declared
+     * precision, which a parser for the declared type would drop
+     */
+    public static ElementSerializer<HyperLogLog> hllSerializer(int precision) {
+        ElementSerializer<HyperLogLog> serializer = hllSerializer();
+        return new ElementSerializer<HyperLogLog>() {
+            public void serialize(ElementWriter writer, HyperLogLog instance) {
+                if (instance != null && instance.precision != precision) {
+                    throw new IllegalArgumentException("Expected a HyperLogLog with precision " + precision +
+                                                       ", got " + instance.precision);
+                }
+                serializer.serialize(writer, instance);
+            }
+        };
+    }
+
+    /** Like {@link #cmsSerializer()}, but checks the dimensions of the sketch; see {@link #hllSerializer(int)} */
+    public static ElementSerializer<CountMinSketch> cmsSerializer(int depth, int width) {
+        ElementSerializer<CountMinSketch> serializer = cmsSerializer();
+        return new ElementSerializer<CountMinSketch>() {
+            public void serialize(ElementWriter writer, CountMinSketch instance) {
+                if (instance != null && (instance.depth != depth || instance.width != width)) {
+                    throw new IllegalArgumentException("Expected a CountMinSketch of " + depth + "x" + width +
+                                                       ", got " + instance.depth + "x" + instance.width);
+                }
+                serializer.serialize(writer, instance);
+            }
+        };
+    }
+
+    /** Like {@link #bloomSerializer()}, but checks the parameters of the filter; see {@link #hllSerializer(int)} */
+    public static ElementSerializer<BloomFilter> bloomSerializer(int bits, int hashes) {
+        ElementSerializer<BloomFilter> serializer = bloomSerializer();
+        return new ElementSerializer<BloomFilter>() {
+            public void serialize(ElementWriter writer, BloomFilter instance) {
+                if (instance != null && (instance.bits != bits || instance.hashes != hashes)) {
+                    throw new IllegalArgumentException("Expected a BloomFilter with " + bits + " bits and " + hashes +
+                                                       " hashes, got " + instance.bits + " and " + instance.hashes);
+                }
+                serializer.serialize(writer, instance);
+            }
+        };
+    }
+
+    public static ElementSerializer<LongSet> int64SetSerializer() {
+        return longSetSerializer(WriterHelpers::writeUInt64);
+    }
+
+    public static ElementSerializer<LongSet> sint64SetSerializer() {
+        return longSetSerializer(WriterHelpers::writeSInt64);
+    }
+
+    public static ElementSerializer<LongSet> fixed64SetSerializer() {
+        return longSetSerializer(WriterHelpers::writeFixed64);
+    }
+
+    public static ElementSerializer<LongSet> sfixed64SetSerializer() {
+        return longSetSerializer(WriterHelpers::writeFixed64);
+    }
+
+    static ElementSerializer<LongSet> longSetSerializer(ObjLongConsumer<ElementWriter> elementWriter) {
+        return new ElementSerializer<LongSet>() {
+            public void serialize(ElementWriter writer, LongSet instance) {
+                if (instance == null) {
+                    return;
+                }
+                for (int i = 0, size = instance.size(); i < size; i++) {
+                    elementWriter.accept(writer, instance.get(i));
+                }
+                writer.sortData();
+            }
+        };
+    }
+
     public static <K, V> Serializer<Map<K, V>> mapSerializer(Function<K, ByteBuffer> keySerializer,
                                                              Serializer<V> valueSerializer) {
         return new Serializer<Map<K, V>>() {
@@ -0,0 +1,46 @@
+package brown.tracingplane.bdl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-bit hash functions used by {@link HyperLogLog}, {@link CountMinSketch} and {@link BloomFilter}. Sketches are
+ * merged across processes, so hashes are defined only by the content of values and never by identity.
+ */
+final class SketchHashing {
+
+    private SketchHashing() {}
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** The 64-bit finalizer of murmur3; also used by {@link BoundedSet} to rank values */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    static long hash(long value) {
+        return mix(value);
+    }
+
+    /** Hashes the UTF-8 encoding of the string */
+    static long hash(String value) {
+        return hash(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Hashes the remaining bytes of the buffer, without modifying its position */
+    static long hash(ByteBuffer value) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = value.position(); i < value.limit(); i++) {
+            h ^= value.get(i) & 0xff;
+            h *= FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+}
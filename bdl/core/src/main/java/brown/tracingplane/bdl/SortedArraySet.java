@@ -0,0 +1,321 @@
+package brown.tracingplane.bdl;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * A {@link java.util.Set} backed by an array kept sorted by a {@link Comparator}. Compiled BDL classes parse sets of
+ * primitive types into a {@link SortedArraySet} ordered by {@link SerializedOrder}, i.e., in the order of the
+ * serialized data atoms. This means:
+ * </p>
+ * <ul>
+ * <li>parsing appends values in the order they are read, without hashing or sorting</li>
+ * <li>{@link #addAll(Collection)} with another {@link SortedArraySet} of the same order is a linear merge, which makes
+ * {@link Joiners#setUnion()} linear</li>
+ * <li>{@link Serializers#setSerializer(Serializer.ElementSerializer, Comparator)} writes values in order and does not
+ * need to sort the atoms afterwards</li>
+ * <li>{@link #branch()} shares the array with the original until either is modified</li>
+ * </ul>
+ *
+ * @param <T> the type of values in the set
+ */
+public final class SortedArraySet<T> extends AbstractSet<T> {
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private final Comparator<? super T> comparator;
+    private Object[] elements;
+    private int size;
+
+    /** True if the elements array might be shared with another set, and must be copied before it is modified */
+    private boolean shared;
+
+    /** Set while parsing if values have been appended out of order or with duplicates */
+    private boolean unsorted;
+
+    private int modCount;
+
+    public SortedArraySet(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        this.elements = EMPTY;
+    }
+
+    private SortedArraySet(Comparator<? super T> comparator, Object[] elements, int size) {
+        this.comparator = comparator;
+        this.elements = elements;
+        this.size = size;
+    }
+
+    /** @return the comparator that this set is ordered by */
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** @return the i'th value in this set's order */
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return (T) elements[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private int indexOf(Object value) {
+        return Arrays.binarySearch((T[]) elements, 0, size, (T) value, comparator);
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        if (value == null) {
+            return false;
+        }
+        try {
+            return indexOf(value) >= 0;
+        } catch (ClassCastException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean add(T value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        int index = indexOf(value);
+        if (index >= 0) {
+            return false;
+        }
+        index = -(index + 1);
+        Object[] target = writableArray(size + 1);
+        System.arraycopy(elements, index, target, index + 1, size - index);
+        if (target != elements) {
+            System.arraycopy(elements, 0, target, 0, index);
+            elements = target;
+        }
+        elements[index] = value;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        if (!contains(value)) {
+            return false;
+        }
+        removeAt(indexOf(value));
+        return true;
+    }
+
+    private void removeAt(int index) {
+        if (shared) {
+            elements = Arrays.copyOf(elements, size);
+            shared = false;
+        }
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        elements[--size] = null;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        elements = EMPTY;
+        size = 0;
+        shared = false;
+        modCount++;
+    }
+
+    /**
+     * Adds all of the values of the specified collection. If it is a {@link SortedArraySet} with the same comparator,
+     * the two arrays are merged in linear time.
+     */
+    @Override
+    public boolean addAll(Collection<? extends T> values) {
+        if (!(values instanceof SortedArraySet) || ((SortedArraySet<?>) values).comparator != comparator) {
+            return super.addAll(values);
+        }
+        SortedArraySet<? extends T> other = (SortedArraySet<? extends T>) values;
+        if (other.size == 0 || other == this) {
+            return false;
+        } else if (size == 0) {
+            elements = other.elements;
+            size = other.size;
+            shared = other.shared = true;
+            modCount++;
+            return true;
+        }
+
+        Object[] a = elements, b = other.elements;
+        int sizeA = size, sizeB = other.size;
+
+        // Common case when joining branches: the other set has nothing new
+        int i = 0, j = 0;
+        while (i < sizeA && j < sizeB) {
+            int comparison = compare(a[i], b[j]);
+            if (comparison < 0) {
+                i++;
+            } else if (comparison == 0) {
+                i++;
+                j++;
+            } else {
+                break;
+            }
+        }
+        if (j == sizeB) {
+            return false;
+        }
+
+        Object[] merged = new Object[sizeA + sizeB];
+        int n = 0;
+        i = 0;
+        j = 0;
+        while (i < sizeA && j < sizeB) {
+            int comparison = compare(a[i], b[j]);
+            if (comparison < 0) {
+                merged[n++] = a[i++];
+            } else if (comparison > 0) {
+                merged[n++] = b[j++];
+            } else {
+                merged[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < sizeA) {
+            merged[n++] = a[i++];
+        }
+        while (j < sizeB) {
+            merged[n++] = b[j++];
+        }
+        elements = merged;
+        size = n;
+        shared = false;
+        modCount++;
+        return true;
+    }
+
+    /** @return a new set with the same values as this set, that shares this set's array until either is modified */
+    public SortedArraySet<T> branch() {
+        SortedArraySet<T> branched = new SortedArraySet<>(comparator, elements, size);
+        if (size > 0) {
+            shared = branched.shared = true;
+        }
+        return branched;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, Object b) {
+        return comparator.compare((T) a, (T) b);
+    }
+
+    /**
+     * Appends a value without checking order or duplicates. Used while parsing, where values usually arrive in order;
+     * {@link #normalize()} must be called once all values are appended.
+     */
+    void append(T value) {
+        if (size > 0 && compare(value, elements[size - 1]) <= 0) {
+            unsorted = true;
+        }
+        Object[] target = writableArray(size + 1);
+        if (target != elements) {
+            System.arraycopy(elements, 0, target, 0, size);
+            elements = target;
+        }
+        elements[size++] = value;
+        modCount++;
+    }
+
+    /** Sorts and removes duplicates after values have been appended with {@link #append(Object)} */
+    @SuppressWarnings("unchecked")
+    void normalize() {
+        if (!unsorted) {
+            return;
+        }
+        Arrays.sort((T[]) elements, 0, size, comparator);
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (n == 0 || compare(elements[i], elements[n - 1]) != 0) {
+                elements[n++] = elements[i];
+            }
+        }
+        Arrays.fill(elements, n, size, null);
+        size = n;
+        unsorted = false;
+    }
+
+    /** Removes the i'th value for each i where <code>keep[i]</code> is false */
+    void retain(boolean[] keep) {
+        if (shared) {
+            elements = Arrays.copyOf(elements, size);
+            shared = false;
+        }
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                elements[n++] = elements[i];
+            }
+        }
+        Arrays.fill(elements, n, size, null);
+        size = n;
+        modCount++;
+    }
+
+    /** @return an array to write <code>capacity</code> values to; either {@link #elements} or a new, larger array */
+    private Object[] writableArray(int capacity) {
+        if (!shared && capacity <= elements.length) {
+            return elements;
+        }
+        shared = false;
+        return new Object[Math.max(capacity, Math.min(elements.length * 2, capacity + 1024))];
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            int next = 0;
+            int last = -1;
+            int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public T next() {
+                if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                } else if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                return get(next++);
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                } else if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                removeAt(last);
+                next = last;
+                last = -1;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+}
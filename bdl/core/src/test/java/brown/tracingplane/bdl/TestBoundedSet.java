@@ -0,0 +1,112 @@
+package brown.tracingplane.bdl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import brown.tracingplane.baggageprotocol.BaggageReader;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
+
+public class TestBoundedSet {
+
+    private static BoundedSet<Long> boundedSet(int capacity) {
+        return new BoundedSet<>(capacity, SerializedOrder.fixed64Order());
+    }
+
+    @Test
+    public void testCapacity() {
+        BoundedSet<Long> set = boundedSet(16);
+        for (long i = 0; i < 1000; i++) {
+            set.add(i);
+            assertTrue(set.size() <= 16);
+        }
+        assertEquals(16, set.size());
+    }
+
+    @Test
+    public void testKeepsSmallestRanks() {
+        Random r = new Random(0);
+        List<Long> values = new ArrayList<>();
+        BoundedSet<Long> set = boundedSet(10);
+        for (int i = 0; i < 500; i++) {
+            long value = r.nextLong();
+            values.add(value);
+            set.add(value);
+        }
+        values.sort((a, b) -> Long.compare(BoundedSet.rank(a), BoundedSet.rank(b)));
+        assertEquals(new HashSet<>(values.subList(0, 10)), set);
+    }
+
+    @Test
+    public void testJoinOrderDoesNotMatter() {
+        Random r = new Random(1);
+        List<BoundedSet<Long>> branches = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            BoundedSet<Long> branch = boundedSet(8);
+            for (int j = 0; j < r.nextInt(20); j++) {
+                branch.add((long) r.nextInt(200));
+            }
+            branches.add(branch);
+        }
+
+        Set<Long> expected = null;
+        for (int attempt = 0; attempt < 10; attempt++) {
+            Collections.shuffle(branches, r);
+            BoundedSet<Long> joined = null;
+            for (BoundedSet<Long> branch : branches) {
+                joined = Joiners.<Long> boundedSetUnion().join(joined, Branchers.<Long> boundedSet().branch(branch));
+            }
+            assertTrue(joined.size() <= 8);
+            if (expected == null) {
+                expected = new HashSet<>(joined);
+            } else {
+                assertEquals(expected, joined);
+            }
+        }
+    }
+
+    @Test
+    public void testBranchIsIndependent() {
+        BoundedSet<Long> a = boundedSet(4);
+        a.add(1L);
+        BoundedSet<Long> b = a.branch();
+        b.add(2L);
+        assertFalse(a.contains(2L));
+        assertTrue(b.contains(1L));
+    }
+
+    private static List<ByteBuffer> serialize(BoundedSet<Long> set) {
+        BaggageWriter writer = BaggageWriter.create();
+        Serializers.boundedSetSerializer(Serializers.fixed64Serializer(), SerializedOrder.fixed64Order())
+                   .serialize(writer, set);
+        return writer.atoms();
+    }
+
+    private static BoundedSet<Long> parse(List<ByteBuffer> atoms, int capacity) {
+        return Parsers.boundedSetParser(Parsers.fixed64Parser(), capacity, SerializedOrder.fixed64Order())
+                      .parse(BaggageReader.create(atoms));
+    }
+
+    @Test
+    public void testSerialization() {
+        BoundedSet<Long> set = boundedSet(16);
+        for (long i = -20; i < 20; i++) {
+            set.add(i);
+        }
+        assertEquals(16, serialize(set).size());
+        assertEquals(set, parse(serialize(set), 16));
+
+        // A smaller capacity keeps the values with the smallest ranks
+        BoundedSet<Long> expected = boundedSet(4);
+        expected.addAll(set);
+        assertEquals(expected, parse(serialize(set), 4));
+    }
+
+}
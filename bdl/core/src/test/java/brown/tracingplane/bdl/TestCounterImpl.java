@@ -1,7 +1,10 @@
 package brown.tracingplane.bdl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import org.junit.Test;
+import brown.tracingplane.baggageprotocol.BaggageReader;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
 import brown.tracingplane.bdl.SpecialTypes.Counter;
 
 public class TestCounterImpl {
@@ -51,4 +54,93 @@ public class TestCounterImpl {
         assertEquals(200, c3.getValue());
     }
 
+    private static CounterImpl roundTrip(CounterImpl counter) {
+        BaggageWriter writer = BaggageWriter.create();
+        CounterImpl.Handler.instance.serialize(writer, counter);
+        return CounterImpl.Handler.instance.parse(BaggageReader.create(writer.atoms()));
+    }
+
+    @Test
+    public void testSerialization() {
+        CounterImpl.Handler handler = CounterImpl.Handler.instance;
+        assertNull(roundTrip(new CounterImpl()));
+
+        CounterImpl counter = counterWithValue(1);
+        for (int i = 0; i < 20; i++) {
+            CounterImpl branch = handler.branch(counter);
+            branch.increment(i);
+            counter = handler.join(counter, branch);
+            counter.increment();
+        }
+
+        CounterImpl parsed = roundTrip(counter);
+        assertEquals(counter.getValue(), parsed.getValue());
+        assertEquals(counter.componentCount(), parsed.componentCount());
+
+        // Joining a counter with its own serialized form does not change its value
+        assertEquals(counter.getValue(), handler.join(parsed, roundTrip(counter)).getValue());
+    }
+
+    @Test
+    public void testCompaction() {
+        CounterImpl.Handler handler = CounterImpl.Handler.instance;
+
+        CounterImpl joined = new CounterImpl(), compacted = new CounterImpl();
+        for (int i = 0; i < 1000; i++) {
+            CounterImpl a = handler.branch(joined), b = handler.branch(compacted);
+            if (a == null) {
+                a = new CounterImpl();
+                b = new CounterImpl();
+            }
+            a.increment();
+            b.increment();
+            joined = handler.join(joined, a);
+            compacted = handler.compact(compacted, b);
+        }
+
+        assertEquals(1000, joined.getValue());
+        assertEquals(1000, compacted.getValue());
+        assertEquals(1000, joined.componentCount());
+        assertEquals(1, compacted.componentCount());
+    }
+
+    @Test
+    public void testCompactionFoldsIntoOwnComponent() {
+        CounterImpl.Handler handler = CounterImpl.Handler.instance;
+
+        CounterImpl counter = counterWithValue(10);
+        CounterImpl child = handler.branch(counter);
+        child.increment(1);
+        counter.increment(2);
+
+        // Components that both counters know about are joined as usual; the child's component is folded into ours
+        CounterImpl compacted = handler.compact(counter, child);
+        assertEquals(13, compacted.getValue());
+        assertEquals(1, compacted.componentCount());
+    }
+
+    @Test
+    public void testCompactionReclaimsComponentId() {
+        CounterImpl.Handler handler = CounterImpl.Handler.instance;
+
+        CounterImpl parsed = roundTrip(counterWithValue(3));
+        CounterImpl child = handler.branch(parsed);
+        child.increment(2);
+
+        // parsed has no component of its own, so it takes over the component of child
+        CounterImpl compacted = handler.compact(parsed, child);
+        assertEquals(5, compacted.getValue());
+        assertEquals(2, compacted.componentCount());
+        assertEquals(5, handler.join(compacted, roundTrip(child)).getValue());
+        compacted.increment();
+        assertEquals(6, compacted.getValue());
+        assertEquals(2, compacted.componentCount());
+    }
+
+    private static CounterImpl counterWithValue(long value) {
+        CounterImpl counter = new CounterImpl();
+        counter.increment(value);
+        return counter;
+    }
+
 }
@@ -0,0 +1,114 @@
+package brown.tracingplane.bdl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+import brown.tracingplane.baggageprotocol.BaggageReader;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
+import brown.tracingplane.bdl.Parser.ElementParser;
+import brown.tracingplane.bdl.Serializer.ElementSerializer;
+
+public class TestLongSet {
+
+    private static long[] toArray(TreeSet<Long> expected) {
+        return expected.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    @Test
+    public void testAddRemove() {
+        Random r = new Random(0);
+        LongSet set = new LongSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int i = 0; i < 1000; i++) {
+            long value = r.nextInt(200) - 100;
+            if (r.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+        assertArrayEquals(toArray(expected), set.toArray());
+    }
+
+    @Test
+    public void testOf() {
+        assertArrayEquals(new long[] { -5, 1, 3 }, LongSet.of(3, 1, -5, 3, 1).toArray());
+        assertTrue(LongSet.of().isEmpty());
+    }
+
+    @Test
+    public void testAddAll() {
+        Random r = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            LongSet a = new LongSet(), b = new LongSet();
+            TreeSet<Long> expected = new TreeSet<>();
+            for (int j = 0; j < r.nextInt(20); j++) {
+                long value = r.nextLong() % 30;
+                a.add(value);
+                expected.add(value);
+            }
+            for (int j = 0; j < r.nextInt(20); j++) {
+                long value = r.nextLong() % 30;
+                b.add(value);
+                expected.add(value);
+            }
+            a.addAll(b);
+            assertArrayEquals(toArray(expected), a.toArray());
+        }
+    }
+
+    @Test
+    public void testBranchSharesUntilModified() {
+        LongSet a = LongSet.of(1, 2, 3);
+        LongSet b = a.branch();
+        assertEquals(a, b);
+
+        b.add(4);
+        a.remove(1);
+        assertArrayEquals(new long[] { 2, 3 }, a.toArray());
+        assertArrayEquals(new long[] { 1, 2, 3, 4 }, b.toArray());
+
+        LongSet c = new LongSet();
+        c.addAll(b);
+        c.add(0);
+        assertArrayEquals(new long[] { 1, 2, 3, 4 }, b.toArray());
+        assertArrayEquals(new long[] { 0, 1, 2, 3, 4 }, c.toArray());
+    }
+
+    @Test
+    public void testJoinBranches() {
+        LongSet a = LongSet.of(10, 20);
+        LongSet b = Branchers.longSet().branch(a);
+        b.add(15);
+        a.add(25);
+        LongSet joined = Joiners.longSetUnion().join(a, b);
+        assertArrayEquals(new long[] { 10, 15, 20, 25 }, joined.toArray());
+        assertNull(Joiners.longSetUnion().join(null, null));
+    }
+
+    private static LongSet roundTrip(LongSet set, ElementSerializer<LongSet> serializer,
+                                     ElementParser<LongSet> parser) {
+        BaggageWriter writer = BaggageWriter.create();
+        serializer.serialize(writer, set);
+        BaggageReader reader = BaggageReader.create(writer.atoms());
+        return parser.parse(reader);
+    }
+
+    @Test
+    public void testSerialization() {
+        LongSet set = LongSet.of(Long.MIN_VALUE, -7, 0, 3, 1000, Long.MAX_VALUE);
+        assertEquals(set, roundTrip(set, Serializers.sint64SetSerializer(), Parsers.sint64SetParser()));
+        assertEquals(set, roundTrip(set, Serializers.int64SetSerializer(), Parsers.int64SetParser()));
+        assertEquals(set, roundTrip(set, Serializers.fixed64SetSerializer(), Parsers.fixed64SetParser()));
+        assertEquals(set, roundTrip(set, Serializers.sfixed64SetSerializer(), Parsers.sfixed64SetParser()));
+        assertNull(roundTrip(new LongSet(), Serializers.int64SetSerializer(), Parsers.int64SetParser()));
+        assertFalse(LongSet.of(1).equals(LongSet.of(2)));
+    }
+
+}
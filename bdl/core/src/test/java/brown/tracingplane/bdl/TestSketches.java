@@ -0,0 +1,190 @@
+package brown.tracingplane.bdl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import brown.tracingplane.baggageprotocol.BaggageReader;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
+import brown.tracingplane.bdl.Parser.ElementParser;
+import brown.tracingplane.bdl.Serializer.ElementSerializer;
+
+public class TestSketches {
+
+    private static <T> List<ByteBuffer> serialize(ElementSerializer<T> serializer, T instance) {
+        BaggageWriter writer = BaggageWriter.create();
+        serializer.serialize(writer, instance);
+        return writer.atoms();
+    }
+
+    private static <T> T parse(ElementParser<T> parser, List<ByteBuffer> atoms) {
+        return parser.parse(BaggageReader.create(atoms));
+    }
+
+    @Test
+    public void testHyperLogLogEstimate() {
+        HyperLogLog hll = new HyperLogLog(12);
+        for (long i = 0; i < 10000; i++) {
+            hll.add(i);
+            hll.add(i); // duplicates are not counted
+        }
+        assertEquals(10000, hll.estimate(), 10000 * 0.05);
+
+        HyperLogLog small = new HyperLogLog();
+        for (int i = 0; i < 10; i++) {
+            small.add("value" + i);
+        }
+        assertEquals(10, small.estimate());
+    }
+
+    @Test
+    public void testHyperLogLogMerge() {
+        HyperLogLog a = new HyperLogLog(), b = new HyperLogLog(), all = new HyperLogLog();
+        for (long i = 0; i < 2000; i++) {
+            (i % 2 == 0 ? a : b).add(i);
+            all.add(i);
+        }
+        HyperLogLog joined = Joiners.hllMerge().join(Branchers.hll().branch(a), b);
+        assertEquals(all, joined);
+        assertEquals(all, Joiners.hllMerge().join(joined, a));
+        assertFalse(a.merge(new HyperLogLog(8)));
+    }
+
+    @Test
+    public void testHyperLogLogSerialization() {
+        HyperLogLog hll = new HyperLogLog(8);
+        assertTrue(serialize(Serializers.hllSerializer(), hll).isEmpty());
+        for (long i = 0; i < 100; i++) {
+            hll.add(i);
+        }
+        List<ByteBuffer> atoms = serialize(Serializers.hllSerializer(), hll);
+        assertEquals(1, atoms.size());
+        assertEquals(hll, parse(Parsers.hllParser(8), serialize(Serializers.hllSerializer(), hll)));
+        assertNull(parse(Parsers.hllParser(10), serialize(Serializers.hllSerializer(), hll)));
+    }
+
+    @Test
+    public void testCountMinSketch() {
+        CountMinSketch cms = new CountMinSketch(4, 64);
+        for (int i = 0; i < 100; i++) {
+            cms.add("key" + (i % 10), 1);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(cms.estimate("key" + i) >= 10);
+        }
+        cms.add(7L, Integer.MAX_VALUE);
+        cms.add(7L, Integer.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, cms.estimate(7L));
+    }
+
+    @Test
+    public void testCountMinSketchBranchAndJoin() {
+        CountMinSketch before = new CountMinSketch();
+        before.add("a", 5);
+
+        // Counts from before the branch are not double-counted when the branches rejoin
+        CountMinSketch left = Branchers.cms().branch(before);
+        CountMinSketch right = Branchers.cms().branch(before);
+        left.add("b", 3);
+        CountMinSketch joined = Joiners.cmsMerge().join(left, right);
+        assertTrue(joined.estimate("a") >= 5);
+        assertTrue(joined.estimate("a") < 8);
+        assertTrue(joined.estimate("b") >= 3);
+        assertEquals(5, before.estimate("a"));
+    }
+
+    @Test
+    public void testCountMinSketchSerialization() {
+        CountMinSketch cms = new CountMinSketch(2, 16);
+        cms.add(1L, 10);
+        List<ByteBuffer> atoms = serialize(Serializers.cmsSerializer(), cms);
+        assertEquals(1, atoms.size());
+        assertEquals(cms, parse(Parsers.cmsParser(2, 16), serialize(Serializers.cmsSerializer(), cms)));
+        assertNull(parse(Parsers.cmsParser(4, 16), serialize(Serializers.cmsSerializer(), cms)));
+    }
+
+    @Test
+    public void testBloomFilter() {
+        BloomFilter a = new BloomFilter(), b = new BloomFilter();
+        for (int i = 0; i < 50; i++) {
+            a.add("a" + i);
+            b.add(ByteBuffer.wrap(new byte[] { (byte) i }));
+        }
+        BloomFilter joined = Joiners.bloomMerge().join(Branchers.bloom().branch(a), b);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(joined.mightContain("a" + i));
+            assertTrue(joined.mightContain(ByteBuffer.wrap(new byte[] { (byte) i })));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (joined.mightContain("c" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 100);
+        assertFalse(a.merge(new BloomFilter(64, 3)));
+    }
+
+    @Test
+    public void testBloomFilterSerialization() {
+        BloomFilter bloom = new BloomFilter(128, 2);
+        bloom.add(5L);
+        assertEquals(bloom, parse(Parsers.bloomParser(128, 2), serialize(Serializers.bloomSerializer(), bloom)));
+    }
+
+    @Test
+    public void testParserMergesAllAtoms() {
+        // Atom-level merges can leave more than one data atom for a sketch
+        HyperLogLog a = new HyperLogLog(6), b = new HyperLogLog(6);
+        for (long i = 0; i < 40; i++) {
+            (i < 20 ? a : b).add(i);
+        }
+        List<ByteBuffer> atoms = new ArrayList<>(serialize(Serializers.hllSerializer(), a));
+        atoms.addAll(serialize(Serializers.hllSerializer(), b));
+        HyperLogLog expected = a.copy();
+        expected.merge(b);
+        assertEquals(expected, parse(Parsers.hllParser(6), atoms));
+    }
+
+    @Test
+    public void testMismatchedParameters() {
+        // Sketches without the declared parameters would be dropped by the parser, so they are rejected instead
+        HyperLogLog hll = new HyperLogLog();
+        hll.add(1L);
+        serialize(Serializers.hllSerializer(hll.precision), hll);
+        try {
+            serialize(Serializers.hllSerializer(12), hll);
+            fail("Serialized an hll with the wrong precision");
+        } catch (IllegalArgumentException e) {}
+        try {
+            Joiners.hllMerge().join(new HyperLogLog(12), hll);
+            fail("Joined hlls with different precisions");
+        } catch (IllegalArgumentException e) {}
+
+        CountMinSketch cms = new CountMinSketch(2, 16);
+        try {
+            serialize(Serializers.cmsSerializer(4, 16), cms);
+            fail("Serialized a cms with the wrong dimensions");
+        } catch (IllegalArgumentException e) {}
+        try {
+            Joiners.cmsMerge().join(new CountMinSketch(), cms);
+            fail("Joined cmss with different dimensions");
+        } catch (IllegalArgumentException e) {}
+
+        BloomFilter bloom = new BloomFilter(128, 2);
+        try {
+            serialize(Serializers.bloomSerializer(128, 3), bloom);
+            fail("Serialized a bloom filter with the wrong parameters");
+        } catch (IllegalArgumentException e) {}
+        try {
+            Joiners.bloomMerge().join(new BloomFilter(), bloom);
+            fail("Joined bloom filters with different parameters");
+        } catch (IllegalArgumentException e) {}
+    }
+
+}
@@ -0,0 +1,160 @@
+package brown.tracingplane.bdl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import org.junit.Test;
+import brown.tracingplane.atomlayer.Lexicographic;
+import brown.tracingplane.baggageprotocol.BaggageReader;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
+import brown.tracingplane.bdl.Parser.ElementParser;
+import brown.tracingplane.bdl.Serializer.ElementSerializer;
+
+public class TestSortedArraySet {
+
+    @Test
+    public void testAddRemove() {
+        Random r = new Random(0);
+        SortedArraySet<Long> set = new SortedArraySet<>(SerializedOrder.int64Order());
+        TreeSet<Long> expected = new TreeSet<>(SerializedOrder.int64Order());
+        for (int i = 0; i < 1000; i++) {
+            long value = r.nextInt(200) - 100;
+            if (r.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+        assertEquals(expected, set);
+        assertEquals(new HashSet<>(expected).hashCode(), set.hashCode());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        SortedArraySet<Integer> set = new SortedArraySet<>(SerializedOrder.sint32Order());
+        for (int i = 0; i < 10; i++) {
+            set.add(i);
+        }
+        for (Iterator<Integer> it = set.iterator(); it.hasNext();) {
+            if (it.next() % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(5, set.size());
+        assertFalse(set.contains(4));
+        assertTrue(set.contains(5));
+    }
+
+    @Test
+    public void testUnion() {
+        Random r = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            SortedArraySet<Long> a = new SortedArraySet<>(SerializedOrder.fixed64Order());
+            SortedArraySet<Long> b = new SortedArraySet<>(SerializedOrder.fixed64Order());
+            Set<Long> expected = new HashSet<>();
+            for (int j = 0; j < r.nextInt(20); j++) {
+                long value = r.nextLong() % 30;
+                a.add(value);
+                expected.add(value);
+            }
+            for (int j = 0; j < r.nextInt(20); j++) {
+                long value = r.nextLong() % 30;
+                b.add(value);
+                expected.add(value);
+            }
+            Set<Long> joined = Joiners.<Long> setUnion().join(a, b);
+            assertEquals(expected, joined);
+            List<Long> values = new ArrayList<>(joined);
+            for (int j = 1; j < values.size(); j++) {
+                assertTrue(Long.compareUnsigned(values.get(j - 1), values.get(j)) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void testBranchSharesUntilModified() {
+        SortedArraySet<String> a = new SortedArraySet<>(Comparator.naturalOrder());
+        a.add("a");
+        a.add("b");
+        Set<String> b = Branchers.<String> set().branch(a);
+        assertTrue(b instanceof SortedArraySet);
+        assertEquals(a, b);
+
+        b.add("c");
+        a.remove("a");
+        assertEquals(1, a.size());
+        assertEquals(3, b.size());
+        assertTrue(b.contains("a"));
+    }
+
+    private static <T> void checkSerializedOrder(Comparator<T> order, ElementSerializer<T> serializer,
+                                                 ElementParser<T> parser, Supplier<T> values) {
+        // Each value's atom must be ordered the same as the value
+        List<T> inOrder = new ArrayList<>();
+        List<ByteBuffer> atoms = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            inOrder.add(values.get());
+        }
+        inOrder.sort(order);
+        for (T value : inOrder) {
+            BaggageWriter writer = BaggageWriter.create();
+            serializer.serialize(writer, value);
+            atoms.add(writer.atoms().get(0));
+        }
+        for (int i = 1; i < atoms.size(); i++) {
+            int expected = Integer.signum(order.compare(inOrder.get(i - 1), inOrder.get(i)));
+            assertEquals(expected, Integer.signum(Lexicographic.compare(atoms.get(i - 1), atoms.get(i))));
+        }
+
+        // Sets serialized without sorting must match sets serialized with sorting
+        SortedArraySet<T> sorted = new SortedArraySet<>(order);
+        sorted.addAll(inOrder);
+        BaggageWriter unsortedWriter = BaggageWriter.create();
+        Serializers.setSerializer(serializer, order).serialize(unsortedWriter, sorted);
+        BaggageWriter sortingWriter = BaggageWriter.create();
+        Serializers.setSerializer(serializer).serialize(sortingWriter, new HashSet<>(inOrder));
+        assertEquals(sortingWriter.atoms(), unsortedWriter.atoms());
+
+        Set<T> parsed = Parsers.setParser(parser, order).parse(BaggageReader.create(unsortedWriter.atoms()));
+        assertEquals(sorted, parsed);
+        assertTrue(parsed instanceof SortedArraySet);
+    }
+
+    @Test
+    public void testSerializedOrder() {
+        Random r = new Random(2);
+        checkSerializedOrder(SerializedOrder.int32Order(), Serializers.int32Serializer(), Parsers.int32Parser(),
+                             r::nextInt);
+        checkSerializedOrder(SerializedOrder.sint32Order(), Serializers.sint32Serializer(), Parsers.sint32Parser(),
+                             r::nextInt);
+        checkSerializedOrder(SerializedOrder.fixed32Order(), Serializers.fixed32Serializer(),
+                             Parsers.fixed32Parser(), r::nextInt);
+        checkSerializedOrder(SerializedOrder.int64Order(), Serializers.int64Serializer(), Parsers.int64Parser(),
+                             r::nextLong);
+        checkSerializedOrder(SerializedOrder.sint64Order(), Serializers.sint64Serializer(), Parsers.sint64Parser(),
+                             r::nextLong);
+        checkSerializedOrder(SerializedOrder.sfixed64Order(), Serializers.sfixed64Serializer(),
+                             Parsers.sfixed64Parser(), r::nextLong);
+        checkSerializedOrder(SerializedOrder.doubleOrder(), Serializers.doubleSerializer(), Parsers.doubleParser(),
+                             () -> r.nextGaussian() * 1000);
+        checkSerializedOrder(SerializedOrder.bytesOrder(), Serializers.bytesSerializer(), Parsers.bytesParser(),
+                             () -> ByteBuffer.wrap(new byte[] { (byte) r.nextInt(), (byte) r.nextInt() }));
+        if (SerializedOrder.stringOrder() != null) {
+            checkSerializedOrder(SerializedOrder.stringOrder(), Serializers.stringSerializer(),
+                                 Parsers.stringParser(), () -> "s" + (char) r.nextInt(0x3000) + r.nextInt());
+        }
+    }
+
+}
@@ -6,10 +6,12 @@ import java.util.HashSet;
 import java.util.Map;
 import org.apache.log4j.BasicConfigurator;
 import org.junit.Test;
+import com.google.common.base.Strings;
 import brown.tracingplane.BaggageContext;
 import brown.tracingplane.baggageprotocol.BagKey;
 import brown.tracingplane.bdl.examples.ExampleBag;
 import brown.tracingplane.bdl.examples.SimpleBag;
+import brown.tracingplane.bdl.examples.SimpleBag2;
 import brown.tracingplane.impl.BDLContext;
 import brown.tracingplane.impl.BDLContextProvider;
 import brown.tracingplane.impl.BDLContextProviderFactory;
@@ -23,6 +25,7 @@ public class TestBBUtils {
 
         BaggageHandlerRegistry.add(BagKey.indexed(10), ExampleBag.Handler.instance);
         BaggageHandlerRegistry.add(BagKey.indexed(3), SimpleBag.Handler.instance);
+        BaggageHandlerRegistry.add(BagKey.indexed(4), SimpleBag2.Handler.instance);
     }
     
     BDLContextProvider provider = (BDLContextProvider) new BDLContextProviderFactory().provider();
@@ -96,4 +99,15 @@ public class TestBBUtils {
         assertEquals("F80A,", summary.get("OverflowAtoms"));
     }
 
+    @Test
+    public void testSerializedSizeOfLongAtoms() {
+        // Atoms of 128 bytes or more have a length prefix of more than one byte
+        SimpleBag2 sb = new SimpleBag2();
+        sb.secondField = Strings.repeat("a", 300);
+        BaggageContext baggage = SimpleBag2.setIn(null, sb);
+        assertEquals(provider.serialize((BDLContext) baggage).length, BDLContextUtils.serializedSize(baggage));
+        assertEquals(provider.serialize((BDLContext) baggage).length,
+                     BDLContextUtils.serializedSize(BagKey.indexed(4), sb));
+    }
+
 }
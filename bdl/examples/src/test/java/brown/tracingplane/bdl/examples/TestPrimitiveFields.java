@@ -0,0 +1,171 @@
+package brown.tracingplane.bdl.examples;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import com.google.common.collect.Sets;
+import brown.tracingplane.atomlayer.AtomLayerSerialization;
+import brown.tracingplane.baggageprotocol.BaggageReader;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
+import brown.tracingplane.bdl.Bag;
+import brown.tracingplane.bdl.BaggageHandler;
+import brown.tracingplane.bdl.LongSet;
+
+/**
+ * primitive.bb declares the same bag as {@link NumbersBag}, but is compiled with <code>--primitive_fields</code>. Both
+ * must read and write the same bytes.
+ */
+public class TestPrimitiveFields {
+
+    static final NumbersBag.Handler boxed = NumbersBag.Handler.instance;
+    static final brown.tracingplane.bdl.examples.primitive.NumbersBag.Handler primitive =
+            brown.tracingplane.bdl.examples.primitive.NumbersBag.Handler.instance;
+
+    private static <T extends Bag> byte[] serialize(BaggageHandler<T> handler, T bag) {
+        BaggageWriter writer = BaggageWriter.create();
+        handler.serialize(writer, bag);
+        return AtomLayerSerialization.serialize(writer.atoms());
+    }
+
+    private static <T extends Bag> T parse(BaggageHandler<T> handler, byte[] bytes) {
+        BaggageReader reader = BaggageReader.create(AtomLayerSerialization.deserialize(bytes));
+        T bag = handler.parse(reader);
+        reader.finish();
+        return bag;
+    }
+
+    private static NumbersBag boxed(long seed) {
+        NumbersBag bag = new NumbersBag();
+        bag.int32field = (int) seed;
+        bag.sint32field = (int) -seed;
+        bag.fixed32field = (int) seed * 3;
+        bag.sfixed32field = (int) -seed * 3;
+        bag.int64field = seed << 40;
+        bag.sint64field = -seed << 40;
+        bag.fixed64field = seed * 7;
+        bag.sfixed64field = Long.MIN_VALUE + seed;
+        bag.stringfield = "bag " + seed;
+        bag.ids = Sets.newHashSet(seed, -seed, seed << 50);
+        bag.int64set = Sets.newHashSet(seed + 1, seed + 2);
+        return bag;
+    }
+
+    private static brown.tracingplane.bdl.examples.primitive.NumbersBag primitive(long seed) {
+        brown.tracingplane.bdl.examples.primitive.NumbersBag bag =
+                new brown.tracingplane.bdl.examples.primitive.NumbersBag();
+        bag.setInt32field((int) seed);
+        bag.setSint32field((int) -seed);
+        bag.setFixed32field((int) seed * 3);
+        bag.setSfixed32field((int) -seed * 3);
+        bag.setInt64field(seed << 40);
+        bag.setSint64field(-seed << 40);
+        bag.setFixed64field(seed * 7);
+        bag.setSfixed64field(Long.MIN_VALUE + seed);
+        bag.stringfield = "bag " + seed;
+        bag.ids = LongSet.of(seed, -seed, seed << 50);
+        bag.int64set = LongSet.of(seed + 1, seed + 2);
+        return bag;
+    }
+
+    @Test
+    public void testAccessors() {
+        brown.tracingplane.bdl.examples.primitive.NumbersBag bag =
+                new brown.tracingplane.bdl.examples.primitive.NumbersBag();
+        assertFalse(bag.hasInt32field());
+        assertEquals(0, bag.getInt32field());
+
+        // Zero is a value like any other, and is distinct from not being present
+        bag.setInt32field(0);
+        assertTrue(bag.hasInt32field());
+        bag.setSfixed64field(-1L);
+        assertTrue(bag.hasSfixed64field());
+        assertEquals(-1L, bag.getSfixed64field());
+        assertFalse(bag.hasInt64field());
+
+        bag.clearSfixed64field();
+        assertFalse(bag.hasSfixed64field());
+        assertEquals(0L, bag.getSfixed64field());
+        assertTrue(bag.hasInt32field());
+        bag.clearInt32field();
+        assertFalse(bag.hasInt32field());
+        assertEquals(0, serialize(primitive, bag).length);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        byte[] expected = serialize(boxed, boxed(5));
+        assertArrayEquals(expected, serialize(primitive, primitive(5)));
+        assertArrayEquals(expected, serialize(primitive, parse(primitive, expected)));
+        assertArrayEquals(expected, serialize(boxed, parse(boxed, serialize(primitive, primitive(5)))));
+
+        brown.tracingplane.bdl.examples.primitive.NumbersBag parsed = parse(primitive, expected);
+        assertEquals(5, parsed.getInt32field());
+        assertEquals(-5, parsed.getSint32field());
+        assertEquals(Long.MIN_VALUE + 5, parsed.getSfixed64field());
+        assertEquals(LongSet.of(5, -5, 5L << 50), parsed.ids);
+    }
+
+    @Test
+    public void testSomeFieldsPresent() {
+        NumbersBag b = new NumbersBag();
+        b.int32field = 0;
+        b.sint64field = -100L;
+        b.ids = Sets.newHashSet(3L);
+
+        brown.tracingplane.bdl.examples.primitive.NumbersBag p =
+                new brown.tracingplane.bdl.examples.primitive.NumbersBag();
+        p.setInt32field(0);
+        p.setSint64field(-100L);
+        p.ids = LongSet.of(3L);
+
+        byte[] expected = serialize(boxed, b);
+        assertArrayEquals(expected, serialize(primitive, p));
+
+        brown.tracingplane.bdl.examples.primitive.NumbersBag parsed = parse(primitive, expected);
+        assertTrue(parsed.hasInt32field());
+        assertTrue(parsed.hasSint64field());
+        assertFalse(parsed.hasInt64field());
+        assertFalse(parsed.hasFixed32field());
+        assertNull(parsed.int64set);
+    }
+
+    @Test
+    public void testBranch() {
+        brown.tracingplane.bdl.examples.primitive.NumbersBag p = primitive(9);
+        brown.tracingplane.bdl.examples.primitive.NumbersBag branched = primitive.branch(p);
+        assertArrayEquals(serialize(boxed, boxed.branch(boxed(9))), serialize(primitive, branched));
+
+        // Branches are independent of each other
+        branched.ids.add(1000L);
+        branched.clearInt64field();
+        assertFalse(p.ids.contains(1000L));
+        assertTrue(p.hasInt64field());
+        assertArrayEquals(serialize(boxed, boxed(9)), serialize(primitive, p));
+    }
+
+    @Test
+    public void testJoin() {
+        assertArrayEquals(serialize(boxed, boxed.join(boxed(3), boxed(4))),
+                          serialize(primitive, primitive.join(primitive(3), primitive(4))));
+        assertArrayEquals(serialize(boxed, boxed.compact(boxed(3), boxed(4))),
+                          serialize(primitive, primitive.compact(primitive(3), primitive(4))));
+
+        // Fields missing from the left are taken from the right
+        NumbersBag b = new NumbersBag();
+        b.int64field = 1L;
+        brown.tracingplane.bdl.examples.primitive.NumbersBag p =
+                new brown.tracingplane.bdl.examples.primitive.NumbersBag();
+        p.setInt64field(1L);
+        byte[] expected = serialize(boxed, boxed.join(b, boxed(6)));
+        assertArrayEquals(expected, serialize(primitive, primitive.join(p, primitive(6))));
+
+        brown.tracingplane.bdl.examples.primitive.NumbersBag joined = parse(primitive, expected);
+        assertEquals(1L, joined.getInt64field());
+        assertEquals(6, joined.getInt32field());
+        assertEquals(LongSet.of(6, -6, 6L << 50), joined.ids);
+    }
+
+}
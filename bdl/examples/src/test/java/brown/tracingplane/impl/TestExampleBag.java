@@ -13,7 +13,6 @@ import java.util.TreeMap;
 import org.junit.Test;
 import brown.tracingplane.BaggageContext;
 import brown.tracingplane.baggageprotocol.BagKey;
-import brown.tracingplane.bdl.BDLUtils;
 import brown.tracingplane.bdl.SpecialTypes.Counter;
 import brown.tracingplane.bdl.examples.ExampleBag;
 import brown.tracingplane.bdl.examples.SimpleBag2;
@@ -277,9 +276,7 @@ public class TestExampleBag {
         
         ExampleBag.getFrom(b2joined).countermap.get("c1").increment(7);
         
-        BDLUtils.is_compaction.set(true);
-        BaggageContext bjoined = provider.join((BDLContext) b1, (BDLContext) b2joined);
-        BDLUtils.is_compaction.set(false);
+        BaggageContext bjoined = provider.compact((BDLContext) b1, (BDLContext) b2joined);
         
         assertEquals(19, provider.serialize((BDLContext) bjoined).length);
         assertEquals(115, ExampleBag.getFrom(bjoined).countermap.get("c1").getValue());
@@ -0,0 +1,84 @@
+package brown.tracingplane.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.HashSet;
+import org.junit.Before;
+import org.junit.Test;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.bdl.examples.SimpleBag;
+
+public class TestLazyOverflow {
+
+    static final BagKey A = BagKey.indexed(3), B = BagKey.indexed(4);
+
+    BDLContextProvider eager, lazy;
+    byte[] trimmed;
+
+    @Before
+    public void createTrimmedBaggage() {
+        BaggageHandlerRegistry registry = BaggageHandlerRegistry.empty();
+        registry.doAdd(A, SimpleBag.Handler.instance);
+        registry.doAdd(B, SimpleBag.Handler.instance);
+        eager = new BDLContextProvider(registry);
+        lazy = new BDLContextProvider(registry, true);
+
+        BDLContext ctx = new BDLContext();
+        ctx.put(A, bag(1, 5)).put(B, bag(100, 5));
+        byte[] full = eager.serialize(ctx);
+
+        // Trimming drops some of B's atoms and marks B as overflowed
+        trimmed = eager.serialize(ctx, full.length - 20);
+    }
+
+    private static SimpleBag bag(long first, int count) {
+        SimpleBag bag = new SimpleBag();
+        bag.ids = new HashSet<>();
+        for (long id = first; id < first + count; id++) {
+            bag.ids.add(id);
+        }
+        return bag;
+    }
+
+    private static SimpleBag get(BDLContext ctx, BagKey key) {
+        return (SimpleBag) ctx.get(key);
+    }
+
+    private BDLContext deserialize(BDLContextProvider provider) {
+        return provider.deserialize(trimmed, 0, trimmed.length);
+    }
+
+    @Test
+    public void testEager() {
+        BDLContext ctx = deserialize(eager);
+        assertFalse(get(ctx, A)._overflow);
+        assertTrue(get(ctx, B)._overflow);
+        assertEquals(5, get(ctx, A).ids.size());
+        assertTrue(get(ctx, B).ids.size() < 5);
+    }
+
+    @Test
+    public void testLazyInOrder() {
+        BDLContext expected = deserialize(eager);
+        BDLContext ctx = deserialize(lazy);
+        assertEquals(get(expected, A).ids, get(ctx, A).ids);
+        assertEquals(get(expected, B).ids, get(ctx, B).ids);
+        assertFalse(get(ctx, A)._overflow);
+        assertTrue(get(ctx, B)._overflow);
+        assertArrayEquals(eager.serialize(expected), lazy.serialize(ctx));
+    }
+
+    @Test
+    public void testLazyInReverseOrder() {
+        BDLContext expected = deserialize(eager);
+        BDLContext ctx = deserialize(lazy);
+        assertEquals(get(expected, B).ids, get(ctx, B).ids);
+        assertEquals(get(expected, A).ids, get(ctx, A).ids);
+        assertFalse(get(ctx, A)._overflow);
+        assertTrue(get(ctx, B)._overflow);
+        assertArrayEquals(eager.serialize(expected), lazy.serialize(ctx));
+    }
+
+}
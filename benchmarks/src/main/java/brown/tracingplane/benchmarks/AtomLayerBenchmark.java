@@ -0,0 +1,77 @@
+package brown.tracingplane.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import brown.tracingplane.atomlayer.AtomArray;
+import brown.tracingplane.atomlayer.AtomLayerSerialization;
+
+/**
+ * Benchmarks for serializing and deserializing atoms with {@link AtomLayerSerialization}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AtomLayerBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int atomCount;
+
+    @Param({ "8", "32", "128" })
+    public int atomSize;
+
+    List<ByteBuffer> atoms;
+    byte[] serialized;
+    int limit;
+    ByteBuffer out;
+
+    @Setup
+    public void setup() {
+        atoms = BenchmarkUtils.randomAtoms(new Random(0), atomCount, atomSize);
+        serialized = AtomLayerSerialization.serialize(atoms);
+        limit = serialized.length / 2;
+        out = ByteBuffer.allocateDirect(limit);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return AtomLayerSerialization.serialize(atoms);
+    }
+
+    @Benchmark
+    public byte[] serializeWithLimit() {
+        return AtomLayerSerialization.serialize(atoms, limit);
+    }
+
+    @Benchmark
+    public int serializeWithLimitInto() {
+        out.clear();
+        return AtomLayerSerialization.serialize(atoms, limit, out);
+    }
+
+    @Benchmark
+    public List<ByteBuffer> deserialize() {
+        return AtomLayerSerialization.deserialize(serialized, 0, serialized.length);
+    }
+
+    @Benchmark
+    public AtomArray deserializeArray() {
+        return AtomLayerSerialization.deserializeArray(serialized, 0, serialized.length);
+    }
+
+}
@@ -0,0 +1,99 @@
+package brown.tracingplane.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.BaggageProvider;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.impl.BDLContext;
+import brown.tracingplane.impl.BDLContextProvider;
+import brown.tracingplane.impl.BDLContextProviderFactory;
+import brown.tracingplane.impl.BaggageHandlerRegistry;
+
+/**
+ * Benchmarks for the {@link BDLContextProvider} operations that are invoked every time a request is propagated.
+ * Contexts contain a single {@link BenchmarkBag} chain of the configured depth.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BDLContextBenchmark {
+
+    public static final BagKey BENCHMARK_BAG_KEY = BagKey.indexed(10);
+
+    @Param({ "1", "10", "100" })
+    public int atomCount;
+
+    @Param({ "8", "32", "128" })
+    public int atomSize;
+
+    @Param({ "1", "4" })
+    public int depth;
+
+    BaggageProvider<BaggageContext> provider;
+    BaggageContext a, b;
+    byte[] serialized;
+    ByteBuffer out;
+
+    @Setup
+    public void setup() {
+        provider = createProvider();
+
+        Random r = new Random(0);
+        a = BDLContextProvider.set(null, BENCHMARK_BAG_KEY, BenchmarkUtils.randomBag(r, depth, atomCount, atomSize));
+        b = BDLContextProvider.set(null, BENCHMARK_BAG_KEY, BenchmarkUtils.randomBag(r, depth, atomCount, atomSize));
+        serialized = provider.serialize(a);
+        out = ByteBuffer.allocateDirect(serialized.length);
+    }
+
+    /** Registers {@link BenchmarkBag} and returns a {@link BDLContextProvider} */
+    @SuppressWarnings("unchecked")
+    public static BaggageProvider<BaggageContext> createProvider() {
+        BaggageHandlerRegistry.add(BENCHMARK_BAG_KEY, BenchmarkBag.Handler.instance);
+        return (BaggageProvider<BaggageContext>) new BDLContextProviderFactory().provider();
+    }
+
+    @Benchmark
+    public BaggageContext branch() {
+        return provider.branch(a);
+    }
+
+    /** Join modifies its left argument in place, so this benchmark also includes the cost of one branch */
+    @Benchmark
+    public BaggageContext branchJoin() {
+        return provider.join(provider.branch(a), b);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return provider.serialize(a);
+    }
+
+    /** Streams the context directly into a preallocated buffer, as a transport with its own output buffer would */
+    @Benchmark
+    public int serializeToBuffer() {
+        out.clear();
+        return ((BDLContextProvider) (BaggageProvider<?>) provider).serialize((BDLContext) a, out);
+    }
+
+    @Benchmark
+    public BaggageContext deserialize() {
+        return provider.deserialize(serialized, 0, serialized.length);
+    }
+
+}
@@ -0,0 +1,120 @@
+package brown.tracingplane.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import brown.tracingplane.atomlayer.AtomLayerSerialization;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.baggageprotocol.BaggageReader;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
+
+/**
+ * Benchmarks for reading and writing nested bags with {@link BaggageReader} and {@link BaggageWriter}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BaggageProtocolBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int atomCount;
+
+    @Param({ "8", "32", "128" })
+    public int atomSize;
+
+    @Param({ "1", "4" })
+    public int depth;
+
+    List<ByteBuffer> baggage;
+    List<ByteBuffer> data;
+    BagKey[] path;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(0);
+        baggage = BenchmarkUtils.nestedBaggage(r, depth, atomCount, atomSize);
+        data = BenchmarkUtils.randomAtoms(r, atomCount, atomSize);
+        path = BenchmarkUtils.nestedPath(depth);
+    }
+
+    /** Enters each bag along the path and reads all of the data in each bag */
+    @Benchmark
+    public void readerEnter(Blackhole bh) {
+        BaggageReader reader = BaggageReader.create(baggage);
+        for (BagKey key : path) {
+            if (!reader.enter(key)) {
+                break;
+            }
+            while (reader.hasData()) {
+                bh.consume(reader.nextData());
+            }
+        }
+        reader.finish();
+        bh.consume(reader.unprocessedAtoms());
+    }
+
+    /** Writes a chain of nested bags, each containing the same data */
+    @Benchmark
+    public List<ByteBuffer> writerEnterExit() {
+        BaggageWriter writer = BaggageWriter.create();
+        for (BagKey key : path) {
+            writer.enter(key);
+            for (int i = 0; i < data.size(); i++) {
+                ByteBuffer atom = data.get(i);
+                writer.newDataAtom(atom.remaining()).put(atom.duplicate());
+            }
+        }
+        for (int i = 0; i < path.length; i++) {
+            writer.exit();
+        }
+        return writer.atoms();
+    }
+
+    /**
+     * Writes the nested bags and serializes them, as is done for every outbound request. Run with {@code -prof gc} to
+     * compare the allocation rate with {@link #writeAndSerializePooled()}.
+     */
+    @Benchmark
+    public byte[] writeAndSerialize() {
+        return AtomLayerSerialization.serialize(write(BaggageWriter.create()).atoms());
+    }
+
+    /** Like {@link #writeAndSerialize()}, but reuses this thread's pooled writer */
+    @Benchmark
+    public byte[] writeAndSerializePooled() {
+        try (BaggageWriter writer = BaggageWriter.createPooled()) {
+            return AtomLayerSerialization.serialize(write(writer).atoms());
+        }
+    }
+
+    private BaggageWriter write(BaggageWriter writer) {
+        for (BagKey key : path) {
+            writer.enter(key);
+            for (int i = 0; i < data.size(); i++) {
+                ByteBuffer atom = data.get(i);
+                writer.newDataAtom(atom.remaining()).put(atom.duplicate());
+            }
+        }
+        for (int i = 0; i < path.length; i++) {
+            writer.exit();
+        }
+        return writer;
+    }
+
+}
@@ -0,0 +1,138 @@
+package brown.tracingplane.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.baggageprotocol.BaggageReader;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
+import brown.tracingplane.bdl.BDLUtils;
+import brown.tracingplane.bdl.Bag;
+import brown.tracingplane.bdl.BaggageHandler;
+import brown.tracingplane.bdl.Brancher;
+import brown.tracingplane.bdl.Branchers;
+import brown.tracingplane.bdl.Joiner;
+import brown.tracingplane.bdl.Joiners;
+import brown.tracingplane.bdl.Parser;
+import brown.tracingplane.bdl.Parsers;
+import brown.tracingplane.bdl.Serializer;
+import brown.tracingplane.bdl.Serializers;
+
+/**
+ * A bag used by the BDL benchmarks, written in the same shape as the code generated by the BDL compiler for the
+ * declaration:
+ * 
+ * <pre>
+ * bag BenchmarkBag {
+ *     set&lt;bytes&gt; values = 1;
+ *     BenchmarkBag child = 2;
+ * }
+ * </pre>
+ * 
+ * The recursive <code>child</code> field lets benchmarks control the nesting depth of the bag.
+ */
+public class BenchmarkBag implements Bag {
+
+    public Set<ByteBuffer> values = null;
+    public BenchmarkBag child = null;
+
+    public boolean _overflow = false;
+
+    @Override
+    public BaggageHandler<?> handler() {
+        return Handler.instance;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append("BenchmarkBag{\n");
+        b.append(values == null ? "" : BDLUtils.indent(String.format("values = %s\n", BDLUtils.toString(values))));
+        b.append(child == null ? "" : BDLUtils.indent(String.format("child = %s\n", String.valueOf(child))));
+        b.append("}");
+        return b.toString();
+    }
+
+    public static class Handler implements BaggageHandler<BenchmarkBag> {
+
+        public static final Handler instance = new Handler();
+
+        private Handler() {}
+
+        private static final BagKey _valuesKey = BagKey.indexed(1);
+        private static final BagKey _childKey = BagKey.indexed(2);
+
+        private static final Parser<Set<ByteBuffer>> _valuesParser = Parsers.<ByteBuffer> setParser(Parsers.bytesParser());
+        private static final Serializer<Set<ByteBuffer>> _valuesSerializer = Serializers.<ByteBuffer> setSerializer(Serializers.bytesSerializer());
+        private static final Brancher<Set<ByteBuffer>> _valuesBrancher = Branchers.<ByteBuffer> set();
+        private static final Joiner<Set<ByteBuffer>> _valuesJoiner = Joiners.<ByteBuffer> setUnion();
+
+        private static final BaggageHandler<BenchmarkBag> _childHandler = instance;
+
+        @Override
+        public boolean isInstance(Bag bag) {
+            return bag == null || bag instanceof BenchmarkBag;
+        }
+
+        @Override
+        public BenchmarkBag parse(BaggageReader reader) {
+            BenchmarkBag instance = new BenchmarkBag();
+
+            if (reader.enter(_valuesKey)) {
+                instance.values = _valuesParser.parse(reader);
+                reader.exit();
+            }
+            if (reader.enter(_childKey)) {
+                instance.child = _childHandler.parse(reader);
+                reader.exit();
+            }
+            instance._overflow = reader.didOverflow();
+
+            return instance;
+        }
+
+        @Override
+        public void serialize(BaggageWriter writer, BenchmarkBag instance) {
+            if (instance == null) {
+                return;
+            }
+
+            writer.didOverflowHere(instance._overflow);
+            if (instance.values != null) {
+                writer.enter(_valuesKey);
+                _valuesSerializer.serialize(writer, instance.values);
+                writer.exit();
+            }
+            if (instance.child != null) {
+                writer.enter(_childKey);
+                _childHandler.serialize(writer, instance.child);
+                writer.exit();
+            }
+        }
+
+        @Override
+        public BenchmarkBag branch(BenchmarkBag instance) {
+            if (instance == null) {
+                return null;
+            }
+
+            BenchmarkBag newInstance = new BenchmarkBag();
+            newInstance.values = _valuesBrancher.branch(instance.values);
+            newInstance.child = _childHandler.branch(instance.child);
+            return newInstance;
+        }
+
+        @Override
+        public BenchmarkBag join(BenchmarkBag left, BenchmarkBag right) {
+            if (left == null) {
+                return right;
+            } else if (right == null) {
+                return left;
+            } else {
+                left.values = _valuesJoiner.join(left.values, right.values);
+                left.child = _childHandler.join(left.child, right.child);
+                return left;
+            }
+        }
+    }
+
+}
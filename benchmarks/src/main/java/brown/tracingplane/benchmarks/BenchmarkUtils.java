@@ -0,0 +1,94 @@
+package brown.tracingplane.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import brown.tracingplane.atomlayer.Lexicographic;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
+
+/**
+ * Helpers for generating the atoms, baggage and bags used as input by the benchmarks. All generators take a
+ * {@link Random} so that benchmark inputs are reproducible across runs.
+ */
+public class BenchmarkUtils {
+
+    private BenchmarkUtils() {}
+
+    /** Generates a random buffer of the specified size */
+    public static ByteBuffer randomBytes(Random r, int size) {
+        byte[] bytes = new byte[size];
+        r.nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /** Generates a lexicographically sorted list of random atoms */
+    public static List<ByteBuffer> randomAtoms(Random r, int atomCount, int atomSize) {
+        List<ByteBuffer> atoms = new ArrayList<>(atomCount);
+        for (int i = 0; i < atomCount; i++) {
+            atoms.add(randomBytes(r, atomSize));
+        }
+        Lexicographic.sort(atoms);
+        return atoms;
+    }
+
+    /** Generates a set of random values, each of the specified size */
+    public static Set<ByteBuffer> randomValues(Random r, int valueCount, int valueSize) {
+        Set<ByteBuffer> values = new HashSet<>();
+        while (values.size() < valueCount) {
+            values.add(randomBytes(r, valueSize));
+        }
+        return values;
+    }
+
+    /**
+     * Generates a chain of nested {@link BenchmarkBag}s. Each bag in the chain carries <code>valueCount</code> random
+     * values of <code>valueSize</code> bytes
+     * 
+     * @param depth the number of bags in the chain; must be at least 1
+     */
+    public static BenchmarkBag randomBag(Random r, int depth, int valueCount, int valueSize) {
+        BenchmarkBag bag = new BenchmarkBag();
+        bag.values = randomValues(r, valueCount, valueSize);
+        if (depth > 1) {
+            bag.child = randomBag(r, depth - 1, valueCount, valueSize);
+        }
+        return bag;
+    }
+
+    /**
+     * Generates the atoms of a baggage that contains <code>depth</code> nested bags, each with key
+     * <code>BagKey.indexed(1)</code> and containing <code>atomCount</code> data atoms of <code>atomSize</code> bytes.
+     * Data atoms are preceded by a one-byte prefix, so the data atoms will be <code>atomSize+1</code> bytes.
+     */
+    public static List<ByteBuffer> nestedBaggage(Random r, int depth, int atomCount, int atomSize) {
+        BaggageWriter writer = BaggageWriter.create();
+        writeNested(writer, r, depth, atomCount, atomSize);
+        return writer.atoms();
+    }
+
+    private static void writeNested(BaggageWriter writer, Random r, int depth, int atomCount, int atomSize) {
+        if (depth == 0) {
+            return;
+        }
+        writer.enter(BagKey.indexed(1));
+        for (ByteBuffer atom : randomAtoms(r, atomCount, atomSize)) {
+            writer.writeBytes(atom);
+        }
+        writeNested(writer, r, depth - 1, atomCount, atomSize);
+        writer.exit();
+    }
+
+    /** Returns the keys of the bags nested in baggage generated by {@link #nestedBaggage(Random, int, int, int)} */
+    public static BagKey[] nestedPath(int depth) {
+        BagKey[] path = new BagKey[depth];
+        for (int i = 0; i < depth; i++) {
+            path[i] = BagKey.indexed(1);
+        }
+        return path;
+    }
+
+}
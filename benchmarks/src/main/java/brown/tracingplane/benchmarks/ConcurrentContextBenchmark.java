@@ -0,0 +1,67 @@
+package brown.tracingplane.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.baggageprotocol.BagKey;
+import brown.tracingplane.bdl.CounterImpl;
+import brown.tracingplane.bdl.SpecialTypes.Counter;
+import brown.tracingplane.impl.BDLContextProvider;
+import brown.tracingplane.impl.ConcurrentBDLContext;
+
+/**
+ * Benchmarks several threads incrementing a counter in the same request's baggage through
+ * {@link BDLContextProvider#get(BaggageContext, BagKey)}. A plain context has to be shared under a lock, whereas a
+ * {@link ConcurrentBDLContext} gives each thread its own branch. Run with <code>-t</code> to vary the number of
+ * threads; the throughput of <code>concurrent</code> should scale with the number of cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ConcurrentContextBenchmark {
+
+    static final BagKey COUNTER_KEY = BagKey.indexed(11);
+
+    BaggageContext locked;
+    ConcurrentBDLContext concurrent;
+
+    @Setup
+    public void setup() {
+        locked = BDLContextProvider.set(null, COUNTER_KEY, counter());
+        concurrent = BDLContextProvider.concurrent(BDLContextProvider.set(null, COUNTER_KEY, counter()));
+    }
+
+    /** Empty bags are dropped when branched, so the counter starts at 1 */
+    private static CounterImpl counter() {
+        CounterImpl counter = new CounterImpl();
+        counter.increment();
+        return counter;
+    }
+
+    @Benchmark
+    public void locked() {
+        synchronized (locked) {
+            ((Counter) BDLContextProvider.get(locked, COUNTER_KEY)).increment();
+        }
+    }
+
+    @Benchmark
+    public void concurrent() {
+        ((Counter) BDLContextProvider.get(concurrent, COUNTER_KEY)).increment();
+    }
+
+}
@@ -0,0 +1,70 @@
+package brown.tracingplane.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import brown.tracingplane.baggageprotocol.BaggageWriter;
+import brown.tracingplane.bdl.CounterImpl;
+
+/**
+ * Benchmarks repeated branch/increment/join cycles of a {@link CounterImpl}, as happens when a request repeatedly fans
+ * out to a thread pool and joins the results back. With <code>compact</code> set, the results are joined with
+ * {@link CounterImpl.Handler#compact(CounterImpl, CounterImpl)}, otherwise with
+ * {@link CounterImpl.Handler#join(CounterImpl, CounterImpl)}. The serialized size of the final counter is reported as
+ * the <code>serializedBytes</code> secondary result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CounterBenchmark {
+
+    @Param({ "1000" })
+    public int cycles;
+
+    @Param({ "false", "true" })
+    public boolean compact;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Size {
+        public long serializedBytes;
+    }
+
+    @Benchmark
+    public CounterImpl branchJoinCycles(Size size) {
+        CounterImpl.Handler handler = CounterImpl.Handler.instance;
+        CounterImpl counter = new CounterImpl();
+        counter.increment();
+        for (int i = 0; i < cycles; i++) {
+            CounterImpl branch = handler.branch(counter);
+            branch.increment();
+            counter = compact ? handler.compact(counter, branch) : handler.join(counter, branch);
+        }
+        size.serializedBytes = serializedSize(counter);
+        return counter;
+    }
+
+    private static long serializedSize(CounterImpl counter) {
+        BaggageWriter writer = BaggageWriter.create();
+        CounterImpl.Handler.instance.serialize(writer, counter);
+        long size = 0;
+        for (ByteBuffer atom : writer.atoms()) {
+            size += atom.remaining();
+        }
+        return size;
+    }
+
+}
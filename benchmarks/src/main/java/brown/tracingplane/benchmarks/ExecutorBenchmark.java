@@ -0,0 +1,78 @@
+package brown.tracingplane.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import brown.tracingplane.ActiveBaggage;
+import brown.tracingplane.BaggageExecutors;
+import brown.tracingplane.impl.BDLContextProvider;
+
+/**
+ * Benchmarks the per-task overhead of {@link BaggageExecutors#wrap(ExecutorService)}, comparing a submit followed by a
+ * get on a single-threaded executor with and without the wrapper. With <code>baggage</code> set, the submitting thread
+ * has active baggage that each task branches and joins back; otherwise there is no active baggage, and the wrapper
+ * should not branch anything.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Dbaggage.transit=brown.tracingplane.impl.ThreadLocalTransitLayerFactory",
+                                   "-Dbaggage.provider=brown.tracingplane.impl.BDLContextProviderFactory" })
+@State(Scope.Thread)
+public class ExecutorBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean baggage;
+
+    @Param({ "10" })
+    public int atomCount;
+
+    ExecutorService executor;
+    ExecutorService wrapped;
+
+    static final Callable<Integer> task = () -> 1;
+
+    @Setup
+    public void setup() {
+        BDLContextBenchmark.createProvider();
+        executor = Executors.newSingleThreadExecutor();
+        wrapped = BaggageExecutors.wrap(executor);
+        if (baggage) {
+            BenchmarkBag bag = BenchmarkUtils.randomBag(new Random(0), 1, atomCount, 8);
+            ActiveBaggage.set(BDLContextProvider.set(null, BDLContextBenchmark.BENCHMARK_BAG_KEY, bag));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ActiveBaggage.discard();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Integer raw() throws InterruptedException, ExecutionException {
+        return executor.submit(task).get();
+    }
+
+    @Benchmark
+    public Integer wrapped() throws InterruptedException, ExecutionException {
+        return wrapped.submit(task).get();
+    }
+
+}
@@ -0,0 +1,69 @@
+package brown.tracingplane.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import brown.tracingplane.atomlayer.Lexicographic;
+
+/**
+ * Benchmarks for merging atoms with {@link Lexicographic#merge(List, List)}. Each benchmark merges two lists that share
+ * a common prefix of atoms (as is the case after a branch), followed by a number of atoms that are unique to each side.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LexicographicBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int atomCount;
+
+    @Param({ "8", "32", "128" })
+    public int atomSize;
+
+    /** Percentage of atoms that differ between the two sides of the merge */
+    @Param({ "0", "10", "100" })
+    public int percentDifferent;
+
+    List<ByteBuffer> a, b;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(0);
+        int different = atomCount * percentDifferent / 100;
+        List<ByteBuffer> common = BenchmarkUtils.randomAtoms(r, atomCount - different, atomSize);
+
+        a = new ArrayList<>(common);
+        a.addAll(BenchmarkUtils.randomAtoms(r, different, atomSize));
+        Lexicographic.sort(a);
+
+        // Copy the common atoms so that merge cannot shortcut on identical buffers
+        b = new ArrayList<>();
+        for (ByteBuffer atom : common) {
+            b.add(ByteBuffer.wrap(atom.array().clone()));
+        }
+        b.addAll(BenchmarkUtils.randomAtoms(r, different, atomSize));
+        Lexicographic.sort(b);
+    }
+
+    @Benchmark
+    public List<ByteBuffer> merge() {
+        return Lexicographic.merge(a, b);
+    }
+
+}
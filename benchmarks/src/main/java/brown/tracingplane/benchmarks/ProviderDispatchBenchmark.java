@@ -0,0 +1,69 @@
+package brown.tracingplane.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import brown.tracingplane.ActiveBaggage;
+import brown.tracingplane.Baggage;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.impl.BDLContextProvider;
+
+/**
+ * Benchmarks the cost of dispatching calls on the static {@link Baggage} and {@link ActiveBaggage} APIs to the
+ * configured provider and transit layer. With nothing configured, the no-op provider and transit layer are used, and
+ * the calls should cost no more than the <code>baseline</code>. With a {@link BDLContextProvider} configured, the
+ * calls are compared with and without <code>baggage.validate</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProviderDispatchBenchmark {
+
+    BaggageContext baggage;
+
+    @Setup
+    public void setup() {
+        BDLContextBenchmark.createProvider();
+        baggage = BDLContextProvider.set(null, BDLContextBenchmark.BENCHMARK_BAG_KEY, new BenchmarkBag());
+    }
+
+    @Benchmark
+    public BaggageContext baseline() {
+        return null;
+    }
+
+    @Benchmark
+    public BaggageContext noopBranch() {
+        return Baggage.branch(null);
+    }
+
+    @Benchmark
+    public BaggageContext noopPeek() {
+        return ActiveBaggage.peek();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = { "-Dbaggage.provider=brown.tracingplane.impl.BDLContextProviderFactory" })
+    public BaggageContext bdlBranch() {
+        return Baggage.branch(baggage);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = { "-Dbaggage.provider=brown.tracingplane.impl.BDLContextProviderFactory",
+                                       "-Dbaggage.validate=true" })
+    public BaggageContext bdlBranchValidated() {
+        return Baggage.branch(baggage);
+    }
+
+}
@@ -0,0 +1,102 @@
+package brown.tracingplane.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import brown.tracingplane.ActiveBaggage;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.BaggageScope;
+import brown.tracingplane.impl.BDLContextProvider;
+
+/**
+ * Benchmarks forking <code>subtasks</code> subtasks from a request with active baggage and joining their baggage back,
+ * using a {@link BaggageScope}, against doing the same by hand with {@link ActiveBaggage}. Subtasks run either on a
+ * fixed thread <code>pool</code>, or on a new <code>thread</code> each. Run with <code>-prof gc</code> to compare
+ * allocation per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Dbaggage.transit=brown.tracingplane.impl.ThreadLocalTransitLayerFactory",
+                                   "-Dbaggage.provider=brown.tracingplane.impl.BDLContextProviderFactory" })
+@State(Scope.Thread)
+public class ScopeBenchmark {
+
+    @Param({ "10", "100" })
+    public int subtasks;
+
+    @Param({ "pool", "thread" })
+    public String executor;
+
+    ExecutorService pool;
+    Executor subtaskExecutor;
+
+    @Setup
+    public void setup() {
+        BDLContextBenchmark.createProvider();
+        if ("pool".equals(executor)) {
+            pool = Executors.newFixedThreadPool(4);
+            subtaskExecutor = pool;
+        } else {
+            subtaskExecutor = command -> new Thread(command).start();
+        }
+        BenchmarkBag bag = BenchmarkUtils.randomBag(new Random(0), 1, 10, 8);
+        ActiveBaggage.set(BDLContextProvider.set(null, BDLContextBenchmark.BENCHMARK_BAG_KEY, bag));
+    }
+
+    @TearDown
+    public void tearDown() {
+        ActiveBaggage.discard();
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public void scope() {
+        try (BaggageScope scope = BaggageScope.open(subtaskExecutor)) {
+            for (int i = 0; i < subtasks; i++) {
+                scope.fork(() -> {});
+            }
+        }
+    }
+
+    @Benchmark
+    public void manual() throws Exception {
+        List<Future<BaggageContext>> futures = new ArrayList<>(subtasks);
+        for (int i = 0; i < subtasks; i++) {
+            BaggageContext branched = ActiveBaggage.branch();
+            FutureTask<BaggageContext> future = new FutureTask<>(() -> {
+                ActiveBaggage.set(branched);
+                return ActiveBaggage.take();
+            });
+            subtaskExecutor.execute(future);
+            futures.add(future);
+        }
+        List<BaggageContext> results = new ArrayList<>(subtasks);
+        for (Future<BaggageContext> future : futures) {
+            results.add(future.get());
+        }
+        ActiveBaggage.joinAll(results);
+    }
+
+}
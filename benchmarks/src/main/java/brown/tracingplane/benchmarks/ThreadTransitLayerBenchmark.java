@@ -0,0 +1,90 @@
+package brown.tracingplane.benchmarks;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.BaggageProvider;
+import brown.tracingplane.TransitLayer;
+import brown.tracingplane.impl.BDLContextProvider;
+import brown.tracingplane.impl.BaggageThread;
+import brown.tracingplane.impl.BaggageThreadFactory;
+import brown.tracingplane.impl.BaggageThreadTransitLayer;
+import brown.tracingplane.impl.ThreadLocalTransitLayer;
+
+/**
+ * Benchmarks {@link TransitLayer#peek()}, and {@link TransitLayer#set(BaggageContext)} followed by
+ * {@link TransitLayer#take()}, for the {@link ThreadLocalTransitLayer} and the {@link BaggageThreadTransitLayer}. The
+ * operations run in batches on a {@link BaggageThread}, so that the {@link BaggageThreadTransitLayer} uses the thread's
+ * field; the cost of handing each batch to the thread is amortized over the batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ThreadTransitLayerBenchmark {
+
+    static final int BATCH = 10000;
+
+    @Param({ "threadlocal", "field" })
+    public String transitLayer;
+
+    TransitLayer transit;
+    ExecutorService thread;
+    BaggageContext baggage;
+
+    @Setup
+    public void setup() throws InterruptedException, ExecutionException {
+        BaggageProvider<BaggageContext> provider = BDLContextBenchmark.createProvider();
+        transit = "field".equals(transitLayer) ? new BaggageThreadTransitLayer(provider)
+                                               : new ThreadLocalTransitLayer(provider);
+        thread = Executors.newSingleThreadExecutor(new BaggageThreadFactory());
+        baggage = BDLContextProvider.set(null, BDLContextBenchmark.BENCHMARK_BAG_KEY, new BenchmarkBag());
+        thread.submit(() -> transit.set(baggage)).get();
+    }
+
+    @TearDown
+    public void tearDown() {
+        thread.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void peek(Blackhole bh) throws InterruptedException, ExecutionException {
+        thread.submit(() -> {
+            for (int i = 0; i < BATCH; i++) {
+                bh.consume(transit.peek());
+            }
+        }).get();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void setTake(Blackhole bh) throws InterruptedException, ExecutionException {
+        thread.submit(() -> {
+            for (int i = 0; i < BATCH; i++) {
+                transit.set(baggage);
+                bh.consume(transit.take());
+            }
+            transit.set(baggage);
+        }).get();
+    }
+
+}
@@ -0,0 +1,64 @@
+package brown.tracingplane.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import brown.tracingplane.BaggageContext;
+import brown.tracingplane.BaggageProvider;
+import brown.tracingplane.impl.BDLContextProvider;
+import brown.tracingplane.impl.ThreadLocalTransitLayer;
+
+/**
+ * Benchmarks for {@link ThreadLocalTransitLayer#branchBytes()}, which is invoked each time a request makes an outgoing
+ * RPC, using a {@link BDLContextProvider}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransitLayerBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int atomCount;
+
+    @Param({ "8", "32", "128" })
+    public int atomSize;
+
+    @Param({ "1", "4" })
+    public int depth;
+
+    ThreadLocalTransitLayer transit;
+
+    @Setup
+    public void setup() {
+        BaggageProvider<BaggageContext> provider = BDLContextBenchmark.createProvider();
+        transit = new ThreadLocalTransitLayer(provider);
+
+        BenchmarkBag bag = BenchmarkUtils.randomBag(new Random(0), depth, atomCount, atomSize);
+        transit.set(BDLContextProvider.set(null, BDLContextBenchmark.BENCHMARK_BAG_KEY, bag));
+    }
+
+    @TearDown
+    public void tearDown() {
+        transit.discard();
+    }
+
+    @Benchmark
+    public byte[] branchBytes() {
+        return transit.branchBytes();
+    }
+
+}
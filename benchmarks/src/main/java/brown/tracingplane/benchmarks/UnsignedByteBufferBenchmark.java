@@ -0,0 +1,83 @@
+package brown.tracingplane.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import brown.tracingplane.atomlayer.UnsignedByteBuffer;
+
+/**
+ * Compares the {@link UnsignedByteBuffer} comparator implementations on atoms of realistic sizes. The two atoms compared
+ * differ only in their last byte, so every byte is examined.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UnsignedByteBufferBenchmark {
+
+    @Param({ "1", "4", "8", "12", "16", "24", "32" })
+    public int atomSize;
+
+    @Param({ "heap", "direct", "readonly" })
+    public String bufferType;
+
+    ByteBuffer left;
+    ByteBuffer right;
+
+    Comparator<ByteBuffer> unsafe = UnsignedByteBuffer.lexicographicalComparator();
+    Comparator<ByteBuffer> word = UnsignedByteBuffer.lexicographicalComparatorWordImpl();
+    Comparator<ByteBuffer> pureJava = UnsignedByteBuffer.lexicographicalComparatorJavaImpl();
+
+    @Setup
+    public void setup() {
+        byte[] bytes = new byte[atomSize];
+        new Random(0).nextBytes(bytes);
+        left = make(bytes);
+        bytes[atomSize - 1]++;
+        right = make(bytes);
+    }
+
+    private ByteBuffer make(byte[] bytes) {
+        switch (bufferType) {
+        case "direct":
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes);
+            direct.flip();
+            return direct;
+        case "readonly":
+            return ByteBuffer.wrap(bytes.clone()).asReadOnlyBuffer();
+        default:
+            return ByteBuffer.wrap(bytes.clone());
+        }
+    }
+
+    @Benchmark
+    public int unsafe() {
+        return unsafe.compare(left, right);
+    }
+
+    @Benchmark
+    public int word() {
+        return word.compare(left, right);
+    }
+
+    @Benchmark
+    public int pureJava() {
+        return pureJava.compare(left, right);
+    }
+
+}